@@ -5,6 +5,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -37,7 +38,6 @@ import edu.isi.karma.modeling.alignment.AlignmentManager;
 import edu.isi.karma.modeling.ontology.OntologyManager;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNode.HNodeType;
-import edu.isi.karma.rep.HashValueManager;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Row;
@@ -126,7 +126,7 @@ public class AugmentDataCommand extends WorksheetSelectionCommand{
 		inputColumns.addAll(hNodeIds);
 		List<Table> dataTables = new ArrayList<Table>();
 		CloneTableUtils.getDatatable(worksheet.getDataTable(), factory.getHTable(hnode.getHTableId()), dataTables, selection);
-		Map<String, String> rowHashToSubjectURI = new HashMap<String, String>();
+		Set<String> subjectURIs = new LinkedHashSet<String>();
 		Map<String, List<String>> SubjectURIToRowId = new HashMap<String, List<String>>();
 		for(Table t : dataTables) {
 			for(Row r : t.getRows(0, t.getNumRows(), selection)) {
@@ -143,7 +143,7 @@ public class AugmentDataCommand extends WorksheetSelectionCommand{
 						// TODO Auto-generated catch block
 					}
 //					n.setValue(uri, n.getStatus(), factory);
-					rowHashToSubjectURI.put(HashValueManager.getHashValue(r, hNodeIds), uri);
+					subjectURIs.add(uri);
 
 					if (SubjectURIToRowId.get(uri) == null)
 						SubjectURIToRowId.put(uri, new ArrayList<String>());
@@ -156,7 +156,7 @@ public class AugmentDataCommand extends WorksheetSelectionCommand{
 
 		//String modelContext = worksheet.getMetadataContainer().getWorksheetProperties().getPropertyValue(Property.modelContext);
 		List<String> subjects = new LinkedList<String>();
-		subjects.addAll(rowHashToSubjectURI.values());
+		subjects.addAll(subjectURIs);
 		List<String> predicates = new LinkedList<String>();
 		List<String> otherClasses = new LinkedList<String>();
 		Map<String, List<String>> results = new HashMap<String, List<String>>();
@@ -1,7 +1,6 @@
 package edu.isi.karma.controller.command.alignment;
 
 import java.io.PrintWriter;
-import java.util.List;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -64,13 +63,7 @@ public class GetSemanticSuggestionsCommand extends WorksheetSelectionCommand {
 					VWorkspace vWorkspace) {
 				HNodePath currentColumnPath = null;
 				Worksheet worksheet = workspace.getWorksheet(worksheetId);
-				List<HNodePath> paths = worksheet.getHeaders().getAllPaths();
-				for (HNodePath path : paths) {
-					if (path.getLeaf().getId().equals(hNodeId)) {
-						currentColumnPath = path;
-						break;
-					}
-				}
+				currentColumnPath = worksheet.getHeaders().getLeafPath(hNodeId);
 				
 				SemanticTypeColumnModel model = new SemanticTypeUtil().predictColumnSemanticType(workspace, worksheet, currentColumnPath, 4, selection);
 				if(model != null) {
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.json.JSONArray;
@@ -130,6 +131,8 @@ public class SuggestModelCommand extends WorksheetSelectionCommand {
 			List<HNode> orderedNodeIds = new ArrayList<HNode>();
 			worksheet.getHeaders().getSortedLeafHNodes(orderedNodeIds);
 			if (orderedNodeIds != null) {
+				// the columns without a user type are predicted together
+				List<ColumnNode> columnNodes = new ArrayList<ColumnNode>();
 				for (int i = 0; i < orderedNodeIds.size(); i++)
 				{
 					String hNodeId = orderedNodeIds.get(i).getId();
@@ -138,11 +141,13 @@ public class SuggestModelCommand extends WorksheetSelectionCommand {
 					if (!cn.hasUserType())
 					{
 						worksheet.getSemanticTypes().unassignColumnSemanticType(hNodeId);
-						List<SemanticType> suggestedSemanticTypes = 
-								new SemanticTypeUtil().getColumnSemanticSuggestions(workspace, worksheet, cn, 4, selection);
-						cn.setLearnedSemanticTypes(suggestedSemanticTypes);
+						columnNodes.add(cn);
 					} 
 				}
+				Map<String, ArrayList<SemanticType>> suggestedSemanticTypes = 
+						new SemanticTypeUtil().getColumnSemanticSuggestions(workspace, worksheet, columnNodes, 4, selection);
+				for (ColumnNode cn : columnNodes)
+					cn.setLearnedSemanticTypes(suggestedSemanticTypes.get(cn.getHNodeId()));
 			}
 		} else {
 		// Replace the current alignment with the old alignment
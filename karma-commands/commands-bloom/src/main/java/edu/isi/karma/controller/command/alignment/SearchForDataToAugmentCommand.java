@@ -15,8 +15,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.hadoop.util.bloom.Key;
-import org.apache.hadoop.util.hash.Hash;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -51,7 +49,6 @@ public class SearchForDataToAugmentCommand extends WorksheetSelectionCommand{
 	private String context;
 	private String nodeUri;
 	private String columnUri;
-	private final Integer limit = 100;
 	public SearchForDataToAugmentCommand(String id, String url, String context, String nodeUri, String worksheetId, String columnUri, String selectionId) {
 		super(id, worksheetId, selectionId);
 		this.tripleStoreUrl = url;
@@ -104,7 +101,6 @@ public class SearchForDataToAugmentCommand extends WorksheetSelectionCommand{
 		List<String> concatenatedPredicateObjectMapsList = result.get("predicateObjectMaps");
 		List<String> predicates = result.get("predicates");
 		List<String> otherClasses = result.get("otherClasses");
-		Iterator<String> concatenatedPredicateObjectMapsListItr = concatenatedPredicateObjectMapsList.iterator();
 		Iterator<String> predicatesItr = predicates.iterator();
 		Iterator<String> otherClassesItr = otherClasses.iterator();
 		String hNodeId = FetchHNodeIdFromAlignmentCommand.gethNodeId(AlignmentManager.Instance().constructAlignmentId(workspace.getId(), worksheetId), columnUri);
@@ -120,7 +116,6 @@ public class SearchForDataToAugmentCommand extends WorksheetSelectionCommand{
 		HNode hnode = factory.getHNode(hNodeId);
 		List<Table> dataTables = new ArrayList<Table>();
 		CloneTableUtils.getDatatable(worksheet.getDataTable(), factory.getHTable(hnode.getHTableId()), dataTables, selection);
-		KR2RMLBloomFilter uris = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
 		Set<String> uriSet = new HashSet<String>();
 		for(Table t : dataTables) {
 			for(Row r : t.getRows(0, t.getNumRows(), selection)) {
@@ -138,46 +133,32 @@ public class SearchForDataToAugmentCommand extends WorksheetSelectionCommand{
 					builder = new StringBuilder();
 					value = builder.append("<").append(value).append(">").toString(); //String builder
 					uriSet.add(value);
-					uris.add(new Key(value.getBytes(UTF8_CHARSET)));
 				}
 			}
 		}
-		Set<String> maps = new HashSet<String>();
-		Map<String, String> bloomfilterMapping = new HashMap<String, String>();
-		try{
-			for (String concatenatedPredicateObjectMaps : concatenatedPredicateObjectMapsList) {
-				List<String> predicateObjectMaps = new ArrayList<String>(Arrays.asList(concatenatedPredicateObjectMaps.split(",")));
-				maps.addAll(predicateObjectMaps);
-				if (maps.size() > limit) {
-					bloomfilterMapping.putAll(util.getBloomFiltersForMaps(tripleStoreUrl, null, maps));
-					maps = new HashSet<String>();
-				}
-			}
-			if (maps.size() > 0)
-				bloomfilterMapping.putAll(util.getBloomFiltersForMaps(tripleStoreUrl, null, maps));
+		List<byte[]> uriKeys = new ArrayList<byte[]>(uriSet.size());
+		for (String uri : uriSet)
+			uriKeys.add(uri.getBytes(UTF8_CHARSET));
+		KR2RMLBloomFilter.HashedKeys hashedUriKeys = new KR2RMLBloomFilter.HashedKeys(uriKeys);
+		List<List<String>> predicateObjectMapsList = new ArrayList<List<String>>();
+		for (String concatenatedPredicateObjectMaps : concatenatedPredicateObjectMapsList)
+			predicateObjectMapsList.add(Arrays.asList(concatenatedPredicateObjectMaps.split(",")));
+		List<KR2RMLBloomFilter> bloomFilters = new ArrayList<KR2RMLBloomFilter>();
+		try {
+			bloomFilters = util.getCombinedBloomFilters(tripleStoreUrl, null, predicateObjectMapsList);
 		} catch (KarmaException e1) {
-			e1.printStackTrace();
+			LOG.error("Unable to fetch bloom filters: " + e1.getMessage());
 		}
-		while(concatenatedPredicateObjectMapsListItr.hasNext() && predicatesItr.hasNext() && otherClassesItr.hasNext())
+		Iterator<KR2RMLBloomFilter> bloomFiltersItr = bloomFilters.iterator();
+		while(bloomFiltersItr.hasNext() && predicatesItr.hasNext() && otherClassesItr.hasNext())
 		{
-
-			String concatenatedPredicateObjectMaps = concatenatedPredicateObjectMapsListItr.next();
-			List<String> predicateObjectMaps = new ArrayList<String>(Arrays.asList(concatenatedPredicateObjectMaps.split(",")));
+			KR2RMLBloomFilter intersectionBF = bloomFiltersItr.next();
 			String predicate =  predicatesItr.next();
 			String otherClass = otherClassesItr.next();
 			try {
-				KR2RMLBloomFilter intersectionBF = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
-				for (String triplemap : predicateObjectMaps) {
-					String serializedBloomFilter = bloomfilterMapping.get(triplemap);
-					if (serializedBloomFilter != null) {
-						KR2RMLBloomFilter bf = new KR2RMLBloomFilter();
-						bf.populateFromCompressedAndBase64EncodedString(serializedBloomFilter);
-						intersectionBF.or(bf);
-					}
-				}
-				System.out.println(predicate + " " + intersectionBF.estimateNumberOfHashedValues());
-				intersectionBF.and(uris);
-				int estimate = intersectionBF.estimateNumberOfHashedValues();
+				// the uris of the column that are in the filters of the maps; unlike and-ing two filters,
+				// this works for filters of any size, including the ones written before the blocked filters
+				int estimate = intersectionBF.countMembers(hashedUriKeys);
 				JSONObject obj = new JSONObject();
 				obj.put("predicate", predicate);
 				obj.put("otherClass", otherClass);
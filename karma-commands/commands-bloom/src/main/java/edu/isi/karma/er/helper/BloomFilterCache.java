@@ -0,0 +1,122 @@
+package edu.isi.karma.er.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.kr2rml.writer.KR2RMLBloomFilter;
+
+/**
+ * Caches the combined bloom filters of sets of triples maps, per repository. A repository
+ * is dropped from the cache when bloom filters are published to it or deleted from it
+ * through {@link BloomFilterTripleStoreUtil}. Filters published by other processes are
+ * picked up when the cached filters expire.
+ */
+public class BloomFilterCache {
+
+	private static Logger logger = LoggerFactory.getLogger(BloomFilterCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 10 * 60 * 1000;
+
+	private static final BloomFilterCache instance = new BloomFilterCache(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS);
+
+	private final long timeToLiveMillis;
+	private final Map<String, Entry> entries;
+
+	private static class Entry {
+		final String repository;
+		final KR2RMLBloomFilter filter;
+		final long created;
+
+		Entry(String repository, KR2RMLBloomFilter filter) {
+			this.repository = repository;
+			this.filter = filter;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+	public BloomFilterCache(final int maxEntries, long timeToLiveMillis) {
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static BloomFilterCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the combined filter of the triples maps, or null if it is not cached
+	 */
+	public synchronized KR2RMLBloomFilter get(String tripleStoreURL, String context, Collection<String> maps) {
+		String key = key(tripleStoreURL, context, maps);
+		Entry entry = entries.get(key);
+		if (entry == null)
+			return null;
+		if (System.currentTimeMillis() - entry.created > timeToLiveMillis) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.filter;
+	}
+
+	/**
+	 * Caches the combined filter of the triples maps. The filter should not be changed afterwards.
+	 */
+	public synchronized void put(String tripleStoreURL, String context, Collection<String> maps, KR2RMLBloomFilter filter) {
+		String repository = repository(tripleStoreURL, context);
+		entries.put(key(tripleStoreURL, context, maps), new Entry(repository, filter));
+	}
+
+	/**
+	 * Drops the filters of the repository, in every context
+	 */
+	public synchronized void invalidate(String tripleStoreURL) {
+		String prefix = tripleStoreURL + "|";
+		int removed = 0;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().repository.startsWith(prefix)) {
+				iterator.remove();
+				removed++;
+			}
+		}
+		if (removed > 0)
+			logger.debug("Dropped " + removed + " cached bloom filters of " + tripleStoreURL);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static String repository(String tripleStoreURL, String context) {
+		return tripleStoreURL + "|" + (context == null ? "" : context.trim());
+	}
+
+	private static String key(String tripleStoreURL, String context, Collection<String> maps) {
+		List<String> sortedMaps = new ArrayList<String>(maps);
+		Collections.sort(sortedMaps);
+		StringBuilder key = new StringBuilder(repository(tripleStoreURL, context));
+		for (String map : sortedMaps)
+			key.append('|').append(map);
+		return key.toString();
+	}
+}
@@ -3,19 +3,22 @@ package edu.isi.karma.er.helper;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.hadoop.util.bloom.BloomFilter;
-import org.apache.hadoop.util.hash.Hash;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -30,6 +33,9 @@ public class BloomFilterTripleStoreUtil extends TripleStoreUtil {
 
 	private static Logger logger = LoggerFactory
 			.getLogger(BloomFilterTripleStoreUtil.class);
+	/** Number of triples maps whose bloom filters are fetched with one query */
+	private static final int MAPS_PER_QUERY = 100;
+
 	public boolean processBloomFilters(String modelContext,
 			String modelRepoUrl,
 			Map<String, String> bloomfilterMapping, 
@@ -61,22 +67,20 @@ public class BloomFilterTripleStoreUtil extends TripleStoreUtil {
 		for (Entry<String, String> entry : verification.entrySet()) {
 			String key = entry.getKey();
 			String value = entry.getValue();
-			KR2RMLBloomFilter bf2 = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
-			KR2RMLBloomFilter bf = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+			KR2RMLBloomFilter bf2 = new KR2RMLBloomFilter();
+			KR2RMLBloomFilter bf = new KR2RMLBloomFilter();
 			bf2.populateFromCompressedAndBase64EncodedString(value);
 			bf.populateFromCompressedAndBase64EncodedString(obj.getString(key));
-			bf2.and(bf);
-			bf2.xor(bf);
 			try {
-				Field f1 = BloomFilter.class.getDeclaredField("bits");
-				f1.setAccessible(true);
-				BitSet bits = (BitSet) f1.get(bf2);
-				if (bits.cardinality() != 0) {
-					verify = false;
-					break;
-				}
-			} catch (Exception e) {
-				
+				bf2.and(bf);
+				bf2.xor(bf);
+			} catch (IllegalArgumentException e) {
+				verify = false;
+				break;
+			}
+			if (bf2.cardinality() != 0) {
+				verify = false;
+				break;
 			}
 		}
 		return verify;
@@ -152,8 +156,93 @@ public class BloomFilterTripleStoreUtil extends TripleStoreUtil {
 		return bloomfilters;
 	}
 
+	/**
+	 * Combines the bloom filters of each set of triples maps. The combined filters are cached
+	 * per repository, so only the filters of the sets that are not cached are fetched, and
+	 * they are decoded and or-ed in parallel. The returned filters are shared and should not
+	 * be changed.
+	 * @return the combined filter of each set, in the order of the sets
+	 */
+	public List<KR2RMLBloomFilter> getCombinedBloomFilters(String tripleStoreURL, final String context,
+			List<? extends Collection<String>> mapSets) throws KarmaException
+	{
+		final String repository = getRepositoryForCache(tripleStoreURL);
+		final BloomFilterCache cache = BloomFilterCache.getInstance();
+		List<KR2RMLBloomFilter> combined = new ArrayList<KR2RMLBloomFilter>(mapSets.size());
+		List<Integer> missing = new ArrayList<Integer>();
+		Set<String> maps = new HashSet<String>();
+		for (Collection<String> mapSet : mapSets) {
+			KR2RMLBloomFilter bf = cache.get(repository, context, mapSet);
+			if (bf == null) {
+				missing.add(combined.size());
+				maps.addAll(mapSet);
+			}
+			combined.add(bf);
+		}
+		if (missing.isEmpty())
+			return combined;
+
+		final Map<String, String> bloomfilterMapping = new HashMap<String, String>();
+		Set<String> chunk = new HashSet<String>();
+		for (String map : maps) {
+			chunk.add(map);
+			if (chunk.size() >= MAPS_PER_QUERY) {
+				bloomfilterMapping.putAll(getBloomFiltersForMaps(tripleStoreURL, context, chunk));
+				chunk = new HashSet<String>();
+			}
+		}
+		if (!chunk.isEmpty())
+			bloomfilterMapping.putAll(getBloomFiltersForMaps(tripleStoreURL, context, chunk));
+
+		int threads = Math.min(missing.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<KR2RMLBloomFilter>> futures = new ArrayList<Future<KR2RMLBloomFilter>>(missing.size());
+			for (Integer index : missing) {
+				final Collection<String> mapSet = mapSets.get(index);
+				futures.add(executor.submit(new Callable<KR2RMLBloomFilter>() {
+					@Override
+					public KR2RMLBloomFilter call() throws IOException {
+						KR2RMLBloomFilter bf = new KR2RMLBloomFilter();
+						for (String map : mapSet) {
+							String serializedBloomFilter = bloomfilterMapping.get(map);
+							if (serializedBloomFilter != null)
+								bf.orFromCompressedAndBase64EncodedString(serializedBloomFilter);
+						}
+						cache.put(repository, context, mapSet, bf);
+						return bf;
+					}
+				}));
+			}
+			for (int i = 0; i < missing.size(); i++) {
+				try {
+					combined.set(missing.get(i), futures.get(i).get());
+				} catch (ExecutionException e) {
+					// an empty filter would report every uri as missing from the store
+					logger.error("Unable to combine bloom filters: " + e.getCause().getMessage());
+					throw new KarmaException("Unable to combine bloom filters of " + mapSets.get(missing.get(i)) +
+							": " + e.getCause().getMessage(), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KarmaException("Interrupted while combining bloom filters");
+		} finally {
+			executor.shutdownNow();
+		}
+		return combined;
+	}
+
+	private String getRepositoryForCache(String tripleStoreURL) {
+		String repository = normalizeTripleStoreURL(tripleStoreURL);
+		if (repository.endsWith("/statements"))
+			repository = repository.substring(0, repository.length() - "/statements".length());
+		return repository;
+	}
+
 	public void deleteBloomFiltersForMaps(String tripleStoreURL, String context, Collection<String> maps) throws KarmaException
 	{
+		BloomFilterCache.getInstance().invalidate(getRepositoryForCache(tripleStoreURL));
 		testTripleStoreConnection(tripleStoreURL);
 		tripleStoreURL = normalizeTripleStoreURL(tripleStoreURL) + "/statements";		
 
@@ -224,6 +313,8 @@ public class BloomFilterTripleStoreUtil extends TripleStoreUtil {
 			pw.println("\"" + entry.getValue().compressAndBase64Encode() + "\" . ");
 		}
 		pw.close();
-		return saveToStoreFromString(sw.toString(), modelurl, context, new Boolean(false), null);
+		boolean result = saveToStoreFromString(sw.toString(), modelurl, context, new Boolean(false), null);
+		BloomFilterCache.getInstance().invalidate(getRepositoryForCache(modelurl));
+		return result;
 	}
 }
@@ -18,15 +18,41 @@ public class BloomFilterKR2RMLRDFWriter extends KR2RMLRDFWriter {
 	protected boolean isRDF;
 	private final static String formattedTypeURI = "<" + Uris.RDF_TYPE_URI +">";
 	private String baseURI;
+	private long expectedInsertions = KR2RMLBloomFilter.DEFAULT_EXPECTED_INSERTIONS;
+
+	public BloomFilterKR2RMLRDFWriter()
+	{
+	}
+
 	public BloomFilterKR2RMLRDFWriter(PrintWriter output, boolean isRDF, String baseURI)
 	{
 		initialize(output, isRDF, baseURI);
 	}
 
+	/**
+	 * @param expectedInsertions the number of rows the mapping is applied to, used to size the filters
+	 */
+	public BloomFilterKR2RMLRDFWriter(PrintWriter output, boolean isRDF, String baseURI, long expectedInsertions)
+	{
+		initialize(output, isRDF, baseURI);
+		this.expectedInsertions = expectedInsertions;
+	}
+
+	@Override
+	public void setWriter(PrintWriter outWriter)
+	{
+		super.setWriter(outWriter);
+		this.output = outWriter;
+	}
+
 	@Override
 	public void initialize(Properties p )
 	{
-		
+		this.isRDF = Boolean.parseBoolean(p.getProperty("is.rdf", "false"));
+		this.baseURI = p.getProperty("base.uri");
+		String expected = p.getProperty("expected.insertions");
+		if (expected != null)
+			this.expectedInsertions = Long.parseLong(expected);
 	}
 	private void initialize(PrintWriter output, boolean isRDF, String baseURI) {
 		this.output = output;
@@ -35,7 +61,7 @@ public class BloomFilterKR2RMLRDFWriter extends KR2RMLRDFWriter {
 	}
 	
 	public void setR2RMLMappingIdentifier(R2RMLMappingIdentifier mappingIdentifer) {
-		bloomFilterManager = new KR2RMLBloomFilterManager(mappingIdentifer);
+		bloomFilterManager = new KR2RMLBloomFilterManager(mappingIdentifer, expectedInsertions);
 	}
 
 	@Override
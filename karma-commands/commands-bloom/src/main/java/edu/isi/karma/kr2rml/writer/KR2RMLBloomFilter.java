@@ -2,62 +2,602 @@ package edu.isi.karma.kr2rml.writer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.lang.reflect.Field;
-import java.util.BitSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.hadoop.util.bloom.BloomFilter;
-//import org.apache.hadoop.util.bloom.BloomFilter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.hadoop.util.bloom.HashFunction;
+import org.apache.hadoop.util.bloom.Key;
 
-public class KR2RMLBloomFilter extends BloomFilter {
+/**
+ * A blocked Bloom filter: every key sets its bits in a single 512 bit block (one cache line)
+ * and all the bit positions are derived from one 128 bit murmur3 hash of the key.
+ * The number of blocks is a power of two, so filters of different sizes can be combined
+ * by folding the bigger one. Bits are set with atomic word updates, so concurrent adds and
+ * or-s of filters with the same geometry do not block each other; only a change of the
+ * geometry takes the write lock.
+ * <p>
+ * The serialized form uses the header of hadoop's BloomFilter (version, number of hashes,
+ * hash type, vector size) followed by the bit vector, with version -2 for blocked filters.
+ * Filters written by the previous hadoop based implementation (version -1) are still read,
+ * and keep hadoop's hashing so that they can be tested and combined with each other.
+ * <p>
+ * The bits of filters with different hashing cannot be merged, so or-ing such a filter
+ * keeps a copy of its vector as another part of this filter: a key is a member if it is in
+ * any part, and new keys are added to the first one. A filter with several parts is written
+ * with version -3, followed by the number of parts and each part with its own header.
+ */
+public class KR2RMLBloomFilter {
 
-	private static final Logger LOG = LoggerFactory.getLogger(KR2RMLBloomFilter.class);
+	/** Geometry of the filters written by the hadoop based implementation */
 	public static final int defaultVectorSize = 1000000;
 	public static final int defaultnbHash = 8;
-	static Field bitsField;
-	static
-	{
-		try {
-			bitsField = BloomFilter.class.getDeclaredField("bits");
-			bitsField.setAccessible(true);
-		} catch (SecurityException | NoSuchFieldException e) {
-			LOG.error("Unable to set up KR2RMLBloomFilter: " + e.getMessage());
+
+	public static final long DEFAULT_EXPECTED_INSERTIONS = 100000;
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private static final int LEGACY_VERSION = -1;
+	private static final int BLOCKED_VERSION = -2;
+	private static final int UNION_VERSION = -3;
+	private static final byte MURMUR3_128_HASH = 2;
+
+	private static final int BLOCK_BITS = 512;
+	private static final int WORDS_PER_BLOCK = BLOCK_BITS / 64;
+	private static final int MAX_BLOCKS = 1 << 24;
+	private static final int MAX_HASHES = 16;
+	// spreads the step between the bit positions of a key to the high bits that select them
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * The geometry and the bits of a filter. It is replaced as a whole when the filter
+	 * adopts the geometry of another filter or is folded.
+	 */
+	private static final class Vector {
+		final boolean blocked;
+		final int vectorSize;
+		final int nbHash;
+		final int hashType;
+		final AtomicLongArray words;
+		final HashFunction legacyHash;
+
+		Vector(boolean blocked, int vectorSize, int nbHash, int hashType) {
+			this(blocked, vectorSize, nbHash, hashType, true);
+		}
+
+		private Vector(boolean blocked, int vectorSize, int nbHash, int hashType, boolean allocate) {
+			this.blocked = blocked;
+			this.vectorSize = vectorSize;
+			this.nbHash = nbHash;
+			this.hashType = hashType;
+			this.words = allocate ? new AtomicLongArray((vectorSize + 63) / 64) : null;
+			this.legacyHash = blocked || !allocate ? null : new HashFunction(vectorSize, nbHash, hashType);
+		}
+
+		/**
+		 * @return an empty vector with the geometry of this one
+		 */
+		Vector allocate() {
+			return new Vector(blocked, vectorSize, nbHash, hashType);
+		}
+
+		int numberOfBlocks() {
+			return vectorSize / BLOCK_BITS;
+		}
+
+		boolean sameGeometry(Vector other) {
+			return blocked == other.blocked && vectorSize == other.vectorSize &&
+					nbHash == other.nbHash && hashType == other.hashType;
+		}
+
+		/**
+		 * @return true if the bits of the other vector can be combined with the bits of
+		 * this one, folding the bigger one if needed
+		 */
+		boolean compatible(Vector other) {
+			return sameGeometry(other) || (blocked && other.blocked && nbHash == other.nbHash);
 		}
 	}
+
+	private static final Vector[] NO_PARTS = new Vector[0];
+
+	private volatile Vector vector;
+	/** The vectors or-ed into this filter that cannot be combined with the first one */
+	private volatile Vector[] parts = NO_PARTS;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates an empty filter. It takes the geometry of the first filter that is read
+	 * or or-ed into it, or the default geometry when a key is added.
+	 */
+	public KR2RMLBloomFilter() {
+	}
+
+	/**
+	 * Creates a blocked filter sized for the expected number of keys and false positive rate.
+	 */
+	public KR2RMLBloomFilter(long expectedInsertions, double falsePositiveRate) {
+		this.vector = createBlockedVector(expectedInsertions, falsePositiveRate);
+	}
+
+	/**
+	 * Creates a filter with the layout and hashing of hadoop's BloomFilter.
+	 * @deprecated only needed to work with filters written by the hadoop based implementation;
+	 * use {@link #KR2RMLBloomFilter(long, double)}
+	 */
+	@Deprecated
 	public KR2RMLBloomFilter(int vectorSize, int nbHash, int hashType) {
-		super(vectorSize,nbHash, hashType);
+		this.vector = new Vector(false, vectorSize, nbHash, hashType);
 	}
-	public KR2RMLBloomFilter() {
-		super();
+
+	private static Vector createBlockedVector(long expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1)
+			expectedInsertions = 1;
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("false positive rate should be between 0 and 1: " + falsePositiveRate);
+		double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long blocks = (long) Math.ceil(bits / BLOCK_BITS);
+		int numberOfBlocks = 1;
+		while (numberOfBlocks < blocks && numberOfBlocks < MAX_BLOCKS)
+			numberOfBlocks <<= 1;
+		int nbHash = (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2));
+		nbHash = Math.max(1, Math.min(MAX_HASHES, nbHash));
+		return new Vector(true, numberOfBlocks * BLOCK_BITS, nbHash, MURMUR3_128_HASH);
 	}
-	public int estimateNumberOfHashedValues()
-	{
-		int num = 0;
+
+	private Vector getOrCreateVector() {
+		Vector v = vector;
+		if (v == null) {
+			lock.writeLock().lock();
+			try {
+				v = vector;
+				if (v == null) {
+					v = createBlockedVector(DEFAULT_EXPECTED_INSERTIONS, DEFAULT_FALSE_POSITIVE_RATE);
+					vector = v;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		return v;
+	}
+
+	public void add(Key key) {
+		add(key.getBytes());
+	}
+
+	public void add(byte[] key) {
+		Vector v = getOrCreateVector();
+		if (!v.blocked) {
+			for (int position : v.legacyHash.hash(new Key(key)))
+				setBits(v.words, position >>> 6, 1L << (position & 63));
+			return;
+		}
+		long[] hash = murmur3Hash128(key);
+		long h1 = hash[0];
+		long h2 = hash[1];
+		int base = (int) (h1 & (v.numberOfBlocks() - 1)) * WORDS_PER_BLOCK;
+		long delta = ((h1 >>> 32) | 1) * GOLDEN_RATIO;
+		long[] masks = new long[WORDS_PER_BLOCK];
+		for (int i = 0; i < v.nbHash; i++, h2 += delta) {
+			int bit = (int) (h2 >>> 55);
+			masks[bit >>> 6] |= 1L << (bit & 63);
+		}
+		for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+			if (masks[i] != 0)
+				setBits(v.words, base + i, masks[i]);
+		}
+	}
+
+	public boolean membershipTest(Key key) {
+		return membershipTest(key.getBytes());
+	}
+
+	public boolean membershipTest(byte[] key) {
+		Vector v = vector;
+		if (v == null)
+			return false;
+		if (contains(v, key))
+			return true;
+		for (Vector part : parts) {
+			if (contains(part, key))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean contains(Vector v, byte[] key) {
+		if (!v.blocked) {
+			for (int position : v.legacyHash.hash(new Key(key))) {
+				if ((v.words.get(position >>> 6) & (1L << (position & 63))) == 0)
+					return false;
+			}
+			return true;
+		}
+		long[] hash = murmur3Hash128(key);
+		long h1 = hash[0];
+		long h2 = hash[1];
+		int base = (int) (h1 & (v.numberOfBlocks() - 1)) * WORDS_PER_BLOCK;
+		long delta = ((h1 >>> 32) | 1) * GOLDEN_RATIO;
+		for (int i = 0; i < v.nbHash; i++, h2 += delta) {
+			int bit = (int) (h2 >>> 55);
+			if ((v.words.get(base + (bit >>> 6)) & (1L << (bit & 63))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The hashes of a batch of keys. Probing several filters with the same batch hashes
+	 * every key only once.
+	 */
+	public static final class HashedKeys {
+		private final byte[][] keys;
+		private final long[] hashes;
+
+		public HashedKeys(Collection<byte[]> keys) {
+			this.keys = keys.toArray(new byte[keys.size()][]);
+			this.hashes = new long[this.keys.length * 2];
+			for (int i = 0; i < this.keys.length; i++) {
+				long[] hash = murmur3Hash128(this.keys[i]);
+				hashes[2 * i] = hash[0];
+				hashes[2 * i + 1] = hash[1];
+			}
+		}
+
+		public int size() {
+			return keys.length;
+		}
+	}
+
+	/**
+	 * @return the number of keys of the batch that may be in the filter
+	 */
+	public int countMembers(HashedKeys keys) {
+		Vector v = vector;
+		if (v == null)
+			return 0;
+		int count = 0;
+		if (!v.blocked || parts.length > 0) {
+			for (byte[] key : keys.keys) {
+				if (membershipTest(key))
+					count++;
+			}
+			return count;
+		}
+		int blockMask = v.numberOfBlocks() - 1;
+		long[] hashes = keys.hashes;
+		for (int k = 0; k < hashes.length; k += 2) {
+			long h1 = hashes[k];
+			long h2 = hashes[k + 1];
+			int base = (int) (h1 & blockMask) * WORDS_PER_BLOCK;
+			long delta = ((h1 >>> 32) | 1) * GOLDEN_RATIO;
+			boolean member = true;
+			for (int i = 0; i < v.nbHash; i++, h2 += delta) {
+				int bit = (int) (h2 >>> 55);
+				if ((v.words.get(base + (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+					member = false;
+					break;
+				}
+			}
+			if (member)
+				count++;
+		}
+		return count;
+	}
+
+	private static void setBits(AtomicLongArray words, int index, long mask) {
+		long current;
+		do {
+			current = words.get(index);
+			if ((current & mask) == mask)
+				return;
+		} while (!words.compareAndSet(index, current, current | mask));
+	}
+
+	private enum Operation { OR, AND, XOR }
+
+	private static void apply(AtomicLongArray words, int index, long value, Operation operation) {
+		long current, updated;
+		do {
+			current = words.get(index);
+			switch (operation) {
+			case OR: updated = current | value; break;
+			case AND: updated = current & value; break;
+			default: updated = current ^ value; break;
+			}
+		} while (current != updated && !words.compareAndSet(index, current, updated));
+	}
+
+	public void or(KR2RMLBloomFilter filter) {
+		combine(filter, Operation.OR);
+	}
+
+	public void and(KR2RMLBloomFilter filter) {
+		combine(filter, Operation.AND);
+	}
+
+	public void xor(KR2RMLBloomFilter filter) {
+		combine(filter, Operation.XOR);
+	}
+
+	/**
+	 * Combines the bits of the filter into this filter. An empty filter takes the geometry
+	 * of the other filter. Blocked filters of different sizes are combined at the smaller size.
+	 * Or-ing a filter that cannot be combined with this one adds its vector as another part.
+	 * Combining is not meant to run at the same time as adds to this filter.
+	 * @throws IllegalArgumentException if the filters cannot be and-ed or xor-ed
+	 */
+	private void combine(KR2RMLBloomFilter filter, Operation operation) {
+		Vector other = filter.vector;
+		Vector[] otherParts = filter.parts;
+		if (other == null) {
+			if (operation == Operation.AND && vector != null) {
+				lock.writeLock().lock();
+				try {
+					vector = vector.allocate();
+					parts = NO_PARTS;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+			return;
+		}
+		lock.writeLock().lock();
 		try {
-			BitSet bits = (BitSet)bitsField.get(this);
+			Vector v = vector;
+			if (v == null) {
+				if (operation == Operation.AND)
+					return;
+				v = other.allocate();
+				vector = v;
+			}
+			if (operation == Operation.OR) {
+				or(other);
+				for (Vector part : otherParts)
+					or(part);
+				return;
+			}
+			if (parts.length > 0 || otherParts.length > 0 || !v.compatible(other))
+				throw new IllegalArgumentException("filters cannot be combined");
+			vector = combine(v, other, operation);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Or-s the vector into the first part it can be combined with, or adds a copy of it
+	 * as a new part. Called with the write lock held.
+	 */
+	private void or(Vector other) {
+		if (vector.compatible(other)) {
+			vector = combine(vector, other, Operation.OR);
+			return;
+		}
+		Vector[] current = parts;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].compatible(other)) {
+				Vector[] updated = current.clone();
+				updated[i] = combine(current[i], other, Operation.OR);
+				parts = updated;
+				return;
+			}
+		}
+		Vector copy = other.allocate();
+		combine(copy, other, Operation.OR);
+		Vector[] updated = new Vector[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = copy;
+		parts = updated;
+	}
+
+	/**
+	 * Combines the bits of a compatible vector into the vector, folding the bigger one.
+	 * @return the combined vector, which is a new one if the vector had to be folded
+	 */
+	private static Vector combine(Vector v, Vector other, Operation operation) {
+		if (v.vectorSize > other.vectorSize)
+			v = fold(v, other.numberOfBlocks());
+		else if (v.vectorSize < other.vectorSize)
+			other = fold(other, v.numberOfBlocks());
+		for (int i = 0; i < v.words.length(); i++)
+			apply(v.words, i, other.words.get(i), operation);
+		return v;
+	}
+
+	/**
+	 * Folds a blocked vector into a smaller number of blocks. A key in block b of the
+	 * original vector is in block b mod numberOfBlocks of the folded vector.
+	 */
+	private static Vector fold(Vector v, int numberOfBlocks) {
+		Vector folded = new Vector(true, numberOfBlocks * BLOCK_BITS, v.nbHash, v.hashType);
+		int foldedWords = folded.words.length();
+		for (int i = 0; i < v.words.length(); i++) {
+			long word = v.words.get(i);
+			if (word != 0)
+				apply(folded.words, i % foldedWords, word, Operation.OR);
+		}
+		return folded;
+	}
+
+	public int getVectorSize() {
+		Vector v = vector;
+		return v == null ? 0 : v.vectorSize;
+	}
+
+	/**
+	 * @return the number of bits that are set in all the parts
+	 */
+	public int cardinality() {
+		Vector v = vector;
+		if (v == null)
+			return 0;
+		int count = cardinality(v);
+		for (Vector part : parts)
+			count += cardinality(part);
+		return count;
+	}
+
+	private static int cardinality(Vector v) {
+		int count = 0;
+		for (int i = 0; i < v.words.length(); i++)
+			count += Long.bitCount(v.words.get(i));
+		return count;
+	}
+
+	/**
+	 * @return the estimated number of keys, summed over the parts
+	 */
+	public int estimateNumberOfHashedValues() {
+		Vector v = vector;
+		if (v == null)
+			return 0;
+		double estimate = estimateNumberOfHashedValues(v);
+		for (Vector part : parts)
+			estimate += estimateNumberOfHashedValues(part);
+		return (int) Math.round(estimate);
+	}
 
-			int setBits = bits.cardinality();
-			double N = this.getVectorSize();
-			int k = this.nbHash;
-			double tmp = -(N * Math.log(1 - (setBits / N))) / (double)k;
-			num = (int) Math.round(tmp);
-		} catch (IllegalArgumentException | IllegalAccessException e) {
-			LOG.error("Unable to estimate number of hashed values: " + e.getMessage());
+	private static double estimateNumberOfHashedValues(Vector v) {
+		double estimate = 0;
+		if (!v.blocked) {
+			double setBits = cardinality(v);
+			double n = v.vectorSize;
+			estimate = -(n * Math.log(1 - (setBits / n))) / v.nbHash;
+		} else {
+			// every key is in one block, so the keys of each block are estimated separately
+			for (int block = 0; block < v.numberOfBlocks(); block++) {
+				int setBits = 0;
+				for (int i = 0; i < WORDS_PER_BLOCK; i++)
+					setBits += Long.bitCount(v.words.get(block * WORDS_PER_BLOCK + i));
+				if (setBits == 0)
+					continue;
+				double fill = Math.min(setBits, BLOCK_BITS - 0.5) / BLOCK_BITS;
+				estimate += -(BLOCK_BITS * Math.log(1 - fill)) / v.nbHash;
+			}
 		}
-		return num;
-		
+		return estimate;
 	}
-	
+
+	public void write(DataOutput out) throws IOException {
+		Vector v = getOrCreateVector();
+		Vector[] others = parts;
+		if (others.length == 0) {
+			write(out, v);
+			return;
+		}
+		out.writeInt(UNION_VERSION);
+		out.writeInt(others.length + 1);
+		write(out, v);
+		for (Vector part : others)
+			write(out, part);
+	}
+
+	private static void write(DataOutput out, Vector v) throws IOException {
+		out.writeInt(v.blocked ? BLOCKED_VERSION : LEGACY_VERSION);
+		out.writeInt(v.nbHash);
+		out.writeByte(v.hashType);
+		out.writeInt(v.vectorSize);
+
+		// bit i is bit i % 8 of byte i / 8, as in hadoop's BloomFilter
+		int numberOfBytes = (v.vectorSize + 7) / 8;
+		byte[] buffer = new byte[8192];
+		int length = 0;
+		for (int b = 0; b < numberOfBytes; b++) {
+			buffer[length++] = (byte) (v.words.get(b >>> 3) >>> ((b & 7) * 8));
+			if (length == buffer.length) {
+				out.write(buffer, 0, length);
+				length = 0;
+			}
+		}
+		out.write(buffer, 0, length);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		readFields(in, in.readInt());
+	}
+
+	private void readFields(DataInput in, int version) throws IOException {
+		Vector[] read = readVectors(in, version);
+		lock.writeLock().lock();
+		try {
+			vector = read[0];
+			parts = read.length == 1 ? NO_PARTS : Arrays.copyOfRange(read, 1, read.length);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the parts of the serialized filter whose version was just read
+	 */
+	private static Vector[] readVectors(DataInput in, int version) throws IOException {
+		if (version != UNION_VERSION) {
+			Vector v = readHeader(in, version).allocate();
+			readBits(in, v, Operation.OR);
+			return new Vector[] { v };
+		}
+		int count = in.readInt();
+		if (count < 1)
+			throw new IOException("Invalid number of parts: " + count);
+		Vector[] read = new Vector[count];
+		for (int i = 0; i < count; i++)
+			read[i] = readVectors(in, in.readInt())[0];
+		return read;
+	}
+
+	/**
+	 * @return the geometry of the serialized filter whose version was just read, without its bits
+	 */
+	private static Vector readHeader(DataInput in, int version) throws IOException {
+		int nbHash;
+		int hashType;
+		if (version > 0) {
+			// unversioned format of hadoop's BloomFilter
+			nbHash = version;
+			hashType = org.apache.hadoop.util.hash.Hash.JENKINS_HASH;
+		} else if (version == LEGACY_VERSION || version == BLOCKED_VERSION) {
+			nbHash = in.readInt();
+			hashType = in.readByte();
+		} else {
+			throw new IOException("Unsupported version: " + version);
+		}
+		int vectorSize = in.readInt();
+		return new Vector(version == BLOCKED_VERSION, vectorSize, nbHash, hashType, false);
+	}
+
+	private static void readBits(DataInput in, Vector v, Operation operation) throws IOException {
+		int numberOfBytes = (v.vectorSize + 7) / 8;
+		byte[] buffer = new byte[8192];
+		long word = 0;
+		int b = 0;
+		while (b < numberOfBytes) {
+			int length = Math.min(buffer.length, numberOfBytes - b);
+			in.readFully(buffer, 0, length);
+			for (int i = 0; i < length; i++, b++) {
+				word |= (buffer[i] & 0xFFL) << ((b & 7) * 8);
+				if ((b & 7) == 7 || b == numberOfBytes - 1) {
+					if (word != 0)
+						apply(v.words, b >>> 3, word, operation);
+					word = 0;
+				}
+			}
+		}
+	}
+
 	public String compressAndBase64Encode() throws IOException
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(getVectorSize() + 1000);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(getVectorSize() / 8 + 1000);
 		String base64EncodedCompressedSerializedBloomFilter = null;
 		ObjectOutputStream dout = new ObjectOutputStream(new DeflaterOutputStream(baos));
 		write(dout);
@@ -66,10 +606,124 @@ public class KR2RMLBloomFilter extends BloomFilter {
 		base64EncodedCompressedSerializedBloomFilter = Base64.encodeBase64String(baos.toByteArray());
 		return base64EncodedCompressedSerializedBloomFilter;
 	}
-	
+
 	public void populateFromCompressedAndBase64EncodedString(String base64EncodedBloomFilter) throws IOException
 	{
 		byte[] serializedBloomFilter = Base64.decodeBase64(base64EncodedBloomFilter);
 		readFields(new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(serializedBloomFilter))));
 	}
+
+	/**
+	 * Or-s a serialized filter into this filter. When the geometries match, the bits are
+	 * or-ed word by word while they are decoded, without creating another filter, and
+	 * several threads can or filters into this filter at the same time.
+	 */
+	public void orFromCompressedAndBase64EncodedString(String base64EncodedBloomFilter) throws IOException
+	{
+		byte[] serializedBloomFilter = Base64.decodeBase64(base64EncodedBloomFilter);
+		ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(serializedBloomFilter)));
+		int version = in.readInt();
+		if (version == UNION_VERSION) {
+			KR2RMLBloomFilter filter = new KR2RMLBloomFilter();
+			filter.readFields(in, version);
+			or(filter);
+			return;
+		}
+		Vector read = readHeader(in, version);
+		if (vector == null) {
+			lock.writeLock().lock();
+			try {
+				if (vector == null)
+					vector = read.allocate();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		lock.readLock().lock();
+		try {
+			Vector v = vector;
+			if (v.sameGeometry(read)) {
+				readBits(in, v, Operation.OR);
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		read = read.allocate();
+		readBits(in, read, Operation.OR);
+		KR2RMLBloomFilter filter = new KR2RMLBloomFilter();
+		filter.vector = read;
+		or(filter);
+	}
+
+	/**
+	 * The 128 bit x64 murmur3 hash of the key with seed 0, as two longs
+	 */
+	private static long[] murmur3Hash128(byte[] key) {
+		final long c1 = 0x87c37b91114253d5L;
+		final long c2 = 0x4cf5ad432745937fL;
+		long h1 = 0;
+		long h2 = 0;
+		int length = key.length;
+		int blocks = length / 16;
+
+		for (int i = 0; i < blocks; i++) {
+			long k1 = getLong(key, i * 16);
+			long k2 = getLong(key, i * 16 + 8);
+
+			k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+			h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+			h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		long k1 = 0;
+		long k2 = 0;
+		int tail = blocks * 16;
+		switch (length & 15) {
+		case 15: k2 ^= (key[tail + 14] & 0xFFL) << 48;
+		case 14: k2 ^= (key[tail + 13] & 0xFFL) << 40;
+		case 13: k2 ^= (key[tail + 12] & 0xFFL) << 32;
+		case 12: k2 ^= (key[tail + 11] & 0xFFL) << 24;
+		case 11: k2 ^= (key[tail + 10] & 0xFFL) << 16;
+		case 10: k2 ^= (key[tail + 9] & 0xFFL) << 8;
+		case 9: k2 ^= (key[tail + 8] & 0xFFL);
+			k2 *= c2; k2 = Long.rotateLeft(k2, 33); k2 *= c1; h2 ^= k2;
+		case 8: k1 ^= (key[tail + 7] & 0xFFL) << 56;
+		case 7: k1 ^= (key[tail + 6] & 0xFFL) << 48;
+		case 6: k1 ^= (key[tail + 5] & 0xFFL) << 40;
+		case 5: k1 ^= (key[tail + 4] & 0xFFL) << 32;
+		case 4: k1 ^= (key[tail + 3] & 0xFFL) << 24;
+		case 3: k1 ^= (key[tail + 2] & 0xFFL) << 16;
+		case 2: k1 ^= (key[tail + 1] & 0xFFL) << 8;
+		case 1: k1 ^= (key[tail] & 0xFFL);
+			k1 *= c1; k1 = Long.rotateLeft(k1, 31); k1 *= c2; h1 ^= k1;
+		default:
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	private static long getLong(byte[] b, int i) {
+		return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24 |
+				(b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb53fe1a85a34L;
+		k ^= k >>> 33;
+		return k;
+	}
 }
@@ -5,8 +5,6 @@ import java.nio.charset.Charset;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.hadoop.util.bloom.Key;
-import org.apache.hadoop.util.hash.Hash;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,10 +18,21 @@ public class KR2RMLBloomFilterManager {
 	private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 	protected ConcurrentHashMap<String, KR2RMLBloomFilter> idToBloomFilter;
 	protected R2RMLMappingIdentifier mappingIdentifier;
+	protected long expectedInsertions;
 	public KR2RMLBloomFilterManager(R2RMLMappingIdentifier mappingIdentifier)
+	{
+		this(mappingIdentifier, KR2RMLBloomFilter.DEFAULT_EXPECTED_INSERTIONS);
+	}
+	/**
+	 * @param expectedInsertions the number of uris expected in each filter, which is at most
+	 * the number of rows the mapping is applied to, since a triples map or a predicate object
+	 * map adds at most one subject per row
+	 */
+	public KR2RMLBloomFilterManager(R2RMLMappingIdentifier mappingIdentifier, long expectedInsertions)
 	{
 		idToBloomFilter = new ConcurrentHashMap<String, KR2RMLBloomFilter>();
 		this.mappingIdentifier = mappingIdentifier;
+		this.expectedInsertions = expectedInsertions;
 	}
 	public KR2RMLBloomFilterManager(JSONObject serializedManager) throws IOException
 	{
@@ -48,12 +57,11 @@ public class KR2RMLBloomFilterManager {
 		KR2RMLBloomFilter bf = null;
 		if(!idToBloomFilter.containsKey(id))
 		{
-			idToBloomFilter.putIfAbsent(id, new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH));
+			idToBloomFilter.putIfAbsent(id, new KR2RMLBloomFilter(expectedInsertions, KR2RMLBloomFilter.DEFAULT_FALSE_POSITIVE_RATE));
 		}
 		bf = idToBloomFilter.get(id);
 		
-		Key k = new Key(uri.getBytes(UTF8_CHARSET));
-		bf.add(k);
+		bf.add(uri.getBytes(UTF8_CHARSET));
 		return;
 	}
 	
@@ -5,7 +5,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,13 +84,7 @@ public class FetchTransformingDataCommand extends WorksheetSelectionCommand {
 		logger.info(Msg);
 		// Get the HNode
 		HashMap<String, HashMap<String, String>> rows = new HashMap<String, HashMap<String, String>>();
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = wk.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = wk.getHeaders().getLeafPath(hNodeId);
 		// random nodes
 		Collection<Node> nodes = new ArrayList<Node>();
 		wk.getDataTable().collectNodes(selectedPath, nodes, selection);
@@ -25,7 +25,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Vector;
 
 import org.json.JSONArray;
@@ -149,13 +148,7 @@ public class GenerateCleaningRulesCommand extends WorksheetSelectionCommand {
 		// Get the HNode
 		HashMap<String, String> rows = new HashMap<String, String>();
 		HashMap<String, Integer> amb = new HashMap<String, Integer>();
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = wk.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = wk.getHeaders().getLeafPath(hNodeId);
 		
 		Collection<Node> nodes = new ArrayList<Node>();
 		wk.getDataTable().collectNodes(selectedPath, nodes, selection);
@@ -90,13 +90,7 @@ public class InvokeCleaningServiceCommand extends WorksheetSelectionCommand {
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
 		SuperSelection selection = getSuperSelection(worksheet);
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = worksheet.getHeaders().getLeafPath(hNodeId);
 		Collection<Node> nodes = new ArrayList<Node>();
 		workspace.getFactory().getWorksheet(worksheetId).getDataTable()
 				.collectNodes(selectedPath, nodes, selection);
@@ -44,6 +44,11 @@ public abstract class WorksheetCommand extends Command {
 	public String getWorksheetId() {
 		return worksheetId;
 	}
+
+	@Override
+	public String getLockedWorksheetId() {
+		return worksheetId;
+	}
 	
 
 	public UpdateContainer computeAlignmentAndSemanticTypesAndCreateUpdates(Workspace workspace)
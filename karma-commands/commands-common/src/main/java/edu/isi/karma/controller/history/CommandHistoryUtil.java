@@ -24,6 +24,7 @@ import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNode.HNodeType;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.util.CommandInputJSONUtil;
+import edu.isi.karma.util.SubclassIndex;
 import edu.isi.karma.webserver.ExecutionController;
 import edu.isi.karma.webserver.WorkspaceRegistry;
 
@@ -35,6 +36,13 @@ public class CommandHistoryUtil {
 	HashMap<String, CommandFactory> commandFactoryMap;
 	static Logger logger = Logger.getLogger(CommandHistoryUtil.class);
 	static {
+		if (SubclassIndex.isClasspathScanRequested())
+			scanConsolidators();
+		else
+			consolidators.addAll(SubclassIndex.load(CommandConsolidator.class));
+	}
+
+	private static void scanConsolidators() {
 		Reflections reflections = new Reflections("edu.isi.karma");
 		Set<Class<? extends CommandConsolidator>> subTypes =
 				reflections.getSubTypesOf(CommandConsolidator.class);
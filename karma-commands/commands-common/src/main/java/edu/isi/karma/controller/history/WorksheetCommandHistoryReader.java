@@ -27,6 +27,7 @@ public class WorksheetCommandHistoryReader {
 	
 		JSONArray filteredHistoryJson = new JSONArray();
 		try {
+			HistoryAutoSaver.getInstance().flush(workspace.getId(), worksheetId);
 			String filename = CommandHistory.getHistorySaver(workspace.getId()).getHistoryFilepath(worksheetId);
 			JSONArray historyJson = CommandHistory.getHistorySaver(workspace.getId()).loadHistory(filename);
 			filteredHistoryJson = HistoryJsonUtil.filterCommandsByTag(tag, historyJson);
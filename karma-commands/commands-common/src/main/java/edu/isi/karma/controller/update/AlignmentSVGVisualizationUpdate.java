@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.config.UIConfiguration;
 import edu.isi.karma.modeling.alignment.Alignment;
+import edu.isi.karma.modeling.alignment.AlignmentChangeLog;
 import edu.isi.karma.modeling.alignment.AlignmentManager;
 import edu.isi.karma.modeling.alignment.LinkIdFactory;
 import edu.isi.karma.rep.ColumnMetadata;
@@ -56,8 +57,15 @@ import edu.isi.karma.view.VHNode;
 import edu.isi.karma.view.VWorksheet;
 import edu.isi.karma.view.VWorkspace;
 
+/**
+ * Sends the Steiner tree of the alignment of a worksheet to the client. With
+ * the force layout, when the view already has an earlier version of the tree
+ * and the same columns, only the nodes and links added and removed since that
+ * version are sent, see {@link AlignmentChangeLog}.
+ */
 public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 	private final String worksheetId;
+	private final boolean fullRender;
 	private DirectedWeightedMultigraph<Node, LabeledLink> alignmentGraph;
 	private Alignment alignment;
 	private static Logger logger = LoggerFactory
@@ -67,7 +75,8 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 		worksheetId, alignmentId, label, id, hNodeId, nodeType, source,
 		target, linkType, sourceNodeId, targetNodeId, height, hNodesCovered,
 		nodes, links, maxTreeHeight, linkStatus, linkUri, nodeDomain, isForcedByUser, 
-		isUri, nodeId, column, anchors, edgeLinks, alignObject, tableLayout, columnName, hasNestedTable, columns
+		isUri, nodeId, column, anchors, edgeLinks, alignObject, tableLayout, columnName, hasNestedTable, columns,
+		alignmentLogId, alignmentVersion, baseVersion, alignDiff, removedNodes, removedLinks
 	}
 
 	private enum JsonValues {
@@ -75,9 +84,18 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 	}
 
 	public AlignmentSVGVisualizationUpdate(String worksheetId) {
+		this(worksheetId, false);
+	}
+
+	/**
+	 * @param fullRender
+	 *            sends the whole tree, even if the view has an earlier
+	 *            version of it.
+	 */
+	public AlignmentSVGVisualizationUpdate(String worksheetId, boolean fullRender) {
 		super();
 		this.worksheetId = worksheetId;
-		
+		this.fullRender = fullRender;
 	}
 
 	private JSONObject getForceLayoutNodeJsonObject(int id, String label,
@@ -113,6 +131,10 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
+
 	@Override
 	public void generateJson(String prefix, PrintWriter pw,
 			VWorkspace vWorkspace) {
@@ -135,12 +157,18 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 		String alignmentId = AlignmentManager.Instance().constructAlignmentId(
 				vWorkspace.getWorkspace().getId(), vWorksheet.getWorksheetId());
 
+		AlignmentChangeLog changeLog = alignment.getChangeLog();
+		long version = changeLog.getVersion();
+		AlignmentChangeLog.Changes changes = getChangesSinceRendered(vWorksheet, hNodeIdList, changeLog);
+
 		JSONObject topObj = new JSONObject();
 		try {
 			topObj.put(GenericJsonKeys.updateType.name(),
 					AlignmentSVGVisualizationUpdate.class.getSimpleName());
 			topObj.put(JsonKeys.alignmentId.name(), alignmentId);
 			topObj.put(JsonKeys.worksheetId.name(), worksheetId);
+			topObj.put(JsonKeys.alignmentLogId.name(), changeLog.getId());
+			topObj.put(JsonKeys.alignmentVersion.name(), version);
 
 			/*** Add the nodes and the links from the Steiner tree ***/
 			JSONArray nodesArr = new JSONArray();
@@ -182,6 +210,36 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 				verticesIndex.put(node, columnNum);
 			}
 
+			if (changes != null) {
+				/*** Only the nodes and links added since the rendered version, the client numbers them ***/
+				if (alignmentGraph != null) {
+					for (Node node : alignmentGraph.vertexSet()) {
+						if (!(node instanceof ColumnNode)
+								&& changes.getAddedNodeIds().contains(node.getId()))
+							nodesArr.put(getForceLayoutNodeJsonObject(-1, node));
+					}
+					for (LabeledLink link : alignmentGraph.edgeSet()) {
+						if (changes.getAddedLinkIds().contains(link.getId()))
+							addForceLayoutLinkJsonObject(link, -1, -1, linksArr, edgeLinksArr);
+					}
+				}
+
+				JSONObject alignDiff = new JSONObject();
+				alignDiff.put(JsonKeys.anchors.name(), anchorsArr);
+				alignDiff.put(JsonKeys.tableLayout.name(), getTableLayout(vWorkspace));
+				alignDiff.put(JsonKeys.nodes.name(), nodesArr);
+				alignDiff.put(JsonKeys.links.name(), linksArr);
+				alignDiff.put(JsonKeys.edgeLinks.name(), edgeLinksArr);
+				alignDiff.put(JsonKeys.removedNodes.name(), new JSONArray(changes.getRemovedNodeIds()));
+				alignDiff.put(JsonKeys.removedLinks.name(), new JSONArray(changes.getRemovedLinkIds()));
+
+				topObj.put(JsonKeys.baseVersion.name(), vWorksheet.getRenderedAlignmentVersion());
+				topObj.put(JsonKeys.alignDiff.name(), alignDiff);
+				vWorksheet.setRenderedAlignment(changeLog.getId(), version, hNodeIdList);
+				pw.write(topObj.toString());
+				return;
+			}
+
 			int nodesIndexcounter = hNodeIdList.size();
 
 			if (alignmentGraph != null
@@ -193,14 +251,7 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 					if (node instanceof ColumnNode) {
 						// Already handled
 					} else {
-						boolean isUri = false;
-						if(node instanceof LiteralNode && ((LiteralNode)node).isUri())
-							isUri = true;
-						JSONObject nodeObj = getForceLayoutNodeJsonObject(
-								nodesIndexcounter, node.getLocalId(),
-								node.getId(), node.getType().name(),
-								node.isForced(), node.getUri(), isUri);
-						nodesArr.put(nodeObj);
+						nodesArr.put(getForceLayoutNodeJsonObject(nodesIndexcounter, node));
 						verticesIndex.put(node, nodesIndexcounter++);
 					}
 				}
@@ -209,52 +260,15 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 				Set<LabeledLink> links = alignmentGraph.edgeSet();
 				for (LabeledLink link : links) {
 
-					Node source = link.getSource();
-					Integer sourceIndex = verticesIndex.get(source);
-					Node target = link.getTarget();
-					Integer targetIndex = verticesIndex.get(target);
-					Set<LabeledLink> outEdges = alignmentGraph
-							.outgoingEdgesOf(target);
+					Integer sourceIndex = verticesIndex.get(link.getSource());
+					Integer targetIndex = verticesIndex.get(link.getTarget());
 
 					if (sourceIndex == null || targetIndex == null) {
 						logger.error("Edge vertex index not found!");
 						continue;
 					}
 
-					JSONObject linkObj = new JSONObject();
-					linkObj.put(JsonKeys.source.name(), sourceIndex);
-					linkObj.put(JsonKeys.target.name(), targetIndex);
-					linkObj.put(JsonKeys.sourceNodeId.name(), source.getId());
-					linkObj.put(JsonKeys.targetNodeId.name(), target.getId());
-
-					linkObj.put(JsonKeys.label.name(), link.getLabel()
-							.getLocalName());
-					linkObj.put(JsonKeys.id.name(), link.getId() + "");
-					linkObj.put(JsonKeys.linkStatus.name(), link.getStatus()
-							.name());
-					linkObj.put(JsonKeys.linkUri.name(), link.getLabel()
-							.getUri());
-
-					if (target.getType() == NodeType.ColumnNode
-							&& outEdges.isEmpty()) {
-						linkObj.put(JsonKeys.linkType.name(),
-								JsonValues.holderLink.name());
-					}
-
-					linkObj.put(JsonKeys.linkType.name(), link.getType());
-					if (link.getType() == LinkType.ObjectPropertySpecializationLink) {
-						ObjectPropertySpecializationLink spLink = (ObjectPropertySpecializationLink) link;
-						String linkId = spLink.getSpecializedLinkId();
-						linkObj.put(JsonKeys.source.name(), linkId);
-						edgeLinksArr.put(linkObj);
-					} else if (link.getType() == LinkType.DataPropertyOfColumnLink) {
-						DataPropertyOfColumnLink spLink = (DataPropertyOfColumnLink) link;
-						String linkId = spLink.getSpecializedLinkId();
-						linkObj.put(JsonKeys.source.name(), linkId);
-						edgeLinksArr.put(linkObj);
-					} else {
-						linksArr.put(linkObj);
-					}
+					addForceLayoutLinkJsonObject(link, sourceIndex, targetIndex, linksArr, edgeLinksArr);
 				}
 			}
 
@@ -266,6 +280,7 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 			alignObject.put(JsonKeys.edgeLinks.name(), edgeLinksArr);
 
 			topObj.put(JsonKeys.alignObject.name(), alignObject);
+			vWorksheet.setRenderedAlignment(changeLog.getId(), version, hNodeIdList);
 
 			pw.write(topObj.toString());
 		} catch (JSONException e) {
@@ -274,6 +289,76 @@ public class AlignmentSVGVisualizationUpdate extends AbstractUpdate {
 
 	}
 
+	/**
+	 * @return the changes of the tree since the version the view has, or null
+	 *         if the whole tree has to be sent.
+	 */
+	private AlignmentChangeLog.Changes getChangesSinceRendered(VWorksheet vWorksheet,
+			List<String> hNodeIdList, AlignmentChangeLog changeLog) {
+		if (fullRender || alignmentGraph == null
+				|| vWorksheet.getRenderedAlignmentLogId() != changeLog.getId()
+				|| !hNodeIdList.equals(vWorksheet.getRenderedAlignmentColumns()))
+			return null;
+		AlignmentChangeLog.Changes changes = changeLog.getChangesSince(vWorksheet.getRenderedAlignmentVersion());
+		// a diff as big as the tree is not worth applying
+		if (changes == null
+				|| changes.size() > alignmentGraph.vertexSet().size() + alignmentGraph.edgeSet().size())
+			return null;
+		return changes;
+	}
+
+	private JSONObject getForceLayoutNodeJsonObject(int id, Node node) throws JSONException {
+		boolean isUri = false;
+		if(node instanceof LiteralNode && ((LiteralNode)node).isUri())
+			isUri = true;
+		return getForceLayoutNodeJsonObject(id, node.getLocalId(),
+				node.getId(), node.getType().name(),
+				node.isForced(), node.getUri(), isUri);
+	}
+
+	private void addForceLayoutLinkJsonObject(LabeledLink link, int sourceIndex, int targetIndex,
+			JSONArray linksArr, JSONArray edgeLinksArr) throws JSONException {
+		Node source = link.getSource();
+		Node target = link.getTarget();
+		Set<LabeledLink> outEdges = alignmentGraph
+				.outgoingEdgesOf(target);
+
+		JSONObject linkObj = new JSONObject();
+		linkObj.put(JsonKeys.source.name(), sourceIndex);
+		linkObj.put(JsonKeys.target.name(), targetIndex);
+		linkObj.put(JsonKeys.sourceNodeId.name(), source.getId());
+		linkObj.put(JsonKeys.targetNodeId.name(), target.getId());
+
+		linkObj.put(JsonKeys.label.name(), link.getLabel()
+				.getLocalName());
+		linkObj.put(JsonKeys.id.name(), link.getId() + "");
+		linkObj.put(JsonKeys.linkStatus.name(), link.getStatus()
+				.name());
+		linkObj.put(JsonKeys.linkUri.name(), link.getLabel()
+				.getUri());
+
+		if (target.getType() == NodeType.ColumnNode
+				&& outEdges.isEmpty()) {
+			linkObj.put(JsonKeys.linkType.name(),
+					JsonValues.holderLink.name());
+		}
+
+		linkObj.put(JsonKeys.linkType.name(), link.getType());
+		if (link.getType() == LinkType.ObjectPropertySpecializationLink) {
+			ObjectPropertySpecializationLink spLink = (ObjectPropertySpecializationLink) link;
+			String linkId = spLink.getSpecializedLinkId();
+			linkObj.put(JsonKeys.source.name(), linkId);
+			edgeLinksArr.put(linkObj);
+		} else if (link.getType() == LinkType.DataPropertyOfColumnLink) {
+			DataPropertyOfColumnLink spLink = (DataPropertyOfColumnLink) link;
+			String linkId = spLink.getSpecializedLinkId();
+			linkObj.put(JsonKeys.source.name(), linkId);
+			edgeLinksArr.put(linkObj);
+		} else {
+			linksArr.put(linkObj);
+		}
+	}
+
 	public JSONArray getTableLayout(VWorkspace vWorkspace) {
 		VWorksheet vWorksheet = vWorkspace.getViewFactory()
 				.getVWorksheetByWorksheetId(worksheetId);
@@ -70,4 +70,8 @@ public class RegenerateWorksheetUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
+
 }
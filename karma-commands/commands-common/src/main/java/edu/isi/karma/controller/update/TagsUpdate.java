@@ -75,4 +75,8 @@ public class TagsUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return TagsUpdate.class.hashCode();
+	}
+
 }
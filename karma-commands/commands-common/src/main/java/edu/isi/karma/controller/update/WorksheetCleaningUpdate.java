@@ -24,11 +24,13 @@ package edu.isi.karma.controller.update;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -38,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.controller.command.selection.SuperSelection;
 import edu.isi.karma.rep.ColumnMetadata;
+import edu.isi.karma.rep.ColumnProfiler;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNodePath;
 import edu.isi.karma.rep.Node;
@@ -49,6 +52,16 @@ import edu.isi.karma.view.ViewPreferences.ViewPreference;
 import edu.isi.karma.webserver.ServletContextParameterMap;
 import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 
+/**
+ * Sends the histograms of the columns of a worksheet for the cleaning charts.
+ * <p>
+ * The columns are profiled in parallel, each one from a sample of its values
+ * taken in a single pass. The histograms are computed by {@link ColumnProfiler}
+ * unless the {@link #USE_CLEANING_SERVICE_PROPERTY} system property is set,
+ * in which case the samples are sent to the cleaning service. A histogram is
+ * kept in the {@link ColumnMetadata} and computed again only when the values
+ * of the column change.
+ */
 public class WorksheetCleaningUpdate extends
 AbstractUpdate {
 
@@ -61,6 +74,9 @@ AbstractUpdate {
 	public static int DEFAULT_COLUMN_LENGTH = 10;
 	public static int MIN_COLUMN_LENGTH = 10;
 
+	public static final String USE_CLEANING_SERVICE_PROPERTY = "karma.cleaning.useService";
+	public static final String PARALLELISM_PROPERTY = "karma.cleaning.parallelism";
+
 	private enum JsonKeys {
 		worksheetId, hNodeId, worksheetChartData, 
 		chartData, id, value, json, 
@@ -73,6 +89,51 @@ AbstractUpdate {
 		this.selection = selection;
 	}
 
+	/**
+	 * The histogram of a column, or null if the column is empty.
+	 */
+	private static class ColumnProfile {
+		final JSONObject output;
+		final long fingerprint;
+		final boolean unchanged;
+
+		ColumnProfile(JSONObject output, long fingerprint, boolean unchanged) {
+			this.output = output;
+			this.fingerprint = fingerprint;
+			this.unchanged = unchanged;
+		}
+	}
+
+	private class ProfileColumn implements Callable<ColumnProfile> {
+		private final Worksheet worksheet;
+		private final HNodePath path;
+		private final Long previousFingerprint;
+
+		ProfileColumn(Worksheet worksheet, HNodePath path, Long previousFingerprint) {
+			this.worksheet = worksheet;
+			this.path = path;
+			this.previousFingerprint = previousFingerprint;
+		}
+
+		@Override
+		public ColumnProfile call() throws Exception {
+			ColumnProfiler profiler = new ColumnProfiler();
+			ColumnProfiler.Sample sample = profiler.sample(worksheet.getDataTable(), path, selection);
+			if (previousFingerprint != null && previousFingerprint == sample.getFingerprint())
+				return new ColumnProfile(null, sample.getFingerprint(), true);
+			if (sample.getNodes().isEmpty()) {
+				logger.error("Empty values input for path" + path.toColumnNamePath());
+				return null;
+			}
+			JSONObject output;
+			if (Boolean.getBoolean(USE_CLEANING_SERVICE_PROPERTY))
+				output = invokeCleaningService(sample);
+			else
+				output = profiler.profile(sample);
+			return new ColumnProfile(output, sample.getFingerprint(), false);
+		}
+	}
+
 	@Override
 	public void generateJson(String prefix, PrintWriter pw,
 			VWorkspace vWorkspace) {
@@ -82,99 +143,66 @@ AbstractUpdate {
 		ColumnMetadata colMetadata = worksheet.getMetadataContainer().getColumnMetadata();
 
 		List<String> columnsInvoked = new ArrayList<String>();
+		Map<HNodePath, ProfileColumn> tasks = new HashMap<HNodePath, ProfileColumn>();
 
 		for (HNodePath path:columnPaths) {
 			String leafHNodeId = path.getLeaf().getId();
-			List<Node> nodes = new ArrayList<Node>(Math.max(1000, worksheet.getDataTable().getNumRows()));
-			worksheet.getDataTable().collectNodes(path, nodes, selection);
-			final int sampleSize = (nodes.size() > 1000) ? 1000 : nodes.size();
 			columnsInvoked.add(leafHNodeId);
+			// Check if the column metadata doesn't contains the cleaning information
+			if (colMetadata.getColumnHistogramData(leafHNodeId) == null 
+					|| forceUpdates) {
+				tasks.put(path, new ProfileColumn(worksheet, path,
+						colMetadata.getColumnHistogramFingerprint(leafHNodeId)));
+			}
+		}
+
+		Map<HNodePath, Future<ColumnProfile>> profiles = new HashMap<HNodePath, Future<ColumnProfile>>();
+		ExecutorService executor = null;
+		if (!tasks.isEmpty()) {
+			executor = Executors.newFixedThreadPool(Math.min(getParallelism(), tasks.size()));
+			for (Map.Entry<HNodePath, ProfileColumn> task : tasks.entrySet())
+				profiles.put(task.getKey(), executor.submit(task.getValue()));
+			executor.shutdown();
+		}
+
+		for (HNodePath path:columnPaths) {
+			Future<ColumnProfile> future = profiles.get(path);
+			if (future == null)
+				continue;
+			String leafHNodeId = path.getLeaf().getId();
 			try {
-				// Check if the column metadata doesn't contains the cleaning information
-				if (colMetadata.getColumnHistogramData(leafHNodeId) == null 
-						|| forceUpdates) {
-					// Prepare the input data for the cleaning service
-					JSONArray requestJsonArray = new JSONArray();  
-					if (sampleSize == nodes.size()) {
-						for (Node node : nodes) {
-							JSONObject jsonRecord = new JSONObject();
-							jsonRecord.put(JsonKeys.id.name(), node.getId());
-							String originalVal = node.getValue().asString();
-							originalVal = originalVal == null ? "" : originalVal;
-							jsonRecord.put(JsonKeys.value.name(), originalVal);
-							requestJsonArray.put(jsonRecord);
-						}
-					}
-					else {
-						Set<Integer> randomNums = new HashSet<Integer>();
-						Random gen = new Random();
-						for (int i = 0; i < sampleSize; i++) {
-							int r = gen.nextInt(nodes.size());
-							while (randomNums.contains(r))
-								r = gen.nextInt(nodes.size());
-							randomNums.add(r);
-							Node node = nodes.get(r);
-							JSONObject jsonRecord = new JSONObject();
-							jsonRecord.put(JsonKeys.id.name(), node.getId());
-							String originalVal = node.getValue().asString();
-							originalVal = originalVal == null ? "" : originalVal;
-							jsonRecord.put(JsonKeys.value.name(), originalVal);
-							requestJsonArray.put(jsonRecord);
-						}
-					}
-					
-					//TODO put the estimate back
-					
-					if (requestJsonArray.length() == 0) {
-						logger.error("Empty values input for path" + path.toColumnNamePath());
-						continue;
-					}
-					String cleaningServiceURL = ServletContextParameterMap.getParameterValue(
-							ContextParameter.CLEANING_SERVICE_URL);
-
-					Map<String, String> formParams = new HashMap<String, String>();
-					formParams.put(JsonKeys.json.name(), requestJsonArray.toString());
-					String reqResponse = HTTPUtil.executeHTTPPostRequest(cleaningServiceURL, null,
-							null, formParams);
-					//					
-					//					logger.debug("***");
-					//					logger.debug(path.getLeaf().getColumnName());
-					//					logger.debug(reqResponse);
-					try {
-						// Test if the output is valid JSON object. Throws exception if not.
-						JSONObject output = new JSONObject(reqResponse);
-						long sampleRate = Math.round(nodes.size() * 1.0 / sampleSize);
-						JSONArray array = new JSONArray(output.getString("histogram"));
-						for (int i = 0; i < array.length(); i++) {
-							JSONObject obj = array.getJSONObject(i);
-							long value = Integer.parseInt(obj.getString("Frequency")) * sampleRate;
-							obj.put("Frequency", value);
-						}
-						output.put("histogram", array.toString());
-						// Add to the metadata if valid
-						colMetadata.addColumnHistogramData(leafHNodeId, output);
-
-						// Parse the request response to populate the column metadata for the worksheet
-						int colLength = getColumnLength(path.getLeaf(), output, 
-								vWorkspace.getPreferences().getIntViewPreferenceValue(
-										ViewPreference.maxCharactersInCell));
-						colMetadata.addColumnPreferredLength(leafHNodeId, colLength);
-
-						// Add the hNodeId to the list for which we invoked successfully
-						
-					} catch (JSONException e) {
-						logger.error("Error occured with cleaning service for HNode: " 
-								+ path.toColumnNamePath(), e);
-
-						// Set to a default column word length
-						colMetadata.addColumnPreferredLength(leafHNodeId, DEFAULT_COLUMN_LENGTH);
-						continue;
-					}	
+				ColumnProfile profile;
+				try {
+					profile = future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
 				}
+				if (profile == null || profile.unchanged)
+					continue;
+				// Add to the metadata
+				colMetadata.addColumnHistogramData(leafHNodeId, profile.output, profile.fingerprint);
+
+				// Parse the profile to populate the column metadata for the worksheet
+				int colLength = getColumnLength(path.getLeaf(), profile.output, 
+						vWorkspace.getPreferences().getIntViewPreferenceValue(
+								ViewPreference.maxCharactersInCell));
+				colMetadata.addColumnPreferredLength(leafHNodeId, colLength);
+			} catch (JSONException e) {
+				logger.error("Error occured with cleaning service for HNode: " 
+						+ path.toColumnNamePath(), e);
+
+				// Set to a default column word length
+				colMetadata.addColumnPreferredLength(leafHNodeId, DEFAULT_COLUMN_LENGTH);
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while profiling the columns", e);
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				break;
 			} catch (Exception e) {
 				logger.error("Error while invoking cleaning service", e);
 			}
-			
 		}
 
 		// Prepare the Update that is going to be sent to the browser
@@ -205,6 +233,46 @@ AbstractUpdate {
 		}
 	}
 
+	private static int getParallelism() {
+		return Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Sends the sample to the cleaning service, and scales the frequencies of
+	 * its histogram to the whole column.
+	 */
+	private static JSONObject invokeCleaningService(ColumnProfiler.Sample sample) throws Exception {
+		JSONArray requestJsonArray = new JSONArray();  
+		for (Node node : sample.getNodes()) {
+			JSONObject jsonRecord = new JSONObject();
+			jsonRecord.put(JsonKeys.id.name(), node.getId());
+			String originalVal = node.getValue().asString();
+			originalVal = originalVal == null ? "" : originalVal;
+			jsonRecord.put(JsonKeys.value.name(), originalVal);
+			requestJsonArray.put(jsonRecord);
+		}
+		String cleaningServiceURL = ServletContextParameterMap.getParameterValue(
+				ContextParameter.CLEANING_SERVICE_URL);
+
+		Map<String, String> formParams = new HashMap<String, String>();
+		formParams.put(JsonKeys.json.name(), requestJsonArray.toString());
+		String reqResponse = HTTPUtil.executeHTTPPostRequest(cleaningServiceURL, null,
+				null, formParams);
+
+		// Test if the output is valid JSON object. Throws exception if not.
+		JSONObject output = new JSONObject(reqResponse);
+		long sampleRate = Math.round(sample.getCount() * 1.0 / sample.getNodes().size());
+		JSONArray array = new JSONArray(output.getString("histogram"));
+		for (int i = 0; i < array.length(); i++) {
+			JSONObject obj = array.getJSONObject(i);
+			long value = Integer.parseInt(obj.getString("Frequency")) * sampleRate;
+			obj.put("Frequency", value);
+		}
+		output.put("histogram", array.toString());
+		return output;
+	}
+
 	private int getColumnLength(HNode hNode, JSONObject serviceResults, int maxColumnWidth)
 			throws JSONException {
 		int colLength = serviceResults.getInt(JsonKeys.Preferred_Length.name());
@@ -229,4 +297,8 @@ AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return 31 * worksheetId.hashCode() + selection.hashCode();
+	}
 }
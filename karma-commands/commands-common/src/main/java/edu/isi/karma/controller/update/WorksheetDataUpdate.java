@@ -24,9 +24,8 @@ package edu.isi.karma.controller.update;
 import java.io.PrintWriter;
 import java.util.List;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,84 +61,84 @@ public class WorksheetDataUpdate extends AbstractUpdate {
 	public void generateJson(String prefix, PrintWriter pw, VWorkspace vWorkspace) {
 		VWorksheet vWorksheet =  vWorkspace.getViewFactory().getVWorksheetByWorksheetId(worksheetId);
 
-		try {
-			JSONObject response = new JSONObject();
-			response.put(JsonKeys.worksheetId.name(), worksheetId);
-			response.put(AbstractUpdate.GenericJsonKeys.updateType.name(), 
-					this.getClass().getSimpleName());
-
-			Worksheet wk = vWorksheet.getWorksheet();
-			Table dataTable = wk.getDataTable();
-			TablePager pager = vWorksheet.getTopTablePager();
-
-			JSONArray rows = getRowsUsingPager(
-					pager, vWorksheet,
-					vWorksheet.getHeaderViewNodes(), vWorkspace.getPreferences().getIntViewPreferenceValue(
-							ViewPreference.maxCharactersInCell));
-			int rowsLeft = dataTable.getNumRows() - rows.length();
-			rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
-			response.put(JsonKeys.additionalRowsCount.name(), rowsLeft);
-			response.put(JsonKeys.tableId.name(), dataTable.getId());
-			response.put(JsonKeys.rows.name(), rows);
-
-			pw.println(response.toString());
-		} catch (JSONException e) {
-			logger.error("JSONException", e);
-		}
-	}
-
-	private JSONArray getRowsUsingPager(TablePager pager, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, int maxDataDisplayLength) throws JSONException {
-		return getRowsJsonArray(pager.getRows(),vWorksheet,  orderedHnodeIds, maxDataDisplayLength);
+		// The rows are written as they are visited, so that large worksheets
+		// are not built up as a JSONObject and then as a String. A JSONException
+		// is left to the caller, which replaces the partial output with an error.
+		JSONWriter writer = new JSONWriter(pw);
+		writer.object();
+		writer.key(JsonKeys.worksheetId.name()).value(worksheetId);
+		writer.key(AbstractUpdate.GenericJsonKeys.updateType.name()).value(
+				this.getClass().getSimpleName());
+
+		Worksheet wk = vWorksheet.getWorksheet();
+		Table dataTable = wk.getDataTable();
+		TablePager pager = vWorksheet.getTopTablePager();
+
+		writer.key(JsonKeys.tableId.name()).value(dataTable.getId());
+		writer.key(JsonKeys.rows.name());
+		int numRows = writeRows(writer, pager.getRows(), vWorksheet, 
+				vWorksheet.getHeaderViewNodes(), vWorkspace.getPreferences().getIntViewPreferenceValue(
+						ViewPreference.maxCharactersInCell));
+		int rowsLeft = dataTable.getNumRows() - numRows;
+		rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
+		writer.key(JsonKeys.additionalRowsCount.name()).value(rowsLeft);
+		writer.endObject();
+		pw.println();
 	}
 
-	public JSONArray getRowsJsonArray(List<Row> rows, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, 
+	/**
+	 * Writes the rows as a JSON array.
+	 * 
+	 * @return the number of rows written
+	 */
+	public int writeRows(JSONWriter writer, List<Row> rows, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, 
 			int maxDataDisplayLength) throws JSONException {
-		JSONArray rowsArr = new JSONArray();
-
+		writer.array();
 		for (Row row:rows) {
-			JSONObject rowObj = new JSONObject();
-			JSONArray rowValueArray = new JSONArray();
-			rowObj.put(JsonKeys.rowId.name(), row.getId());
-			rowObj.put(JsonKeys.isSelected.name(), selection.isSelected(row));
-			rowObj.put(JsonKeys.rowValueArray.name(), rowValueArray);
+			writer.object();
+			writer.key(JsonKeys.rowId.name()).value(row.getId());
+			writer.key(JsonKeys.isSelected.name()).value(selection.isSelected(row));
+			writer.key(JsonKeys.rowValueArray.name()).array();
 			for (VHNode vNode : orderedHnodeIds) {
 				if(vNode.isVisible()) {
 					Node rowNode = row.getNode(vNode.getId());
-					JSONObject nodeObj = new JSONObject();
-					nodeObj.put(JsonKeys.columnClass.name(), 
+					writer.object();
+					writer.key(JsonKeys.columnClass.name()).value(
 							WorksheetHeadersUpdate.getColumnClass(vNode.getId()));
-					nodeObj.put(JsonKeys.nodeId.name(), rowNode.getId());
+					writer.key(JsonKeys.nodeId.name()).value(rowNode.getId());
 
 					if (vNode.hasNestedTable()) {
-						nodeObj.put(JsonKeys.hasNestedTable.name(), true);
+						writer.key(JsonKeys.hasNestedTable.name()).value(true);
 						Table nestedTable = rowNode.getNestedTable();
-						JSONArray nestedTableRows = getRowsUsingPager( 
-								vWorksheet.getNestedTablePager(nestedTable), 
+						writer.key(JsonKeys.tableId.name()).value(nestedTable.getId());
+						writer.key(JsonKeys.nestedRows.name());
+						int numNestedRows = writeRows(writer, 
+								vWorksheet.getNestedTablePager(nestedTable).getRows(), 
 								vWorksheet,
 								vNode.getNestedNodes(), 
 								maxDataDisplayLength);
-						nodeObj.put(JsonKeys.nestedRows.name(), nestedTableRows);
-						nodeObj.put(JsonKeys.tableId.name(), rowNode.getNestedTable().getId());
 
-						int rowsLeft = nestedTable.getNumRows() - nestedTableRows.length();
+						int rowsLeft = nestedTable.getNumRows() - numNestedRows;
 						rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
-						nodeObj.put(JsonKeys.additionalRowsCount.name(), rowsLeft);
+						writer.key(JsonKeys.additionalRowsCount.name()).value(rowsLeft);
 
 					} else {
 						String nodeVal = rowNode.getValue().asString();
 						nodeVal = (nodeVal == null) ? "" : nodeVal;
 						String displayVal = (nodeVal.length() > maxDataDisplayLength) 
 								? nodeVal.substring(0, maxDataDisplayLength) + "..." : nodeVal;
-						nodeObj.put(JsonKeys.displayValue.name(), displayVal);
-						nodeObj.put(JsonKeys.expandedValue.name(), nodeVal);
-						nodeObj.put(JsonKeys.hasNestedTable.name(), false);
+						writer.key(JsonKeys.displayValue.name()).value(displayVal);
+						writer.key(JsonKeys.expandedValue.name()).value(nodeVal);
+						writer.key(JsonKeys.hasNestedTable.name()).value(false);
 					}
-					rowValueArray.put(nodeObj);
+					writer.endObject();
 				}
 			}
-			rowsArr.put(rowObj);
+			writer.endArray();
+			writer.endObject();
 		}
-		return rowsArr;
+		writer.endArray();
+		return rows.size();
 	}
 
 	public boolean equals(Object o) {
@@ -149,4 +148,8 @@ public class WorksheetDataUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
 }
\ No newline at end of file
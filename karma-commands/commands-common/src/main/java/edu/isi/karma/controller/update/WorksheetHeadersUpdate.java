@@ -155,4 +155,8 @@ public class WorksheetHeadersUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
 }
\ No newline at end of file
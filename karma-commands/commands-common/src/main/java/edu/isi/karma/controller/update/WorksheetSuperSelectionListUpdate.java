@@ -52,4 +52,8 @@ public class WorksheetSuperSelectionListUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
+
 }
@@ -42,4 +42,9 @@ public class SQLCommandUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	@Override
+	public int hashCode() {
+		return commandId.hashCode();
+	}
 }
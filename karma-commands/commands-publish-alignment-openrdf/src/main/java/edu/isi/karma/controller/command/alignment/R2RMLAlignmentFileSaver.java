@@ -1,9 +1,11 @@
 package edu.isi.karma.controller.command.alignment;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -114,21 +116,35 @@ public class R2RMLAlignmentFileSaver implements IAlignmentSaver, IHistorySaver {
 		return alignmentMappingGenerator.getKR2RMLMapping();
 	}
 	
+	/**
+	 * Writes the model to a temporary file that replaces the model file, so
+	 * that readers never see a partially written model.
+	 */
 	private void writeModel(Workspace workspace, OntologyManager ontMgr, 
 			KR2RMLMappingGenerator mappingGen, Worksheet worksheet, String modelFileLocalPath) 
-					throws RepositoryException, FileNotFoundException,
-							UnsupportedEncodingException, JSONException {
+					throws RepositoryException, IOException, JSONException {
 		File f = new File(modelFileLocalPath);
 		File parentDir = f.getParentFile();
 		parentDir.mkdirs();
-		PrintWriter writer = new PrintWriter(f, "UTF-8");
+		File tmp = File.createTempFile(f.getName(), ".tmp", parentDir);
+		try {
+			PrintWriter writer = new PrintWriter(tmp, "UTF-8");
 
-		KR2RMLMappingWriter mappingWriter = new KR2RMLMappingWriter();
-		mappingWriter.addR2RMLMapping(mappingGen.getKR2RMLMapping(), worksheet, workspace);
-		mappingWriter.writeR2RMLMapping(writer);
-		mappingWriter.close();
-		writer.flush();
-		writer.close();
+			KR2RMLMappingWriter mappingWriter = new KR2RMLMappingWriter();
+			mappingWriter.addR2RMLMapping(mappingGen.getKR2RMLMapping(), worksheet, workspace);
+			mappingWriter.writeR2RMLMapping(writer);
+			mappingWriter.close();
+			writer.flush();
+			writer.close();
+			try {
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
 		if(OSUtils.isWindows())
 			System.gc(); //Invoke gc for windows, else it gives error: The requested operation cannot be performed on a file with a user-mapped section open
 					//when the model is republished, and the original model is earlier open
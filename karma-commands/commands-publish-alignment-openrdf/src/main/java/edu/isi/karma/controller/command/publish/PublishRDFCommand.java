@@ -78,6 +78,9 @@ import edu.isi.karma.kr2rml.writer.N3KR2RMLRDFWriter;
 import edu.isi.karma.modeling.Uris;
 import edu.isi.karma.modeling.alignment.Alignment;
 import edu.isi.karma.modeling.alignment.AlignmentManager;
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.rep.metadata.WorksheetProperties.Property;
@@ -229,7 +232,8 @@ public class PublishRDFCommand extends WorksheetSelectionCommand {
 			writer.setBaseURI(rdfSourceNamespace);
 			writers.add(writer);
 			if (generateBloomFilters && utilObj.testURIExists(modelRepoUrl, "", url)) {
-				KR2RMLRDFWriter bfWriter = createBloomFilterWriter(new PrintWriter(sw), false, this.rdfSourceNamespace);
+				KR2RMLRDFWriter bfWriter = createBloomFilterWriter(new PrintWriter(sw), false, this.rdfSourceNamespace,
+						getNumberOfRows(worksheet.getDataTable(), selection));
 				writers.add(bfWriter);
 				bfWriter.setR2RMLMappingIdentifier(mapping.getId());
 			}
@@ -280,7 +284,7 @@ public class PublishRDFCommand extends WorksheetSelectionCommand {
 			logger.info("tripleStoreURl : " + tripleStoreUrl);
 
 
-			result &= utilObj.saveToStoreFromFile(rdfFileLocalPath, tripleStoreUrl, this.graphUri, this.replaceContext, this.rdfSourceNamespace);
+			result &= utilObj.saveToStoreFromNTriplesFile(rdfFileLocalPath, tripleStoreUrl, this.graphUri, this.replaceContext, this.rdfSourceNamespace);
 			if (url != null && !url.isEmpty() && url.compareTo("") != 0 && utilObj.testURIExists(modelRepoUrl, "", url)) {
 				StringBuilder sb = new StringBuilder();
 				url = url.trim();
@@ -386,8 +390,24 @@ public class PublishRDFCommand extends WorksheetSelectionCommand {
 		return null;
 	}
 	
-	private KR2RMLRDFWriter createBloomFilterWriter(PrintWriter bloomfilterpw, Boolean isRDF, String baseURI)
-			throws Exception {
+	/**
+	 * @return the number of rows of the table and of its nested tables, which bounds the
+	 * number of subjects a triples map generates
+	 */
+	private static long getNumberOfRows(Table table, SuperSelection selection) {
+		long count = 0;
+		for (Row row : table.getRows(0, table.getNumRows(), selection)) {
+			count++;
+			for (Node node : row.getNodes()) {
+				if (node.hasNestedTable())
+					count += getNumberOfRows(node.getNestedTable(), selection);
+			}
+		}
+		return count;
+	}
+
+	private KR2RMLRDFWriter createBloomFilterWriter(PrintWriter bloomfilterpw, Boolean isRDF, String baseURI,
+			long expectedInsertions) throws Exception {
 		
 		Reflections reflections = new Reflections("edu.isi.karma.kr2rml.writer");
 
@@ -404,6 +424,7 @@ public class PublishRDFCommand extends WorksheetSelectionCommand {
 					Properties p = new Properties();
 					p.setProperty("is.rdf", isRDF.toString());
 					p.setProperty("base.uri", baseURI);
+					p.setProperty("expected.insertions", Long.toString(Math.max(1, expectedInsertions)));
 					writer.initialize(p);
 					return writer;
 			}
@@ -238,7 +238,7 @@ public class ExportCSVCommand extends WorksheetSelectionCommand {
 			if(pref != null) {
 				rdfNamespace = pref.optString(PublishRDFCommandPreferencesKeys.rdfNamespace.name());
 			}
-			result = utilObj.saveToStoreFromFile(generatedRDFFileName, TripleStoreUtil.defaultDataRepoUrl, graphUri, true, rdfNamespace);
+			result = utilObj.saveToStoreFromNTriplesFile(generatedRDFFileName, TripleStoreUtil.defaultDataRepoUrl, graphUri, true, rdfNamespace);
 		}
 		catch(Exception e)
 		{
@@ -20,6 +20,7 @@ import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.command.WorksheetCommand;
 import edu.isi.karma.controller.history.CommandHistory;
 import edu.isi.karma.controller.history.CommandHistory.HistoryArguments;
+import edu.isi.karma.controller.history.HistoryAutoSaver;
 import edu.isi.karma.controller.history.HistoryJsonUtil;
 import edu.isi.karma.controller.update.AbstractUpdate;
 import edu.isi.karma.controller.update.InfoUpdate;
@@ -134,6 +135,7 @@ public class PublishReportCommand extends WorksheetCommand {
 		LinkedHashMap<String, String> pyTransformMap = new LinkedHashMap<>();
 		String linebreak = System.getProperty("line.separator");
 		
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), worksheetId);
 		String historyFile = CommandHistory.getHistorySaver(workspace.getId()).getHistoryFilepath(worksheetId);
 		try {
 			
@@ -46,6 +46,7 @@ import edu.isi.karma.controller.command.worksheet.MultipleValueEditColumnCommand
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.controller.update.WorksheetUpdateFactory;
 import edu.isi.karma.er.helper.PythonRepository;
+import edu.isi.karma.er.helper.PythonRowAccessor;
 import edu.isi.karma.er.helper.PythonTransformationHelper;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.Node;
@@ -137,6 +138,8 @@ public abstract class PythonTransformationCommand extends WorksheetSelectionComm
 		locals.__setitem__("workspaceid", new PyString(workspace.getId()));
 		locals.__setitem__("command", Py.java2py(this));
 		locals.__setitem__("selectionName", new PyString(selection.getName()));
+		PythonRowAccessor rowAccessor = new PythonRowAccessor(f);
+		locals.__setitem__("rowaccessor", Py.java2py(rowAccessor));
 		
 		repo.compileAndAddToRepositoryAndExec(interpreter, transformMethodStmt);
 		PyCode py = repo.getTransformCode();
@@ -146,7 +149,9 @@ public abstract class PythonTransformationCommand extends WorksheetSelectionComm
 		for (Node node : nodes) {
 			Row row = node.getBelongsToRow();
 			
+			// nodeid is still set for the user scripts that use it
 			locals.__setitem__("nodeid", new PyString(node.getId()));
+			rowAccessor.setNode(node);
 		
 			try {
 		
@@ -173,6 +178,8 @@ public abstract class PythonTransformationCommand extends WorksheetSelectionComm
 				break;
 			}
 		}
+		for (String inputColumn : rowAccessor.getInputColumns())
+			addInputColumns(inputColumn);
 		if (numRowsWithErrors > 0) {
 			logger.debug("PyTransform errors in "
 					+ numRowsWithErrors
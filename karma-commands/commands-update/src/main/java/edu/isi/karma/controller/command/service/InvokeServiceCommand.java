@@ -30,8 +30,6 @@ import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.rits.cloning.Cloner;
-
 import edu.isi.karma.controller.command.CommandException;
 import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.command.WorksheetSelectionCommand;
@@ -49,6 +47,7 @@ import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNodePath;
 import edu.isi.karma.rep.Row;
 import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.WorksheetUndoLog;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.rep.alignment.DefaultLink;
 import edu.isi.karma.rep.alignment.Node;
@@ -69,7 +68,9 @@ public class InvokeServiceCommand extends WorksheetSelectionCommand {
 	private DirectedWeightedMultigraph<Node, DefaultLink> initialGraph = null;
 	private final String hNodeId;
 	
-	private Worksheet worksheetBeforeInvocation = null;
+	// the changes of the invocation to the worksheet
+	private WorksheetUndoLog undoLog = null;
+	private WebService serviceBeforeInvocation = null;
 
 	InvokeServiceCommand(String id, String worksheetId, String hNodeId, String selectionId) {
 		super(id, worksheetId, selectionId);
@@ -87,10 +88,6 @@ public class InvokeServiceCommand extends WorksheetSelectionCommand {
 		Worksheet wk = workspace.getWorksheet(worksheetId);
 		SuperSelection selection = getSuperSelection(wk);
 		String encoding = wk.getEncoding();
-		// Clone the worksheet just before the invocation
-		Cloner cloner = new Cloner();
-		this.worksheetBeforeInvocation = cloner.deepClone(wk);
-		
 		OntologyManager ontMgr = workspace.getOntologyManager();
 		String alignmentId = AlignmentManager.Instance().constructAlignmentId(workspace.getId(), worksheetId);
 		Alignment alignment = AlignmentManager.Instance().getAlignment(alignmentId);
@@ -123,7 +120,13 @@ public class InvokeServiceCommand extends WorksheetSelectionCommand {
 			
 			// This generate a flat table of the json results
 			Table serviceTable = invocatioManager.getServiceData(false, true, true);
-			ServiceTableUtil.populateWorksheet(serviceTable, wk, workspace.getFactory(), selection);
+			undoLog = new WorksheetUndoLog(wk, workspace.getFactory());
+			undoLog.start();
+			try {
+				ServiceTableUtil.populateWorksheet(serviceTable, wk, workspace.getFactory(), selection);
+			} finally {
+				undoLog.stop();
+			}
 			
 			// FIXME
 //			String json = invocatioManager.getServiceJson(true);
@@ -139,6 +142,7 @@ public class InvokeServiceCommand extends WorksheetSelectionCommand {
 				metaData = new MetadataContainer();
 				wk.setMetadataContainer(metaData);
 			}
+			serviceBeforeInvocation = metaData.getService();
 			metaData.setService(service);
 			logger.info("Service added to the Worksheet.");
 
@@ -213,9 +217,14 @@ public class InvokeServiceCommand extends WorksheetSelectionCommand {
 			alignment.align();
 		AlignmentManager.Instance().addAlignmentToMap(alignmentId, alignment);
 		try {
+			// Revert the changes of the invocation to the worksheet
+			if (undoLog != null) {
+				undoLog.undo();
+				undoLog = null;
+				wk.getMetadataContainer().setService(serviceBeforeInvocation);
+			}
 			// Add the visualization update
-			workspace.getFactory().replaceWorksheet(worksheetId, worksheetBeforeInvocation);
-			c.add(new ReplaceWorksheetUpdate(worksheetId, worksheetBeforeInvocation));
+			c.add(new ReplaceWorksheetUpdate(worksheetId, wk));
 			c.add(new AlignmentSVGVisualizationUpdate(worksheetId));
 			c.append(WorksheetUpdateFactory.createRegenerateWorksheetUpdates(worksheetId, getSuperSelection(workspace)));
 			c.add(new SemanticTypesUpdate(wk, worksheetId));
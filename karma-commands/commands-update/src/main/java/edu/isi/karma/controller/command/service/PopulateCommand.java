@@ -32,8 +32,6 @@ import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.rits.cloning.Cloner;
-
 import edu.isi.karma.controller.command.CommandException;
 import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.command.WorksheetSelectionCommand;
@@ -49,6 +47,7 @@ import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNodePath;
 import edu.isi.karma.rep.Row;
 import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.WorksheetUndoLog;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.rep.alignment.LabeledLink;
 import edu.isi.karma.rep.alignment.Node;
@@ -62,7 +61,8 @@ import edu.isi.karma.webserver.KarmaException;
 public class PopulateCommand extends WorksheetSelectionCommand{
 
 
-	private Worksheet worksheetBeforeInvocation = null;
+	// the changes of the invocation to the worksheet
+	private WorksheetUndoLog undoLog = null;
 
 	// Logger object
 	private static Logger logger = LoggerFactory
@@ -100,10 +100,6 @@ public class PopulateCommand extends WorksheetSelectionCommand{
 		UpdateContainer c = new UpdateContainer();
 		Worksheet wk = workspace.getWorksheet(worksheetId);
 		SuperSelection selection = getSuperSelection(wk);
-		// Clone the worksheet just before the invocation
-		Cloner cloner = new Cloner();
-		this.worksheetBeforeInvocation = cloner.deepClone(wk);
-
 		AlignmentManager mgr = AlignmentManager.Instance();
 		String alignmentId = mgr.constructAlignmentId(workspace.getId(), worksheetId);
 		Alignment al = mgr.getAlignment(alignmentId);
@@ -176,7 +172,13 @@ public class PopulateCommand extends WorksheetSelectionCommand{
 			logger.info("Requesting data with includeURL=" + true + ",includeInput=" + true + ",includeOutput=" + true);
 			Table serviceTable = invocatioManager.getServiceData(false, false, true);
 //			logger.debug(serviceTable.getPrintInfo());
-			ServiceTableUtil.populateWorksheet(serviceTable, wk, workspace.getFactory(), selection);
+			undoLog = new WorksheetUndoLog(wk, workspace.getFactory());
+			undoLog.start();
+			try {
+				ServiceTableUtil.populateWorksheet(serviceTable, wk, workspace.getFactory(), selection);
+			} finally {
+				undoLog.stop();
+			}
 			logger.info("The service " + service.getUri() + " has been invoked successfully.");
 
 
@@ -257,16 +259,15 @@ public class PopulateCommand extends WorksheetSelectionCommand{
 	public UpdateContainer undoIt(Workspace workspace) {
 
 		UpdateContainer c = new UpdateContainer();
+		Worksheet wk = workspace.getWorksheet(worksheetId);
 		
-		// Create new vWorksheet using the new header order
-		List<HNodePath> columnPaths = new ArrayList<HNodePath>();
-		for (HNode node : worksheetBeforeInvocation.getHeaders().getSortedHNodes()) {
-			HNodePath path = new HNodePath(node);
-			columnPaths.add(path);
+		// Revert the changes of the invocation to the worksheet
+		if (undoLog != null) {
+			undoLog.undo();
+			undoLog = null;
 		}
-		workspace.getFactory().replaceWorksheet(this.worksheetId, this.worksheetBeforeInvocation);
 		
-		c.add(new ReplaceWorksheetUpdate(worksheetId, this.worksheetBeforeInvocation));
+		c.add(new ReplaceWorksheetUpdate(worksheetId, wk));
 		c.append(WorksheetUpdateFactory.createWorksheetHierarchicalAndCleaningResultsUpdates(worksheetId, getSuperSelection(workspace)));
 		
 		return c;	
@@ -68,4 +68,8 @@ public class AddColumnUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return 31 * newHNodeId.hashCode() + worksheetId.hashCode();
+	}
+
 }
@@ -30,9 +30,7 @@ import edu.isi.karma.view.VWorksheet;
 import edu.isi.karma.view.VWorkspace;
 import edu.isi.karma.view.ViewPreferences.ViewPreference;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,28 +66,24 @@ public class AdditionalRowsUpdate extends AbstractUpdate {
 		
 		WorksheetDataUpdate upd = new WorksheetDataUpdate(vWorksheet.getId(), selection);
 		
-		try {
-			JSONArray rowsJson = new JSONArray();
-			if(additionalRows.size()  > 0) {
-				Row row = additionalRows.get(0);
-				ArrayList<VHNode> nodeList = getNestedNodeList(row, vWorksheet.getHeaderViewNodes());
-				rowsJson = upd.getRowsJsonArray(additionalRows, vWorksheet, 
-							nodeList,
-							vWorkspace.getPreferences().getIntViewPreferenceValue(
-							ViewPreference.maxCharactersInCell));
-			}
-			JSONObject responseObj = new JSONObject();
-			responseObj.put(JsonKeys.tableId.name(), tableId);
-			responseObj.put(JsonKeys.rows.name(), rowsJson);
-			responseObj.put(JsonKeys.additionalRowsCount.name(), 
-					pager.getAdditionalRowsLeftCount());
-			responseObj.put(AbstractUpdate.GenericJsonKeys.updateType.name(), 
-					AdditionalRowsUpdate.class.getSimpleName());
-			
-			pw.print(responseObj.toString());
-		} catch (JSONException e) {
-			logger.error("Error creating additional rows update!", e);
+		JSONWriter writer = new JSONWriter(pw);
+		writer.object();
+		writer.key(JsonKeys.tableId.name()).value(tableId);
+		writer.key(JsonKeys.rows.name());
+		List<VHNode> nodeList = new ArrayList<VHNode>();
+		if(additionalRows.size()  > 0) {
+			Row row = additionalRows.get(0);
+			nodeList = getNestedNodeList(row, vWorksheet.getHeaderViewNodes());
 		}
+		upd.writeRows(writer, additionalRows, vWorksheet, 
+					nodeList,
+					vWorkspace.getPreferences().getIntViewPreferenceValue(
+					ViewPreference.maxCharactersInCell));
+		writer.key(JsonKeys.additionalRowsCount.name()).value( 
+				pager.getAdditionalRowsLeftCount());
+		writer.key(AbstractUpdate.GenericJsonKeys.updateType.name()).value( 
+				AdditionalRowsUpdate.class.getSimpleName());
+		writer.endObject();
 
 	}
 
@@ -77,4 +77,8 @@ public class CleaningResultUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return hNodeId.hashCode();
+	}
 }
@@ -82,4 +82,8 @@ public class FetchR2RMLUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return 31 * model_Names.hashCode() + model_Urls.hashCode();
+	}
 }
@@ -51,4 +51,8 @@ public class FetchResultUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return 31 * hNodeId.hashCode() + rawData.hashCode();
+	}
 }
@@ -89,4 +89,8 @@ public class NodeChangedUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return 31 * worksheetId.hashCode() + nodeId.hashCode();
+	}
 }
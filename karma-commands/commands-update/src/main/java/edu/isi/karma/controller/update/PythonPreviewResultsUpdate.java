@@ -67,4 +67,8 @@ public class PythonPreviewResultsUpdate extends AbstractUpdate{
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return 31 * errorValues.hashCode() + transformedRows.hashCode();
+	}
 }
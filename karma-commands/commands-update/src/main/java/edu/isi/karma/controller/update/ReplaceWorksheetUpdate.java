@@ -71,5 +71,9 @@ public class ReplaceWorksheetUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return 31 * worksheetBeforeInvocation.getId().hashCode() + worksheetId.hashCode();
+	}
+
 
 }
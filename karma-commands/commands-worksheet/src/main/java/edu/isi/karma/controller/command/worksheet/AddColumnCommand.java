@@ -22,7 +22,6 @@ package edu.isi.karma.controller.command.worksheet;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -164,13 +163,7 @@ public class AddColumnCommand extends WorksheetSelectionCommand {
 
 	private void populateRowsWithDefaultValues(Worksheet worksheet, RepFactory factory) {
 		SuperSelection selection = getSuperSelection(worksheet);
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(newHNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = worksheet.getHeaders().getLeafPath(newHNodeId);
 		Collection<Node> nodes = new ArrayList<Node>(Math.max(1000, worksheet.getDataTable().getNumRows()));
 		worksheet.getDataTable().collectNodes(selectedPath, nodes, selection);	
 		for (Node node : nodes) {
@@ -36,6 +36,12 @@ public class DeleteWorksheetCommand extends WorksheetCommand {
 		return CommandType.notUndoable;
 	}
 
+	@Override
+	public String getLockedWorksheetId() {
+		// removes the worksheet from the workspace
+		return null;
+	}
+
 	@Override
 	public UpdateContainer doIt(final Workspace workspace) throws CommandException {
 		boolean worksheetExists = false;
@@ -133,7 +133,6 @@ public class FoldCommand extends WorksheetSelectionCommand {
 		//System.out.println("HNodeID: " + htable.getHNodeIdFromColumnName("homeworks"));
 		//HNodeIds.add(htable.getHNodeIdFromColumnName("homeworks"));
 		
-		//HashValueManager.getHashValue(rows.get(0), HNodeIds);
 		//hnodes.add(htable.getHNode("HN5"));
 		//hnodes.add(htable.getHNode("HN7"));
 		JSONArray array = new JSONArray();
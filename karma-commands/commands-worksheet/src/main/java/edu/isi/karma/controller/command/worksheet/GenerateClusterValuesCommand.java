@@ -3,7 +3,6 @@ package edu.isi.karma.controller.command.worksheet;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 import org.apache.http.entity.StringEntity;
 import org.json.JSONArray;
@@ -61,17 +60,17 @@ public class GenerateClusterValuesCommand extends WorksheetSelectionCommand {
 		return CommandType.notInHistory;
 	}
 
+	@Override
+	public String getLockedWorksheetId() {
+		// creates the cluster worksheet
+		return null;
+	}
+
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
 		SuperSelection selection = getSuperSelection(worksheet);
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = worksheet.getHeaders().getLeafPath(hNodeId);
 		Collection<Node> nodes = new ArrayList<Node>();
 		workspace.getFactory().getWorksheet(worksheetId).getDataTable()
 				.collectNodes(selectedPath, nodes, selection);
@@ -34,6 +34,11 @@ public class GetAllWorksheetHeadersCommand extends WorksheetCommand {
 		return CommandType.notInHistory;
 	}
 
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		return new UpdateContainer(new AllWorksheetHeadersUpdate(worksheetId, false));
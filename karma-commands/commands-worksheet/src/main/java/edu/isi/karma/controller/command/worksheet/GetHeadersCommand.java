@@ -53,6 +53,11 @@ public class GetHeadersCommand extends WorksheetCommand {
 		return CommandType.notInHistory;
 	}
 
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
@@ -2,10 +2,10 @@ package edu.isi.karma.controller.command.worksheet;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -28,10 +28,10 @@ import edu.isi.karma.modeling.alignment.AlignmentManager;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNode.HNodeType;
 import edu.isi.karma.rep.HTable;
-import edu.isi.karma.rep.HashValueManager;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.RowGrouper;
 import edu.isi.karma.rep.Table;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
@@ -169,16 +169,6 @@ public class GroupByCommand extends WorksheetSelectionCommand {
 		HTable newht =  newws.getHeaders();
 		ArrayList<Row> rows = oldws.getDataTable().getRows(0, oldws.getDataTable().getNumRows(), selection);
 		HTable oldht =  oldws.getHeaders();
-		Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-		for (Row row : rows) {
-			String hashValue = HashValueManager.getHashValue(row, hnodeIDs);
-			ArrayList<String> ids = hash.get(hashValue);
-			if (ids == null)
-				ids = new ArrayList<String>();
-			ids.add(row.getId());
-			hash.put(hashValue, ids);
-			//System.out.println("Hash: " + HashValueManager.getHashValue(row, hnodeIDs));
-		}	
 		//HTable newKeyTable = newht.getHNodeFromColumnName("Keys").addNestedTable("Table for keys", newws, factory);
 		//newValueTable.addHNode("Values", newws, factory);
 		//HTable newValueNestedTable = newValueTable.getHNodeFromColumnName("Values").addNestedTable("Table for nested values", newws, factory);
@@ -186,15 +176,18 @@ public class GroupByCommand extends WorksheetSelectionCommand {
 		newht.addHNode("Values", HNodeType.Transformation, newws, factory);
 		HTable newValueTable = newht.getHNodeFromColumnName("Values").addNestedTable("Table for values", newws, factory);
 		CloneTableUtils.cloneHTable(oldht, newValueTable, newws, factory, valuehnodes, selection);
-		for (String key : hash.keySet()) {
-			//System.out.println("key: " + hash.get(key));
-			ArrayList<String> r = hash.get(key);
-			Row lastRow = CloneTableUtils.cloneDataTable(factory.getRow(r.get(0)), newws.getDataTable(), oldws.getHeaders(), newht, keyhnodes, factory, selection);
-			for (String rowid : r) {
-				Row cur = factory.getRow(rowid);
-				Table dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
-				CloneTableUtils.cloneDataTable(cur, dataTable, oldws.getHeaders(), newValueTable, valuehnodes, factory, selection);
+		// one pass: the first row of a group creates the row of the group
+		RowGrouper grouper = new RowGrouper(hnodeIDs);
+		Map<RowGrouper.Key, Table> groups = new HashMap<RowGrouper.Key, Table>();
+		for (Row row : rows) {
+			RowGrouper.Key key = grouper.getKey(row);
+			Table dataTable = groups.get(key);
+			if (dataTable == null) {
+				Row lastRow = CloneTableUtils.cloneDataTable(row, newws.getDataTable(), oldws.getHeaders(), newht, keyhnodes, factory, selection);
+				dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
+				groups.put(key, dataTable);
 			}
+			CloneTableUtils.cloneDataTable(row, dataTable, oldws.getHeaders(), newValueTable, valuehnodes, factory, selection);
 		}
 		newWorksheetId = newws.getId();
 		return newws;
@@ -223,6 +216,7 @@ public class GroupByCommand extends WorksheetSelectionCommand {
 		for (Entry<String, String> entry : CloneTableUtils.cloneHTable(ht, newValueTable, oldws, factory, valuehnodes, selection).entrySet()) {
 			outputColumns.add(entry.getValue());
 		}
+		RowGrouper grouper = new RowGrouper(hnodeIDs);
 		for (Row parentRow : parentRows) {
 			Table t = null;
 			for (Node node : parentRow.getNodes()) {
@@ -232,25 +226,17 @@ public class GroupByCommand extends WorksheetSelectionCommand {
 				}	
 			}
 			ArrayList<Row> rows = t.getRows(0, t.getNumRows(), selection);
-			Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
+			Node node = parentRow.getNeighbor(newNode.getId());
+			Map<RowGrouper.Key, Table> groups = new HashMap<RowGrouper.Key, Table>();
 			for (Row row : rows) {
-				String hashValue = HashValueManager.getHashValue(row, hnodeIDs);
-				ArrayList<String> ids = hash.get(hashValue);
-				if (ids == null)
-					ids = new ArrayList<String>();
-				ids.add(row.getId());
-				hash.put(hashValue, ids);
-			}	
-			
-			for (String key : hash.keySet()) {
-				ArrayList<String> r = hash.get(key);
-				Node node = parentRow.getNeighbor(newNode.getId());
-				Row lastRow = CloneTableUtils.cloneDataTable(factory.getRow(r.get(0)), node.getNestedTable(), ht, newht, keyhnodes, factory, selection);
-				for (String rowid : r) {
-					Row cur = factory.getRow(rowid);
-					Table dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
-					CloneTableUtils.cloneDataTable(cur, dataTable, ht, newValueTable, valuehnodes, factory, selection);
+				RowGrouper.Key key = grouper.getKey(row);
+				Table dataTable = groups.get(key);
+				if (dataTable == null) {
+					Row lastRow = CloneTableUtils.cloneDataTable(row, node.getNestedTable(), ht, newht, keyhnodes, factory, selection);
+					dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
+					groups.put(key, dataTable);
 				}
+				CloneTableUtils.cloneDataTable(row, dataTable, ht, newValueTable, valuehnodes, factory, selection);
 			}
 		}
 	}
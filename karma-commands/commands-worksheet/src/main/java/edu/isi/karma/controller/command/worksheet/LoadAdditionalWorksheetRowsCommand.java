@@ -59,6 +59,11 @@ public class LoadAdditionalWorksheetRowsCommand extends WorksheetSelectionComman
 		return CommandType.notInHistory;
 	}
 
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		SuperSelection selection = getSuperSelection(workspace);
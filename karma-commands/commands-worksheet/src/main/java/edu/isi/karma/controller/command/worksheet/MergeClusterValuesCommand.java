@@ -4,7 +4,6 @@ package edu.isi.karma.controller.command.worksheet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -59,18 +58,18 @@ public class MergeClusterValuesCommand extends WorksheetSelectionCommand {
 		return CommandType.undoable;
 	}
 
+	@Override
+	public String getLockedWorksheetId() {
+		// reads the cluster worksheet and changes the main worksheet
+		return null;
+	}
+
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		// TODO Auto-generated method stub
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
 		SuperSelection selection = getSuperSelection(worksheet);
-		HNodePath selectedPath = null;
-		List<HNodePath> columnPaths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : columnPaths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				selectedPath = path;
-			}
-		}
+		HNodePath selectedPath = worksheet.getHeaders().getLeafPath(hNodeId);
 		Collection<Node> nodes = new ArrayList<Node>();
 		workspace.getFactory().getWorksheet(worksheetId).getDataTable()
 				.collectNodes(selectedPath, nodes, selection);
@@ -94,13 +93,7 @@ public class MergeClusterValuesCommand extends WorksheetSelectionCommand {
 			
 			Worksheet mainWorksheet = workspace.getWorksheet(mainWorksheetId);
 
-			HNodePath mainSelectedPath = null;
-			List<HNodePath> mainColumnPaths = mainWorksheet.getHeaders().getAllPaths();
-			for (HNodePath path : mainColumnPaths) {
-				if (path.getLeaf().getId().equals(mainHNodeId)) {
-					mainSelectedPath = path;
-				}
-			}
+			HNodePath mainSelectedPath = mainWorksheet.getHeaders().getLeafPath(mainHNodeId);
 			Collection<Node> mainNodes = new ArrayList<Node>();
 			workspace.getFactory().getWorksheet(mainWorksheetId).getDataTable().collectNodes(mainSelectedPath, mainNodes, selection);
 			int i = 0;
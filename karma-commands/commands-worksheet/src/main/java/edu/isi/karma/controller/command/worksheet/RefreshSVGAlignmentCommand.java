@@ -40,7 +40,7 @@ public class RefreshSVGAlignmentCommand extends WorksheetCommand {
 	@Override
 	public UpdateContainer doIt(Workspace workspace) throws CommandException {
 		UpdateContainer container = new UpdateContainer();
-		container.add(new AlignmentSVGVisualizationUpdate(worksheetId));
+		container.add(new AlignmentSVGVisualizationUpdate(worksheetId, true));
 		return container;
 	}
 
@@ -2,10 +2,11 @@ package edu.isi.karma.controller.command.worksheet;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,10 +27,10 @@ import edu.isi.karma.modeling.alignment.AlignmentManager;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNode.HNodeType;
 import edu.isi.karma.rep.HTable;
-import edu.isi.karma.rep.HashValueManager;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.RowGrouper;
 import edu.isi.karma.rep.Table;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
@@ -192,6 +193,7 @@ public class UnfoldCommand extends WorksheetSelectionCommand {
 			outputColumns.add(entry.getValue());
 		}
 		List<Row> resultRows = new ArrayList<Row>();
+		RowGrouper grouper = new RowGrouper(hnodeIds);
 		for (Row parentRow: parentRows) {
 			Table t = null;
 			for (Node node : parentRow.getNodes()) {
@@ -200,51 +202,42 @@ public class UnfoldCommand extends WorksheetSelectionCommand {
 					break;
 				}	
 			}
-			Map<String, String> keyMapping = new HashMap<String, String>();
+			Set<String> keyValues = new LinkedHashSet<String>();
 			Map<String, String> HNodeidMapping = new HashMap<String, String>();
 			ArrayList<Row> rows = t.getRows(0, t.getNumRows(), selection);
 			for (Row row : rows) {
-				Node n = row.getNode(key.getId());
-				keyMapping.put(HashValueManager.getHashValue(oldws, n.getId(), factory), n.getValue().asString());
+				keyValues.add(row.getNode(key.getId()).getValue().asString());
 			}
-			for (String mapkey : keyMapping.keySet()) {
-				HNode hn = newHT.getHNodeFromColumnName(keyMapping.get(mapkey).toLowerCase().replace('/', '_'));
+			for (String keyValue : keyValues) {
+				HNode hn = newHT.getHNodeFromColumnName(keyValue.toLowerCase().replace('/', '_'));
 				if (hn == null) {
-					HNode n = newHT.addHNode(keyMapping.get(mapkey).toLowerCase().replace('/', '_'), HNodeType.Transformation, oldws, factory);
+					HNode n = newHT.addHNode(keyValue.toLowerCase().replace('/', '_'), HNodeType.Transformation, oldws, factory);
 					outputColumns.add(n.getId());
 					HTable htt = n.addNestedTable("values", oldws, factory);
 					outputColumns.add(htt.addHNode("Values", HNodeType.Transformation, oldws, factory).getId());
-					HNodeidMapping.put(keyMapping.get(mapkey), n.getId());
+					HNodeidMapping.put(keyValue, n.getId());
 				}
 				else
-					HNodeidMapping.put(keyMapping.get(mapkey), hn.getId());
-			}
-			Map<String, ArrayList<String>> hash = new HashMap<String, ArrayList<String>>();
-			for (Row row : rows) {
-				String hashValue = HashValueManager.getHashValue(row, hnodeIds);
-				ArrayList<String> ids = hash.get(hashValue);
-				if (ids == null)
-					ids = new ArrayList<String>();
-				ids.add(row.getId());
-				hash.put(hashValue, ids);
-				//System.out.println("Hash: " + HashValueManager.getHashValue(row, hnodeIDs));
+					HNodeidMapping.put(keyValue, hn.getId());
 			}
 
-			for (String hashKey : hash.keySet()) {
-				ArrayList<String> r = hash.get(hashKey);
-				Node node = parentRow.getNeighbor(newNode.getId());
-				Row lastRow = CloneTableUtils.cloneDataTable(factory.getRow(r.get(0)), node.getNestedTable(), 
-						parentHT, newHT, hnodes, factory, selection);
-				for (String rowid : r) {
-					Row cur = factory.getRow(rowid);
-					String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
-					Node newnode = lastRow.getNode(newId);
-					Node oldnode = cur.getNode(value.getId());
-					Row tmprow = newnode.getNestedTable().addRow(factory);
-					tmprow.getNeighborByColumnName("Values", factory).setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
-					//newnode.setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
+			// one pass: the first row of a group creates the row of the group
+			Node node = parentRow.getNeighbor(newNode.getId());
+			Map<RowGrouper.Key, Row> groups = new HashMap<RowGrouper.Key, Row>();
+			for (Row cur : rows) {
+				RowGrouper.Key groupKey = grouper.getKey(cur);
+				Row lastRow = groups.get(groupKey);
+				if (lastRow == null) {
+					lastRow = CloneTableUtils.cloneDataTable(cur, node.getNestedTable(), 
+							parentHT, newHT, hnodes, factory, selection);
+					groups.put(groupKey, lastRow);
+					resultRows.add(lastRow);
 				}
-				resultRows.add(lastRow);
+				String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
+				Node newnode = lastRow.getNode(newId);
+				Node oldnode = cur.getNode(value.getId());
+				Row tmprow = newnode.getNestedTable().addRow(factory);
+				tmprow.getNeighborByColumnName("Values", factory).setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
 			}
 		}
 		for (Row tmpRow : resultRows) {
@@ -278,43 +271,36 @@ public class UnfoldCommand extends WorksheetSelectionCommand {
 			}
 		}
 		CloneTableUtils.cloneHTable(oldws.getHeaders(), newws.getHeaders(), newws, factory, hnodes, selection);
-		Map<String, String> keyMapping = new HashMap<String, String>();
+		Set<String> keyValues = new LinkedHashSet<String>();
 		Map<String, String> HNodeidMapping = new HashMap<String, String>();
 		for (Row row : rows) {
-			Node n = row.getNode(key.getId());
-			keyMapping.put(HashValueManager.getHashValue(oldws, n.getId(), factory), n.getValue().asString());
+			keyValues.add(row.getNode(key.getId()).getValue().asString());
 		}
-		for (String mapkey : keyMapping.keySet()) {
-			HNode n = newws.getHeaders().addHNode(keyMapping.get(mapkey), HNodeType.Transformation, newws, factory);
+		for (String keyValue : keyValues) {
+			HNode n = newws.getHeaders().addHNode(keyValue, HNodeType.Transformation, newws, factory);
 			HTable ht = n.addNestedTable("values", newws, factory);
 			ht.addHNode("Values", HNodeType.Transformation, newws, factory);
-			HNodeidMapping.put(keyMapping.get(mapkey), n.getId());
+			HNodeidMapping.put(keyValue, n.getId());
 		}
 
-		Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-		for (Row row : rows) {
-			String hashValue = HashValueManager.getHashValue(row, hnodeIds);
-			ArrayList<String> ids = hash.get(hashValue);
-			if (ids == null)
-				ids = new ArrayList<String>();
-			ids.add(row.getId());
-			hash.put(hashValue, ids);
-		}
+		// one pass: the first row of a group creates the row of the group
+		RowGrouper grouper = new RowGrouper(hnodeIds);
+		Map<RowGrouper.Key, Row> groups = new HashMap<RowGrouper.Key, Row>();
 		List<Row> resultRows = new ArrayList<Row>();
-		for (String hashKey : hash.keySet()) {
-			ArrayList<String> r = hash.get(hashKey);
-			Row lastRow = CloneTableUtils.cloneDataTable(factory.getRow(r.get(0)), newws.getDataTable(), 
-					oldws.getHeaders(), newws.getHeaders(), hnodes, factory, selection);
-			for (String rowid : r) {
-				Row cur = factory.getRow(rowid);
-				String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
-				Node newnode = lastRow.getNode(newId);
-				Node oldnode = cur.getNode(value.getId());
-				Row tmprow = newnode.getNestedTable().addRow(factory);
-				tmprow.getNeighborByColumnName("Values", factory).setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
-				//newnode.setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
+		for (Row cur : rows) {
+			RowGrouper.Key groupKey = grouper.getKey(cur);
+			Row lastRow = groups.get(groupKey);
+			if (lastRow == null) {
+				lastRow = CloneTableUtils.cloneDataTable(cur, newws.getDataTable(), 
+						oldws.getHeaders(), newws.getHeaders(), hnodes, factory, selection);
+				groups.put(groupKey, lastRow);
+				resultRows.add(lastRow);
 			}
-			resultRows.add(lastRow);
+			String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
+			Node newnode = lastRow.getNode(newId);
+			Node oldnode = cur.getNode(value.getId());
+			Row tmprow = newnode.getNestedTable().addRow(factory);
+			tmprow.getNeighborByColumnName("Values", factory).setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
 		}
 		for (Row tmpRow : resultRows) {
 			for (Node node : tmpRow.getNodes()) {
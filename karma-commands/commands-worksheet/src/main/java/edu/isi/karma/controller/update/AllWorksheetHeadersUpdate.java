@@ -96,4 +96,8 @@ public class AllWorksheetHeadersUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
+
 }
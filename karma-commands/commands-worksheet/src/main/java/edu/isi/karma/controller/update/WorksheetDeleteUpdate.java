@@ -52,5 +52,9 @@ public class WorksheetDeleteUpdate extends AbstractUpdate {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
 	
 }
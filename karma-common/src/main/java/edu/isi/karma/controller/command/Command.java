@@ -167,6 +167,24 @@ public abstract class Command extends Entity implements ICommand
 		return tags;
 	}
 
+	/**
+	 * @return the worksheet that the command reads or changes, or null if the
+	 *         command may touch several worksheets. Commands on different
+	 *         worksheets run concurrently, commands without a worksheet run
+	 *         alone in the workspace.
+	 */
+	public String getLockedWorksheetId() {
+		return null;
+	}
+
+	/**
+	 * @return true if the command does not change its worksheet, so that it can
+	 *         run concurrently with other read only commands on the worksheet.
+	 */
+	public boolean isReadOnly() {
+		return false;
+	}
+
 	@Override
 	public boolean appendToHistory() {
 		return appendToHistory;
@@ -29,12 +29,17 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.util.IndexSubclasses;
 import edu.isi.karma.webserver.KarmaException;
 
 /**
+ * The factories are listed at compile time, they must be public and have a
+ * public no-arg constructor to be found.
+ * 
  * @author szekely
  * 
  */
+@IndexSubclasses
 public abstract class CommandFactory {
 
 	public abstract Command createCommand(HttpServletRequest request,
@@ -122,6 +122,7 @@ public class LargeSelection extends Selection {
 		selectedRowsColumns.clear();
 		populateSelection();
 		this.status = SelectionStatus.UP_TO_DATE;
+		selectionChanged();
 		
 	}
 
@@ -15,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.er.helper.CloneTableUtils;
 import edu.isi.karma.er.helper.PythonRepository;
+import edu.isi.karma.er.helper.PythonRowAccessor;
 import edu.isi.karma.er.helper.PythonTransformationHelper;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.Row;
@@ -26,6 +27,7 @@ public class MiniSelection extends Selection {
 
 	private String pythonCode;
 	private boolean onError;
+	private PythonRowAccessor rowAccessor;
 	private static Logger logger = LoggerFactory
 			.getLogger(MiniSelection.class);
 
@@ -42,6 +44,7 @@ public class MiniSelection extends Selection {
 		if (this.status == SelectionStatus.UP_TO_DATE)
 			return;
 		evalColumns.clear();
+		rowAccessor = new PythonRowAccessor(workspace.getFactory());
 		String transformId = Thread.currentThread().getName() + this.superSelectionName;
 		for (Entry<Row, Boolean> entry : this.selectedRowsCache.entrySet()) {
 			Row key = entry.getKey();
@@ -53,6 +56,7 @@ public class MiniSelection extends Selection {
 			}
 		}
 		this.status = SelectionStatus.UP_TO_DATE;
+		selectionChanged();
 	}
 
 	public void addInputColumns(String hNodeId) {
@@ -67,6 +71,7 @@ public class MiniSelection extends Selection {
 		PythonRepository repo = PythonRepository.getInstance();
 		PythonInterpreter interpreter = repo.interpreter;
 		repo.initializeInterperter(interpreter);
+		rowAccessor = new PythonRowAccessor(workspace.getFactory());
 		PyCode code = null;
 		try {
 			code = getCompiledCode(pythonCode, interpreter, selectionId);
@@ -92,10 +97,13 @@ public class MiniSelection extends Selection {
 			ArrayList<Node> nodes = new ArrayList<Node>(r.getNodes());
 			Node node = nodes.get(0);
 			interpreter.getLocals().__setitem__("nodeid", new PyString(node.getId()));
+			rowAccessor.setNode(node);
 			PyObject output = interpreter.eval(code);
 			return PythonTransformationHelper.getPyObjectValueAsBoolean(output);
 		}catch(Exception e) {
 			return onError;
+		} finally {
+			evalColumns.addAll(rowAccessor.getInputColumns());
 		}
 
 	}
@@ -122,6 +130,7 @@ public class MiniSelection extends Selection {
 		locals.__setitem__("workspaceid", new PyString(workspace.getId()));
 		locals.__setitem__("selectionName", new PyString(superSelectionName));
 		locals.__setitem__("command", Py.java2py(this));
+		locals.__setitem__("rowaccessor", Py.java2py(rowAccessor));
 		return repo.getSelectionCode();
 	}	
 
@@ -36,6 +36,7 @@ public abstract class Selection {
 	protected Set<String> selectedRowsColumns;
 	protected String superSelectionName;
 	protected boolean hasSelectedRowsMethod;
+	private int version;
 	Selection(Workspace workspace, String worksheetId, 
 			String hTableId, String name, String superSelectionName) {
 		this.worksheetId = worksheetId;
@@ -103,6 +104,17 @@ public abstract class Selection {
 	
 	public abstract void updateSelection();
 	
+	/**
+	 * @return a number that changes every time the selected rows are recomputed
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	protected void selectionChanged() {
+		version++;
+	}
+	
 	public Set<String> getInputColumns() {
 		return new HashSet<String>(evalColumns);
 	}
@@ -10,6 +10,8 @@ import edu.isi.karma.rep.Row;
 public class SuperSelection {
 	private Set<Selection> selections;
 	private String name;
+	private long modCount;
+	private long removedVersions;
 	
 	public SuperSelection(String name) {
 		selections = new HashSet<Selection>();
@@ -17,7 +19,8 @@ public class SuperSelection {
 	}
 
 	public void addSelection(Selection sel) {
-		selections.add(sel);
+		if (selections.add(sel))
+			modCount++;
 	}
 
 	public RowStatus getSelectedStatus(Row row) {
@@ -61,7 +64,28 @@ public class SuperSelection {
 	}
 
 	public void removeSelection(Selection sel) {
-		selections.remove(sel);
+		if (selections.remove(sel)) {
+			modCount++;
+			if (sel != null)
+				removedVersions += sel.getVersion();
+		}
+	}
+	
+	public boolean isEmpty() {
+		return selections.isEmpty();
+	}
+	
+	/**
+	 * @return a number that grows every time a selection is added, removed or 
+	 * recomputed, so that the rows it selects can be cached until it changes
+	 */
+	public long getVersion() {
+		long version = modCount + removedVersions;
+		for (Selection sel : selections) {
+			if (sel != null)
+				version += sel.getVersion();
+		}
+		return version;
 	}
 	
 	public Selection getSelection(String hTableId) {
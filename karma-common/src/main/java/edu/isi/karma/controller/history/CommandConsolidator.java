@@ -3,6 +3,9 @@ import java.util.List;
 
 import edu.isi.karma.controller.command.Command;
 import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.util.IndexSubclasses;
+
+@IndexSubclasses
 public abstract class CommandConsolidator {
 	public abstract List<Command> consolidateCommand(List<Command> commands, Workspace workspace);
 }
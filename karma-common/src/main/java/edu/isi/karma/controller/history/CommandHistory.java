@@ -32,6 +32,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -90,7 +92,7 @@ public class CommandHistory {
 
 	private final Logger logger = LoggerFactory.getLogger(this.getClass().getSimpleName());
 
-	private static HashMap<String, IHistorySaver> historySavers = new HashMap<>();
+	private static Map<String, IHistorySaver> historySavers = new ConcurrentHashMap<>();
 
 	public enum HistoryArguments {
 		worksheetId, commandName, inputParameters, hNodeId, tags
@@ -109,19 +111,19 @@ public class CommandHistory {
 		}
 	}
 
-	public boolean isUndoEnabled() {
+	public synchronized boolean isUndoEnabled() {
 		return !history.isEmpty();
 	}
 
-	public boolean isRedoEnabled() {
+	public synchronized boolean isRedoEnabled() {
 		return !redoStack.isEmpty();
 	}
 
-	public List<ICommand> _getHistory() {
+	public synchronized List<ICommand> _getHistory() {
 		return history;
 	}
 
-	public List<ICommand> _getRedoStack() {
+	public synchronized List<ICommand> _getRedoStack() {
 		List<ICommand> commands = new ArrayList<ICommand>();
 		for (RedoCommandObject obj : redoStack) {
 			commands.add(obj.command);
@@ -129,7 +131,7 @@ public class CommandHistory {
 		return commands;
 	}
 
-	public CommandHistory clone() {
+	public synchronized CommandHistory clone() {
 		return new CommandHistory(history, redoStack);
 	}
 
@@ -155,7 +157,15 @@ public class CommandHistory {
 		effects.append(command.doIt(workspace));
 		command.setExecuted(true);
 
+		// Commands on different worksheets run concurrently, only the
+		// bookkeeping of the history is serialized.
+		synchronized (this) {
+			recordCommand(command, workspace, saveToHistory, effects);
+		}
+		return effects;
+	}
 
+	private void recordCommand(Command command, Workspace workspace, boolean saveToHistory, UpdateContainer effects) {
 		if (command.getCommandType() != CommandType.notInHistory) {
 			redoStack.clear();
 
@@ -172,41 +182,51 @@ public class CommandHistory {
 		if(saveToHistory) {
 			// Save the modeling commands
 			if (!(instanceOf(command, "ResetKarmaCommand"))) {
-				try {
-					if(isHistoryWriteEnabled && command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
-							|| command.hasTag(CommandTag.Transformation)) && historySavers.get(workspace.getId()) != null) {
-						writeHistoryPerWorksheet(workspace, historySavers.get(workspace.getId()));
-					}
-				} catch (Exception e) {
-					logger.error("Error occured while writing history!" , e);
-					e.printStackTrace();
-				}
+				scheduleHistorySave(workspace, command);
 			}
 		}
-		return effects;
 	}
 
-	private void writeHistoryPerWorksheet(Workspace workspace, IHistorySaver historySaver) throws Exception {
-		String workspaceId = workspace.getId();
-		HashMap<String, JSONArray> comMap = new HashMap<String, JSONArray>();
-		for(ICommand command : history) {
-			if(command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
-					|| command.hasTag(CommandTag.Transformation))) {
-				JSONArray json = new JSONArray(command.getInputParameterJson());
-				String worksheetId = HistoryJsonUtil.getStringValue(HistoryArguments.worksheetId.name(), json);
-				if(workspace.getWorksheet(worksheetId) != null)
-				{ 
-					if(comMap.get(worksheetId) == null)
-						comMap.put(worksheetId, new JSONArray());
-					comMap.get(worksheetId).put(getCommandJSON(workspace, command));
-				}
-			}
+	/**
+	 * Schedules the save of the history of the worksheet of a modeling or
+	 * transformation command. The history is saved in the background by the
+	 * {@link HistoryAutoSaver}.
+	 */
+	private void scheduleHistorySave(Workspace workspace, ICommand command) {
+		if(isHistoryWriteEnabled && isSavedInWorksheetHistory(command) && historySavers.get(workspace.getId()) != null) {
+			String worksheetId = getWorksheetId(command);
+			if (worksheetId != null)
+				HistoryAutoSaver.getInstance().worksheetChanged(workspace, worksheetId);
+		}
+	}
+
+	private boolean isSavedInWorksheetHistory(ICommand command) {
+		return command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
+				|| command.hasTag(CommandTag.Transformation));
+	}
+
+	private String getWorksheetId(ICommand command) {
+		try {
+			JSONArray json = new JSONArray(command.getInputParameterJson());
+			return HistoryJsonUtil.getStringValue(HistoryArguments.worksheetId.name(), json);
+		} catch (Exception e) {
+			logger.debug("No worksheet in the input parameters of " + command.getCommandName());
+			return null;
 		}
+	}
 
-		for(String worksheetId : comMap.keySet()) {
-			JSONArray comms = comMap.get(worksheetId);
-			historySaver.saveHistory(workspaceId, worksheetId, comms);
+	/**
+	 * @return the modeling and transformation commands of the worksheet, in
+	 *         the format of the history files.
+	 */
+	public synchronized JSONArray getWorksheetHistoryJSON(Workspace workspace, String worksheetId) {
+		JSONArray comms = new JSONArray();
+		for(ICommand command : history) {
+			if(isSavedInWorksheetHistory(command) && worksheetId.equals(getWorksheetId(command))) {
+				comms.put(getCommandJSON(workspace, command));
+			}
 		}
+		return comms;
 	}
 
 
@@ -361,7 +381,7 @@ public class CommandHistory {
 	 * @return the effects of the undone or redone commands.
 	 * @throws CommandException
 	 */
-	public UpdateContainer undoOrRedoCommandsUntil(Workspace workspace,
+	public synchronized UpdateContainer undoOrRedoCommandsUntil(Workspace workspace,
 			String commandId) throws CommandException {
 		List<ICommand> commandsToUndo = getCommandsUntil(history, commandId);
 		if (!commandsToUndo.isEmpty()) {
@@ -393,6 +413,7 @@ public class CommandHistory {
 			history.remove(c);
 			redoStack.add(new RedoCommandObject(c, getCommandJSON(workspace, c)));
 			effects.append(c.undoIt(workspace));
+			scheduleHistorySave(workspace, c);
 		}
 		return effects;
 	}
@@ -427,9 +448,11 @@ public class CommandHistory {
 					Command comm = cf.createCommand(inputParamArr, workspace);
 					effects.append(comm.doIt(workspace));
 					history.add(comm);
+					scheduleHistorySave(workspace, comm);
 				}catch(Exception e) {
 					history.add(rco.command);
 					effects.append(rco.command.doIt(workspace));
+					scheduleHistorySave(workspace, rco.command);
 				}
 				
 			}
@@ -495,7 +518,7 @@ public class CommandHistory {
 		}
 	}
 
-	public void generateFullHistoryJson(String prefix, PrintWriter pw,
+	public synchronized void generateFullHistoryJson(String prefix, PrintWriter pw,
 			VWorkspace vWorkspace) {
 		Iterator<ICommand> histIt = history.iterator();
 		while (histIt.hasNext()) {
@@ -516,7 +539,7 @@ public class CommandHistory {
 	}
 
 
-	public void removeCommands(Workspace workspace, String worksheetId) {
+	public synchronized void removeCommands(Workspace workspace, String worksheetId) {
 		List<ICommand> commandsToBeRemoved = new ArrayList<ICommand>();
 		ListIterator<ICommand> commandItr = history.listIterator(history.size());
 		while(commandItr.hasPrevious()) {
@@ -540,7 +563,7 @@ public class CommandHistory {
 		history.removeAll(commandsToBeRemoved);
 	}
 
-	public void removeCommands(String worksheetId) {
+	public synchronized void removeCommands(String worksheetId) {
 		List<ICommand> commandsFromWorksheet = new ArrayList<ICommand>();
 		for(ICommand command: history) {
 			try {
@@ -560,7 +583,7 @@ public class CommandHistory {
 		history.removeAll(commandsFromWorksheet);
 	}
 
-	public List<Command> getCommandsFromWorksheetId(String worksheetId) {
+	public synchronized List<Command> getCommandsFromWorksheetId(String worksheetId) {
 		List<Command> commandsFromWorksheet = new ArrayList<Command>();
 		for(ICommand command: history) {
 			if(command instanceof Command && command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
@@ -574,7 +597,7 @@ public class CommandHistory {
 		return commandsFromWorksheet;
 	}
 
-	public ICommand getCommand(String commandId)
+	public synchronized ICommand getCommand(String commandId)
 	{
 		for(ICommand  c: this.history)
 		{
@@ -587,7 +610,7 @@ public class CommandHistory {
 
 	}
 
-	public List<ICommand> getCommands(CommandTag tag) {
+	public synchronized List<ICommand> getCommands(CommandTag tag) {
 		List<ICommand> retCommands = new ArrayList<ICommand>();
 		for(ICommand command: history) {
 			if(command.hasTag(tag))
@@ -596,11 +619,11 @@ public class CommandHistory {
 		return retCommands;
 	}
 
-	public void addPreviewCommand(Command c) {
+	public synchronized void addPreviewCommand(Command c) {
 		previewCommand = c;
 	}
 
-	public Command getPreviewCommand(String commandId) {
+	public synchronized Command getPreviewCommand(String commandId) {
 		if (previewCommand.getId().equals(commandId))
 			return previewCommand;
 		return null;
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.controller.history;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.webserver.ExecutionController;
+import edu.isi.karma.webserver.WorkspaceRegistry;
+
+/**
+ * Saves the history of the worksheets in the background. A worksheet is saved
+ * once no command changed it for {@link #DEFAULT_DELAY_MILLIS}, so a burst of
+ * commands is saved once, and only the worksheets that changed are saved.
+ * <p>
+ * The history of a worksheet is saved while holding the read lock of the
+ * worksheet in its {@link ExecutionController}, so that it matches the
+ * worksheet and its alignment. Readers of the history files call
+ * {@link #flush(String, String)} first, to save the pending changes.
+ */
+public class HistoryAutoSaver {
+
+	private static Logger logger = LoggerFactory.getLogger(HistoryAutoSaver.class);
+
+	public static final long DEFAULT_DELAY_MILLIS = 1000;
+	/**
+	 * A worksheet that keeps changing is saved at least this often.
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 10 * DEFAULT_DELAY_MILLIS;
+
+	private static final HistoryAutoSaver instance = new HistoryAutoSaver(DEFAULT_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+
+	private final long delayMillis;
+	private final long maxDelayMillis;
+	private final ScheduledThreadPoolExecutor executor;
+	private final ConcurrentMap<String, PendingSave> pendingSaves = new ConcurrentHashMap<String, PendingSave>();
+
+	private class PendingSave implements Runnable {
+		final String key;
+		final Workspace workspace;
+		final String worksheetId;
+		final long firstChange;
+		volatile long lastChange;
+
+		PendingSave(String key, Workspace workspace, String worksheetId) {
+			this.key = key;
+			this.workspace = workspace;
+			this.worksheetId = worksheetId;
+			this.firstChange = this.lastChange = System.currentTimeMillis();
+		}
+
+		@Override
+		public void run() {
+			long now = System.currentTimeMillis();
+			long wait = Math.min(lastChange + delayMillis, firstChange + maxDelayMillis) - now;
+			if (wait > 0 && !executor.isShutdown()) {
+				executor.schedule(this, wait, TimeUnit.MILLISECONDS);
+				return;
+			}
+			save(this);
+		}
+	}
+
+	public HistoryAutoSaver(long delayMillis, long maxDelayMillis) {
+		this.delayMillis = delayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HistoryAutoSaver");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// the pending saves are written by shutdown()
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	public static HistoryAutoSaver getInstance() {
+		return instance;
+	}
+
+	private static String key(String workspaceId, String worksheetId) {
+		return workspaceId + ":" + worksheetId;
+	}
+
+	/**
+	 * Schedules the save of the history of the worksheet. Called after the
+	 * command that changed the worksheet is added to the history.
+	 */
+	public void worksheetChanged(Workspace workspace, String worksheetId) {
+		String key = key(workspace.getId(), worksheetId);
+		PendingSave pendingSave = pendingSaves.get(key);
+		if (pendingSave != null) {
+			pendingSave.lastChange = System.currentTimeMillis();
+			return;
+		}
+		pendingSave = new PendingSave(key, workspace, worksheetId);
+		if (pendingSaves.putIfAbsent(key, pendingSave) != null) {
+			worksheetChanged(workspace, worksheetId);
+			return;
+		}
+		if (executor.isShutdown())
+			save(pendingSave);
+		else
+			executor.schedule(pendingSave, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Saves the history of the worksheet now, if it changed since it was last
+	 * saved.
+	 */
+	public void flush(String workspaceId, String worksheetId) {
+		PendingSave pendingSave = pendingSaves.get(key(workspaceId, worksheetId));
+		if (pendingSave != null)
+			save(pendingSave);
+	}
+
+	/**
+	 * Stops the background saves and saves the worksheets that changed,
+	 * giving up after the timeout.
+	 */
+	public void shutdown(long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		executor.shutdown();
+		try {
+			executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+			Thread flusher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (PendingSave pendingSave : new ArrayList<PendingSave>(pendingSaves.values()))
+						save(pendingSave);
+				}
+			}, "HistoryAutoSaver-shutdown");
+			flusher.setDaemon(true);
+			flusher.start();
+			flusher.join(Math.max(1, deadline - System.currentTimeMillis()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!pendingSaves.isEmpty())
+			logger.warn("The history of " + pendingSaves.size() + " worksheets was not saved before shutdown");
+	}
+
+	private void save(final PendingSave pendingSave) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				// Commands change the history while holding the write lock of
+				// the worksheet, so the changes before this point are saved
+				// and the later ones schedule a new save.
+				if (pendingSaves.remove(pendingSave.key, pendingSave))
+					writeHistory(pendingSave.workspace, pendingSave.worksheetId);
+			}
+		};
+		ExecutionController ctrl = WorkspaceRegistry.getInstance().getExecutionController(pendingSave.workspace.getId());
+		if (ctrl != null && ctrl.getWorkspace() == pendingSave.workspace)
+			ctrl.runWithWorksheetReadLock(pendingSave.worksheetId, task);
+		else
+			task.run();
+	}
+
+	private void writeHistory(Workspace workspace, String worksheetId) {
+		IHistorySaver historySaver = CommandHistory.getHistorySaver(workspace.getId());
+		if (historySaver == null || workspace.getWorksheet(worksheetId) == null)
+			return;
+		try {
+			long start = System.currentTimeMillis();
+			JSONArray history = workspace.getCommandHistory().getWorksheetHistoryJSON(workspace, worksheetId);
+			synchronized (historySaver) {
+				historySaver.saveHistory(workspace.getId(), worksheetId, history);
+			}
+			logger.debug("Saved the history of " + worksheetId + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		} catch (Exception e) {
+			logger.error("Error occured while writing history!" , e);
+		}
+	}
+}
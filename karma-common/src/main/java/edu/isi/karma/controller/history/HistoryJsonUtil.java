@@ -62,6 +62,7 @@ public class HistoryJsonUtil {
 	}
 	
 	public static boolean historyExists(String workspaceId, String worksheetId) {
+		HistoryAutoSaver.getInstance().flush(workspaceId, worksheetId);
 		String filename = CommandHistory.getHistorySaver(workspaceId).getHistoryFilepath(worksheetId);
 		File file = new File(filename);
 		return file.exists();
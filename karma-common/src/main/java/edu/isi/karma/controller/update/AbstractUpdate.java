@@ -29,6 +29,10 @@ import edu.isi.karma.view.VWorkspace;
 
 /**
  * All update classes must inherit from this class.
+ * <p>
+ * An update replaces the equal updates already in an {@link UpdateContainer}
+ * it is appended to. Updates that override equals must override hashCode too,
+ * as the container looks them up in a hash set.
  * 
  * @author szekely
  * 
@@ -68,4 +68,8 @@ public class HistoryAddCommandUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return command.hashCode();
+	}
+
 }
@@ -69,4 +69,8 @@ public class HistoryUpdate extends AbstractUpdate {
 		return false;
 	}
 
+	public int hashCode() {
+		return HistoryUpdate.class.hashCode();
+	}
+
 }
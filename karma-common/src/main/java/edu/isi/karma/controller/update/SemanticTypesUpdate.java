@@ -271,6 +271,10 @@ public class SemanticTypesUpdate extends AbstractUpdate {
 		return false;
 		
 	}
+
+	public int hashCode() {
+		return worksheetId.hashCode();
+	}
 	
 	private class SemanticTypeNode {
 		private String id;
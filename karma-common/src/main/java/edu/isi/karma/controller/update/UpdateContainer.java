@@ -25,6 +25,7 @@ package edu.isi.karma.controller.update;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -59,17 +60,17 @@ public class UpdateContainer {
 		updates.add(update);
 	}
 
+	/**
+	 * Adds the updates of the container at the end, removing the updates
+	 * they replace.
+	 */
 	public void append(UpdateContainer updateContainer) {
-		Set<AbstractUpdate> needToDeleted = new HashSet<AbstractUpdate>();
-		for (AbstractUpdate update : updateContainer.updates) {
-			for (AbstractUpdate update2 : updates) {
-				if (update2.equals(update)) {
-					needToDeleted.add(update2);
-					break;
-				}
-			}
+		Set<AbstractUpdate> replacements = new HashSet<AbstractUpdate>(updateContainer.updates);
+		Iterator<AbstractUpdate> it = updates.iterator();
+		while (it.hasNext()) {
+			if (replacements.contains(it.next()))
+				it.remove();
 		}
-		updates.removeAll(needToDeleted);
 		updates.addAll(updateContainer.updates);
 	}
 
@@ -110,14 +111,26 @@ public class UpdateContainer {
 		}
 	}
 
+	/**
+	 * Writes the JSON to the writer as it is generated, without holding it in
+	 * memory.
+	 * 
+	 * @param writer
+	 * @param vWorkspace
+	 */
+	public void generateJson(Writer writer, VWorkspace vWorkspace) {
+		PrintWriter pw = new PrintWriter(writer);
+		generateJson("", pw, vWorkspace);
+		pw.flush();
+	}
+
 	/**
 	 * @param vWorkspace
 	 * @return the JSON as a String.
 	 */
 	public String generateJson(VWorkspace vWorkspace) {
 		StringWriter sw = new StringWriter();
-		PrintWriter pw = new PrintWriter(sw);
-		generateJson("", pw, vWorkspace);
+		generateJson(sw, vWorkspace);
 		return sw.toString();
 	}
 }
@@ -97,4 +97,8 @@ public class WorksheetListUpdate extends AbstractUpdate {
 			return true;
 		return false;
 	}
+
+	public int hashCode() {
+		return WorksheetListUpdate.class.hashCode();
+	}
 }
\ No newline at end of file
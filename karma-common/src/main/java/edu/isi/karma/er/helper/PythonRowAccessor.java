@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.er.helper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.isi.karma.rep.CellValue;
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
+
+/**
+ * The row a Python transformation or selection is evaluated on, for the
+ * getValue(), isEmpty() and getRowIndex() functions of
+ * {@link PythonTransformationHelper}. A command creates one accessor, binds
+ * it to each node with {@link #setNode(Node)} and hands it to the
+ * interpreter as the <code>rowaccessor</code> local.
+ * <p>
+ * A column name is looked up in the headers of the table of the row and then
+ * of the tables that contain it, as {@link Row#getNeighborByColumnName}
+ * does, but only the first time it is used from a table: the accessor
+ * remembers in which table and HNode it found it. The accessor is not
+ * thread safe, and must not outlive the command, as the columns may change.
+ */
+public class PythonRowAccessor {
+
+	/**
+	 * A column found in the table of the row, or levelsUp tables above it.
+	 */
+	private static class ColumnRef {
+		private final int levelsUp;
+		private final String hNodeId;
+
+		private ColumnRef(int levelsUp, String hNodeId) {
+			this.levelsUp = levelsUp;
+			this.hNodeId = hNodeId;
+		}
+	}
+
+	private static final ColumnRef NOT_FOUND = new ColumnRef(-1, null);
+
+	private final RepFactory factory;
+	// hTableId -> column name -> column
+	private final Map<String, Map<String, ColumnRef>> columns = new HashMap<String, Map<String, ColumnRef>>();
+	private final Set<String> inputColumns = new HashSet<String>();
+	private Node node;
+	private Row row;
+
+	public PythonRowAccessor(RepFactory factory) {
+		this.factory = factory;
+	}
+
+	public void setNode(Node node) {
+		this.node = node;
+		this.row = node.getBelongsToRow();
+	}
+
+	public Node getNode() {
+		return node;
+	}
+
+	public RepFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * @return the ids of the HNodes of the columns read through the accessor.
+	 */
+	public Set<String> getInputColumns() {
+		return inputColumns;
+	}
+
+	public int getRowIndex() {
+		return node.getRowIndex();
+	}
+
+	/**
+	 * @return the node of the column in the row, or in a row that contains it,
+	 *         or null if there is no such column.
+	 */
+	public Node getNeighbor(String columnName) {
+		ColumnRef ref = resolve(row.getBelongsToTable(), columnName);
+		if (ref == NOT_FOUND)
+			return null;
+		Node neighbor = getRow(ref).getNeighbor(ref.hNodeId);
+		if (neighbor != null)
+			inputColumns.add(ref.hNodeId);
+		return neighbor;
+	}
+
+	/**
+	 * @return the value of the column, or the empty string.
+	 */
+	public String getValue(String columnName) {
+		Node neighbor = getNeighbor(columnName);
+		if (neighbor != null) {
+			CellValue value = neighbor.getValue();
+			if (value != null && value.asString() != null)
+				return value.asString();
+		}
+		return "";
+	}
+
+	/**
+	 * @return false if the column has a value or a nested table with rows.
+	 */
+	public boolean isEmpty(String columnName) {
+		Node neighbor = getNeighbor(columnName);
+		if (neighbor == null)
+			return true;
+		if (neighbor.hasNestedTable() && neighbor.getNestedTable().getNumRows() > 0)
+			return false;
+		CellValue value = neighbor.getValue();
+		return value == null || value.asString() == null || value.asString().isEmpty();
+	}
+
+	/**
+	 * @return the node of a column of the index-th row of the nested table of
+	 *         the column, or null.
+	 */
+	public Node getNeighborWithNestedColumnByIndex(String columnName, String nestedColumnName, int index) {
+		ColumnRef ref = resolve(row.getBelongsToTable(), columnName);
+		if (ref == NOT_FOUND)
+			return null;
+		Node neighbor = getRow(ref).getNeighborWithNestedColumnByIndex(ref.hNodeId, factory, nestedColumnName, index);
+		if (neighbor != null)
+			inputColumns.add(neighbor.getHNodeId());
+		return neighbor;
+	}
+
+	private Row getRow(ColumnRef ref) {
+		Row r = row;
+		for (int i = 0; i < ref.levelsUp; i++)
+			r = r.getBelongsToTable().getNestedTableInNode().getBelongsToRow();
+		return r;
+	}
+
+	private ColumnRef resolve(Table table, String columnName) {
+		Map<String, ColumnRef> byName = columns.get(table.getHTableId());
+		if (byName == null) {
+			byName = new HashMap<String, ColumnRef>();
+			columns.put(table.getHTableId(), byName);
+		}
+		ColumnRef ref = byName.get(columnName);
+		if (ref == null) {
+			ref = NOT_FOUND;
+			String hNodeId = factory.getHTable(table.getHTableId()).getHNodeIdFromColumnName(columnName);
+			if (hNodeId != null) {
+				ref = new ColumnRef(0, hNodeId);
+			} else if (table.getNestedTableInNode() != null) {
+				ColumnRef parent = resolve(table.getNestedTableInNode().getBelongsToRow().getBelongsToTable(), columnName);
+				if (parent != NOT_FOUND)
+					ref = new ColumnRef(parent.levelsUp + 1, parent.hNodeId);
+			}
+			byName.put(columnName, ref);
+		}
+		return ref;
+	}
+}
@@ -123,9 +123,7 @@ public class PythonTransformationHelper {
 		{
 			StringBuilder methodStmt = new StringBuilder();
 			methodStmt.append("def getRowIndex():\n");
-			methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-			methodStmt.append("	node = factory.getNode(nodeid)\n");
-			methodStmt.append("	return node.getRowIndex()\n");
+			methodStmt.append("	return rowaccessor.getRowIndex()\n");
 			getRowIndexDefStatement = methodStmt.toString();
 		}
 		return getRowIndexDefStatement;
@@ -136,17 +134,7 @@ public class PythonTransformationHelper {
 		{
 			StringBuilder methodStmt = new StringBuilder();
 			methodStmt.append("def getValue(columnName):\n");
-			methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-			methodStmt.append("	node = factory.getNode(nodeid)\n");
-			methodStmt.append("	targetNode = node.getNeighborByColumnName(columnName, factory)\n");
-			methodStmt.append("	if targetNode is not None:\n");
-			methodStmt.append("		command.addInputColumns(targetNode.getHNodeId())\n");
-			methodStmt.append("		value = targetNode.getValue()\n");
-			methodStmt.append("		if value is not None:\n");
-			methodStmt.append("			valueAsString = value.asString()\n");
-			methodStmt.append("			if valueAsString is not None:\n");
-			methodStmt.append("				return valueAsString\n");
-			methodStmt.append("	return ''\n");
+			methodStmt.append("	return rowaccessor.getValue(columnName)\n");
 			valueDefStatement = methodStmt.toString();
 		}
 		return valueDefStatement;
@@ -158,16 +146,13 @@ public class PythonTransformationHelper {
 		{
 			StringBuilder methodStmt = new StringBuilder();
 			methodStmt.append("def hasSelectedRows(columnName):\n");
-			methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-			methodStmt.append("	node = factory.getNode(nodeid)\n");
-			methodStmt.append("	targetNode = node.getNeighborByColumnName(columnName, factory)\n");
+			methodStmt.append("	targetNode = rowaccessor.getNeighbor(columnName)\n");
 			methodStmt.append("	if targetNode is not None: \n");
 			methodStmt.append("		if targetNode.hasNestedTable(): \n");
-			methodStmt.append("			command.addInputColumns(targetNode.getHNodeId())\n");
 			methodStmt.append("			command.addSelectedRowsColumns(targetNode.getHNodeId())\n");
 			methodStmt.append("			command.setSelectedRowsMethod(True)\n");
 			methodStmt.append("			nestedTable = targetNode.getNestedTable()\n");
-			methodStmt.append("			if edu.isi.karma.er.helper.PythonTransformationHelper.hasSelectedRows(nestedTable, factory, selectionName) :\n");
+			methodStmt.append("			if edu.isi.karma.er.helper.PythonTransformationHelper.hasSelectedRows(nestedTable, rowaccessor.getFactory(), selectionName) :\n");
 			methodStmt.append("				return True\n");
 			methodStmt.append("	return False\n");
 			hasSelectedRowsStatement = methodStmt.toString();
@@ -182,11 +167,8 @@ public class PythonTransformationHelper {
 		{
 			StringBuilder methodStmt = new StringBuilder();
 			methodStmt.append("def getValueFromNestedColumnByIndex(columnName, nestedColumnName, index):\n");
-			methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-			methodStmt.append("	node = factory.getNode(nodeid)\n");
-			methodStmt.append("	targetNode = node.getNeighborByColumnNameWithNestedColumnByRowIndex(columnName, factory, nestedColumnName, index)\n");
+			methodStmt.append("	targetNode = rowaccessor.getNeighborWithNestedColumnByIndex(columnName, nestedColumnName, index)\n");
 			methodStmt.append("	if targetNode is not None:\n");
-			methodStmt.append("		command.addInputColumns(targetNode.getHNodeId())\n");
 			methodStmt.append("		value = targetNode.getValue()\n");
 			methodStmt.append("		if value is not None:\n");
 			methodStmt.append("			valueAsString = value.asString()\n");
@@ -206,22 +188,7 @@ public class PythonTransformationHelper {
 		{
 			StringBuilder methodStmt = new StringBuilder();
 			methodStmt.append("def isEmpty(columnName):\n");
-			methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-			methodStmt.append("	node = factory.getNode(nodeid)\n");
-			methodStmt.append("	targetNode = node.getNeighborByColumnName(columnName, factory)\n");
-			methodStmt.append("	if targetNode is not None:\n");
-			methodStmt.append("		hasNestedTable = targetNode.hasNestedTable()\n");
-			methodStmt.append("		command.addInputColumns(targetNode.getHNodeId())\n");
-			methodStmt.append("		if hasNestedTable: \n");
-			methodStmt.append("			table = targetNode.getNestedTable(); \n");
-			methodStmt.append("			if table.getNumRows() > 0:  \n");
-			methodStmt.append("				return False  \n");
-			methodStmt.append("		value = targetNode.getValue()\n");
-			methodStmt.append("		if value is not None:\n");
-			methodStmt.append("			valueAsString = value.asString()\n");
-			methodStmt.append("			if ((not valueAsString) and len(valueAsString) > 0) :\n");
-			methodStmt.append("				return False\n");
-			methodStmt.append("	return True\n");
+			methodStmt.append("	return rowaccessor.isEmpty(columnName)\n");
 			isEmptyDefStatement = methodStmt.toString();
 		}
 		return isEmptyDefStatement;
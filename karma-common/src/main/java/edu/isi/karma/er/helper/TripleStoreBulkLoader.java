@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+
+package edu.isi.karma.er.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.util.HTTPUtil;
+import edu.isi.karma.webserver.KarmaException;
+
+/**
+ * Uploads a line based RDF file (N-Triples or N-Quads) to the statements endpoint of a
+ * triple store in batches. A batch ends on a line boundary once it holds
+ * {@link #setStatementsPerBatch(int)} lines or {@link #setBytesPerBatch(int)} bytes.
+ * The batches are sent over the pooled client of {@link HTTPUtil}, at most
+ * {@link #setConcurrentRequests(int)} at a time, and a failed batch is retried.
+ * The reader blocks while too many batches are waiting, so the memory used does not
+ * depend on the size of the file.
+ * <p>
+ * The loader keeps the committed offset: every byte before it is stored. If the upload
+ * fails, calling {@link #load(File, boolean, long)} again with that offset resumes it.
+ * Batches stored after the committed offset are sent again, which does not change the
+ * graph because the store keeps a set of statements.
+ * <p>
+ * Blank node labels are scoped to a single request by the store, so a file whose blank
+ * nodes are shared by statements far apart should be uploaded in one request.
+ *
+ * @author mohsen
+ *
+ */
+public class TripleStoreBulkLoader {
+
+	private static Logger logger = LoggerFactory.getLogger(TripleStoreBulkLoader.class);
+
+	public static final int DEFAULT_STATEMENTS_PER_BATCH = 50000;
+	public static final int DEFAULT_BYTES_PER_BATCH = 8 * 1024 * 1024;
+	public static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final HttpClient httpClient;
+	private final String statementsURL;
+	private final String mimeType;
+	private String context;
+	private String baseURI;
+
+	private int statementsPerBatch = DEFAULT_STATEMENTS_PER_BATCH;
+	private int bytesPerBatch = DEFAULT_BYTES_PER_BATCH;
+	private int concurrentRequests = DEFAULT_CONCURRENT_REQUESTS;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+
+	// end offsets of the stored batches that are after the committed offset, keyed by their start offsets
+	private final TreeMap<Long, Long> storedBatches = new TreeMap<Long, Long>();
+	private long committedOffset;
+	private volatile Exception failure;
+
+	public TripleStoreBulkLoader(String statementsURL, String mimeType) {
+		this(HTTPUtil.getPooledHttpClient(), statementsURL, mimeType);
+	}
+
+	public TripleStoreBulkLoader(HttpClient httpClient, String statementsURL, String mimeType) {
+		this.httpClient = httpClient;
+		this.statementsURL = statementsURL;
+		this.mimeType = mimeType;
+	}
+
+	public void setContext(String context) {
+		this.context = context;
+	}
+
+	public void setBaseURI(String baseURI) {
+		this.baseURI = baseURI;
+	}
+
+	public void setStatementsPerBatch(int statementsPerBatch) {
+		this.statementsPerBatch = statementsPerBatch;
+	}
+
+	public void setBytesPerBatch(int bytesPerBatch) {
+		this.bytesPerBatch = bytesPerBatch;
+	}
+
+	public void setConcurrentRequests(int concurrentRequests) {
+		this.concurrentRequests = concurrentRequests;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public void setRetryDelayMillis(long retryDelayMillis) {
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	public synchronized long getCommittedOffset() {
+		return committedOffset;
+	}
+
+	/**
+	 * Uploads the file starting from the given offset.
+	 * @param file the RDF file
+	 * @param replaceContext if true and the upload starts from the beginning of the file,
+	 * the first batch replaces the context and the others are added after it
+	 * @param startOffset the committed offset of a failed upload, or 0
+	 * @return the committed offset, which is the length of the file
+	 * @throws KarmaException if a batch cannot be stored; the message contains the offset to resume from
+	 */
+	public long load(File file, boolean replaceContext, long startOffset) throws KarmaException {
+
+		synchronized (this) {
+			this.storedBatches.clear();
+			this.committedOffset = startOffset;
+			this.failure = null;
+		}
+
+		URI uri;
+		try {
+			URIBuilder builder = new URIBuilder(statementsURL);
+			if (context != null && !context.trim().isEmpty())
+				builder.setParameter("context", "<" + context.trim() + ">");
+			if (baseURI != null && !baseURI.trim().isEmpty())
+				builder.setParameter("baseURI", "<" + baseURI.trim() + ">");
+			uri = builder.build();
+		} catch (Exception e) {
+			throw new KarmaException("Invalid triple store url: " + statementsURL, e);
+		}
+
+		long start = System.currentTimeMillis();
+		int batchCount = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(concurrentRequests);
+		// permits bound the number of batches held in memory
+		Semaphore permits = new Semaphore(2 * concurrentRequests);
+
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			skipFully(in, startOffset);
+
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			ByteArrayOutputStream batch = new ByteArrayOutputStream();
+			long batchStart = startOffset;
+			int lines = 0;
+			boolean firstBatch = replaceContext && startOffset == 0;
+			int read;
+			while (failure == null && (read = in.read(buffer)) != -1) {
+				int lineStart = 0;
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] != '\n')
+						continue;
+					batch.write(buffer, lineStart, i + 1 - lineStart);
+					lineStart = i + 1;
+					lines++;
+					if (lines >= statementsPerBatch || batch.size() >= bytesPerBatch) {
+						byte[] data = batch.toByteArray();
+						if (firstBatch) {
+							// the replace has to be done before any other batch is added to the context
+							sendWithRetry(new HttpPut(uri), data);
+							markStored(batchStart, batchStart + data.length);
+							firstBatch = false;
+						} else {
+							submit(executor, permits, uri, data, batchStart);
+						}
+						batchCount++;
+						batchStart += data.length;
+						batch.reset();
+						lines = 0;
+					}
+				}
+				batch.write(buffer, lineStart, read - lineStart);
+			}
+
+			if (failure == null && (batch.size() > 0 || firstBatch)) {
+				byte[] data = batch.toByteArray();
+				if (firstBatch) {
+					sendWithRetry(new HttpPut(uri), data);
+					markStored(batchStart, batchStart + data.length);
+				} else {
+					submit(executor, permits, uri, data, batchStart);
+				}
+				batchCount++;
+			}
+		} catch (Exception e) {
+			if (failure == null) failure = e;
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+					logger.info("waiting for the batches to be stored in " + statementsURL);
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				if (failure == null) failure = e;
+			}
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.error("Error in closing the file " + file.getAbsolutePath(), e);
+				}
+			}
+		}
+
+		long offset = getCommittedOffset();
+		if (failure != null) {
+			logger.error("Error in loading " + file.getAbsolutePath() + ", resume from offset " + offset, failure);
+			throw new KarmaException("Error in loading " + file.getAbsolutePath() + " to " + statementsURL +
+					", resume from offset " + offset + " : " + failure.getMessage(), failure);
+		}
+		logger.info("loaded " + batchCount + " batches of " + file.getAbsolutePath() + " in " +
+				(System.currentTimeMillis() - start) + "ms");
+		return offset;
+	}
+
+	private void submit(ExecutorService executor, final Semaphore permits, final URI uri,
+			final byte[] data, final long batchStart) throws InterruptedException {
+		permits.acquire();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (failure == null) {
+							sendWithRetry(new HttpPost(uri), data);
+							markStored(batchStart, batchStart + data.length);
+						}
+					} catch (Exception e) {
+						if (failure == null) failure = e;
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private void sendWithRetry(HttpEntityEnclosingRequestBase request, byte[] data) throws Exception {
+		request.setEntity(new ByteArrayEntity(data, ContentType.create(mimeType, "UTF-8")));
+		long delay = retryDelayMillis;
+		for (int attempt = 0; ; attempt++) {
+			try {
+				HttpResponse response = httpClient.execute(request);
+				int code = response.getStatusLine().getStatusCode();
+				EntityUtils.consume(response.getEntity());
+				if (code >= 200 && code < 300)
+					return;
+				String message = "StatusCode " + code + " from " + request.getURI();
+				// client errors will not go away by sending the same batch again
+				if ((code >= 400 && code < 500 && code != 408 && code != 429) || attempt >= maxRetries)
+					throw new KarmaException(message);
+				logger.warn(message + ", retrying");
+			} catch (IOException e) {
+				if (attempt >= maxRetries)
+					throw e;
+				logger.warn("Error in sending a batch to " + request.getURI() + " : " + e.getMessage() + ", retrying");
+			}
+			if (failure != null)
+				throw new KarmaException("Another batch failed");
+			Thread.sleep(delay);
+			delay *= 2;
+		}
+	}
+
+	private synchronized void markStored(long batchStart, long batchEnd) {
+		storedBatches.put(batchStart, batchEnd);
+		Long end;
+		while ((end = storedBatches.remove(committedOffset)) != null)
+			committedOffset = end;
+	}
+
+	private static void skipFully(InputStream in, long n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0)
+				throw new IOException("Offset is after the end of the file");
+			n -= skipped;
+		}
+	}
+}
@@ -21,9 +21,12 @@
 
 package edu.isi.karma.er.helper;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URLEncoder;
 import java.util.ArrayList;
@@ -36,6 +39,7 @@ import java.util.Map;
 
 import javax.ws.rs.core.UriBuilder;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -51,6 +55,7 @@ import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -73,6 +78,8 @@ public class TripleStoreUtil {
 	public static final String defaultWorkbenchUrl;
 	public static final String karma_model_repo = "karma_models";
 	public static final String karma_data_repo = "karma_data";
+	/** N-Triples files without blank nodes bigger than this are stored in batches by the TripleStoreBulkLoader */
+	public static final long BULK_LOAD_THRESHOLD = 8 * 1024 * 1024;
 	static {
 		String host = ServletContextParameterMap
 				.getParameterValue(ServletContextParameterMap.ContextParameter.JETTY_HOST);
@@ -991,8 +998,8 @@ public class TripleStoreUtil {
 		try {
 			URIBuilder builder = new URIBuilder(tripleStoreURL);
 
-			// initialize the http entity
-			HttpClient httpclient = new DefaultHttpClient();
+			// the pooled client keeps the connection to the store alive between uploads
+			HttpClient httpclient = HTTPUtil.getPooledHttpClient();
 			//			File file = new File(filePath);
 			if (mime_types.get(rdfType) == null) {
 				throw new Exception("Could not find spefied rdf type: "
@@ -1050,6 +1057,7 @@ public class TripleStoreUtil {
 			if (code >= 200 && code < 300) {
 				retVal = true;
 			}
+			EntityUtils.consume(response.getEntity());
 		} catch (Exception e) {
 			e.printStackTrace();
 			logger.error(e.getClass().getName() + " : " + e.getMessage());
@@ -1081,6 +1089,97 @@ public class TripleStoreUtil {
 				RDF_Types.Turtle.name(), baseUri);
 	}
 
+	/**
+	 * Uploads a large N-Triples file in batches over concurrent connections.
+	 * Use it instead of saveToStoreFromFile when the file is too big to be sent
+	 * in one request.
+	 * 
+	 * @param filePath
+	 *            : the N-Triples file
+	 * @param tripleStoreURL
+	 *            : the triple store URL
+	 * @param context
+	 *            : The graph context for the RDF
+	 * @param replaceFlag
+	 *            : Whether to replace the contents of the graph
+	 * @param baseUri
+	 *            : The base uri of the RDF
+	 * @param startOffset
+	 *            : the byte offset to resume a failed upload from, 0 to upload the whole file
+	 * @return the offset up to which the file is stored
+	 * */
+	public long saveToStoreFromNTriplesFile(String filePath, String tripleStoreURL,
+			String context, boolean replaceFlag, String baseUri, long startOffset) throws KarmaException {
+
+		tripleStoreURL = normalizeTripleStoreURL(tripleStoreURL);
+		testTripleStoreConnection(tripleStoreURL);
+
+		if (tripleStoreURL.charAt(tripleStoreURL.length() - 1) != '/') {
+			tripleStoreURL += "/";
+		}
+		tripleStoreURL += "statements";
+
+		TripleStoreBulkLoader loader = new TripleStoreBulkLoader(tripleStoreURL,
+				mime_types.get(RDF_Types.N_Triples.name()));
+		loader.setContext(context);
+		loader.setBaseURI(baseUri);
+		return loader.load(new File(filePath), replaceFlag, startOffset);
+	}
+
+	/**
+	 * Stores an N-Triples file, such as the RDF generated by Karma. A file up to
+	 * BULK_LOAD_THRESHOLD bytes is sent in one request, a bigger one is sent in
+	 * batches over concurrent connections. A file with blank nodes is always sent
+	 * in one request, because the store scopes blank node labels to a request and
+	 * batches would split the statements of a blank node into different nodes.
+	 * 
+	 * @param filePath
+	 *            : the N-Triples file
+	 * @param tripleStoreURL
+	 *            : the triple store URL
+	 * @param context
+	 *            : The graph context for the RDF
+	 * @param replaceFlag
+	 *            : Whether to replace the contents of the graph
+	 * @param baseUri
+	 *            : The base uri of the RDF
+	 * */
+	public boolean saveToStoreFromNTriplesFile(String filePath, String tripleStoreURL,
+			String context, boolean replaceFlag, String baseUri) throws KarmaException {
+		File file = new File(filePath);
+		if (file.length() <= BULK_LOAD_THRESHOLD || hasBlankNodes(file)) {
+			FileEntity entity = new FileEntity(file, ContentType.create(
+					mime_types.get(RDF_Types.N_Triples.name()), "UTF-8"));
+			return saveToStore(entity, tripleStoreURL, context, replaceFlag,
+					RDF_Types.N_Triples.name(), baseUri);
+		}
+		return saveToStoreFromNTriplesFile(filePath, tripleStoreURL, context,
+				replaceFlag, baseUri, 0) == file.length();
+	}
+
+	/**
+	 * @return whether the N-Triples file may have blank nodes: it has the
+	 *         "_:" of a blank node label, maybe inside a literal or a URI.
+	 */
+	static boolean hasBlankNodes(File file) throws KarmaException {
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+			int previous = -1;
+			int b;
+			while ((b = in.read()) != -1) {
+				if (previous == '_' && b == ':')
+					return true;
+				previous = b;
+			}
+			return false;
+		} catch (IOException e) {
+			throw new KarmaException("Unable to read " + file.getPath(), e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
 	public boolean saveToStoreFromString(String input, String tripleStoreURL,
 			String context, Boolean replaceFlag, String baseUri)  throws KarmaException{
 		StringEntity entity = new StringEntity(input, ContentType.create(mime_types.get(RDF_Types.Turtle.name())));
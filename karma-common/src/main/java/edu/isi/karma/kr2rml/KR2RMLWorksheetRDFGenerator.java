@@ -194,6 +194,7 @@ public class KR2RMLWorksheetRDFGenerator {
 				}
 			}
 			for (KR2RMLRDFWriter writer : outWriters) {
+				writer.setTermCache(uriFormatter.getTermCache());
 				if (writer instanceof SFKR2RMLRDFWriter) {
 					SFKR2RMLRDFWriter jsonWriter = (SFKR2RMLRDFWriter)writer;
 					jsonWriter.addPrefixes(kr2rmlMapping.getPrefixes());
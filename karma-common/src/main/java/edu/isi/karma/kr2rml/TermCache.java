@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2014 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.kr2rml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the terms formatted during an RDF generation, so that the
+ * predicates, classes and expanded prefixes that make up most of the output
+ * are formatted once and shared as one String by the URIFormatter and the
+ * writers.
+ * <p>
+ * Every {@link TermFormatter} has its own table of terms. A table holds at
+ * most maxTermsPerTable terms: when it is full it is cleared, so the terms
+ * that keep coming back, like predicates, are back in it after one miss,
+ * while terms seen once, like most subjects, do not pile up.
+ */
+public class TermCache {
+
+	public static final int DEFAULT_MAX_TERMS_PER_TABLE = 50000;
+
+	/**
+	 * Formats a term. The result must only depend on the term, or the
+	 * table of the formatter has to be cleared when it changes.
+	 */
+	public interface TermFormatter {
+		public String format(String term);
+	}
+
+	private final ConcurrentHashMap<TermFormatter, ConcurrentHashMap<String, String>> tables = new ConcurrentHashMap<TermFormatter, ConcurrentHashMap<String, String>>();
+	private final int maxTermsPerTable;
+	private final AtomicLong misses = new AtomicLong();
+
+	public TermCache() {
+		this(DEFAULT_MAX_TERMS_PER_TABLE);
+	}
+
+	/**
+	 * @param maxTermsPerTable 0 to format every term, without caching it.
+	 */
+	public TermCache(int maxTermsPerTable) {
+		this.maxTermsPerTable = maxTermsPerTable;
+	}
+
+	/**
+	 * @return the term formatted by the formatter, from the table of the
+	 *         formatter if it has already been formatted.
+	 */
+	public String format(TermFormatter formatter, String term) {
+		ConcurrentHashMap<String, String> table = getTable(formatter);
+		String formatted = table.get(term);
+		if (formatted != null)
+			return formatted;
+		misses.incrementAndGet();
+		formatted = formatter.format(term);
+		if (formatted == null || maxTermsPerTable <= 0)
+			return formatted;
+		if (table.size() >= maxTermsPerTable)
+			table.clear();
+		String previous = table.putIfAbsent(term, formatted);
+		return previous != null ? previous : formatted;
+	}
+
+	/**
+	 * Forgets the terms of the formatter, for when its output changes.
+	 */
+	public void clear(TermFormatter formatter) {
+		ConcurrentHashMap<String, String> table = tables.get(formatter);
+		if (table != null)
+			table.clear();
+	}
+
+	public void clear() {
+		tables.clear();
+	}
+
+	/**
+	 * @return the number of terms that were formatted, not found.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private ConcurrentHashMap<String, String> getTable(TermFormatter formatter) {
+		ConcurrentHashMap<String, String> table = tables.get(formatter);
+		if (table == null) {
+			tables.putIfAbsent(formatter, new ConcurrentHashMap<String, String>());
+			table = tables.get(formatter);
+		}
+		return table;
+	}
+}
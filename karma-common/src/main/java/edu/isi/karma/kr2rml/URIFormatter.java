@@ -34,6 +34,13 @@ public class URIFormatter {
 	private final ErrorReport errorReport;
 	private final boolean reportErrors;
 	private final boolean replacePrefixesWithNamespaces;
+	private TermCache termCache = new TermCache();
+	private final TermCache.TermFormatter expandedAndNormalizedUriFormatter = new TermCache.TermFormatter() {
+		@Override
+		public String format(String uri) {
+			return expandAndNormalizeUri(uri);
+		}
+	};
 	public URIFormatter()
 	{
 		reportErrors = false;
@@ -58,7 +65,19 @@ public class URIFormatter {
 		populatePrefixToNamespaceMap(prefixes);
 		this.errorReport = errorReport;
 	}
+	public TermCache getTermCache() {
+		return termCache;
+	}
+
+	public void setTermCache(TermCache termCache) {
+		this.termCache = termCache;
+	}
+
 	public String getExpandedAndNormalizedUri(String uri) {
+		return termCache.format(expandedAndNormalizedUriFormatter, uri);
+	}
+
+	private String expandAndNormalizeUri(String uri) {
 		// Check if the predicate contains a predicate.
 		if (replacePrefixesWithNamespaces && !uri.startsWith("<") && !uri.startsWith("http:") && !uri.startsWith("https:") && uri.contains(":") && !uri.startsWith("_:")) {
 			// Replace the prefix with proper namespace by looking into the ontology manager
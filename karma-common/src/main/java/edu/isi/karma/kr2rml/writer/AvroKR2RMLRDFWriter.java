@@ -5,18 +5,22 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.SchemaBuilder.FieldAssembler;
 import org.apache.avro.SchemaBuilder.RecordBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
@@ -28,15 +32,27 @@ import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.kr2rml.PredicateObjectMap;
 import edu.isi.karma.kr2rml.RefObjectMap;
+import edu.isi.karma.kr2rml.TermCache;
 import edu.isi.karma.kr2rml.mapping.R2RMLMappingIdentifier;
 import edu.isi.karma.kr2rml.planning.TriplesMap;
 import edu.isi.karma.kr2rml.planning.TriplesMapGraph;
 import edu.isi.karma.modeling.Uris;
 import edu.isi.karma.rep.RepFactory;
 
+/**
+ * Writes the root objects of the generation as Avro records, with a schema
+ * built from the triples maps.
+ * <p>
+ * By default the records are kept until {@link #close()}, so that a subject
+ * generated by several rows is written once. When streaming, the root
+ * records are written at the end of every row, and the records and arrays
+ * of the row are then cleared and reused for the next rows, so the memory
+ * used does not grow with the number of rows.
+ */
 public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 
 	private static Logger LOG = LoggerFactory.getLogger(AvroKR2RMLRDFWriter.class);
+	private static final Schema STRING_ARRAY_SCHEMA = Schema.createArray(Schema.create(Schema.Type.STRING));
 	protected Map<String, Schema> triplesMapIdToSchema = new HashMap<String, Schema>();
 	protected RepFactory rep;
 	protected Schema rootSchema;
@@ -45,11 +61,88 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 	private DataFileWriter<GenericRecord> dfw;	
 	//TODO come up with a good naming convention for records
 	private int id = 1;
+	private final TermCache.TermFormatter fieldNameFormatter = new TermCache.TermFormatter() {
+		@Override
+		public String format(String name) {
+			return name.replaceAll("[^\\w]", "_");
+		}
+	};
+	private CodecFactory codec = CodecFactory.nullCodec();
+	private int syncInterval = DataFileConstants.DEFAULT_SYNC_INTERVAL;
+	private boolean streaming = false;
+	private final ConcurrentHashMap<Schema, ConcurrentLinkedQueue<GenericRecord>> freeRecords = new ConcurrentHashMap<Schema, ConcurrentLinkedQueue<GenericRecord>>();
+	private final ConcurrentHashMap<Schema, ConcurrentLinkedQueue<GenericData.Array<Object>>> freeArrays = new ConcurrentHashMap<Schema, ConcurrentLinkedQueue<GenericData.Array<Object>>>();
 	public AvroKR2RMLRDFWriter(OutputStream output)
 	{
 		super(new PrintWriter(output));
 		this.output = output;
 	}
+
+	/**
+	 * Reads avro.codec (null, deflate-[1-9], snappy, bzip2 or xz-[1-9]),
+	 * avro.sync.interval (in bytes) and avro.streaming.
+	 */
+	@Override
+	public void initialize(Properties p)
+	{
+		if(p.getProperty("avro.codec") != null)
+		{
+			setCodec(getCodec(p.getProperty("avro.codec")));
+		}
+		if(p.getProperty("avro.sync.interval") != null)
+		{
+			setSyncInterval(Integer.parseInt(p.getProperty("avro.sync.interval")));
+		}
+		if(p.getProperty("avro.streaming") != null)
+		{
+			setStreaming(Boolean.parseBoolean(p.getProperty("avro.streaming")));
+		}
+	}
+
+	private static CodecFactory getCodec(String codec)
+	{
+		int dash = codec.indexOf('-');
+		if(dash < 0)
+		{
+			return CodecFactory.fromString(codec);
+		}
+		int level = Integer.parseInt(codec.substring(dash + 1));
+		if(codec.startsWith("deflate"))
+		{
+			return CodecFactory.deflateCodec(level);
+		}
+		if(codec.startsWith("xz"))
+		{
+			return CodecFactory.xzCodec(level);
+		}
+		throw new IllegalArgumentException("Unrecognized codec: " + codec);
+	}
+
+	/**
+	 * Sets the codec of the data blocks, before the processing order.
+	 */
+	public void setCodec(CodecFactory codec)
+	{
+		this.codec = codec;
+	}
+
+	/**
+	 * Sets the approximate size in bytes of the data blocks, before the
+	 * processing order.
+	 */
+	public void setSyncInterval(int syncInterval)
+	{
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * Writes the root records at the end of every row instead of on close.
+	 * A subject generated by more than one row is then written once per row.
+	 */
+	public void setStreaming(boolean streaming)
+	{
+		this.streaming = streaming;
+	}
 	
 	public void setRepFactory(RepFactory rep)
 	{
@@ -70,6 +163,8 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 
 		datumWriter = new GenericDatumWriter<GenericRecord>(rootSchema);
 		dfw = new DataFileWriter<GenericRecord>(datumWriter);
+		dfw.setCodec(codec);
+		dfw.setSyncInterval(syncInterval);
 		dfw.create(rootSchema, output);
 		
 		
@@ -174,128 +269,114 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 	@Override
 	protected void addValue(PredicateObjectMap pom, GenericRecord subject, String predicateUri,
 			Object object) {
-		String shortHandPredicateURI = shortHandURIGenerator.getShortHand(predicateUri).toString().replaceAll("[^\\w]", "_");
+		String shortHandPredicateURI = termCache.format(fieldNameFormatter, getShortHand(predicateUri));
 		Schema schema = subject.getSchema();
 		Field field = schema.getField(shortHandPredicateURI);
-		Field mapField = schema.getField(pom.getPredicate().getId().replaceAll("[^\\w]", "_"));
-		if (subject.get(shortHandPredicateURI) != null || predicateUri.contains(Uris.RDF_TYPE_URI)) {
+		Field mapField = schema.getField(termCache.format(fieldNameFormatter, pom.getPredicate().getId()));
+		if ((field != null && subject.get(field.pos()) != null) || predicateUri.contains(Uris.RDF_TYPE_URI)) {
 			
 			if(field != null)
 			{
-				addValueToArray(pom, subject, object,
-					shortHandPredicateURI);
+				addValueToArray(subject, object, field);
 			}
 			else if(mapField != null && mapField.schema().getType() == Schema.Type.MAP)
 			{
-				addValueToMap(pom, subject,object, shortHandPredicateURI);
+				addValueToMap(subject, object, shortHandPredicateURI, mapField);
 			}
 		}
 		else
 		{
 			if(field != null)
 			{
-				subject.put(shortHandPredicateURI, object);
+				subject.put(field.pos(), object);
 			}
 			else if(mapField != null && mapField.schema().getTypes().get(0).getType() == Schema.Type.MAP)
 			{
-				addValueToMap(pom, subject,object, shortHandPredicateURI);
+				addValueToMap(subject, object, shortHandPredicateURI, mapField);
 			}
 		}
 		
 	}
 
 	@SuppressWarnings("unchecked")
-	protected void addValueToMap(PredicateObjectMap pom, GenericRecord subject, Object object,
-			String shortHandPredicateURI)
+	protected void addValueToMap(GenericRecord subject, Object object,
+			String shortHandPredicateURI, Field mapField)
 	{
-
-		String mapPredicateName = pom.getPredicate().getId().replaceAll("[^\\w]", "_");
-		if(object instanceof String)
-		{
-			Map<String, String> values = null;
-			if(subject.get(mapPredicateName)== null)
-			{
-				subject.put(mapPredicateName, new ConcurrentHashMap<String, String>());
-			}
-			values = (Map<String, String>)subject.get(mapPredicateName);
-			values.put(shortHandPredicateURI, (String)object);
-		}
-		else if(object instanceof GenericRecord)
+		if(object instanceof String || object instanceof GenericRecord)
 		{
-			Map<String, GenericRecord> values = null;
-			if(subject.get(mapPredicateName)== null)
+			Map<String, Object> values = (Map<String, Object>)subject.get(mapField.pos());
+			if(values == null)
 			{
-				subject.put(mapPredicateName, new ConcurrentHashMap<String, GenericRecord>());
+				values = new ConcurrentHashMap<String, Object>();
+				subject.put(mapField.pos(), values);
 			}
-			values = (Map<String, GenericRecord>)subject.get(mapPredicateName);
-			values.put(shortHandPredicateURI, (GenericRecord)object);
+			values.put(shortHandPredicateURI, object);
 		}
-	
-		
 	}
-	@SuppressWarnings("unchecked")
+
 	@Override
 	protected void addValueToArray(PredicateObjectMap pom, GenericRecord subject, Object object,
 			String shortHandPredicateURI) {
-		Object currentObj = subject.get(shortHandPredicateURI);
-		GenericArray<GenericRecord> array = null;
-		GenericArray<String> strings = null;
+		addValueToArray(subject, object, subject.getSchema().getField(shortHandPredicateURI));
+	}
 
-		if(object instanceof GenericRecord)
+	@SuppressWarnings("unchecked")
+	protected void addValueToArray(GenericRecord subject, Object object, Field field) {
+		if(!(object instanceof GenericRecord) && !(object instanceof String))
 		{
-			if(currentObj != null)
-			{
-				if(currentObj instanceof GenericArray)
-				{
-					array = (GenericArray<GenericRecord>) currentObj;
-					array.add((GenericRecord) object);
-				}
-				else if(currentObj instanceof GenericRecord)
-				{
-					array = new GenericData.Array<GenericRecord>(subject.getSchema().getField(shortHandPredicateURI).schema().getTypes().get(0), new LinkedList<GenericRecord>());
-					array.add((GenericRecord)object);
-					array.add((GenericRecord)currentObj);
-				}
-			}
-			else
-			{
-					GenericRecord objectToAdd = (GenericRecord)object;
-					array = new GenericData.Array<GenericRecord>(objectToAdd.getSchema(), new LinkedList<GenericRecord>());
-					array.add(objectToAdd);
-				
-			}
-			subject.put(shortHandPredicateURI, array);
+			return;
 		}
-		else if(object instanceof String)
+		Object currentObj = subject.get(field.pos());
+		GenericData.Array<Object> array;
+		if(currentObj instanceof GenericData.Array)
 		{
-			if(currentObj != null)
-			{
-				if(currentObj instanceof GenericArray)
-				{
-					strings = (GenericArray<String>) currentObj;
-					strings.add((String) object);
-				}
-				else if(currentObj instanceof String)
-				{
-					strings = new GenericData.Array<String>(SchemaBuilder.array().items().stringType(), new LinkedList<String>());
-					strings.add((String)object);
-					strings.add((String)currentObj);
-				}
-			}
-			else
+			array = (GenericData.Array<Object>) currentObj;
+		}
+		else
+		{
+			array = newArray(object instanceof String ? STRING_ARRAY_SCHEMA : field.schema().getTypes().get(0));
+			if((currentObj instanceof String) != (object instanceof String))
 			{
-					String objectToAdd = (String)object;
-					strings = new GenericData.Array<String>(SchemaBuilder.array().items().stringType(), new LinkedList<String>());
-					strings.add(objectToAdd);
-				
+				currentObj = null;
 			}
-			subject.put(shortHandPredicateURI, strings);
 		}
-		
+		array.add(object);
+		if(currentObj != null && currentObj != array)
+		{
+			array.add(currentObj);
+		}
+		subject.put(field.pos(), array);
+	}
+
+	private GenericData.Array<Object> newArray(Schema arraySchema)
+	{
+		ConcurrentLinkedQueue<GenericData.Array<Object>> free = freeArrays.get(arraySchema);
+		GenericData.Array<Object> array = free == null ? null : free.poll();
+		return array != null ? array : new GenericData.Array<Object>(4, arraySchema);
+	}
+
+	@Override
+	public void finishRow() {
+		if(streaming)
+		{
+			writeRootRecords();
+			recycleGeneratedObjects();
+		}
 	}
 
 	@Override
 	public void close() {
+		writeRootRecords();
+		try {
+			dfw.flush();
+			output.flush();
+			output.close();
+		} catch (IOException e) {
+			LOG.error("Unable to flush and close output!", e);
+		}
+	}
+
+	private void writeRootRecords() {
 		for(ConcurrentHashMap<String, GenericRecord> records : this.rootObjectsByTriplesMapId.values())
 		{
 			
@@ -308,23 +389,58 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 					LOG.error("Unable to append Avro record to writer!", e);
 				}
 			}
-			
+			records.clear();
 		}
-		try {
-			dfw.flush();
-			output.flush();
-			output.close();
-		} catch (IOException e) {
-			LOG.error("Unable to flush and close output!", e);
+	}
+
+	/**
+	 * Clears the records and arrays of the row, once written, and keeps
+	 * them for the next rows.
+	 */
+	private void recycleGeneratedObjects() {
+		for(ConcurrentHashMap<String, GenericRecord> records : this.generatedObjectsByTriplesMapId.values())
+		{
+			recycle(records);
+		}
+		recycle(generatedObjectsWithoutTriplesMap);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void recycle(ConcurrentHashMap<String, GenericRecord> records) {
+		for(GenericRecord record : records.values())
+		{
+			for(Field f : record.getSchema().getFields())
+			{
+				Object value = record.get(f.pos());
+				if(value instanceof GenericData.Array)
+				{
+					GenericData.Array<Object> array = (GenericData.Array<Object>) value;
+					array.clear();
+					getFreeQueue(freeArrays, array.getSchema()).add(array);
+				}
+				record.put(f.pos(), null);
+			}
+			getFreeQueue(freeRecords, record.getSchema()).add(record);
 		}
+		records.clear();
 	}
 
-	@SuppressWarnings("rawtypes")
+	private static <T> ConcurrentLinkedQueue<T> getFreeQueue(ConcurrentHashMap<Schema, ConcurrentLinkedQueue<T>> free, Schema schema) {
+		ConcurrentLinkedQueue<T> queue = free.get(schema);
+		if(queue == null)
+		{
+			free.putIfAbsent(schema, new ConcurrentLinkedQueue<T>());
+			queue = free.get(schema);
+		}
+		return queue;
+	}
+
+	@SuppressWarnings("unchecked")
 	@Override
 	protected void collapseSameType(GenericRecord obj) {
 		
 		for (Field f : obj.getSchema().getFields()) {
-			Object value = obj.get(f.name());
+			Object value = obj.get(f.pos());
 			if(value == null)
 			{
 				continue;
@@ -332,8 +448,8 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 			if (value instanceof GenericRecord)
 				collapseSameType((GenericRecord)value);
 			if (value instanceof GenericArray) {
-				GenericArray array = (GenericArray)value;
-				Set<Object> valuesHash = new HashSet<Object>();
+				GenericArray<Object> array = (GenericArray<Object>)value;
+				Set<Object> valuesHash = new LinkedHashSet<Object>();
 				boolean unmodified = true;
 				for (int i = 0; i < array.size(); i++) {
 					Object o = array.get(i);
@@ -346,8 +462,8 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 				}
 				if(!unmodified)
 				{
-					GenericArray<Object> newValues = new GenericData.Array<Object>(array.getSchema(), valuesHash);
-					obj.put(f.name(), newValues);
+					array.clear();
+					array.addAll(valuesHash);
 				}
 			}
 		}
@@ -356,8 +472,14 @@ public class AvroKR2RMLRDFWriter extends SFKR2RMLRDFWriter<GenericRecord> {
 
 	@Override
 	public GenericRecord getNewObject(String triplesMapId, String subjUri) {
-		GenericRecord record =new GenericData.Record(this.triplesMapIdToSchema.get(triplesMapId));
-		record.put("id", subjUri);
+		Schema schema = this.triplesMapIdToSchema.get(triplesMapId);
+		ConcurrentLinkedQueue<GenericRecord> free = freeRecords.get(schema);
+		GenericRecord record = free == null ? null : free.poll();
+		if(record == null)
+		{
+			record = new GenericData.Record(schema);
+		}
+		record.put(schema.getField("id").pos(), subjUri);
 		return record;
 	}
 	
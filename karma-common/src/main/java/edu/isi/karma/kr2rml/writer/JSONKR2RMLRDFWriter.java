@@ -77,19 +77,19 @@ public class JSONKR2RMLRDFWriter extends SFKR2RMLRDFWriter<JSONObject> {
 
 				}
 			}
+			termCache.clear(shortHandFormatter);
 		}
 	}
 
 	@Override
 	protected void addValue(PredicateObjectMap pom, JSONObject subject, String predicateUri, Object object) {
-		if (subject.has(generateShortHandURIFromContext(predicateUri)) || predicateUri.contains(Uris.RDF_TYPE_URI)) {
-			String shortHandPredicateURI = generateShortHandURIFromContext(predicateUri);
+		String shortHandPredicateURI = generateShortHandURIFromContext(predicateUri);
+		if (subject.has(shortHandPredicateURI) || predicateUri.contains(Uris.RDF_TYPE_URI)) {
 			addValueToArray(pom, subject, object,
 					shortHandPredicateURI);
 		}
 		else
 		{
-			String shortHandPredicateURI = generateShortHandURIFromContext(predicateUri);
 			if (object instanceof String) {	
 				object = normalizeURI((String)object);
 			}
@@ -303,6 +303,11 @@ public class JSONKR2RMLRDFWriter extends SFKR2RMLRDFWriter<JSONObject> {
 	}
 
 	private String generateShortHandURIFromContext(String uri) {
+		return getShortHand(uri);
+	}
+
+	@Override
+	protected String generateShortHand(String uri) {
 		if (uri.startsWith("<") && uri.endsWith(">")) { 
 			uri = uri.substring(1, uri.length() - 1);		
 		}
@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import java.util.Properties;
 
 import edu.isi.karma.kr2rml.PredicateObjectMap;
+import edu.isi.karma.kr2rml.TermCache;
 import edu.isi.karma.kr2rml.mapping.R2RMLMappingIdentifier;
 
 
@@ -31,11 +32,26 @@ public abstract class KR2RMLRDFWriter {
 
 
 	protected PrintWriter outWriter;
+	protected TermCache termCache = new TermCache();
 	
 	public void setWriter(PrintWriter outWriter)
 	{
 		this.outWriter = outWriter;
 	}
+
+	/**
+	 * Shares the terms formatted by the writer with the other writers and
+	 * the URIFormatter of a generation.
+	 */
+	public void setTermCache(TermCache termCache)
+	{
+		this.termCache = termCache;
+	}
+
+	public TermCache getTermCache()
+	{
+		return termCache;
+	}
 	public void initialize(Properties p)
 	{
 		
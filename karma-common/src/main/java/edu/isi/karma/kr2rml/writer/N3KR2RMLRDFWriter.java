@@ -32,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.kr2rml.PredicateObjectMap;
+import edu.isi.karma.kr2rml.TermCache;
 import edu.isi.karma.kr2rml.URIFormatter;
 import edu.isi.karma.kr2rml.mapping.R2RMLMappingIdentifier;
 
@@ -46,6 +47,7 @@ public class N3KR2RMLRDFWriter extends KR2RMLRDFWriter {
 	{
 		this.outWriter = new PrintWriter(outputStream);
 		this.uriFormatter = uriFormatter;
+		this.termCache = uriFormatter.getTermCache();
 		generatedTriples = new ConcurrentHashMap<String, String>();
 		baseURI = null;
 	}
@@ -53,9 +55,21 @@ public class N3KR2RMLRDFWriter extends KR2RMLRDFWriter {
 	{
 		this.outWriter =writer;
 		this.uriFormatter = uriFormatter;
+		this.termCache = uriFormatter.getTermCache();
 		generatedTriples = new ConcurrentHashMap<String, String>();
 	}
 
+	private final TermCache.TermFormatter bracketedUriFormatter = new TermCache.TermFormatter() {
+		@Override
+		public String format(String uri) {
+			if (uri.indexOf("<") != -1 && uri.indexOf(">") != -1) {
+				String tmp = uri.substring(1, uri.length() - 1);
+				uri = "<" + normalizeURI(tmp) + ">";
+			}
+			return uri;
+		}
+	};
+
 	private void outputTriple(String triple)
 	{
 		generatedTriples.put(triple, "");
@@ -68,53 +82,64 @@ public class N3KR2RMLRDFWriter extends KR2RMLRDFWriter {
 	}
 
 	private String constructTripleWithURIObject(String subjUri, String predicateUri, String objectUri) {
-		if (subjUri.indexOf("<") != -1 && subjUri.indexOf(">") != -1) {
-			String tmp = subjUri.substring(1, subjUri.length() - 1);
-			subjUri = "<" + normalizeURI(tmp) + ">";
-		}
-		if (objectUri.indexOf("<") != -1 && objectUri.indexOf(">") != -1) {
-			String tmp = objectUri.substring(1, objectUri.length() - 1);
-			objectUri = "<" + normalizeURI(tmp) + ">";
-		}
-		return subjUri + " " 
-		+ uriFormatter.getExpandedAndNormalizedUri(predicateUri) + " " 
-		+ objectUri + " .";
+		StringBuilder triple = new StringBuilder(subjUri.length() + predicateUri.length() + objectUri.length() + 8);
+		appendSubjectAndPredicate(triple, subjUri, predicateUri);
+		triple.append(termCache.format(bracketedUriFormatter, objectUri));
+		triple.append(" .");
+		return triple.toString();
+	}
+
+	private void appendSubjectAndPredicate(StringBuilder triple, String subjUri, String predicateUri) {
+		triple.append(termCache.format(bracketedUriFormatter, subjUri));
+		triple.append(' ');
+		triple.append(uriFormatter.getExpandedAndNormalizedUri(predicateUri));
+		triple.append(' ');
 	}
 
 	@Override
 	public void outputTripleWithLiteralObject(String subjUri, String predicateUri, String value, 
 			String literalType) {
-		outputTriple(constructTripleWithLiteralObject(subjUri, predicateUri, value, literalType));
+		outputTriple(constructTripleWithLiteralObject(subjUri, predicateUri, value, literalType, null));
 	}
 
 	private String constructTripleWithLiteralObject(String subjUri, String predicateUri, String value, 
-			String literalType) {
-		// Use Apache Commons to escape the value
-		value = StringEscapeUtils.escapeJava(value);
-		if (subjUri.indexOf("<") != -1 && subjUri.indexOf(">") != -1) {
-			String tmp = subjUri.substring(1, subjUri.length() - 1);
-			subjUri = "<" + normalizeURI(tmp) + ">";
-		}
+			String literalType, String graph) {
+		StringBuilder triple = new StringBuilder(subjUri.length() + predicateUri.length() + value.length() + 16);
+		appendSubjectAndPredicate(triple, subjUri, predicateUri);
+		triple.append('"');
+		appendEscapedLiteral(triple, value);
+		triple.append('"');
 		// Add the RDF literal type to the literal if present
 		if (literalType != null && !literalType.equals("")) {
-			return subjUri + " " + uriFormatter.getExpandedAndNormalizedUri(predicateUri) + " \"" + value + 
-					"\"" + "^^<" + literalType + "> .";
+			triple.append("^^<").append(literalType).append('>');
+		}
+		triple.append(" .");
+		if (graph != null) {
+			triple.setLength(triple.length() - 1);
+			triple.append('<').append(graph).append("> .");
 		}
-		return subjUri + " " + uriFormatter.getExpandedAndNormalizedUri(predicateUri) + " \"" + value + "\" .";
+		return triple.toString();
+	}
+
+	/**
+	 * Appends the value escaped by Apache Commons, without calling it for
+	 * the values that have nothing to escape.
+	 */
+	private static void appendEscapedLiteral(StringBuilder triple, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < ' ' || c > 0x7f || c == '"' || c == '\\') {
+				triple.append(StringEscapeUtils.escapeJava(value));
+				return;
+			}
+		}
+		triple.append(value);
 	}
 
 	@Override
 	public void outputQuadWithLiteralObject(String subjUri, String predicateUri, 
 			String value, String literalType, String graph) {
-		outputTriple(constructQuadWithLiteralObject(subjUri, predicateUri, value, literalType, graph));
-	}
-	private String constructQuadWithLiteralObject(String subjUri, String predicateUri, 
-			String value, String literalType, String graph) {
-		String triple = constructTripleWithLiteralObject(subjUri, predicateUri, value, literalType);
-		if (triple.length() > 2)
-			return triple.substring(0, triple.length()-1) + "<" + graph + "> ." ;
-		else
-			return "";
+		outputTriple(constructTripleWithLiteralObject(subjUri, predicateUri, value, literalType, graph));
 	}
 	@Override
 	public void outputTripleWithURIObject(PredicateObjectMap predicateObjectMap,
@@ -180,6 +205,7 @@ public class N3KR2RMLRDFWriter extends KR2RMLRDFWriter {
 
 	public void setBaseURI(String baseURI) {
 		this.baseURI = baseURI;
+		termCache.clear(bracketedUriFormatter);
 	}
 
 	@Override
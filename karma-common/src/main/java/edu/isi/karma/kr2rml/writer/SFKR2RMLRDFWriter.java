@@ -12,6 +12,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import edu.isi.karma.kr2rml.PredicateObjectMap;
 import edu.isi.karma.kr2rml.Prefix;
 import edu.isi.karma.kr2rml.ShortHandURIGenerator;
+import edu.isi.karma.kr2rml.TermCache;
 
 public abstract class SFKR2RMLRDFWriter<E> extends KR2RMLRDFWriter {
 	protected boolean firstObject = true;
@@ -22,6 +23,12 @@ public abstract class SFKR2RMLRDFWriter<E> extends KR2RMLRDFWriter {
 	protected String rootTriplesMapId; 
 	protected Set<String> rootTriplesMapIds;
 	protected String baseURI = "";
+	protected final TermCache.TermFormatter shortHandFormatter = new TermCache.TermFormatter() {
+		@Override
+		public String format(String uri) {
+			return generateShortHand(uri);
+		}
+	};
 	private static Set<String> numericLiteralTypes = new HashSet<String>();
 	static {
 		numericLiteralTypes.add("http://www.w3.org/2001/XMLSchema#decimal");
@@ -177,6 +184,18 @@ public abstract class SFKR2RMLRDFWriter<E> extends KR2RMLRDFWriter {
 
 	public void addPrefixes(Collection<Prefix> prefixes) {
 		shortHandURIGenerator.addPrefixes(prefixes);
+		termCache.clear(shortHandFormatter);
+	}
+
+	/**
+	 * @return the short hand of the predicate, from the term cache.
+	 */
+	protected String getShortHand(String predicateUri) {
+		return termCache.format(shortHandFormatter, predicateUri);
+	}
+
+	protected String generateShortHand(String uri) {
+		return shortHandURIGenerator.getShortHand(uri).toString();
 	}
 
 	public E getGeneratedObject(String triplesMapId, String generatedObjectUri)
@@ -83,6 +83,9 @@ public class Alignment implements OntologyUpdateListener {
 	private Node root = null;
 	private NodeIdFactory nodeIdFactory;
 	private Set<ColumnNode> sourceColumnNodes;
+	private AlignmentChangeLog changeLog = new AlignmentChangeLog();
+	// the status of the links of the Steiner tree when its changes were last recorded
+	private HashMap<String, LinkStatus> steinerTreeLinkStatus = new HashMap<String, LinkStatus>();
 
 
 	public Alignment(OntologyManager ontologyManager) {
@@ -124,7 +127,13 @@ public class Alignment implements OntologyUpdateListener {
 		cloner.dontCloneInstanceOf(OntologyManager.class); 
 		cloner.dontClone(DirectedWeightedMultigraph.class); 
 		cloner.dontCloneInstanceOf(DirectedWeightedMultigraph.class); 
-		return cloner.deepClone(this);
+		Alignment clone = cloner.deepClone(this);
+		clone.changeLog = new AlignmentChangeLog();
+		return clone;
+	}
+	
+	public AlignmentChangeLog getChangeLog() {
+		return changeLog;
 	}
 	
 	public DirectedWeightedMultigraph<Node, LabeledLink> getSteinerTree() {
@@ -259,6 +268,8 @@ public class Alignment implements OntologyUpdateListener {
 		node.setDatatype(literalType);
 		node.setValue(value);
 		node.setUri(isUri);
+		if (this.steinerTree != null && this.steinerTree.containsVertex(node))
+			this.changeLog.nodeChanged(nodeId);
 	}
 	
 	public void deleteForcedInternalNode(String nodeId) {
@@ -369,8 +380,11 @@ public class Alignment implements OntologyUpdateListener {
 				newLink.setStatus(LinkStatus.ForcedByUser);
 				this.graphBuilder.addLink(source, target, newLink);
 			}
-		} else
+		} else {
 			this.graphBuilder.changeLinkStatus(link, newStatus);
+			if (this.steinerTree != null && this.steinerTree.containsEdge(link))
+				this.changeLog.linkChanged(linkId);
+		}
 	}
 	
 //	/**
@@ -679,8 +693,10 @@ public class Alignment implements OntologyUpdateListener {
 		logger.info(GraphUtil.defaultGraphToString(tree));
 		TreePostProcess treePostProcess = new TreePostProcess(this.graphBuilder, tree, getLinksByStatus(LinkStatus.ForcedByUser), true);
 
+		DirectedWeightedMultigraph<Node, LabeledLink> previousTree = this.steinerTree;
 		this.steinerTree = treePostProcess.getTree();
 		this.root = treePostProcess.getRoot();
+		this.recordSteinerTreeChanges(previousTree);
 
 		logger.info("*** steiner tree after post processing step ***");
 		logger.info(GraphUtil.labeledGraphToString(this.steinerTree));
@@ -785,11 +801,44 @@ public class Alignment implements OntologyUpdateListener {
 			
 		}
 
+		DirectedWeightedMultigraph<Node, LabeledLink> previousTree = this.steinerTree;
 		this.steinerTree = tree;
 		this.addForcedLinks();
 		this.root = TreePostProcess.selectRoot(GraphUtil.asDefaultGraph(tree));
+		this.recordSteinerTreeChanges(previousTree);
 
 	}
+	
+	private void recordSteinerTreeChanges(DirectedWeightedMultigraph<Node, LabeledLink> previousTree) {
+		
+		Set<String> previousNodeIds = new HashSet<String>();
+		if (previousTree != null) {
+			for (Node n : previousTree.vertexSet())
+				previousNodeIds.add(n.getId());
+		}
+		Set<String> previousLinkIds = new HashSet<String>(this.steinerTreeLinkStatus.keySet());
+		
+		Set<String> addedNodeIds = new HashSet<String>();
+		Set<String> addedLinkIds = new HashSet<String>();
+		HashMap<String, LinkStatus> linkStatus = new HashMap<String, LinkStatus>();
+		for (Node n : this.steinerTree.vertexSet()) {
+			if (!previousNodeIds.remove(n.getId()))
+				addedNodeIds.add(n.getId());
+		}
+		for (LabeledLink l : this.steinerTree.edgeSet()) {
+			linkStatus.put(l.getId(), l.getStatus());
+			if (!previousLinkIds.remove(l.getId()))
+				addedLinkIds.add(l.getId());
+			else if (l.getStatus() != this.steinerTreeLinkStatus.get(l.getId())) {
+				// the links kept in the tree become preferred by the UI
+				previousLinkIds.add(l.getId());
+				addedLinkIds.add(l.getId());
+			}
+		}
+		this.steinerTreeLinkStatus = linkStatus;
+		// what is left of the previous tree was removed
+		this.changeLog.record(addedNodeIds, previousNodeIds, addedLinkIds, previousLinkIds);
+	}
 
 	public void updateColumnNodesInAlignment(Worksheet worksheet) {
 
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.modeling.alignment;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The versions of the Steiner tree of an alignment. Every change to the nodes
+ * and links of the tree gets a new version, and the log keeps the ids of the
+ * nodes and links added and removed by the last {@link #CAPACITY} versions, so
+ * that the visualization can send the client only what changed since the
+ * version it has. A node or link whose content changed is removed and added
+ * again.
+ * <p>
+ * Each log has its own id, a clone of the alignment starts a new log.
+ */
+public class AlignmentChangeLog {
+
+	public static final int CAPACITY = 64;
+
+	private static final AtomicLong nextId = new AtomicLong();
+
+	private final long id = nextId.incrementAndGet();
+	private long version = 0;
+	private final LinkedList<Changes> changes = new LinkedList<Changes>();
+
+	/**
+	 * The ids of the nodes and links added and removed between two versions.
+	 * The removed ones must be applied before the added ones.
+	 */
+	public static class Changes {
+		private final Set<String> addedNodeIds = new HashSet<String>();
+		private final Set<String> removedNodeIds = new HashSet<String>();
+		private final Set<String> addedLinkIds = new HashSet<String>();
+		private final Set<String> removedLinkIds = new HashSet<String>();
+
+		public Set<String> getAddedNodeIds() {
+			return Collections.unmodifiableSet(addedNodeIds);
+		}
+
+		public Set<String> getRemovedNodeIds() {
+			return Collections.unmodifiableSet(removedNodeIds);
+		}
+
+		public Set<String> getAddedLinkIds() {
+			return Collections.unmodifiableSet(addedLinkIds);
+		}
+
+		public Set<String> getRemovedLinkIds() {
+			return Collections.unmodifiableSet(removedLinkIds);
+		}
+
+		public boolean isEmpty() {
+			return size() == 0;
+		}
+
+		public int size() {
+			return addedNodeIds.size() + removedNodeIds.size() + addedLinkIds.size() + removedLinkIds.size();
+		}
+
+		private void addAll(Changes next) {
+			addedNodeIds.removeAll(next.removedNodeIds);
+			removedNodeIds.addAll(next.removedNodeIds);
+			addedNodeIds.addAll(next.addedNodeIds);
+			addedLinkIds.removeAll(next.removedLinkIds);
+			removedLinkIds.addAll(next.removedLinkIds);
+			addedLinkIds.addAll(next.addedLinkIds);
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	synchronized void record(Set<String> addedNodeIds, Set<String> removedNodeIds,
+			Set<String> addedLinkIds, Set<String> removedLinkIds) {
+		Changes change = new Changes();
+		change.addedNodeIds.addAll(addedNodeIds);
+		change.removedNodeIds.addAll(removedNodeIds);
+		change.addedLinkIds.addAll(addedLinkIds);
+		change.removedLinkIds.addAll(removedLinkIds);
+		if (change.isEmpty())
+			return;
+		version++;
+		changes.addLast(change);
+		if (changes.size() > CAPACITY)
+			changes.removeFirst();
+	}
+
+	synchronized void nodeChanged(String nodeId) {
+		Set<String> ids = Collections.singleton(nodeId);
+		Set<String> none = Collections.emptySet();
+		record(ids, ids, none, none);
+	}
+
+	synchronized void linkChanged(String linkId) {
+		Set<String> ids = Collections.singleton(linkId);
+		Set<String> none = Collections.emptySet();
+		record(none, none, ids, ids);
+	}
+
+	/**
+	 * @return the changes between the given version and the current one, or
+	 *         null if the log does not have them anymore or the version is
+	 *         not one of this log.
+	 */
+	public synchronized Changes getChangesSince(long since) {
+		if (since > version || since < version - changes.size())
+			return null;
+		Changes merged = new Changes();
+		int skip = changes.size() - (int) (version - since);
+		for (Changes change : changes) {
+			if (skip-- > 0)
+				continue;
+			merged.addAll(change);
+		}
+		return merged;
+	}
+}
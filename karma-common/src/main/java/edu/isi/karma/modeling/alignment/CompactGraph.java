@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.modeling.alignment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jgrapht.Graph;
+
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.Node;
+
+/**
+ * An immutable, int-indexed snapshot of an alignment graph.
+ * Nodes and links are numbered from 0, the adjacency is stored in CSR form
+ * (one offset array and flat neighbor/link/weight arrays) and the node uris are interned
+ * into a uri table. The snapshot is undirected: every link appears in the adjacency
+ * of both its source and its target.
+ * @author mohsen
+ *
+ */
+public class CompactGraph {
+
+	private final Node[] nodes;
+	private final HashMap<String, Integer> nodeIdToIndex;
+
+	private final String[] uris;
+	private final int[] nodeUris;
+
+	private final DefaultLink[] links;
+	private final int[] linkSources;
+	private final int[] linkTargets;
+	private final double[] linkWeights;
+
+	// CSR adjacency: incidences of node i are in [offsets[i], offsets[i+1])
+	private final int[] offsets;
+	private final int[] adjacentNodes;
+	private final int[] adjacentLinks;
+	private final double[] adjacentWeights;
+
+	public CompactGraph(GraphBuilder graphBuilder) {
+		this(graphBuilder.getGraph());
+	}
+
+	public CompactGraph(Graph<Node, DefaultLink> graph) {
+
+		int nodeCount = graph.vertexSet().size();
+		int linkCount = graph.edgeSet().size();
+
+		this.nodes = new Node[nodeCount];
+		this.nodeIdToIndex = new HashMap<String, Integer>(nodeCount * 2);
+		this.nodeUris = new int[nodeCount];
+
+		HashMap<String, Integer> uriToIndex = new HashMap<String, Integer>();
+		List<String> uriList = new LinkedList<String>();
+
+		int i = 0;
+		for (Node n : graph.vertexSet()) {
+			this.nodes[i] = n;
+			this.nodeIdToIndex.put(n.getId(), i);
+			String uri = n.getUri();
+			Integer uriIndex = (uri == null) ? null : uriToIndex.get(uri);
+			if (uri == null) {
+				this.nodeUris[i] = -1;
+			} else if (uriIndex == null) {
+				uriToIndex.put(uri, uriList.size());
+				this.nodeUris[i] = uriList.size();
+				uriList.add(uri);
+			} else {
+				this.nodeUris[i] = uriIndex.intValue();
+			}
+			i++;
+		}
+		this.uris = uriList.toArray(new String[uriList.size()]);
+
+		this.links = new DefaultLink[linkCount];
+		this.linkSources = new int[linkCount];
+		this.linkTargets = new int[linkCount];
+		this.linkWeights = new double[linkCount];
+
+		int[] degrees = new int[nodeCount];
+		int j = 0;
+		for (DefaultLink l : graph.edgeSet()) {
+			this.links[j] = l;
+			this.linkSources[j] = this.nodeIdToIndex.get(graph.getEdgeSource(l).getId());
+			this.linkTargets[j] = this.nodeIdToIndex.get(graph.getEdgeTarget(l).getId());
+			this.linkWeights[j] = graph.getEdgeWeight(l);
+			degrees[this.linkSources[j]]++;
+			if (this.linkTargets[j] != this.linkSources[j])
+				degrees[this.linkTargets[j]]++;
+			j++;
+		}
+
+		this.offsets = new int[nodeCount + 1];
+		for (int k = 0; k < nodeCount; k++)
+			this.offsets[k + 1] = this.offsets[k] + degrees[k];
+
+		int incidenceCount = this.offsets[nodeCount];
+		this.adjacentNodes = new int[incidenceCount];
+		this.adjacentLinks = new int[incidenceCount];
+		this.adjacentWeights = new double[incidenceCount];
+
+		int[] next = Arrays.copyOf(this.offsets, nodeCount);
+		for (int k = 0; k < linkCount; k++) {
+			int s = this.linkSources[k];
+			int t = this.linkTargets[k];
+			addIncidence(next[s]++, t, k);
+			if (s != t)
+				addIncidence(next[t]++, s, k);
+		}
+	}
+
+	private void addIncidence(int position, int neighbor, int link) {
+		this.adjacentNodes[position] = neighbor;
+		this.adjacentLinks[position] = link;
+		this.adjacentWeights[position] = this.linkWeights[link];
+	}
+
+	public int getNodeCount() {
+		return this.nodes.length;
+	}
+
+	public int getLinkCount() {
+		return this.links.length;
+	}
+
+	/**
+	 * @return the index of the node in this snapshot or -1 if the node is not in the graph
+	 */
+	public int getNodeIndex(Node n) {
+		if (n == null) return -1;
+		Integer index = this.nodeIdToIndex.get(n.getId());
+		return index == null ? -1 : index.intValue();
+	}
+
+	public Node getNode(int index) {
+		return this.nodes[index];
+	}
+
+	public DefaultLink getLink(int index) {
+		return this.links[index];
+	}
+
+	public int getLinkSource(int index) {
+		return this.linkSources[index];
+	}
+
+	public int getLinkTarget(int index) {
+		return this.linkTargets[index];
+	}
+
+	public double getLinkWeight(int index) {
+		return this.linkWeights[index];
+	}
+
+	public int getDegree(int node) {
+		return this.offsets[node + 1] - this.offsets[node];
+	}
+
+	/**
+	 * @return the interned uri of the node or null if the node does not have a label
+	 */
+	public String getNodeUri(int node) {
+		int uriIndex = this.nodeUris[node];
+		return uriIndex == -1 ? null : this.uris[uriIndex];
+	}
+
+	public int getNodeUriIndex(int node) {
+		return this.nodeUris[node];
+	}
+
+	public int getUriCount() {
+		return this.uris.length;
+	}
+
+	/**
+	 * Runs Dijkstra from the source node over the undirected snapshot.
+	 * The weights of the links are assumed to be non-negative.
+	 * @param source index of the source node
+	 * @return distances and predecessors of all the nodes
+	 */
+	public ShortestPaths getShortestPaths(int source) {
+
+		int n = this.nodes.length;
+		double[] distances = new double[n];
+		int[] predecessorLinks = new int[n];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessorLinks, -1);
+
+		if (source < 0 || source >= n)
+			return new ShortestPaths(source, distances, predecessorLinks);
+
+		// binary heap of node indexes keyed by distance, with position lookup for decrease-key
+		int[] heap = new int[n];
+		int[] heapPosition = new int[n];
+		Arrays.fill(heapPosition, -1);
+		boolean[] settled = new boolean[n];
+		int heapSize = 0;
+
+		distances[source] = 0.0;
+		heap[0] = source;
+		heapPosition[source] = 0;
+		heapSize = 1;
+
+		while (heapSize > 0) {
+			int u = heap[0];
+			heapSize--;
+			heapPosition[u] = -1;
+			if (heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapPosition[heap[0]] = 0;
+				siftDown(heap, heapPosition, distances, 0, heapSize);
+			}
+			settled[u] = true;
+
+			double du = distances[u];
+			for (int p = this.offsets[u]; p < this.offsets[u + 1]; p++) {
+				int v = this.adjacentNodes[p];
+				if (settled[v]) continue;
+				double dv = du + this.adjacentWeights[p];
+				if (dv < distances[v]) {
+					distances[v] = dv;
+					predecessorLinks[v] = this.adjacentLinks[p];
+					if (heapPosition[v] == -1) {
+						heap[heapSize] = v;
+						heapPosition[v] = heapSize;
+						heapSize++;
+					}
+					siftUp(heap, heapPosition, distances, heapPosition[v]);
+				}
+			}
+		}
+
+		return new ShortestPaths(source, distances, predecessorLinks);
+	}
+
+	private static void siftUp(int[] heap, int[] heapPosition, double[] keys, int i) {
+		int x = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if (keys[p] <= keys[x]) break;
+			heap[i] = p;
+			heapPosition[p] = i;
+			i = parent;
+		}
+		heap[i] = x;
+		heapPosition[x] = i;
+	}
+
+	private static void siftDown(int[] heap, int[] heapPosition, double[] keys, int i, int size) {
+		int x = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[heap[child]])
+				child = right;
+			int c = heap[child];
+			if (keys[x] <= keys[c]) break;
+			heap[i] = c;
+			heapPosition[c] = i;
+			i = child;
+		}
+		heap[i] = x;
+		heapPosition[x] = i;
+	}
+
+	/**
+	 * Single-source shortest paths computed on a {@link CompactGraph}
+	 */
+	public class ShortestPaths {
+
+		private final int source;
+		private final double[] distances;
+		private final int[] predecessorLinks;
+
+		private ShortestPaths(int source, double[] distances, int[] predecessorLinks) {
+			this.source = source;
+			this.distances = distances;
+			this.predecessorLinks = predecessorLinks;
+		}
+
+		public int getSource() {
+			return source;
+		}
+
+		public double getDistance(int target) {
+			if (target < 0 || target >= distances.length)
+				return Double.POSITIVE_INFINITY;
+			return distances[target];
+		}
+
+		/**
+		 * @return the links of the shortest path from the source to the target in order,
+		 * an empty list if target is the source, or null if the target is not reachable
+		 */
+		public List<DefaultLink> getPathLinks(int target) {
+			if (target < 0 || target >= distances.length ||
+					distances[target] == Double.POSITIVE_INFINITY)
+				return null;
+
+			LinkedList<DefaultLink> path = new LinkedList<DefaultLink>();
+			int current = target;
+			while (current != source) {
+				int l = predecessorLinks[current];
+				path.addFirst(links[l]);
+				current = (linkTargets[l] == current) ? linkSources[l] : linkTargets[l];
+			}
+			return path;
+		}
+	}
+}
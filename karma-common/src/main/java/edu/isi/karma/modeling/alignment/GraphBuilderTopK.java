@@ -22,7 +22,6 @@ import edu.isi.karma.modeling.steiner.topk.Fact;
 import edu.isi.karma.modeling.steiner.topk.ResultGraph;
 import edu.isi.karma.modeling.steiner.topk.SteinerEdge;
 import edu.isi.karma.modeling.steiner.topk.SteinerNode;
-import edu.isi.karma.modeling.steiner.topk.TopKSteinertrees;
 import edu.isi.karma.rep.alignment.CompactObjectPropertyLink;
 import edu.isi.karma.rep.alignment.DefaultLink;
 import edu.isi.karma.rep.alignment.InternalNode;
@@ -39,62 +38,42 @@ public class GraphBuilderTopK extends GraphBuilder {
 	
 	static Logger logger = LoggerFactory.getLogger(GraphBuilderTopK.class);
 
-	private HashMap<SteinerNode, TreeSet<SteinerEdge>> topKGraph;
-	private HashMap<String, SteinerNode> topKGraphNodes;
-	
+	// input of the top-k algorithms, built on the first search after the graph changes.
+	// no initializer: the constructors of GraphBuilder already call the overrides below.
+	private volatile HashMap<SteinerNode, TreeSet<SteinerEdge>> topKGraph;
+
 	public GraphBuilderTopK(OntologyManager ontologyManager, boolean addThingNode) { 
 		super(ontologyManager, addThingNode);
-		if (topKGraph == null) topKGraph = new HashMap<SteinerNode, TreeSet<SteinerEdge>>();
-		if (topKGraphNodes == null) topKGraphNodes = new HashMap<String, SteinerNode>();
 	}
 	
 	public GraphBuilderTopK(OntologyManager ontologyManager, DirectedWeightedMultigraph<Node, DefaultLink> graph) {
 		super(ontologyManager, graph, true);
-		if (topKGraph == null) topKGraph = new HashMap<SteinerNode, TreeSet<SteinerEdge>>();
-		if (topKGraphNodes == null) topKGraphNodes = new HashMap<String, SteinerNode>();
 	}
 	
-	public HashMap<SteinerNode, TreeSet<SteinerEdge>> getTopKGraph() {
-		if (topKGraph == null)
-			topKGraph = new HashMap<SteinerNode, TreeSet<SteinerEdge>>();
-		return topKGraph;
-	}
-
-	public HashMap<String, SteinerNode> getTopKGraphNodes() {
-		if (topKGraphNodes == null)
-			topKGraphNodes = new HashMap<String, SteinerNode>();
-		return topKGraphNodes;
+	public void setGraph(DirectedWeightedMultigraph<Node, DefaultLink> graph) {
+		super.setGraph(graph);
+		topKGraph = null;
 	}
 	
 	public boolean addNode(Node node) {
 		if (super.addNode(node)) {
-			SteinerNode n = new SteinerNode(node.getId());
-			getTopKGraphNodes().put(n.getNodeId(), n);
-			getTopKGraph().put(n, new TreeSet<SteinerEdge>());
+			topKGraph = null;
 			return true;
 		} else
 			return false;
 	}
 	
-	public boolean addLink(Node source, Node target, DefaultLink link) {
-		if (super.addLink(source, target, link)) {
-			SteinerNode n1 = new SteinerNode(source.getId());
-			SteinerNode n2 = new SteinerNode(target.getId());
-			SteinerEdge e = new SteinerEdge(n1, link.getId(), n2, (float)link.getWeight());
-//			getTopKGraph().get(n1).add(e);
-			getTopKGraph().get(n2).add(e); // each node only stores its incoming links
+	public boolean removeNode(Node node) {
+		if (super.removeNode(node)) {
+			topKGraph = null;
 			return true;
 		} else
 			return false;
 	}
 	
-	public boolean addLink(Node source, Node target, DefaultLink link, Double weight) {
-		if (super.addLink(source, target, link, weight)) {
-			SteinerNode n1 = new SteinerNode(source.getId());
-			SteinerNode n2 = new SteinerNode(target.getId());
-			SteinerEdge e = new SteinerEdge(n1, link.getId(), n2, (float)weight.doubleValue());
-//			getTopKGraph().get(n1).add(e);
-			getTopKGraph().get(n2).add(e); // each node only stores its incoming links
+	public boolean addLink(Node source, Node target, DefaultLink link) {
+		if (super.addLink(source, target, link)) {
+			topKGraph = null;
 			return true;
 		} else
 			return false;
@@ -102,11 +81,7 @@ public class GraphBuilderTopK extends GraphBuilder {
 	
 	public boolean removeLink(DefaultLink link) {
 		if (super.removeLink(link)) {
-			SteinerNode n1 = new SteinerNode(link.getSource().getId());
-			SteinerNode n2 = new SteinerNode(link.getTarget().getId());
-			SteinerEdge e = new SteinerEdge(n1, link.getId(), n2, (float)link.getWeight());
-//			getTopKGraph().get(n1).remove(e);
-			getTopKGraph().get(n2).remove(e);
+			topKGraph = null;
 			return true;
 		} else
 			return false;
@@ -114,13 +89,42 @@ public class GraphBuilderTopK extends GraphBuilder {
 	
 	public void changeLinkWeight(DefaultLink link, double weight) {
 		super.changeLinkWeight(link, weight);
-		SteinerNode n1 = new SteinerNode(link.getSource().getId());
-		SteinerNode n2 = new SteinerNode(link.getTarget().getId());
-		SteinerEdge e = new SteinerEdge(n1, link.getId(), n2, (float)weight);
-//		getTopKGraph().get(n1).remove(e);
-		getTopKGraph().get(n2).remove(e);
-//		getTopKGraph().get(n1).add(e);
-		getTopKGraph().get(n2).add(e);
+		topKGraph = null;
+	}
+	
+	/**
+	 * Returns the input of the top-k algorithms, built from a compact snapshot of the 
+	 * current graph if it changed since the last search. Each node only stores its incoming links.
+	 * The searches only read it, so it is shared by all of them until the graph changes.
+	 */
+	private HashMap<SteinerNode, TreeSet<SteinerEdge>> getTopKGraph() {
+		HashMap<SteinerNode, TreeSet<SteinerEdge>> topKGraph = this.topKGraph;
+		if (topKGraph == null) {
+			topKGraph = buildTopKGraph();
+			this.topKGraph = topKGraph;
+		}
+		return topKGraph;
+	}
+	
+	private HashMap<SteinerNode, TreeSet<SteinerEdge>> buildTopKGraph() {
+		
+		CompactGraph compactGraph = new CompactGraph(this);
+		HashMap<SteinerNode, TreeSet<SteinerEdge>> topKGraph = new HashMap<SteinerNode, TreeSet<SteinerEdge>>();
+		
+		SteinerNode[] steinerNodes = new SteinerNode[compactGraph.getNodeCount()];
+		for (int i = 0; i < compactGraph.getNodeCount(); i++) {
+			SteinerNode n = new SteinerNode(compactGraph.getNode(i).getId());
+			steinerNodes[i] = n;
+			topKGraph.put(n, new TreeSet<SteinerEdge>());
+		}
+		
+		for (int i = 0; i < compactGraph.getLinkCount(); i++) {
+			SteinerNode n1 = new SteinerNode(steinerNodes[compactGraph.getLinkSource(i)].getNodeId());
+			SteinerNode n2 = new SteinerNode(steinerNodes[compactGraph.getLinkTarget(i)].getNodeId());
+			SteinerEdge e = new SteinerEdge(n1, compactGraph.getLink(i).getId(), n2, (float)compactGraph.getLinkWeight(i));
+			topKGraph.get(steinerNodes[compactGraph.getLinkTarget(i)]).add(e);
+		}
+		return topKGraph;
 	}
 
 	public List<DirectedWeightedMultigraph<Node, LabeledLink>> getTopKSteinerTrees(Set<Node> steinerNodes, 
@@ -144,11 +148,11 @@ public class GraphBuilderTopK extends GraphBuilder {
 			terminals.add(new SteinerNode(n.getId()));
 		}
 		
-//		DPBFfromMM N = new DPBFfromMM(terminals);
-		BANKSfromMM N = new BANKSfromMM(terminals);
-//		STARfromMM N = new STARfromMM(terminals);
-		TopKSteinertrees.graph = this.getTopKGraph();
-		TopKSteinertrees.nodes = this.getTopKGraphNodes();
+		HashMap<SteinerNode, TreeSet<SteinerEdge>> topKGraph = getTopKGraph();
+		
+//		DPBFfromMM N = new DPBFfromMM(topKGraph, terminals);
+		BANKSfromMM N = new BANKSfromMM(topKGraph, terminals);
+//		STARfromMM N = new STARfromMM(topKGraph, terminals);
 		
 		List<DirectedWeightedMultigraph<Node, LabeledLink>> results = new 
 				LinkedList<DirectedWeightedMultigraph<Node, LabeledLink>>();
@@ -341,9 +345,7 @@ public class GraphBuilderTopK extends GraphBuilder {
 			System.out.println(GraphUtil.labeledGraphToString(tree));
 		}
 
-//		DPBFfromMM N = new DPBFfromMM(terminals);
-//		N.graph = gbtk.getTopKGraph();
-//		N.nodes = gbtk.getTopKGraphNodes();
+//		DPBFfromMM N = new DPBFfromMM(topKGraph, terminals);
 //		
 //		long startTime=System.currentTimeMillis();
 //		N.getTopKTrees(3);
@@ -190,15 +190,11 @@ public class SemanticModel {
 		if (this.graph == null)
 			return;
 		
-		for (Node n : this.graph.vertexSet()) {
-			
-			if (!(n instanceof ColumnNode)) continue;
-			
-			ColumnNode cn = (ColumnNode)n;
-						
-			List<SemanticType> learnedSemanticTypes = 
-					new SemanticTypeUtil().getColumnSemanticSuggestions(workspace, worksheet, cn, 4, selection);
-			cn.setLearnedSemanticTypes(learnedSemanticTypes);
+		List<ColumnNode> columnNodes = getColumnNodes();
+		Map<String, ArrayList<SemanticType>> learnedSemanticTypes = 
+				new SemanticTypeUtil().getColumnSemanticSuggestions(workspace, worksheet, columnNodes, 4, selection);
+		for (ColumnNode cn : columnNodes) {
+			cn.setLearnedSemanticTypes(learnedSemanticTypes.get(cn.getHNodeId()));
 		}
 	}
 	
@@ -711,6 +707,10 @@ public class SemanticModel {
 		
 	}
 	
+	public void writeJson(JsonWriter writer) throws IOException {
+		writeModel(writer);
+	}
+	
 	private void writeModel(JsonWriter writer) throws IOException {
 		String nullStr = null;
 		writer.beginObject();
@@ -785,6 +785,10 @@ public class SemanticModel {
 	    }
 	}
 	
+	public static SemanticModel readJson(JsonReader reader) throws IOException {
+		return readModel(reader);
+	}
+	
 	private static SemanticModel readModel(JsonReader reader) throws IOException {
 		
 		String id = null;
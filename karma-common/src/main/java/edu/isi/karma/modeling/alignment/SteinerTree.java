@@ -22,12 +22,11 @@ package edu.isi.karma.modeling.alignment;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.BellmanFordShortestPath;
-import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.alg.KruskalMinimumSpanningTree;
 import org.jgrapht.graph.Pseudograph;
 import org.jgrapht.graph.WeightedMultigraph;
@@ -40,6 +39,8 @@ import edu.isi.karma.rep.alignment.Node;
 
 /**
  * The approach is taken from the paper "A fast algorithm for steiner trees" by L. Kou et. al.
+ * The shortest paths are computed on a {@link CompactGraph} snapshot of the input graph.
+ * Pass the same snapshot to several instances to avoid rebuilding it for each set of steiner nodes.
  * @author mohsen
  *
  */
@@ -47,13 +48,19 @@ public class SteinerTree {
 	
 	static Logger logger = LoggerFactory.getLogger(SteinerTree.class);
 
-	UndirectedGraph<Node, DefaultLink> graph;
+	CompactGraph graph;
 	WeightedMultigraph<Node, DefaultLink> tree;
 	List<Node> steinerNodes;
+	HashMap<Node, CompactGraph.ShortestPaths> shortestPaths;
 	
 	public SteinerTree(UndirectedGraph<Node, DefaultLink> graph, List<Node> steinerNodes) {
+		this(new CompactGraph(graph), steinerNodes);
+	}
+	
+	public SteinerTree(CompactGraph graph, List<Node> steinerNodes) {
 		this.graph = graph;
 		this.steinerNodes = steinerNodes;
+		this.shortestPaths = new HashMap<Node, CompactGraph.ShortestPaths>();
 		
 		runAlgorithm();
 	}
@@ -73,10 +80,14 @@ public class SteinerTree {
 			g.addVertex(n);
 		}
 		
-		BellmanFordShortestPath<Node, DefaultLink> path;
+		CompactGraph.ShortestPaths path;
 		
 		for (Node n1 : this.steinerNodes) {
-			path = new BellmanFordShortestPath<Node, DefaultLink>(this.graph, n1);
+			path = this.shortestPaths.get(n1);
+			if (path == null) {
+				path = this.graph.getShortestPaths(this.graph.getNodeIndex(n1));
+				this.shortestPaths.put(n1, path);
+			}
 			
 			for (Node n2 : this.steinerNodes) {
 				
@@ -88,7 +99,7 @@ public class SteinerTree {
 				
 				DefaultLink e = new DefaultLink();
 				g.addEdge(n1, n2, e);
-				g.setEdgeWeight(e, path.getCost(n2));
+				g.setEdgeWeight(e, path.getDistance(this.graph.getNodeIndex(n2)));
 				
 			}
 
@@ -151,7 +162,7 @@ public class SteinerTree {
 			new WeightedMultigraph<Node, DefaultLink>(DefaultLink.class);
 		
 		Set<DefaultLink> edges = g2.edgeSet();
-		DijkstraShortestPath<Node, DefaultLink> path;
+		CompactGraph.ShortestPaths path;
 		
 		Node source, target;
 		
@@ -159,8 +170,11 @@ public class SteinerTree {
 			source = edge.getSource();
 			target = edge.getTarget();
 			
-			path = new DijkstraShortestPath<Node, DefaultLink>(this.graph, source, target);
-			List<DefaultLink> pathEdges = path.getPathEdgeList();
+			// the shortest paths from all the steiner nodes are already computed in step 1
+			path = this.shortestPaths.get(source);
+			if (path == null)
+				continue;
+			List<DefaultLink> pathEdges = path.getPathLinks(this.graph.getNodeIndex(target));
 			
 			if (pathEdges == null)
 				continue;
@@ -251,7 +265,7 @@ public class SteinerTree {
 			source = nonSteinerLeaves.get(i);
 			do {
 				DefaultLink e = g5.edgesOf(source).toArray(new DefaultLink[0])[0];
-				target = this.graph.getEdgeTarget(e);
+				target = e.getTarget();
 				
 				// this should not happen, but just in case of ...
 				if (target.equals(source)) 
@@ -29,7 +29,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import org.jgrapht.graph.AsUndirectedGraph;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.jgrapht.graph.WeightedMultigraph;
 import org.python.google.common.collect.Lists;
@@ -37,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.config.ModelingConfiguration;
+import edu.isi.karma.modeling.alignment.CompactGraph;
 import edu.isi.karma.modeling.alignment.GraphBuilder;
 import edu.isi.karma.modeling.alignment.GraphBuilderTopK;
 import edu.isi.karma.modeling.alignment.GraphUtil;
@@ -224,6 +224,10 @@ public class ModelLearner {
 //		logger.info("time to update weights: " + (updateWightsElapsedTimeMillis/1000F));
 		
 		logger.info("computing steiner trees ...");
+		long start = System.currentTimeMillis();
+		// the graph does not change while computing the steiner trees, so one snapshot is shared by all the candidate sets
+		CompactGraph compactGraph = new CompactGraph(this.graphBuilder);
+		logger.info("time to build the compact graph: " + ((System.currentTimeMillis() - start)/1000F));
 		int number = 1;
 		for (SteinerNodes sn : candidateSteinerSets.getSteinerSets()) {
 			if (sn == null) continue;
@@ -239,8 +243,7 @@ public class ModelLearner {
 //			else 
 			{
 				topKSteinerTrees = new LinkedList<DirectedWeightedMultigraph<Node, LabeledLink>>();
-				SteinerTree steinerTree = new SteinerTree(
-						new AsUndirectedGraph<Node, DefaultLink>(this.graphBuilder.getGraph()), Lists.newLinkedList(sn.getNodes()));
+				SteinerTree steinerTree = new SteinerTree(compactGraph, Lists.newLinkedList(sn.getNodes()));
 				WeightedMultigraph<Node, DefaultLink> t = steinerTree.getDefaultSteinerTree();
 				TreePostProcess treePostProcess = new TreePostProcess(this.graphBuilder, t);
 				if (treePostProcess.getTree() != null)
@@ -274,6 +277,8 @@ public class ModelLearner {
 
 		}
 
+		logger.info("time to compute steiner trees: " + ((System.currentTimeMillis() - start)/1000F));
+
 		Collections.sort(sortableSemanticModels);
 		int count = Math.min(sortableSemanticModels.size(), ModelingConfiguration.getNumCandidateMappings());
 		logger.info("results are ready ...");
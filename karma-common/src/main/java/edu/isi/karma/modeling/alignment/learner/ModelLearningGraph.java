@@ -24,6 +24,7 @@ package edu.isi.karma.modeling.alignment.learner;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.graph.DirectedWeightedMultigraph;
@@ -53,7 +54,12 @@ public abstract class ModelLearningGraph {
 	protected GraphBuilder graphBuilder;
 	protected NodeIdFactory nodeIdFactory; 
 	protected long lastUpdateTime;
+	private ModelLearningGraphStore store;
 	
+	private static final String getGraphDirectory()
+	{
+		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY);
+	}
 	private static final String getGraphJsonName()
 	{
 		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph.json";
@@ -91,18 +97,24 @@ public abstract class ModelLearningGraph {
 		this.ontologyManager = ontologyManager;
 		
 		File file = new File(getGraphJsonName());
-		if (!file.exists()) {
-			this.initializeFromJsonRepository();
-		} else {
+		if (this.getStore().hasSnapshot()) {
+			logger.info("loading the alignment graph from the snapshot ...");
+			try {
+				this.loadGraph(this.getStore().readSnapshot(), type);
+				this.replayLog();
+				logger.info("loading is done!");
+			} catch (Exception e) {
+				logger.error("error in loading the snapshot of the alignment graph, rebuilding it from the repository.", e);
+				this.initializeFromJsonRepository();
+			}
+		} else if (file.exists()) {
+			// graph exported by the older versions, it is converted to a snapshot
 			logger.info("loading the alignment graph ...");
-			DirectedWeightedMultigraph<Node, DefaultLink> graph =
-					GraphUtil.importJson(getGraphJsonName());
-			if (type == ModelLearningGraphType.Compact)
-				this.graphBuilder = new GraphBuilderTopK(ontologyManager, graph);
-			else
-				this.graphBuilder = new GraphBuilder(ontologyManager, graph, false);
-			this.nodeIdFactory = this.graphBuilder.getNodeIdFactory();
+			this.loadGraph(GraphUtil.importJson(getGraphJsonName()), type);
+			this.writeSnapshot();
 			logger.info("loading is done!");
+		} else {
+			this.initializeFromJsonRepository();
 		}
 		if (this.graphBuilder.getGraph() != null) {
 			logger.info("number of nodes: " + this.graphBuilder.getGraph().vertexSet().size());
@@ -111,6 +123,31 @@ public abstract class ModelLearningGraph {
 		this.lastUpdateTime = System.currentTimeMillis();
 	}
 	
+	private void loadGraph(DirectedWeightedMultigraph<Node, DefaultLink> graph, ModelLearningGraphType type) {
+		if (type == ModelLearningGraphType.Compact)
+			this.graphBuilder = new GraphBuilderTopK(ontologyManager, graph);
+		else
+			this.graphBuilder = new GraphBuilder(ontologyManager, graph, false);
+		this.nodeIdFactory = this.graphBuilder.getNodeIdFactory();
+	}
+	
+	private void replayLog() throws IOException {
+		List<SemanticModel> models = this.getStore().readLog();
+		logger.info("replaying " + models.size() + " models added after the snapshot ...");
+		for (SemanticModel model : models) {
+			if (this.graphBuilder.getModelIds().contains(model.getId()))
+				continue;
+			this.addModel(model);
+			this.updateGraphUsingOntology(model);
+		}
+	}
+	
+	private ModelLearningGraphStore getStore() {
+		if (this.store == null)
+			this.store = new ModelLearningGraphStore(getGraphDirectory());
+		return this.store;
+	}
+	
 	protected ModelLearningGraph(OntologyManager ontologyManager, boolean emptyInstance, ModelLearningGraphType type) {
 		this.ontologyManager = ontologyManager;
 		if (type == ModelLearningGraphType.Compact)
@@ -178,12 +215,22 @@ public abstract class ModelLearningGraph {
 		// FIXME
 //		this.updateGraphUsingOntology(addedNodes);
 		
-		this.exportJson();
-		this.exportGraphviz();
+		this.writeSnapshot();
 		this.lastUpdateTime = System.currentTimeMillis();
 		logger.info("initialization is done!");
 	}
 	
+	/**
+	 * Writes the whole graph as a new snapshot and empties the log
+	 */
+	public synchronized void writeSnapshot() {
+		try {
+			this.getStore().writeSnapshot(this.graphBuilder.getGraph());
+		} catch (Exception e) {
+			logger.error("error in writing the snapshot of the alignment graph!", e);
+		}
+	}
+	
 	public void exportJson() {
 		try {
 			GraphUtil.exportJson(this.graphBuilder.getGraph(), getGraphJsonName());
@@ -192,6 +239,9 @@ public abstract class ModelLearningGraph {
 		}
 	}
 	
+	/**
+	 * Graphviz output is not written when the graph changes anymore, it is only generated on demand.
+	 */
 	public void exportGraphviz() {
 		try {
 			GraphVizUtil.exportJGraphToGraphviz(this.graphBuilder.getGraph(), 
@@ -214,11 +264,22 @@ public abstract class ModelLearningGraph {
 		this.updateGraphUsingOntology(model);
 	}
 	
-	public void addModelAndUpdateAndExport(SemanticModel model) {
+	/**
+	 * Adds the model to the graph and appends it to the log. 
+	 * The graph is only rewritten when enough models are logged since the last snapshot.
+	 */
+	public synchronized void addModelAndUpdateAndExport(SemanticModel model) {
 		this.addModel(model);
 		this.updateGraphUsingOntology(model);
-		this.exportJson();
-		this.exportGraphviz();
+		try {
+			this.getStore().appendModel(model);
+		} catch (Exception e) {
+			logger.error("error in logging the model, writing a new snapshot of the alignment graph.", e);
+			this.writeSnapshot();
+			return;
+		}
+		if (this.getStore().needsCompaction())
+			this.writeSnapshot();
 	}
 	
 	private void updateGraphUsingOntology(SemanticModel model) {
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+
+package edu.isi.karma.modeling.alignment.learner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.isi.karma.modeling.alignment.GraphUtil;
+import edu.isi.karma.modeling.alignment.SemanticModel;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.Node;
+
+/**
+ * Persists the model learning graph as a compacted snapshot plus an append-only log
+ * of the models added after the snapshot.
+ * The snapshot is the gzipped json of the graph. Each log record is the length of the
+ * record followed by the gzipped json of one semantic model.
+ * Publishing a model only appends one record; the snapshot is rewritten after
+ * {@link #MODELS_PER_SNAPSHOT} records.
+ */
+public class ModelLearningGraphStore {
+
+	private static Logger logger = LoggerFactory.getLogger(ModelLearningGraphStore.class);
+
+	public static final int MODELS_PER_SNAPSHOT = 20;
+
+	private static final int LOG_MAGIC = 0x4B4D4C47; // KMLG
+	private static final int LOG_HEADER_SIZE = 4;
+
+	private File snapshotFile;
+	private File logFile;
+	private int numberOfLoggedModels;
+
+	public ModelLearningGraphStore(String directory) {
+		this.snapshotFile = new File(directory + "graph.snapshot");
+		this.logFile = new File(directory + "graph.log");
+		this.numberOfLoggedModels = 0;
+	}
+
+	public boolean hasSnapshot() {
+		return this.snapshotFile.exists();
+	}
+
+	public int getNumberOfLoggedModels() {
+		return numberOfLoggedModels;
+	}
+
+	public boolean needsCompaction() {
+		return this.numberOfLoggedModels >= MODELS_PER_SNAPSHOT;
+	}
+
+	/**
+	 * Writes the graph to a temporary file and moves it over the snapshot in one atomic step,
+	 * then empties the log. A crash before the move leaves the previous snapshot and the log,
+	 * a crash after it leaves a log whose models are already in the snapshot, and replaying
+	 * them skips them.
+	 */
+	public void writeSnapshot(DirectedWeightedMultigraph<Node, DefaultLink> graph) throws IOException {
+
+		logger.info("writing the snapshot of the alignment graph ...");
+		File tempFile = new File(this.snapshotFile.getAbsolutePath() + ".tmp");
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+				new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))), "UTF-8"));
+		try {
+			GraphUtil.writeGraph(graph, writer);
+		} finally {
+			writer.close();
+		}
+		FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+		try {
+			Files.move(tempFile.toPath(), this.snapshotFile.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), this.snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// the log is only emptied once the snapshot that contains its models is in place
+		resetLog();
+		logger.info("snapshot is written.");
+	}
+
+	public DirectedWeightedMultigraph<Node, DefaultLink> readSnapshot() throws IOException {
+		JsonReader reader = new JsonReader(new InputStreamReader(
+				new GZIPInputStream(new BufferedInputStream(new FileInputStream(this.snapshotFile))), "UTF-8"));
+		try {
+			return GraphUtil.readGraph(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Appends the model to the log. The record is written with a single write call and
+	 * a record that is cut by a crash is dropped when the log is read.
+	 */
+	public void appendModel(SemanticModel model) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(bytes), "UTF-8"));
+		try {
+			model.writeJson(writer);
+		} finally {
+			writer.close();
+		}
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.size() + 4);
+		DataOutputStream recordOut = new DataOutputStream(record);
+		recordOut.writeInt(bytes.size());
+		bytes.writeTo(recordOut);
+		recordOut.flush();
+
+		boolean newLog = !this.logFile.exists() || this.logFile.length() < LOG_HEADER_SIZE;
+		FileOutputStream out = new FileOutputStream(this.logFile, !newLog);
+		try {
+			if (newLog)
+				new DataOutputStream(out).writeInt(LOG_MAGIC);
+			record.writeTo(out);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		this.numberOfLoggedModels++;
+	}
+
+	/**
+	 * Reads the models logged after the snapshot.
+	 * A partial record at the end of the log is truncated.
+	 */
+	public List<SemanticModel> readLog() throws IOException {
+
+		List<SemanticModel> models = new LinkedList<SemanticModel>();
+		this.numberOfLoggedModels = 0;
+		if (!this.logFile.exists())
+			return models;
+		if (this.logFile.length() < LOG_HEADER_SIZE) {
+			resetLog();
+			return models;
+		}
+
+		long fileLength = this.logFile.length();
+		long validLength = LOG_HEADER_SIZE;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.logFile)));
+		try {
+			if (in.readInt() != LOG_MAGIC) {
+				logger.error("the log of the alignment graph is not valid, ignoring it.");
+				in.close();
+				resetLog();
+				return models;
+			}
+			while (true) {
+				int length = in.readInt();
+				if (length < 0 || validLength + 4 + length > fileLength)
+					break;
+				byte[] data = new byte[length];
+				in.readFully(data);
+				JsonReader reader = new JsonReader(new InputStreamReader(
+						new GZIPInputStream(new ByteArrayInputStream(data)), "UTF-8"));
+				try {
+					SemanticModel model = SemanticModel.readJson(reader);
+					if (model != null) models.add(model);
+				} finally {
+					reader.close();
+				}
+				validLength += 4 + length;
+				this.numberOfLoggedModels++;
+			}
+		} catch (EOFException e) {
+			// end of the log
+		} finally {
+			in.close();
+		}
+
+		if (validLength < fileLength) {
+			logger.warn("dropping a partial record at the end of the log of the alignment graph.");
+			RandomAccessFile raf = new RandomAccessFile(this.logFile, "rw");
+			try {
+				raf.setLength(validLength);
+			} finally {
+				raf.close();
+			}
+		}
+		return models;
+	}
+
+	public void resetLog() {
+		if (this.logFile.exists() && !this.logFile.delete())
+			logger.error("cannot delete the log of the alignment graph " + this.logFile.getAbsolutePath());
+		this.numberOfLoggedModels = 0;
+	}
+}
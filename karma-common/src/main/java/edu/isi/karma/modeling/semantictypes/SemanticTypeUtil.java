@@ -24,7 +24,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
@@ -96,8 +99,14 @@ public class SemanticTypeUtil {
 		}
 		ArrayList<Node> nodes = new ArrayList<Node>(Math.max(100, worksheet.getDataTable().getNumRows()));
 		worksheet.getDataTable().collectNodes(path, nodes, sel);
+		return sampleExamples(nodes, new Random());
+	}
 
-		Random r = new Random();
+	/**
+	 * Picks at most TRAINING_EXAMPLE_MAX_COUNT non empty values of the nodes
+	 * of a column at random.
+	 */
+	private static ArrayList<String> sampleExamples(ArrayList<Node> nodes, Random r) {
 		ArrayList<String> subset = new ArrayList<String>(TRAINING_EXAMPLE_MAX_COUNT);
 		if (nodes.size() > TRAINING_EXAMPLE_MAX_COUNT *2) {
 			HashSet<Integer> seenValues = new HashSet<Integer>(TRAINING_EXAMPLE_MAX_COUNT);
@@ -127,16 +136,45 @@ public class SemanticTypeUtil {
 		}
 		return subset;
 	}
-	
-	public void trainOnColumn(Workspace workspace, Worksheet worksheet, SemanticType newType, SuperSelection sel) {
-		HNodePath currentColumnPath = null;
-		List<HNodePath> paths = worksheet.getHeaders().getAllPaths();
+
+	/**
+	 * Prepares the training examples of many columns in one pass over the
+	 * rows of the worksheet, instead of collecting all the nodes of each
+	 * column in turn. The examples of a column are chosen as in
+	 * {@link #getTrainingExamples(Worksheet, HNodePath, SuperSelection)}.
+	 * 
+	 * @param worksheet
+	 *            The target worksheet
+	 * @param paths
+	 *            Paths to the target columns
+	 * @return The training examples of each column, by HNode id of the leaf
+	 *         of its path, in the order of the paths
+	 */
+	public static Map<String, List<String>> getTrainingExamples(Worksheet worksheet,
+			List<HNodePath> paths, SuperSelection sel) {
+		Map<String, List<String>> examples = new LinkedHashMap<String, List<String>>();
+		if(!getSemanticTypeTrainingEnabled())
+		{
+			return examples;
+		}
+		List<HNodePath> sampledPaths = new ArrayList<HNodePath>(paths.size());
+		List<ArrayList<Node>> nodes = new ArrayList<ArrayList<Node>>(paths.size());
+		Set<String> hNodeIds = new HashSet<String>();
 		for (HNodePath path : paths) {
-			if (path.getLeaf().getId().equals(newType.getHNodeId())) {
-				currentColumnPath = path;
-				break;
-			}
+			if (path == null || !hNodeIds.add(path.getLeaf().getId()))
+				continue;
+			sampledPaths.add(path);
+			nodes.add(new ArrayList<Node>(Math.max(100, worksheet.getDataTable().getNumRows())));
 		}
+		worksheet.getDataTable().collectNodes(sampledPaths, nodes, sel);
+		Random r = new Random();
+		for (int i = 0; i < sampledPaths.size(); i++)
+			examples.put(sampledPaths.get(i).getLeaf().getId(), sampleExamples(nodes.get(i), r));
+		return examples;
+	}
+	
+	public void trainOnColumn(Workspace workspace, Worksheet worksheet, SemanticType newType, SuperSelection sel) {
+		HNodePath currentColumnPath = worksheet.getHeaders().getLeafPath(newType.getHNodeId());
 		
 		ArrayList<String> examples = getTrainingExamples(worksheet, currentColumnPath, sel);
 		ISemanticTypeModelHandler modelHandler = workspace.getSemanticTypeModelHandler();
@@ -145,14 +183,7 @@ public class SemanticTypeUtil {
 	}
 	
 	public SemanticTypeColumnModel predictColumnSemanticType(Workspace workspace, Worksheet worksheet, String hNodeId, int numSuggestions, SuperSelection sel) {
-		HNodePath currentColumnPath = null;
-		List<HNodePath> paths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : paths) {
-			if (path.getLeaf().getId().equals(hNodeId)) {
-				currentColumnPath = path;
-				break;
-			}
-		}
+		HNodePath currentColumnPath = worksheet.getHeaders().getLeafPath(hNodeId);
 		if(currentColumnPath != null)
 			return predictColumnSemanticType(workspace, worksheet,currentColumnPath, numSuggestions, sel);
 		return null;
@@ -165,14 +196,53 @@ public class SemanticTypeUtil {
 			return null;
 
 		ISemanticTypeModelHandler modelHandler = workspace.getSemanticTypeModelHandler();
-		OntologyManager ontologyManager = workspace.getOntologyManager();
 		
 		List<SemanticTypeLabel> result = modelHandler.predictType(trainingExamples, numSuggestions);
 		if (result == null) {
 			logger.debug("Error occured while predicting semantic type.");
 			return null;
 		}
-		if (result.size() == 0) {
+		return getColumnModel(result, workspace.getOntologyManager());
+	}
+
+	/**
+	 * Predicts the semantic types of many columns at once: their training
+	 * examples are sampled in one pass over the worksheet and the model
+	 * handler predicts them together.
+	 * 
+	 * @return the column model of each column that got a prediction, by HNode
+	 *         id
+	 */
+	public Map<String, SemanticTypeColumnModel> predictColumnSemanticTypes(Workspace workspace, Worksheet worksheet, List<HNodePath> paths, int numSuggestions, SuperSelection sel) {
+		Map<String, SemanticTypeColumnModel> columnModels = new LinkedHashMap<String, SemanticTypeColumnModel>();
+		Map<String, List<String>> trainingExamples = SemanticTypeUtil.getTrainingExamples(worksheet,
+				paths, sel);
+		Iterator<List<String>> examples = trainingExamples.values().iterator();
+		while (examples.hasNext()) {
+			if (examples.next().size() == 0)
+				examples.remove();
+		}
+		if (trainingExamples.size() == 0)
+			return columnModels;
+
+		ISemanticTypeModelHandler modelHandler = workspace.getSemanticTypeModelHandler();
+		OntologyManager ontologyManager = workspace.getOntologyManager();
+
+		Map<String, List<SemanticTypeLabel>> results = modelHandler.predictTypes(trainingExamples, numSuggestions);
+		if (results == null) {
+			logger.debug("Error occured while predicting semantic types.");
+			return columnModels;
+		}
+		for (Entry<String, List<SemanticTypeLabel>> entry : results.entrySet()) {
+			SemanticTypeColumnModel columnModel = getColumnModel(entry.getValue(), ontologyManager);
+			if (columnModel != null)
+				columnModels.put(entry.getKey(), columnModel);
+		}
+		return columnModels;
+	}
+
+	private SemanticTypeColumnModel getColumnModel(List<SemanticTypeLabel> result, OntologyManager ontologyManager) {
+		if (result == null || result.size() == 0) {
 			return null;
 		}
 
@@ -218,36 +288,67 @@ public class SemanticTypeUtil {
 	}
 
 	public ArrayList<SemanticType> getColumnSemanticSuggestions(Workspace workspace, Worksheet worksheet, ColumnNode cn, int numSuggestions, SuperSelection sel) {
-		ArrayList<SemanticType> suggestedSemanticTypes = new ArrayList<SemanticType>();
 		logger.info("Column Semantic Suggestions for:" + cn.getColumnName());
 		if(workspace != null && worksheet != null) {
-			OntologyManager ontologyManager = workspace.getOntologyManager();
 			String hNodeId = cn.getHNodeId();
 			SemanticTypeColumnModel columnModel = predictColumnSemanticType(workspace, worksheet, hNodeId, numSuggestions, sel);
-			
-			if (columnModel != null) {
-				for (Entry<String, Double> entry : columnModel.getScoreMap().entrySet()) {
-	
-					String key = entry.getKey();
-					Double confidence = entry.getValue();
-					if (key == null || key.isEmpty()) continue;
-	
-					String[] parts = key.split("\\|");
-					if (parts == null || parts.length != 2) continue;
-	
-					String domainUri = parts[0].trim();
-					String propertyUri = parts[1].trim();
-	
-					Label domainLabel = ontologyManager.getUriLabel(domainUri);
-					if (domainLabel == null) continue;
-	
-					Label propertyLabel = ontologyManager.getUriLabel(propertyUri);
-					if (propertyLabel == null) continue;
-	
-					SemanticType semanticType = new SemanticType(hNodeId, propertyLabel, domainLabel, Origin.CRFModel, confidence);
-					logger.info("\t" + propertyUri + " of " + domainUri + ": " + confidence);
-					suggestedSemanticTypes.add(semanticType);
-				}
+			return getSemanticTypes(hNodeId, columnModel, workspace.getOntologyManager());
+		}
+		return new ArrayList<SemanticType>();
+	}
+
+	/**
+	 * Gets the suggestions of many columns at once, see
+	 * {@link #predictColumnSemanticTypes(Workspace, Worksheet, List, int, SuperSelection)}.
+	 * 
+	 * @return the suggestions of each column, by HNode id
+	 */
+	public Map<String, ArrayList<SemanticType>> getColumnSemanticSuggestions(Workspace workspace, Worksheet worksheet, Collection<ColumnNode> columnNodes, int numSuggestions, SuperSelection sel) {
+		Map<String, ArrayList<SemanticType>> suggestions = new LinkedHashMap<String, ArrayList<SemanticType>>();
+		logger.info("Column Semantic Suggestions for " + columnNodes.size() + " columns");
+		Map<String, SemanticTypeColumnModel> columnModels = Collections.emptyMap();
+		OntologyManager ontologyManager = null;
+		if(workspace != null && worksheet != null) {
+			List<HNodePath> paths = new ArrayList<HNodePath>(columnNodes.size());
+			for (ColumnNode cn : columnNodes) {
+				HNodePath currentColumnPath = worksheet.getHeaders().getLeafPath(cn.getHNodeId());
+				if(currentColumnPath != null)
+					paths.add(currentColumnPath);
+			}
+			columnModels = predictColumnSemanticTypes(workspace, worksheet, paths, numSuggestions, sel);
+			ontologyManager = workspace.getOntologyManager();
+		}
+		for (ColumnNode cn : columnNodes) {
+			String hNodeId = cn.getHNodeId();
+			suggestions.put(hNodeId, getSemanticTypes(hNodeId, columnModels.get(hNodeId), ontologyManager));
+		}
+		return suggestions;
+	}
+
+	private ArrayList<SemanticType> getSemanticTypes(String hNodeId, SemanticTypeColumnModel columnModel, OntologyManager ontologyManager) {
+		ArrayList<SemanticType> suggestedSemanticTypes = new ArrayList<SemanticType>();
+		if (columnModel != null) {
+			for (Entry<String, Double> entry : columnModel.getScoreMap().entrySet()) {
+
+				String key = entry.getKey();
+				Double confidence = entry.getValue();
+				if (key == null || key.isEmpty()) continue;
+
+				String[] parts = key.split("\\|");
+				if (parts == null || parts.length != 2) continue;
+
+				String domainUri = parts[0].trim();
+				String propertyUri = parts[1].trim();
+
+				Label domainLabel = ontologyManager.getUriLabel(domainUri);
+				if (domainLabel == null) continue;
+
+				Label propertyLabel = ontologyManager.getUriLabel(propertyUri);
+				if (propertyLabel == null) continue;
+
+				SemanticType semanticType = new SemanticType(hNodeId, propertyLabel, domainLabel, Origin.CRFModel, confidence);
+				logger.info("\t" + propertyUri + " of " + domainUri + ": " + confidence);
+				suggestedSemanticTypes.add(semanticType);
 			}
 		}
 		Collections.sort(suggestedSemanticTypes, Collections.reverseOrder());
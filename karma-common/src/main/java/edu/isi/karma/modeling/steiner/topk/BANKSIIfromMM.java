@@ -25,14 +25,16 @@ public class BANKSIIfromMM extends BANKSfromMM {
 	}
 	
 	
-	public BANKSIIfromMM(TreeSet<SteinerNode> terminals) throws Exception {
-		super(terminals);
+	public BANKSIIfromMM(Map<SteinerNode, TreeSet<SteinerEdge>> graph, TreeSet<SteinerNode> terminals) throws Exception {
+		super(graph, terminals);
 	}
 	
 	
 	/**
 	 * A BANKSIINode has a predecessor for each terminal, a distance from each terminal,
 	 * an activation from each terminal node.
+	 * It also keeps the edge to its predecessor, so that a search never writes to the
+	 * nodes of the graph, which other searches may be reading.
 	 * @author kasneci
 	 *
 	 */
@@ -42,6 +44,11 @@ public class BANKSIIfromMM extends BANKSfromMM {
 		Map<SteinerNode, Double> distancesToTerminals;
 		Map<SteinerNode, Double> activationFromTerminals;
 		
+		// needed to rebuild trees
+		boolean wasArg1;
+		float weightToPredecessor;
+		String relationToPredecessor;
+		
 		BANKSIINode(SteinerNode nodeName){
 			node= new SteinerNode(nodeName.name());
 			predecessorsFromTerminals= new HashMap<SteinerNode, BANKSIINode>();
@@ -236,9 +243,9 @@ public class BANKSIIfromMM extends BANKSfromMM {
 				u.distancesToTerminals.put(n,v.distancesToTerminals.get(n)+e.weight());
 				
 				// needed to rebuild trees
-				v.node.wasArg1=e.sourceNode.equals(v.node);
-				v.node.weightToPredecessor=e.weight();
-				v.node.relationToPredecessor=e.getEdgeLabel();
+				v.wasArg1=e.sourceNode.equals(v.node);
+				v.weightToPredecessor=e.weight();
+				v.relationToPredecessor=e.getEdgeLabel();
 				u.predecessorsFromTerminals.put(n, v);
 				
 				// set activation of u
@@ -296,9 +303,9 @@ public class BANKSIIfromMM extends BANKSfromMM {
 				
 				if(processedNodes.containsKey(bN.node))continue;
 				SteinerEdge e= null;
-				if(bN.node.isWasArg1())
-					e=new SteinerEdge(bN.node,bN.node.relationToPredecessor, root, bN.node.weightToPredecessor );
-				else e= new SteinerEdge(root,bN.node.relationToPredecessor, bN.node, bN.node.weightToPredecessor );
+				if(bN.wasArg1)
+					e=new SteinerEdge(bN.node,bN.relationToPredecessor, root, bN.weightToPredecessor );
+				else e= new SteinerEdge(root,bN.relationToPredecessor, bN.node, bN.weightToPredecessor );
 				trEdges.add(e);
 				processedNodes.put(bN.node, bN);
 				queue.add(bN);
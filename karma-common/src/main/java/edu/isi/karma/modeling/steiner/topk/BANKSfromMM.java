@@ -68,8 +68,8 @@ public class BANKSfromMM extends TopKSteinertrees {
 	 */
 	protected Queue<BANKSIterator> banksIterators;
 	
-	public BANKSfromMM(TreeSet<SteinerNode> terminals) throws Exception {
-		super(terminals);
+	public BANKSfromMM(Map<SteinerNode, TreeSet<SteinerEdge>> graph, TreeSet<SteinerNode> terminals) throws Exception {
+		super(graph, terminals);
 	
 		banksIterators=new PriorityQueue<BANKSIterator>(terminals.size(), new Comparator<BANKSIterator>(){
 			public int compare(BANKSIterator it1, BANKSIterator it2){
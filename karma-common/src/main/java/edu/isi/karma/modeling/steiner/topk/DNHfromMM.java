@@ -25,11 +25,12 @@ public class DNHfromMM extends TopKSteinertrees{
 	}
 	/**
 	 * 
+	 * @param graph graph in which the trees are searched
 	 * @param terminals given terminal nodes
 	 * @throws Exception
 	 */
-	public DNHfromMM(TreeSet<SteinerNode> terminals) throws Exception{
-			super(terminals);
+	public DNHfromMM(Map<SteinerNode, TreeSet<SteinerEdge>> graph, TreeSet<SteinerNode> terminals) throws Exception{
+			super(graph, terminals);
 		
 	}
 	
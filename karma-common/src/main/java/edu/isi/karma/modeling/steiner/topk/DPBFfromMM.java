@@ -33,11 +33,12 @@ public class DPBFfromMM extends TopKSteinertrees {
 	
 	/**
 	 * instantiation with the received terminals
+	 * @param graph graph in which the trees are searched
 	 * @param terminals terminal nodes
 	 * @throws Exception
 	 */
-	public DPBFfromMM(TreeSet<SteinerNode> terminals)throws Exception{
-		super(terminals);
+	public DPBFfromMM(Map<SteinerNode, TreeSet<SteinerEdge>> graph, TreeSet<SteinerNode> terminals)throws Exception{
+		super(graph, terminals);
 	}
 	
 	/**
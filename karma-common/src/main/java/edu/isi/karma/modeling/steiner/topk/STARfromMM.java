@@ -18,8 +18,8 @@ public class STARfromMM extends TopKSteinertrees{
 		// TODO Auto-generated constructor stub
 	}
 	
-	public STARfromMM(TreeSet<SteinerNode> terminals) throws Exception {
-		super(terminals);
+	public STARfromMM(Map<SteinerNode, TreeSet<SteinerEdge>> graph, TreeSet<SteinerNode> terminals) throws Exception {
+		super(graph, terminals);
 		
 	}
 	
@@ -97,13 +97,11 @@ public class TestTopK {
 		terminals.add(n7);
 		
 		
-//		STARfromMM N = new STARfromMM(terminals);
-//		BANKSIIfromMM N = new BANKSIIfromMM(terminals);
-		BANKSfromMM N = new BANKSfromMM(terminals);
-//		DNHfromMM N = new DNHfromMM(terminals);
-//		DPBFfromMM N = new DPBFfromMM(terminals);
-		N.graph = graph;
-		N.nodes = nodes;
+//		STARfromMM N = new STARfromMM(graph, terminals);
+//		BANKSIIfromMM N = new BANKSIIfromMM(graph, terminals);
+		BANKSfromMM N = new BANKSfromMM(graph, terminals);
+//		DNHfromMM N = new DNHfromMM(graph, terminals);
+//		DPBFfromMM N = new DPBFfromMM(graph, terminals);
 
 //		N.writeGraphForSTAR("");
 //		N.loadGraphFromFile("STAR.txt");
@@ -7,6 +7,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -22,6 +23,9 @@ import java.util.TreeSet;
 /**
  * This class serves as a super class for different implementations of the STAR
  * algorithm.
+ * The graph is owned by the instance and is only read during a search, so several 
+ * searches over the same or different graphs can run in parallel. 
+ * An instance itself keeps the state of one search and must not be shared between threads.
  * 
  * @author kasneci
  *
@@ -32,13 +36,13 @@ public abstract class TopKSteinertrees {
 	/******* data structures and methods for main memory algorithms ************/
 	
 	//	graph which can be loaded  into main memory
-	public static Map<SteinerNode, TreeSet<SteinerEdge>> graph;
+	protected Map<SteinerNode, TreeSet<SteinerEdge>> graph;
 	
 	//nodes of the graph
-	public static Map<String, SteinerNode> nodes;
+	protected Map<String, SteinerNode> nodes;
 	
 	//maps node names to ids
-	public static Map<String, Integer> nodeToId= new HashMap<String, Integer>();
+	protected Map<String, Integer> nodeToId= new HashMap<String, Integer>();
 	
 	
 	
@@ -223,10 +227,13 @@ public abstract class TopKSteinertrees {
 	
 	/**
 	 * 
+	 * @param graph the graph in which each node is mapped to its edges, it is not modified by the search
 	 * @param terminals the terminal nodes for which the Steiner trees are going to be constructed
 	 * @throws Exception
 	 */
-	public TopKSteinertrees(TreeSet<SteinerNode> terminals)throws Exception {
+	public TopKSteinertrees(Map<SteinerNode, TreeSet<SteinerEdge>> graph, 
+			TreeSet<SteinerNode> terminals)throws Exception {
+		this.graph=Collections.unmodifiableMap(graph);
 		terminalNodes=terminals;
 		iterators=new ArrayList<Queue<SteinerNode>>(terminals.size());
 		visitedNodes= new ArrayList<HashMap<String, SteinerNode>>();
@@ -467,4 +474,23 @@ public abstract class TopKSteinertrees {
 		return resultQueue;
 	}
 
+
+	public Map<SteinerNode, TreeSet<SteinerEdge>> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the nodes of the graph by name, indexed on the first call when the graph
+	 * was given to the constructor
+	 */
+	public Map<String, SteinerNode> getNodes() {
+		if (nodes == null && graph != null) {
+			Map<String, SteinerNode> graphNodes = new HashMap<String, SteinerNode>();
+			for (SteinerNode n : graph.keySet())
+				graphNodes.put(n.name(), n);
+			nodes = graphNodes;
+		}
+		return nodes;
+	}
+
 }
@@ -32,6 +32,7 @@ public class ColumnMetadata {
 //	private Map<String, COLUMN_TYPE>	columnTypes;
 //	private Map<String, List<String>>	invalidNodeIds;
 	private Map<String, JSONObject>		columnHistogramData;
+	private Map<String, Long>			columnHistogramFingerprints;
 	private Map<String, String>			columnPythonTransform;
 	private Map<String, String>			columnPreviousCommandId;
 	private Map<String, String>			columnDerivedFrom;
@@ -43,6 +44,7 @@ public class ColumnMetadata {
 //		this.columnTypes 			= new HashMap<String, ColumnMetadata.COLUMN_TYPE>();
 //		this.invalidNodeIds 		= new HashMap<String, List<String>>();
 		this.columnHistogramData	= new HashMap<String, JSONObject>();
+		this.columnHistogramFingerprints = new HashMap<String, Long>();
 		this.columnPythonTransform  = new HashMap<String, String>();
 		this.columnPreviousCommandId = new HashMap<String, String>();
 		this.columnDerivedFrom = new HashMap<String, String>();
@@ -73,6 +75,24 @@ public class ColumnMetadata {
 	
 	public void addColumnHistogramData(String hNodeId, JSONObject data) {
 		columnHistogramData.put(hNodeId, data);
+		columnHistogramFingerprints.remove(hNodeId);
+	}
+	
+	/**
+	 * Adds the histogram of the column values with the given fingerprint, see
+	 * {@link ColumnProfiler.Sample#getFingerprint()}.
+	 */
+	public void addColumnHistogramData(String hNodeId, JSONObject data, long fingerprint) {
+		columnHistogramData.put(hNodeId, data);
+		columnHistogramFingerprints.put(hNodeId, fingerprint);
+	}
+	
+	/**
+	 * @return the fingerprint of the column values the histogram was computed
+	 *         from, or null if it is not known.
+	 */
+	public Long getColumnHistogramFingerprint(String hNodeId) {
+		return columnHistogramFingerprints.get(hNodeId);
 	}
 	
 	public void addColumnOnError(String hNodeId, Boolean onError) {
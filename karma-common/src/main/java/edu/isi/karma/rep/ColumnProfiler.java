@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.rep;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.isi.karma.controller.command.selection.SuperSelection;
+
+/**
+ * Profiles the values of a column for the cleaning charts.
+ * <p>
+ * {@link #sample(Table, HNodePath, SuperSelection)} goes once through the
+ * nodes of the column, keeping a uniform random sample of them (reservoir
+ * sampling) and a fingerprint of the values, so that a profile can be reused
+ * until the values of the column change.
+ * {@link #profile(Sample)} computes the histogram of a sample in the format of
+ * the cleaning service: the detected type of the column, the frequency of the
+ * most common values or of ranges of numbers, and the number of missing and
+ * invalid values, scaled to the whole column.
+ */
+public class ColumnProfiler {
+
+	public static final int DEFAULT_SAMPLE_SIZE = 1000;
+	/**
+	 * The number of bars of a histogram, besides the remaining, missing and
+	 * invalid values.
+	 */
+	public static final int MAX_BARS = 10;
+
+	public static final String REMAINING = "Remaining";
+	public static final String MISSING = "MISSING";
+	public static final String INVALID = "INVALID";
+
+	private static final Pattern INTEGER = Pattern.compile("[-+]?\\d+");
+	private static final Pattern DECIMAL = Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+	private static final Pattern BOOLEAN = Pattern.compile("(?i)true|false|yes|no");
+
+	private enum JsonKeys {
+		histogram, histogram_Colwidth, xLabel, yLabel, Value, Frequency,
+		Total_ID_Count, Valid_ID_Count, Invalid_ID_Count, Preferred_Length
+	}
+
+	private enum ValueType {
+		Integer, Decimal, Boolean, String
+	}
+
+	private final int sampleSize;
+	private final Random random;
+
+	public ColumnProfiler() {
+		this(DEFAULT_SAMPLE_SIZE, new Random());
+	}
+
+	public ColumnProfiler(int sampleSize, Random random) {
+		this.sampleSize = sampleSize;
+		this.random = random;
+	}
+
+	/**
+	 * A uniform random sample of the nodes of a column.
+	 */
+	public static class Sample {
+		private final List<Node> nodes;
+		private final long count;
+		private final long fingerprint;
+
+		Sample(List<Node> nodes, long count, long fingerprint) {
+			this.nodes = nodes;
+			this.count = count;
+			this.fingerprint = fingerprint;
+		}
+
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return the number of nodes in the column.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return a hash of the values of the column, in order.
+		 */
+		public long getFingerprint() {
+			return fingerprint;
+		}
+	}
+
+	/**
+	 * Receives the nodes of the column from
+	 * {@link Table#collectNodes(HNodePath, java.util.Collection, SuperSelection)}
+	 * and keeps a sample of them, following algorithm L of Li, "Reservoir-
+	 * sampling algorithms of time complexity O(n(1 + log(N/n)))", 1994.
+	 */
+	private class Reservoir extends AbstractCollection<Node> {
+		private final List<Node> sample = new ArrayList<Node>(sampleSize);
+		private long count;
+		private long fingerprint = 1;
+		// the number of the next node that goes into the sample
+		private long next;
+		private double w;
+
+		@Override
+		public boolean add(Node node) {
+			count++;
+			String value = node.getValue().asString();
+			fingerprint = 1000003 * fingerprint + (value == null ? 0 : value.hashCode());
+			if (sample.size() < sampleSize) {
+				sample.add(node);
+				if (sample.size() == sampleSize) {
+					w = Math.exp(Math.log(nextDouble()) / sampleSize);
+					skip();
+				}
+			} else if (count == next) {
+				sample.set(random.nextInt(sampleSize), node);
+				w *= Math.exp(Math.log(nextDouble()) / sampleSize);
+				skip();
+			}
+			return true;
+		}
+
+		private void skip() {
+			next = count + (long) Math.floor(Math.log(nextDouble()) / Math.log(1 - w)) + 1;
+		}
+
+		private double nextDouble() {
+			// in (0, 1], the logarithm of 0 is not defined
+			return 1.0 - random.nextDouble();
+		}
+
+		@Override
+		public Iterator<Node> iterator() {
+			return sample.iterator();
+		}
+
+		@Override
+		public int size() {
+			return sample.size();
+		}
+	}
+
+	/**
+	 * Goes once through the nodes of the column that the selection does not
+	 * hide.
+	 */
+	public Sample sample(Table table, HNodePath path, SuperSelection selection) {
+		Reservoir reservoir = new Reservoir();
+		if (sampleSize > 0)
+			table.collectNodes(path, reservoir, selection);
+		return new Sample(reservoir.sample, reservoir.count, 31 * reservoir.fingerprint + reservoir.count);
+	}
+
+	/**
+	 * @return the histogram of the sample, with the frequencies scaled to the
+	 *         whole column.
+	 */
+	public JSONObject profile(Sample sample) {
+		int numMissing = 0;
+		int maxLength = 0;
+		Map<ValueType, Integer> typeCounts = new HashMap<ValueType, Integer>();
+		List<String> values = new ArrayList<String>(sample.getNodes().size());
+		for (Node node : sample.getNodes()) {
+			String value = node.getValue().asString();
+			value = value == null ? "" : value.trim();
+			if (value.isEmpty()) {
+				numMissing++;
+				continue;
+			}
+			values.add(value);
+			maxLength = Math.max(maxLength, value.length());
+			ValueType type = getType(value);
+			Integer typeCount = typeCounts.get(type);
+			typeCounts.put(type, typeCount == null ? 1 : typeCount + 1);
+		}
+
+		// Numbers and booleans are detected when most of the values have
+		// the type, the other values are invalid.
+		int numIntegers = getCount(typeCounts, ValueType.Integer);
+		int numNumbers = numIntegers + getCount(typeCounts, ValueType.Decimal);
+		ValueType columnType = ValueType.String;
+		if (numNumbers > 0 && numNumbers * 2 >= values.size())
+			columnType = numNumbers == numIntegers ? ValueType.Integer : ValueType.Decimal;
+		else if (getCount(typeCounts, ValueType.Boolean) * 2 > values.size())
+			columnType = ValueType.Boolean;
+
+		double sampleRate = sample.getNodes().isEmpty() ? 0 : sample.getCount() * 1.0 / sample.getNodes().size();
+		JSONObject output = new JSONObject();
+		JSONArray histogram = new JSONArray();
+		int numInvalid = 0;
+		if (columnType == ValueType.Integer || columnType == ValueType.Decimal) {
+			List<Double> numbers = new ArrayList<Double>(values.size());
+			for (String value : values) {
+				if (DECIMAL.matcher(value).matches())
+					numbers.add(Double.parseDouble(value));
+				else
+					numInvalid++;
+			}
+			addRanges(numbers, columnType == ValueType.Integer, sampleRate, histogram, output);
+		} else {
+			if (columnType == ValueType.Boolean) {
+				for (String value : values) {
+					if (!BOOLEAN.matcher(value).matches())
+						numInvalid++;
+				}
+			}
+			addMostFrequentValues(values, sampleRate, histogram);
+		}
+		if (numMissing > 0)
+			histogram.put(bar(MISSING, numMissing, sampleRate));
+		if (numInvalid > 0)
+			histogram.put(bar(INVALID, numInvalid, sampleRate));
+
+		output.put(JsonKeys.histogram.name(), histogram.toString());
+		output.put(JsonKeys.xLabel.name(), columnType.name());
+		output.put(JsonKeys.yLabel.name(), "Frequency");
+		output.put(JsonKeys.Total_ID_Count.name(), sample.getCount());
+		output.put(JsonKeys.Valid_ID_Count.name(), Math.round((values.size() - numInvalid) * sampleRate));
+		output.put(JsonKeys.Invalid_ID_Count.name(), Math.round(numInvalid * sampleRate));
+		output.put(JsonKeys.Preferred_Length.name(), maxLength);
+		return output;
+	}
+
+	private static ValueType getType(String value) {
+		if (INTEGER.matcher(value).matches())
+			return ValueType.Integer;
+		if (DECIMAL.matcher(value).matches())
+			return ValueType.Decimal;
+		if (BOOLEAN.matcher(value).matches())
+			return ValueType.Boolean;
+		return ValueType.String;
+	}
+
+	private static int getCount(Map<ValueType, Integer> typeCounts, ValueType type) {
+		Integer count = typeCounts.get(type);
+		return count == null ? 0 : count;
+	}
+
+	private static JSONObject bar(String value, long frequency, double sampleRate) {
+		JSONObject bar = new JSONObject();
+		bar.put(JsonKeys.Value.name(), value);
+		bar.put(JsonKeys.Frequency.name(), Math.round(frequency * sampleRate));
+		return bar;
+	}
+
+	/**
+	 * Splits the numbers in ranges of the same width.
+	 */
+	private static void addRanges(List<Double> numbers, boolean integers, double sampleRate,
+			JSONArray histogram, JSONObject output) {
+		if (numbers.isEmpty())
+			return;
+		double min = Collections.min(numbers);
+		double max = Collections.max(numbers);
+		int numBars = MAX_BARS;
+		if (integers)
+			numBars = (int) Math.min(numBars, max - min + 1);
+		double width = (max - min) / numBars;
+		if (integers)
+			width = Math.ceil((max - min + 1) / numBars);
+		if (width == 0)
+			numBars = 1;
+		long[] frequencies = new long[numBars];
+		for (double number : numbers) {
+			int bar = width == 0 ? 0 : (int) Math.min(numBars - 1, Math.floor((number - min) / width));
+			frequencies[bar]++;
+		}
+		for (int i = 0; i < numBars; i++) {
+			double low = min + i * width;
+			String value;
+			if (integers && width <= 1)
+				value = format(low, true);
+			else if (integers)
+				value = format(low, true) + "-" + format(low + width - 1, true);
+			else
+				value = format(low, false) + "-" + format(i == numBars - 1 ? max : low + width, false);
+			histogram.put(bar(value, frequencies[i], sampleRate));
+		}
+		output.put(JsonKeys.histogram_Colwidth.name(), integers ? format(width, true) : format(width, false));
+	}
+
+	private static String format(double number, boolean integer) {
+		if (integer)
+			return String.valueOf((long) number);
+		return String.format("%.4g", number);
+	}
+
+	/**
+	 * Counts the most frequent values, and the remaining ones together.
+	 */
+	private static void addMostFrequentValues(List<String> values, double sampleRate, JSONArray histogram) {
+		final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		for (String value : values) {
+			Integer frequency = frequencies.get(value);
+			frequencies.put(value, frequency == null ? 1 : frequency + 1);
+		}
+		List<String> distinct = new ArrayList<String>(frequencies.keySet());
+		Collections.sort(distinct, new Comparator<String>() {
+			@Override
+			public int compare(String v1, String v2) {
+				int c = frequencies.get(v2).compareTo(frequencies.get(v1));
+				return c != 0 ? c : v1.compareTo(v2);
+			}
+		});
+		int remaining = values.size();
+		for (int i = 0; i < distinct.size() && i < MAX_BARS; i++) {
+			int frequency = frequencies.get(distinct.get(i));
+			histogram.put(bar(distinct.get(i), frequency, sampleRate));
+			remaining -= frequency;
+		}
+		if (remaining > 0)
+			histogram.put(bar(REMAINING, remaining, sampleRate));
+	}
+}
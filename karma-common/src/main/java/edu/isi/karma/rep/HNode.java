@@ -43,6 +43,9 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 	// The HTable I belong to.
 	private final String hTableId;
 
+	// The same HTable, set while I am in it, to tell it when I change.
+	private HTable hTable = null;
+
 	// The name of the column I represent.
 	private String columnName;
 
@@ -79,6 +82,16 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 
 	public void setColumnName(String columnName) {
 		this.columnName = columnName;
+		headersChanged();
+	}
+
+	void setHTable(HTable hTable) {
+		this.hTable = hTable;
+	}
+
+	void headersChanged() {
+		if (hTable != null)
+			hTable.headersChanged();
 	}
 
 	/**
@@ -121,10 +134,12 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 		this.nestedTable = nestedTable;
 		// mariam
 		nestedTable.setParentHNode(this);
+		headersChanged();
 	}
 
 	public void removeNestedTable() {
 		this.nestedTable = null;
+		headersChanged();
 		// Pedro 2012-09-15
 		// TODO: this is wrong.If we remove a nested table we have to go to the
 		// data table and remove if from all the rows.
@@ -132,9 +147,13 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 
 	public HTable addNestedTable(String tableName, Worksheet worksheet,
 			RepFactory factory) {
+		WorksheetUndoLog undoLog = factory.getUndoLog(worksheet.getId());
+		if (undoLog != null)
+			undoLog.nestedHTableAdded(this);
 		nestedTable = factory.createHTable(tableName);
 		// mariam
 		nestedTable.setParentHNode(this);
+		headersChanged();
 		worksheet.addNestedTableToDataTable(this, factory);
 		return nestedTable;
 	}
@@ -158,6 +177,17 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 	 * @return the HNodePath for this node.
 	 */
 	public HNodePath getHNodePath(RepFactory factory) {
+		if (hTable != null) {
+			// the path from the outermost table, from its index
+			HTable t = hTable;
+			while (t.getParentHNode() != null && t.getParentHNode().hTable != null)
+				t = t.getParentHNode().hTable;
+			if (t.getParentHNode() == null) {
+				HNodePath path = t.getPath(id);
+				if (path != null)
+					return new HNodePath(path);
+			}
+		}
 		HNodePath p1 = new HNodePath(this);
 		// get the table that it belongs to
 		HTable t = factory.getHTable(hTableId);
@@ -59,6 +59,30 @@ public class HTable extends RepEntity {
 	 */
 	private HNode parentHNode = null;
 
+	// Incremented when an HNode of this table or of a nested table is added,
+	// removed or renamed, or gets or loses a nested table.
+	private volatile int modCount = 0;
+
+	private volatile HeaderIndex headerIndex = null;
+
+	/**
+	 * The column names and paths of the HNodes of this table and of its nested
+	 * tables, as of a modCount of the table. An index is never modified, a
+	 * new one is built when the headers change.
+	 */
+	private static class HeaderIndex {
+		private final int modCount;
+		// column name -> id of the first HNode of this table with that name
+		private final Map<String, String> columnNameToHNodeId = new HashMap<String, String>();
+		// HNodeId -> path from this table, for all HNodes below this table
+		private final Map<String, HNodePath> hNodeIdToPath = new HashMap<String, HNodePath>();
+		private final List<HNodePath> leafPaths = new ArrayList<HNodePath>();
+
+		private HeaderIndex(int modCount) {
+			this.modCount = modCount;
+		}
+	}
+
 	public HTable(String id, String tableName) {
 		super(id);
 		this.tableName = tableName;
@@ -89,12 +113,8 @@ public class HTable extends RepEntity {
 	}
 
 	public HNode getHNodeFromColumnName(String columnName) {
-		for (HNode n : nodes.values()) {
-			if (columnName.equals(n.getColumnName())) {
-				return n;
-			}
-		}
-		return null;
+		String hNodeId = getHNodeIdFromColumnName(columnName);
+		return hNodeId == null ? null : nodes.get(hNodeId);
 	}
 
 	// mariam
@@ -138,12 +158,7 @@ public class HTable extends RepEntity {
 	 *         worksheets that do not contain nested tables.
 	 */
 	public String getHNodeIdFromColumnName(String columnName) {
-		for (Map.Entry<String, HNode> n : nodes.entrySet()) {
-			if (columnName.equals(n.getValue().getColumnName())) {
-				return n.getKey();
-			}
-		}
-		return null;
+		return getHeaderIndex().columnNameToHNodeId.get(columnName);
 	}
 
 	/**
@@ -177,9 +192,10 @@ public class HTable extends RepEntity {
 			Worksheet worksheet, RepFactory factory) {
 		columnName = verifyColumnName(columnName);
 		HNode hn = factory.createHNode(id, columnName, automaticallyAdded, type);
-		nodes.put(hn.getId(), hn);
+		putHNode(hn);
 		orderedNodeIds.add(hn.getId());
 		worksheet.addNodeToDataTable(hn, factory);
+		recordAddedHNode(hn, worksheet, factory);
 		return hn;
 	}
 
@@ -217,7 +233,7 @@ public class HTable extends RepEntity {
 			}
 		} else {
 			HNode newNode = factory.createHNode(getId(), columnName, false, type);
-			nodes.put(newNode.getId(), newNode);
+			putHNode(newNode);
 			int index = orderedNodeIds.indexOf(hNodeId);
 
 			if (index == orderedNodeIds.size() - 1)
@@ -225,6 +241,7 @@ public class HTable extends RepEntity {
 			else
 				orderedNodeIds.add(index + 1, newNode.getId());
 			worksheet.addNodeToDataTable(newNode, factory);
+			recordAddedHNode(newNode, worksheet, factory);
 		}
 	}
 
@@ -235,7 +252,7 @@ public class HTable extends RepEntity {
 			String columnName, Worksheet worksheet, boolean b) throws KarmaException {
 
 		HNode hn = factory.createHNode(id, columnName, false, type);
-		nodes.put(hn.getId(), hn);
+		putHNode(hn);
 		//if hNodeId==null add new node at the beginning
 		if(hNodeId==null){
 			orderedNodeIds.add(0,hn.getId());
@@ -255,20 +272,74 @@ public class HTable extends RepEntity {
 		}
 		
 		worksheet.addNodeToDataTable(hn, factory);
+		recordAddedHNode(hn, worksheet, factory);
 
 		return hn;
 	}
 
+	private void putHNode(HNode hNode) {
+		nodes.put(hNode.getId(), hNode);
+		hNode.setHTable(this);
+		headersChanged();
+	}
+
+	private void recordAddedHNode(HNode hNode, Worksheet worksheet, RepFactory factory) {
+		WorksheetUndoLog undoLog = factory.getUndoLog(worksheet.getId());
+		if (undoLog != null)
+			undoLog.hNodeAdded(this, hNode);
+	}
+
 	//mariam 2012-11-30
 	public void removeHNode(String hNodeId,Worksheet worksheet){
 
-		nodes.remove(hNodeId);
+		HNode hNode = nodes.remove(hNodeId);
+		if (hNode != null)
+			hNode.setHTable(null);
 		orderedNodeIds.remove(hNodeId);
+		headersChanged();
 		worksheet.removeNodeFromDataTable(hNodeId);
 	}
 
 	/**
-	 * Returns ordered nodeIds.
+	 * Invalidates the column names and paths of this table and of the tables
+	 * that contain it. Called when an HNode below this table is added, removed
+	 * or renamed, or gets or loses a nested table.
+	 */
+	void headersChanged() {
+		modCount++;
+		if (parentHNode != null)
+			parentHNode.headersChanged();
+	}
+
+	private HeaderIndex getHeaderIndex() {
+		HeaderIndex index = headerIndex;
+		int currentModCount = modCount;
+		if (index != null && index.modCount == currentModCount)
+			return index;
+
+		index = new HeaderIndex(currentModCount);
+		for (String hNodeId : orderedNodeIds) {
+			HNode hn = nodes.get(hNodeId);
+			if (!index.columnNameToHNodeId.containsKey(hn.getColumnName()))
+				index.columnNameToHNodeId.put(hn.getColumnName(), hNodeId);
+			HNodePath path = new HNodePath(hn);
+			index.hNodeIdToPath.put(hNodeId, path);
+			if (hn.hasNestedTable()) {
+				HeaderIndex nestedIndex = hn.getNestedTable().getHeaderIndex();
+				for (HNodePath nestedPath : nestedIndex.leafPaths)
+					index.leafPaths.add(HNodePath.concatenate(path, nestedPath));
+				for (Map.Entry<String, HNodePath> entry : nestedIndex.hNodeIdToPath.entrySet())
+					index.hNodeIdToPath.put(entry.getKey(), HNodePath.concatenate(path, entry.getValue()));
+			} else {
+				index.leafPaths.add(path);
+			}
+		}
+		headerIndex = index;
+		return index;
+	}
+
+	/**
+	 * Returns ordered nodeIds. The list must not be modified.
 	 * 
 	 * @return ordered nodeIds.
 	 * @author mariam
@@ -288,27 +359,39 @@ public class HTable extends RepEntity {
 		}
 	}
 
+	/**
+	 * Returns the paths to the leaf HNodes of this table and of its nested
+	 * tables, in column order. The paths are shared with later calls until
+	 * the headers change, so they must not be modified.
+	 * 
+	 * @return a new list of the paths to the leaf HNodes.
+	 */
 	public List<HNodePath> getAllPaths() {
-		List<HNodePath> x = new LinkedList<HNodePath>();
-		for (HNode hn : getSortedHNodes()) {
-			x.add(new HNodePath(hn));
-		}
-		return expandPaths(x);
+		return new ArrayList<HNodePath>(getHeaderIndex().leafPaths);
 	}
 
-	private List<HNodePath> expandPaths(List<HNodePath> paths) {
-		List<HNodePath> x = new LinkedList<HNodePath>();
-		for (HNodePath p : paths) {
-			if (p.getLeaf().getNestedTable() != null) {
-				HTable nestedHTable = p.getLeaf().getNestedTable();
-				for (HNodePath nestedP : nestedHTable.getAllPaths()) {
-					x.add(HNodePath.concatenate(p, nestedP));
-				}
-			} else {
-				x.add(p);
-			}
-		}
-		return x;
+	/**
+	 * Returns the path from this table to an HNode of this table or of one of
+	 * its nested tables. The path is shared, so it must not be modified.
+	 * 
+	 * @param hNodeId
+	 * @return the path to the HNode, or null if it is not below this table.
+	 */
+	public HNodePath getPath(String hNodeId) {
+		return getHeaderIndex().hNodeIdToPath.get(hNodeId);
+	}
+
+	/**
+	 * Returns the path to a leaf HNode, one of the paths of
+	 * {@link #getAllPaths()}. The path is shared, so it must not be modified.
+	 * 
+	 * @param hNodeId
+	 * @return the path to the HNode, or null if it is not below this table or
+	 *         if it has a nested table.
+	 */
+	public HNodePath getLeafPath(String hNodeId) {
+		HNodePath path = getPath(hNodeId);
+		return path == null || path.getLeaf().hasNestedTable() ? null : path;
 	}
 
 	/**
@@ -358,19 +441,7 @@ public class HTable extends RepEntity {
 		if(!scanNested)
 			return getHNode(hNodeId);
 		
-		HNode node = getHNode(hNodeId);
-		if(node == null && hasNestedTables()) {
-			for (HNode n : getHNodes()) {
-				if (n.hasNestedTable()) {
-					HTable nestedTable = n.getNestedTable();
-					node = nestedTable.getHNode(hNodeId, scanNested);
-					if(node != null)
-						break;
-				}
-					
-			}
-		}
-		
-		return node;
+		HNodePath path = getPath(hNodeId);
+		return path == null ? null : path.getLeaf();
 	}
 }
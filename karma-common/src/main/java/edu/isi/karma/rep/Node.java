@@ -123,11 +123,31 @@ public class Node extends RepEntity implements Neighbor {
 					+ value.asString() + "'. Adding as orphan in nested table");
 			nestedTable.addOrphanValue(value, hNodeId, factory);
 		} else {
+			recordChange(factory);
 			this.value = value;
 			this.status = status;
 		}
 	}
 
+	/**
+	 * Restores the state of the node recorded by a {@link WorksheetUndoLog}.
+	 */
+	void restore(CellValue value, NodeStatus status, Table nestedTable) {
+		this.value = value;
+		this.status = status;
+		this.nestedTable = nestedTable;
+	}
+
+	private void recordChange(RepFactory factory) {
+		// nodes that are not in a table yet are new
+		if (factory == null || belongsToRow == null
+				|| belongsToRow.getBelongsToTable() == null)
+			return;
+		WorksheetUndoLog undoLog = factory.getUndoLog(belongsToRow.getWorksheetId());
+		if (undoLog != null)
+			undoLog.nodeChanged(this);
+	}
+
 	public void clearValue(NodeStatus status) {
 		// pedro 2012-09-15: this was wrong because it was setting the value to
 		// null.
@@ -144,6 +164,7 @@ public class Node extends RepEntity implements Neighbor {
 	}
 
 	public void setNestedTable(Table nestedTable, RepFactory factory) {
+		recordChange(factory);
 		this.nestedTable = nestedTable;
 		// mariam
 		if (nestedTable != null) {
@@ -23,6 +23,8 @@ package edu.isi.karma.rep;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.isi.karma.controller.command.selection.SuperSelectionManager;
 import edu.isi.karma.controller.history.CommandHistory;
@@ -41,7 +43,8 @@ public class RepFactory {
 	private final Map<String, Table> tables = new ConcurrentHashMap<String, Table>(10);
 	private final Map<String, Row> rows = new ConcurrentHashMap<String, Row>(1000);
 	private final Map<String, Node> nodes = new ConcurrentHashMap<String, Node>(10000);
-	private int id = 0;
+	private final AtomicInteger id = new AtomicInteger();
+	private final ConcurrentMap<String, WorksheetUndoLog> undoLogs = new ConcurrentHashMap<String, WorksheetUndoLog>();
 	
 	public Worksheet createWorksheet(String tableName, Workspace workspace, String encoding) {
 		String id = getNewId("WS");
@@ -96,9 +99,26 @@ public class RepFactory {
 	}
 	
 	
-	// We need a thread safe version of this
+	void addUndoLog(String worksheetId, WorksheetUndoLog undoLog) {
+		undoLogs.put(worksheetId, undoLog);
+	}
+
+	void removeUndoLog(String worksheetId, WorksheetUndoLog undoLog) {
+		undoLogs.remove(worksheetId, undoLog);
+	}
+
+	/**
+	 * @return the log recording the changes to the worksheet, or null if the
+	 *         changes are not recorded.
+	 */
+	WorksheetUndoLog getUndoLog(String worksheetId) {
+		if (undoLogs.isEmpty())
+			return null;
+		return undoLogs.get(worksheetId);
+	}
+
 	public String getNewId(String prefix) {
-		return prefix + id++;
+		return prefix + id.getAndIncrement();
 	}
 
 	HNode createHNode(String id, String hTableId, String columnName,
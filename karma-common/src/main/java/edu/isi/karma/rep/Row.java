@@ -53,6 +53,11 @@ public class Row extends RepEntity implements Neighbor {
 	 */
 	private Table belongsToTable;
 
+	/**
+	 * The index of this row in belongsToTable, maintained by the table.
+	 */
+	private int position = -1;
+
 	Row(String id) {
 		super(id);
 	}
@@ -94,6 +99,14 @@ public class Row extends RepEntity implements Neighbor {
 		return belongsToTable;
 	}
 
+	int getPosition() {
+		return position;
+	}
+
+	void setPosition(int position) {
+		this.position = position;
+	}
+
 	public String getWorksheetId() {
 		return belongsToTable.getWorksheetId();
 	}
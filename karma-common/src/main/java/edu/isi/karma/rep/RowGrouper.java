@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.rep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+
+/**
+ * Groups rows by the values of a set of columns, for the commands that restructure
+ * worksheets (group by, unfold, ...).
+ * <p>
+ * The key of a row holds the values of its cells, and a hash of them that is computed
+ * once. Keys with the same hash are compared value by value, so different values never
+ * end up in the same group. A column with a nested table contributes the keys of the
+ * nested rows, sorted so that the order of the nested rows does not matter; the cells
+ * of a nested row are taken in the order of their column ids.
+ * <p>
+ * A grouper holds no state besides the columns, so the keys are freed with the groups
+ * when the command is done with them.
+ */
+public class RowGrouper {
+
+	private final List<String> hNodeIds;
+
+	public RowGrouper(List<String> hNodeIds) {
+		this.hNodeIds = new ArrayList<String>(hNodeIds);
+	}
+
+	/**
+	 * The values of the grouping columns of a row
+	 */
+	public static final class Key {
+		private final Object[] values;
+		private final int hash;
+
+		private Key(Object[] values) {
+			this.values = values;
+			this.hash = mix(Arrays.hashCode(values));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && Arrays.equals(values, other.values);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(values);
+		}
+	}
+
+	/**
+	 * A total order of the keys: by hash, then value by value
+	 */
+	private static final Comparator<Key> KEY_ORDER = new Comparator<Key>() {
+		@Override
+		public int compare(Key k1, Key k2) {
+			if (k1.hash != k2.hash)
+				return k1.hash < k2.hash ? -1 : 1;
+			if (k1.values.length != k2.values.length)
+				return k1.values.length - k2.values.length;
+			for (int i = 0; i < k1.values.length; i++) {
+				int c = compareValues(k1.values[i], k2.values[i]);
+				if (c != 0)
+					return c;
+			}
+			return 0;
+		}
+
+		// null values first, then strings, then nested keys
+		private int compareValues(Object v1, Object v2) {
+			if (v1 == v2)
+				return 0;
+			if (v1 == null)
+				return -1;
+			if (v2 == null)
+				return 1;
+			if (v1 instanceof String)
+				return v2 instanceof String ? ((String) v1).compareTo((String) v2) : -1;
+			return v2 instanceof String ? 1 : compare((Key) v1, (Key) v2);
+		}
+	};
+
+	public Key getKey(Row row) {
+		return getKey(row, hNodeIds);
+	}
+
+	private static Key getKey(Row row, List<String> hNodeIds) {
+		Object[] values = new Object[hNodeIds.size()];
+		for (int i = 0; i < values.length; i++) {
+			Node n = row.getNode(hNodeIds.get(i));
+			if (n == null)
+				continue;
+			if (n.hasNestedTable()) {
+				Table nestedTable = n.getNestedTable();
+				List<Row> nestedRows = nestedTable.getRows(0, nestedTable.getNumRows(), SuperSelectionManager.DEFAULT_SELECTION);
+				Key[] nestedKeys = new Key[nestedRows.size()];
+				List<String> nestedHNodeIds = null;
+				for (int j = 0; j < nestedKeys.length; j++) {
+					Row nestedRow = nestedRows.get(j);
+					if (nestedHNodeIds == null) {
+						nestedHNodeIds = new ArrayList<String>(nestedRow.getNodesMap().keySet());
+						Collections.sort(nestedHNodeIds);
+					}
+					nestedKeys[j] = getKey(nestedRow, nestedHNodeIds);
+				}
+				Arrays.sort(nestedKeys, KEY_ORDER);
+				values[i] = new Key(nestedKeys);
+			} else if (n.getValue() != null) {
+				values[i] = n.getValue().asString();
+			}
+		}
+		return new Key(values);
+	}
+
+	/**
+	 * Groups the rows in one pass. The groups are in the order of their first row,
+	 * and the rows of a group keep their order.
+	 */
+	public Map<Key, List<Row>> group(List<Row> rows) {
+		Map<Key, List<Row>> groups = new LinkedHashMap<Key, List<Row>>();
+		for (Row row : rows) {
+			Key key = getKey(row);
+			List<Row> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Row>();
+				groups.put(key, group);
+			}
+			group.add(row);
+		}
+		return groups;
+	}
+
+	/**
+	 * Spreads the bits of the hash, so that keys that differ in a few characters
+	 * do not end up in neighboring buckets.
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
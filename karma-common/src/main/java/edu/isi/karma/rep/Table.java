@@ -25,8 +25,8 @@ package edu.isi.karma.rep;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -52,6 +52,26 @@ public class Table extends RepEntity {
 
 	// My rows.
 	private List<Row> rows = new ArrayList<Row>();
+
+	/**
+	 * The rows before this index know their position in rows. Removing a row
+	 * only moves this index back, the positions are fixed when they are needed.
+	 */
+	private int validPositions;
+
+	// Counts the changes to rows, to know when the selection index is stale.
+	private int modCount;
+
+	/**
+	 * The positions of the rows that a selection does not hide, for the last
+	 * selection that was used to page through a large table.
+	 */
+	private volatile SelectionIndex selectionIndex;
+
+	/**
+	 * Tables smaller than this are scanned, not indexed.
+	 */
+	static final int MIN_ROWS_TO_INDEX = 1024;
 	
 	// mariam
 	/**
@@ -84,18 +104,34 @@ public class Table extends RepEntity {
 
 	public Row addRow(RepFactory factory) {
 		Row r = factory.createRow(hTableId, worksheetId);
+		r.setPosition(rows.size());
 		rows.add(r);
+		if (validPositions == rows.size() - 1)
+			validPositions++;
+		modCount++;
 		// mariam
 		r.setBelongsToTable(this);
+		WorksheetUndoLog undoLog = factory.getUndoLog(worksheetId);
+		if (undoLog != null)
+			undoLog.rowAdded(this, r);
 		return r;
 	}
 	
 	public boolean removeRow(Row r) {
-		return rows.remove(r);
+		int index = getRowIndex(r);
+		if (index < 0)
+			return false;
+		rows.remove(index);
+		r.setPosition(-1);
+		validPositions = Math.min(validPositions, index);
+		modCount++;
+		return true;
 	}
 
 	public void removeAllRows() {
 		rows.clear();
+		validPositions = 0;
+		modCount++;
 	}
 	
 	public int getNumRows() {
@@ -138,7 +174,17 @@ public class Table extends RepEntity {
 	
 	public int getRowIndex(Row r)
 	{
-		return rows.indexOf(r);
+		if (r.getBelongsToTable() != this)
+			return rows.indexOf(r);
+		if (validPositions < rows.size()) {
+			for (int i = validPositions; i < rows.size(); i++)
+				rows.get(i).setPosition(i);
+			validPositions = rows.size();
+		}
+		int position = r.getPosition();
+		if (0 <= position && position < rows.size() && rows.get(position) == r)
+			return position;
+		return -1;
 	}
 	public Row getRow(int index)
 	{
@@ -158,21 +204,130 @@ public class Table extends RepEntity {
 	 */
 	public ArrayList<Row> getRows(int startIndex, int count, SuperSelection sel) {
 		ArrayList<Row> result = new ArrayList<Row>();
-		Iterator<Row> itr = rows.iterator();
-		int sum = 0, index = 0;
-		while(itr.hasNext()) {
-			Row r = itr.next();
-			if (!sel.isSelected(r) && index >= startIndex) {
-				result.add(r);
-				sum++;
+		startIndex = Math.max(startIndex, 0);
+		SelectionIndex index = getSelectionIndex(sel);
+		if (index == null) {
+			for (int i = startIndex; i < rows.size() && result.size() < count; i++) {
+				Row r = rows.get(i);
+				if (!sel.isSelected(r))
+					result.add(r);
 			}
-			if (sum == count)
-				break;
-			index++;
+			return result;
 		}
+		int first = index.rank(startIndex);
+		addRows(index, first, count, result);
 		return result;
 	}
 
+	/**
+	 * @return the number of rows that the selection does not hide.
+	 */
+	public int getNumRows(SuperSelection sel) {
+		if (sel.isEmpty())
+			return rows.size();
+		SelectionIndex index = getSelectionIndex(sel);
+		if (index != null)
+			return index.positions.length;
+		int numRows = 0;
+		for (Row r : rows) {
+			if (!sel.isSelected(r))
+				numRows++;
+		}
+		return numRows;
+	}
+
+	/**
+	 * Pages through the rows that the selection does not hide. On large tables
+	 * this takes the time to copy the page, once the selection is indexed.
+	 * 
+	 * @param first
+	 *            , the first row to return counting only the rows that the
+	 *            selection does not hide, first row at 0.
+	 * @param count
+	 * @return the requested number of rows or less if the count or first are
+	 *         out of bounds.
+	 */
+	public ArrayList<Row> getVisibleRows(int first, int count, SuperSelection sel) {
+		ArrayList<Row> result = new ArrayList<Row>();
+		first = Math.max(first, 0);
+		SelectionIndex index = getSelectionIndex(sel);
+		if (index == null) {
+			int skipped = 0;
+			for (int i = 0; i < rows.size() && result.size() < count; i++) {
+				Row r = rows.get(i);
+				if (sel.isSelected(r))
+					continue;
+				if (skipped < first)
+					skipped++;
+				else
+					result.add(r);
+			}
+			return result;
+		}
+		addRows(index, first, count, result);
+		return result;
+	}
+
+	private void addRows(SelectionIndex index, int first, int count, ArrayList<Row> result) {
+		int last = (int) Math.min((long) first + count, index.positions.length);
+		if (first >= last)
+			return;
+		result.ensureCapacity(last - first);
+		for (int i = first; i < last; i++)
+			result.add(rows.get(index.positions[i]));
+	}
+
+	/**
+	 * @return the index of the rows that the selection does not hide, or null
+	 *         if the table is small enough to scan, or the selection hides
+	 *         nothing
+	 */
+	private SelectionIndex getSelectionIndex(SuperSelection sel) {
+		if (rows.size() < MIN_ROWS_TO_INDEX || sel.isEmpty())
+			return null;
+		long selectionVersion = sel.getVersion();
+		SelectionIndex index = selectionIndex;
+		if (index != null && index.selection == sel
+				&& index.selectionVersion == selectionVersion
+				&& index.modCount == modCount)
+			return index;
+		int[] positions = new int[rows.size()];
+		int numRows = 0;
+		for (int i = 0; i < rows.size(); i++) {
+			if (!sel.isSelected(rows.get(i)))
+				positions[numRows++] = i;
+		}
+		index = new SelectionIndex(sel, selectionVersion, modCount,
+				Arrays.copyOf(positions, numRows));
+		selectionIndex = index;
+		return index;
+	}
+
+	private static final class SelectionIndex {
+		final SuperSelection selection;
+		final long selectionVersion;
+		final int modCount;
+		// the positions of the rows that the selection does not hide, in order
+		final int[] positions;
+
+		SelectionIndex(SuperSelection selection, long selectionVersion,
+				int modCount, int[] positions) {
+			this.selection = selection;
+			this.selectionVersion = selectionVersion;
+			this.modCount = modCount;
+			this.positions = positions;
+		}
+
+		/**
+		 * @return the number of rows the selection does not hide before the
+		 *         row at the position
+		 */
+		int rank(int position) {
+			int i = Arrays.binarySearch(positions, position);
+			return i >= 0 ? i : -i - 1;
+		}
+	}
+
 	@Override
 	public void prettyPrint(String prefix, PrintWriter pw, RepFactory factory) {
 		pw.print(prefix);
@@ -200,6 +355,24 @@ public class Table extends RepEntity {
 		return collectNodes(path, nodes, rows, sel);
 	}
 
+	/**
+	 * Populates the nodes Collections with the nodes of many columns in one
+	 * pass over the rows of the table.
+	 * 
+	 * @param paths
+	 *            Paths to the columns
+	 * @param nodes
+	 *            Collection of nodes of each path, in the same order
+	 */
+	public void collectNodes(List<HNodePath> paths, List<? extends Collection<Node>> nodes, SuperSelection sel) {
+		for (Row r : rows) {
+			if (sel.isSelected(r))
+				continue;
+			for (int i = 0; i < paths.size(); i++)
+				r.collectNodes(paths.get(i), nodes.get(i), sel);
+		}
+	}
+
 	private boolean collectNodes(HNodePath path, Collection<Node> nodes,
 			List<Row> rows, SuperSelection sel) {
 		boolean result = false;
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.rep;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import edu.isi.karma.rep.Node.NodeStatus;
+
+/**
+ * Records the changes a command makes to a worksheet, so that the command can
+ * be undone without copying the worksheet before it runs. Between
+ * {@link #start()} and {@link #stop()} the log records the HNodes, nested
+ * tables and rows added to the worksheet and the previous value of the nodes
+ * whose value or nested table changed, the first time they change.
+ * {@link #undo()} reverts the changes in the reverse order.
+ * <p>
+ * Removing rows and HNodes is not recorded, commands that remove them must
+ * undo it themselves.
+ */
+public class WorksheetUndoLog {
+
+	private interface Change {
+		void undo();
+	}
+
+	private final Worksheet worksheet;
+	private final RepFactory factory;
+
+	private final List<Change> changes = new ArrayList<Change>();
+	private final Set<Node> changedNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+	private final Set<Row> addedRows = Collections.newSetFromMap(new IdentityHashMap<Row, Boolean>());
+	private final Set<String> addedHNodeIds = new HashSet<String>();
+
+	public WorksheetUndoLog(Worksheet worksheet, RepFactory factory) {
+		this.worksheet = worksheet;
+		this.factory = factory;
+	}
+
+	/**
+	 * Starts recording the changes to the worksheet.
+	 */
+	public void start() {
+		factory.addUndoLog(worksheet.getId(), this);
+	}
+
+	/**
+	 * Stops recording the changes to the worksheet.
+	 */
+	public void stop() {
+		factory.removeUndoLog(worksheet.getId(), this);
+	}
+
+	/**
+	 * Reverts the recorded changes, the worksheet must not have changed since
+	 * the log was stopped.
+	 */
+	public void undo() {
+		for (int i = changes.size() - 1; i >= 0; i--)
+			changes.get(i).undo();
+		changes.clear();
+		changedNodes.clear();
+		addedRows.clear();
+		addedHNodeIds.clear();
+	}
+
+	/**
+	 * @return the number of recorded changes.
+	 */
+	public int size() {
+		return changes.size();
+	}
+
+	void nodeChanged(final Node node) {
+		// the nodes of new rows and HNodes disappear with them
+		if (addedRows.contains(node.getBelongsToRow())
+				|| addedHNodeIds.contains(node.getHNodeId())
+				|| !changedNodes.add(node))
+			return;
+		final CellValue value = node.getValue();
+		final NodeStatus status = node.getStatus();
+		final Table nestedTable = node.getNestedTable();
+		changes.add(new Change() {
+			@Override
+			public void undo() {
+				node.restore(value, status, nestedTable);
+			}
+		});
+	}
+
+	void rowAdded(final Table table, final Row row) {
+		addedRows.add(row);
+		changes.add(new Change() {
+			@Override
+			public void undo() {
+				table.removeRow(row);
+			}
+		});
+	}
+
+	void hNodeAdded(final HTable hTable, final HNode hNode) {
+		addedHNodeIds.add(hNode.getId());
+		changes.add(new Change() {
+			@Override
+			public void undo() {
+				hTable.removeHNode(hNode.getId(), worksheet);
+			}
+		});
+	}
+
+	void nestedHTableAdded(final HNode hNode) {
+		if (addedHNodeIds.contains(hNode.getId()))
+			return;
+		changes.add(new Change() {
+			@Override
+			public void undo() {
+				hNode.removeNestedTable();
+			}
+		});
+	}
+}
@@ -22,18 +22,23 @@
 package edu.isi.karma.rep.sources;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.service.json.JsonManager;
+import edu.isi.karma.util.HTTPUtil;
 
 
 public class Invocation {
@@ -154,34 +159,72 @@ public class Invocation {
 	}
 	
 	public void invokeAPI() {
-		
-		int code = -1;
-		try{
-			this.response = new Response();
-			
-			URL url = request.getUrl();
-			URLConnection connection = url.openConnection();
-			String type = connection.getContentType();
-			
-			//connection.connect();
+		setRawResponse(fetch(request.getUrl(), encoding));
+	}
 
-			// Cast to a HttpURLConnection
-			if ( connection instanceof HttpURLConnection)
-			{
-			   HttpURLConnection httpConnection = (HttpURLConnection) connection;
-//			   connection.setRequestProperty("Content-Type", "application/json");
+	/**
+	 * Uses the response of another invocation of the same URL
+	 */
+	void setRawResponse(Response rawResponse) {
+		this.response = new Response();
+		this.response.setType(rawResponse.getType());
+		this.response.setCode(rawResponse.getCode());
+		this.response.setStream(rawResponse.getStream());
+		updateResponse();
+	}
 
-			   code = httpConnection.getResponseCode();
+	/**
+	 * Invokes the URL, over the pooled connections of
+	 * {@link HTTPUtil#getPooledHttpClient()} for HTTP URLs.
+	 * 
+	 * @return the type, code and content of the response, or an error
+	 *         message in JSON if the invocation failed.
+	 */
+	static Response fetch(URL url, String encoding) {
+		if ("http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol()))
+			return fetchWithHttpClient(url, encoding);
+		return fetchWithConnection(url, encoding);
+	}
 
-//			   System.out.println(type);
-//			   System.out.println(code);
-			   // do something with code .....
+	private static Response fetchWithHttpClient(URL url, String encoding) {
+		Response response = new Response();
+		int code = -1;
+		HttpGet get = null;
+		try {
+			get = new HttpGet(url.toURI());
+			HttpResponse httpResponse = HTTPUtil.getPooledHttpClient().execute(get);
+			code = httpResponse.getStatusLine().getStatusCode();
+			HttpEntity entity = httpResponse.getEntity();
+			if (code >= 400) {
+				EntityUtils.consume(entity);
+				throw new IOException("Server returned HTTP response code: " + code + " for URL: " + url);
 			}
-			else
-			{
-			  logger.error("error - not a http request!");
+			String type = null;
+			String stream = "";
+			if (entity != null) {
+				if (entity.getContentType() != null)
+					type = entity.getContentType().getValue();
+				stream = new String(EntityUtils.toByteArray(entity), encoding);
 			}
-			
+			response.setType(type);
+			response.setCode(code);
+			response.setStream(stream);
+			logger.info("Service response is ready as string stream.");
+		} catch (Exception e) {
+			if (get != null)
+				get.abort();
+			setErrorResponse(response, url, code, e);
+		}
+		return response;
+	}
+
+	private static Response fetchWithConnection(URL url, String encoding) {
+		Response response = new Response();
+		int code = -1;
+		try{
+			URLConnection connection = url.openConnection();
+			String type = connection.getContentType();
+
 			StringBuffer outString = new StringBuffer();
 			BufferedReader in = new BufferedReader(
 					new InputStreamReader(
@@ -193,31 +236,24 @@ public class Invocation {
 			}
 			in.close();
 			
-//			System.out.println(outString);
+			response.setType(type);
+			response.setCode(code);
+			response.setStream(outString.toString());
 			
-			this.response.setType(type);
-			this.response.setCode(code);
-			this.response.setStream(outString.toString());
-			
-//			logger.debug(response.getStream());
 			logger.info("Service response is ready as string stream.");
 			
 		}catch(Exception e){
+			setErrorResponse(response, url, code, e);
+		}
+		return response;
+	}
 
-			logger.error("Error in invoking the service with request " + this.request.getUrl().toString());
-			
-			this.response.setType("application/json");
-			this.response.setCode(code);
-			this.response.setStream("{\"code\":" + code + ",\"msg\":\"" + e.getMessage() +  "\"}");
-			
-			System.out.println(e.getMessage());
-			
-		} finally {
+	private static void setErrorResponse(Response response, URL url, int code, Exception e) {
+		logger.error("Error in invoking the service with request " + url.toString());
 
-			updateResponse();
-			
-		}
-		
+		response.setType("application/json");
+		response.setCode(code);
+		response.setStream("{\"code\":" + code + ",\"msg\":\"" + e.getMessage() +  "\"}");
 	}
 	
 	public void joinInputAndOutput() {
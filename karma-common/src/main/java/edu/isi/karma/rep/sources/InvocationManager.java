@@ -25,7 +25,14 @@ package edu.isi.karma.rep.sources;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +50,10 @@ public class InvocationManager {
 
 	static Logger logger = LoggerFactory.getLogger(InvocationManager.class);
 
+	public static final String PARALLELISM_PROPERTY = "karma.service.parallelism";
+	public static final String REQUESTS_PER_SECOND_PROPERTY = "karma.service.requestsPerSecond";
+	private static final int DEFAULT_PARALLELISM = 8;
+
 	private List<URL> requestURLs;
 	private List<String> idList;
 	private List<Invocation> invocations;
@@ -58,9 +69,17 @@ public class InvocationManager {
 	private JsonArray jsonInputsAndOutputs;
 	
 	private String encoding;
+	private ServiceResponseCache responseCache;
 	
 	public InvocationManager(String urlColumnName, List<String> idList, List<String> requestURLStrings, String encoding) 
 	throws MalformedURLException, KarmaException {
+		this(urlColumnName, idList, requestURLStrings, encoding, ServiceResponseCache.getInstance());
+	}
+	
+	public InvocationManager(String urlColumnName, List<String> idList, List<String> requestURLStrings, String encoding,
+			ServiceResponseCache responseCache) 
+	throws MalformedURLException, KarmaException {
+		this.responseCache = responseCache;
 		this.urlColumnName = (urlColumnName == null || urlColumnName.trim().length() == 0) ? "url" : urlColumnName;
 		this.idList = idList;
 		this.encoding = encoding;
@@ -85,6 +104,7 @@ public class InvocationManager {
 	public InvocationManager(String urlColumnName, String requestURLString) 
 	throws MalformedURLException, KarmaException {
 		this.urlColumnName = (urlColumnName == null || urlColumnName.trim().length() == 0) ? "url" : urlColumnName;
+		this.responseCache = ServiceResponseCache.getInstance();
 		this.idList = new ArrayList<String>();
 		this.idList.add("1");
 		List<String> requestURLList = new ArrayList<String>();
@@ -107,7 +127,14 @@ public class InvocationManager {
 		invokeAndGetResponse();
 	}
 	
+	/**
+	 * Invokes each distinct URL once, with {@link #getParallelism()} requests
+	 * at a time and at most {@link #getRequestsPerSecond()} requests per
+	 * second. The responses are taken from the {@link ServiceResponseCache}
+	 * when possible.
+	 */
 	private void invokeAndGetResponse() {
+		final Map<String, List<Invocation>> invocationsByUrl = new LinkedHashMap<String, List<Invocation>>();
 		for (int i = 0; i < requestURLs.size(); i++) {
 			URL url = requestURLs.get(i);
 			String requestId = null;
@@ -115,10 +142,54 @@ public class InvocationManager {
 				requestId = idList.get(i);
 			Request request = new Request(url);
 			Invocation invocation = new Invocation(requestId, request, encoding);
-			logger.info("Invoking the service " + request.getUrl().toString() + " ...");
-			invocation.invokeAPI();
 			invocations.add(invocation);
+			List<Invocation> sameUrl = invocationsByUrl.get(url.toString());
+			if (sameUrl == null) {
+				sameUrl = new ArrayList<Invocation>();
+				invocationsByUrl.put(url.toString(), sameUrl);
+			}
+			sameUrl.add(invocation);
+		}
+		logger.info("Invoking the service with " + invocationsByUrl.size() + " distinct requests for "
+				+ invocations.size() + " rows ...");
+		if (invocationsByUrl.isEmpty()) {
+			this.serviceData = new Table();
+			return;
 		}
+
+		final RateLimiter rateLimiter = new RateLimiter(getRequestsPerSecond());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(getParallelism(), invocationsByUrl.size()));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<Invocation> sameUrl : invocationsByUrl.values()) {
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					URL url = sameUrl.get(0).getRequest().getUrl();
+					Response response = responseCache.get(url, encoding);
+					if (response == null) {
+						rateLimiter.acquire();
+						logger.debug("Invoking the service " + url.toString() + " ...");
+						response = Invocation.fetch(url, encoding);
+						responseCache.put(url, encoding, response);
+					}
+					for (Invocation invocation : sameUrl)
+						invocation.setRawResponse(response);
+				}
+			}));
+		}
+		executor.shutdown();
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while invoking the service", e);
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			throw new IllegalStateException("Error in invoking the service", e.getCause());
+		}
+
 		List<Table> invocationData = new ArrayList<Table>();
 		for (Invocation inv : this.invocations) {
 			populateJsonArraysFromInvocation(inv);
@@ -130,6 +201,51 @@ public class InvocationManager {
 		logger.info("Integrating finished.");
 		this.serviceData = result;
 	}
+
+	/**
+	 * Spaces the requests evenly, to send at most the given number of requests
+	 * per second
+	 */
+	private static class RateLimiter {
+		private final long intervalNanos;
+		private long next = System.nanoTime();
+
+		RateLimiter(int requestsPerSecond) {
+			this.intervalNanos = requestsPerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+		}
+
+		void acquire() {
+			if (intervalNanos == 0)
+				return;
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (next < now)
+					next = now;
+				wait = next - now;
+				next += intervalNanos;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of requests sent at a time, at least 1
+	 */
+	public static int getParallelism() {
+		return Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM));
+	}
+
+	/**
+	 * @return the maximum number of requests per second, or 0 for no limit
+	 */
+	public static int getRequestsPerSecond() {
+		return Integer.getInteger(REQUESTS_PER_SECOND_PROPERTY, 0);
+	}
 	
 	
 	private void populateJsonArraysFromInvocation(Invocation inv) {
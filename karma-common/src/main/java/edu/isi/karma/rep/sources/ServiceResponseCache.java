@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.rep.sources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+/**
+ * Keeps the responses of web service invocations on disk, so that invoking a
+ * service again on the same rows, or redoing the command, does not fetch the
+ * responses again. Only successful responses are cached, for
+ * {@link #DEFAULT_TIME_TO_LIVE_MILLIS} unless the
+ * {@link #TIME_TO_LIVE_PROPERTY} system property sets another time in
+ * minutes. A time to live of 0 disables the cache.
+ */
+public class ServiceResponseCache {
+
+	private static Logger logger = LoggerFactory.getLogger(ServiceResponseCache.class);
+
+	public static final String TIME_TO_LIVE_PROPERTY = "karma.service.cacheTTLMinutes";
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000;
+	private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+	private static ServiceResponseCache instance;
+
+	private final File directory;
+	private final long timeToLiveMillis;
+
+	public ServiceResponseCache(File directory, long timeToLiveMillis) {
+		this.directory = directory;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	public static synchronized ServiceResponseCache getInstance() {
+		if (instance == null) {
+			long timeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+			Long minutes = Long.getLong(TIME_TO_LIVE_PROPERTY);
+			if (minutes != null)
+				timeToLiveMillis = minutes * 60 * 1000;
+			File directory = new File(ServletContextParameterMap.getParameterValue(
+					ContextParameter.USER_DIRECTORY_PATH), "service-cache");
+			instance = new ServiceResponseCache(directory, timeToLiveMillis);
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the cached response of the URL, or null if it is not cached or
+	 *         it expired
+	 */
+	public Response get(URL url, String encoding) {
+		if (timeToLiveMillis <= 0)
+			return null;
+		File file = getFile(url, encoding);
+		if (!file.exists())
+			return null;
+		if (System.currentTimeMillis() - file.lastModified() > timeToLiveMillis) {
+			file.delete();
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (!in.readUTF().equals(url.toString()))
+				return null;
+			Response response = new Response();
+			String type = in.readUTF();
+			response.setType(type.isEmpty() ? null : type);
+			response.setCode(in.readInt());
+			byte[] stream = new byte[in.readInt()];
+			in.readFully(stream);
+			response.setStream(new String(stream, UTF8_CHARSET));
+			return response;
+		} catch (IOException e) {
+			logger.warn("Error reading the cached response of " + url, e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Caches the response of the URL, if the invocation succeeded
+	 */
+	public void put(URL url, String encoding, Response response) {
+		if (timeToLiveMillis <= 0 || response.getCode() < 200 || response.getCode() >= 300)
+			return;
+		File file = getFile(url, encoding);
+		DataOutputStream out = null;
+		File tmp = null;
+		try {
+			directory.mkdirs();
+			tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeUTF(url.toString());
+			out.writeUTF(response.getType() == null ? "" : response.getType());
+			out.writeInt(response.getCode());
+			byte[] stream = response.getStream().getBytes(UTF8_CHARSET);
+			out.writeInt(stream.length);
+			out.write(stream);
+			out.close();
+			out = null;
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			logger.warn("Error caching the response of " + url, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private File getFile(URL url, String encoding) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((encoding + " " + url.toString()).getBytes(UTF8_CHARSET));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest.digest())
+				name.append(String.format("%02x", b));
+			return new File(directory, name.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
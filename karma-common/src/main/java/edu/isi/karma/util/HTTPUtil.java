@@ -39,7 +39,9 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
 
 public class HTTPUtil {
 	public enum HTTP_METHOD {
@@ -49,6 +51,29 @@ public class HTTPUtil {
 	public enum HTTP_HEADERS {
 		Accept, 
 	}
+
+	public static final int POOL_MAX_CONNECTIONS = 64;
+	public static final int POOL_MAX_CONNECTIONS_PER_ROUTE = 16;
+	private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+
+	private static HttpClient pooledHttpClient;
+
+	/**
+	 * Returns a thread-safe client shared by the whole application. Connections are kept alive
+	 * and reused between requests, so the response entity of each request has to be consumed
+	 * to return its connection to the pool.
+	 */
+	public static synchronized HttpClient getPooledHttpClient() {
+		if (pooledHttpClient == null) {
+			PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setMaxTotal(POOL_MAX_CONNECTIONS);
+			connectionManager.setDefaultMaxPerRoute(POOL_MAX_CONNECTIONS_PER_ROUTE);
+			DefaultHttpClient client = new DefaultHttpClient(connectionManager);
+			HttpConnectionParams.setConnectionTimeout(client.getParams(), CONNECT_TIMEOUT_MILLIS);
+			pooledHttpClient = client;
+		}
+		return pooledHttpClient;
+	}
 	
 	public static String executeHTTPPostRequest(String serviceURL, String contentType, 
 			String acceptContentType, HttpEntity entity) 
@@ -82,6 +82,15 @@ public class VWorksheet extends ViewEntity {
 	 */
 	private Map<String, TablePager> tableId2TablePager = new HashMap<String, TablePager>();
 	
+	/**
+	 * The version of the alignment last sent to the view, and the columns it
+	 * was drawn on, so that the next alignment visualization only sends the
+	 * changes. The log id is 0 when no alignment was sent.
+	 */
+	private long renderedAlignmentLogId = 0;
+	private long renderedAlignmentVersion = 0;
+	private List<String> renderedAlignmentColumns = new ArrayList<String>();
+	
 	VWorksheet(String id, Worksheet worksheet, List<HNodePath> columns,
 			VWorkspace vWorkspace) {
 		super(id);
@@ -130,6 +139,24 @@ public class VWorksheet extends ViewEntity {
 		}
 	}
 
+	public long getRenderedAlignmentLogId() {
+		return renderedAlignmentLogId;
+	}
+
+	public long getRenderedAlignmentVersion() {
+		return renderedAlignmentVersion;
+	}
+
+	public List<String> getRenderedAlignmentColumns() {
+		return renderedAlignmentColumns;
+	}
+
+	public void setRenderedAlignment(long logId, long version, List<String> hNodeIds) {
+		this.renderedAlignmentLogId = logId;
+		this.renderedAlignmentVersion = version;
+		this.renderedAlignmentColumns = new ArrayList<String>(hNodeIds);
+	}
+
 	public TablePager getTopTablePager() {
 		return tableId2TablePager.get(worksheet.getDataTable().getId());
 	}
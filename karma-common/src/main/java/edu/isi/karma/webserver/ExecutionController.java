@@ -18,7 +18,13 @@ package edu.isi.karma.webserver;
 
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -34,6 +40,7 @@ import edu.isi.karma.controller.command.JSONInputCommandFactory;
 import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.util.SubclassIndex;
 
 /**
  * There is one ExecutionManager per user. In the HttpServlet implementation we
@@ -50,8 +57,15 @@ public class ExecutionController {
 	private static final HashMap<String, CommandFactory> commandFactoryMap = new HashMap<String, CommandFactory>();
 	private final Workspace workspace;
 
+	/**
+	 * Held for reading by the commands on a single worksheet, and for writing by
+	 * the commands that may touch several worksheets.
+	 */
+	private final ReadWriteLock workspaceLock = new ReentrantReadWriteLock();
+	private final ConcurrentMap<String, ReadWriteLock> worksheetLocks = new ConcurrentHashMap<String, ReadWriteLock>();
+
 	static{
-		dynamicallyBuildCommandFactoryMap();
+		buildCommandFactoryMap();
 	}
 
 	public ExecutionController(Workspace workspace) {
@@ -59,6 +73,28 @@ public class ExecutionController {
 
 	}
 
+	/**
+	 * Loads the factories listed at compile time. Scanning the classpath takes
+	 * seconds, so it is only done when requested with the
+	 * {@link SubclassIndex#SCAN_CLASSPATH_PROPERTY} system property, or when
+	 * no factory was listed.
+	 */
+	private static void buildCommandFactoryMap()
+	{
+		if (SubclassIndex.isClasspathScanRequested()) {
+			dynamicallyBuildCommandFactoryMap();
+			return;
+		}
+		for (CommandFactory commandFactory : SubclassIndex.load(CommandFactory.class))
+			commandFactoryMap.put(commandFactory.getCorrespondingCommand().getSimpleName(), commandFactory);
+		if (commandFactoryMap.isEmpty()) {
+			logger.warn("No command factories are listed in META-INF/services, scanning the classpath");
+			dynamicallyBuildCommandFactoryMap();
+			return;
+		}
+		logger.info("Loaded {} possible commands", commandFactoryMap.size());
+	}
+
 	private static void dynamicallyBuildCommandFactoryMap()
 	{
 		Reflections reflections = new Reflections("edu.isi.karma");
@@ -123,8 +159,23 @@ public class ExecutionController {
 		}
 	}
 
+	/**
+	 * Runs the command and records it in the history. Commands on different
+	 * worksheets run concurrently, as do the read only commands on the same
+	 * worksheet. Commands that do not name a worksheet run alone in the
+	 * workspace.
+	 */
 	public UpdateContainer invokeCommand(Command command) {
-		synchronized (this) {
+		String worksheetId = command.getLockedWorksheetId();
+		Lock lock = worksheetId == null ? workspaceLock.writeLock() : workspaceLock.readLock();
+		lock.lock();
+		try {
+			Lock worksheetLock = null;
+			if (worksheetId != null) {
+				ReadWriteLock rwLock = getWorksheetLock(worksheetId);
+				worksheetLock = command.isReadOnly() ? rwLock.readLock() : rwLock.writeLock();
+				worksheetLock.lock();
+			}
 			try {
 				UpdateContainer updateContainer = workspace.getCommandHistory().doCommand(command, workspace);
 				return updateContainer;
@@ -135,8 +186,57 @@ public class ExecutionController {
 				updateContainer.add(new ErrorUpdate("Error occured with command " + command.toString()));
 				return updateContainer; // TODO probably need a return that indicates an
 				// error.
+			} finally {
+				if (worksheetLock != null)
+					worksheetLock.unlock();
+			}
+		} finally {
+			if (worksheetId == null)
+				removeLocksOfDeletedWorksheets();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the task like a read only command on the worksheet, so that no
+	 * command changes the worksheet while the task runs.
+	 */
+	public void runWithWorksheetReadLock(String worksheetId, Runnable task) {
+		Lock lock = workspaceLock.readLock();
+		lock.lock();
+		try {
+			Lock worksheetLock = getWorksheetLock(worksheetId).readLock();
+			worksheetLock.lock();
+			try {
+				task.run();
+			} finally {
+				worksheetLock.unlock();
 			}
+		} finally {
+			lock.unlock();
 		}
+	}
 
+	/**
+	 * Worksheets are only deleted by the commands that hold the workspace
+	 * lock, so no other command holds the locks of the deleted worksheets.
+	 */
+	private void removeLocksOfDeletedWorksheets() {
+		Iterator<String> it = worksheetLocks.keySet().iterator();
+		while (it.hasNext()) {
+			if (workspace.getWorksheet(it.next()) == null)
+				it.remove();
+		}
+	}
+
+	private ReadWriteLock getWorksheetLock(String worksheetId) {
+		ReadWriteLock lock = worksheetLocks.get(worksheetId);
+		if (lock == null) {
+			ReadWriteLock newLock = new ReentrantReadWriteLock();
+			lock = worksheetLocks.putIfAbsent(worksheetId, newLock);
+			if (lock == null)
+				lock = newLock;
+		}
+		return lock;
 	}
 }
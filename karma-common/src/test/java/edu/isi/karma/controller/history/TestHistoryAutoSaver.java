@@ -0,0 +1,165 @@
+package edu.isi.karma.controller.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.controller.command.Command;
+import edu.isi.karma.controller.command.CommandException;
+import edu.isi.karma.controller.command.CommandType;
+import edu.isi.karma.controller.command.ICommand.CommandTag;
+import edu.isi.karma.controller.history.HistoryJsonUtil.ClientJsonKeys;
+import edu.isi.karma.controller.history.HistoryJsonUtil.ParameterType;
+import edu.isi.karma.controller.update.UpdateContainer;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.webserver.ExecutionController;
+import edu.isi.karma.webserver.WorkspaceRegistry;
+
+public class TestHistoryAutoSaver {
+
+	private Workspace workspace;
+	private ExecutionController ctrl;
+	private Worksheet ws1;
+	private Worksheet ws2;
+	private final List<String> saves = new ArrayList<String>();
+
+	private class RecordingHistorySaver implements IHistorySaver {
+		@Override
+		public void saveHistory(String workspaceId, String worksheetId, JSONArray history) {
+			synchronized (saves) {
+				saves.add(worksheetId + ":" + history.length());
+			}
+		}
+
+		@Override
+		public JSONArray loadHistory(String filename) {
+			return new JSONArray();
+		}
+
+		@Override
+		public String getHistoryFilepath(String worksheetId) {
+			return worksheetId;
+		}
+	}
+
+	private static class ModelingCommand extends Command {
+		private final String worksheetId;
+
+		ModelingCommand(String id, String worksheetId) {
+			super(id);
+			this.worksheetId = worksheetId;
+			addTag(CommandTag.Modeling);
+			JSONObject param = new JSONObject();
+			param.put(ClientJsonKeys.name.name(), CommandHistory.HistoryArguments.worksheetId.name());
+			param.put(ClientJsonKeys.value.name(), worksheetId);
+			param.put(ClientJsonKeys.type.name(), ParameterType.worksheetId.name());
+			setInputParameterJson(new JSONArray().put(param).toString());
+		}
+
+		@Override
+		public String getCommandName() {
+			return ModelingCommand.class.getSimpleName();
+		}
+
+		@Override
+		public String getTitle() {
+			return "Modeling";
+		}
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public CommandType getCommandType() {
+			return CommandType.undoable;
+		}
+
+		@Override
+		public String getLockedWorksheetId() {
+			return worksheetId;
+		}
+
+		@Override
+		public UpdateContainer doIt(Workspace workspace) throws CommandException {
+			return new UpdateContainer();
+		}
+
+		@Override
+		public UpdateContainer undoIt(Workspace workspace) {
+			return new UpdateContainer();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		ctrl = new ExecutionController(workspace);
+		WorkspaceRegistry.getInstance().register(ctrl);
+		ws1 = workspace.getFactory().createWorksheet("ws1", workspace, "UTF-8");
+		ws2 = workspace.getFactory().createWorksheet("ws2", workspace, "UTF-8");
+		CommandHistory.setIsHistoryEnabled(true);
+		CommandHistory.setHistorySaver(workspace.getId(), new RecordingHistorySaver());
+	}
+
+	@After
+	public void tearDown() {
+		CommandHistory.setIsHistoryEnabled(false);
+		WorkspaceRegistry.getInstance().deregister(workspace.getId());
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private List<String> getSaves() {
+		synchronized (saves) {
+			return new ArrayList<String>(saves);
+		}
+	}
+
+	@Test
+	public void testBurstOfCommandsIsSavedOnce() throws Exception {
+		for (int i = 0; i < 20; i++)
+			ctrl.invokeCommand(new ModelingCommand("C" + i, ws1.getId()));
+		assertTrue(getSaves().isEmpty());
+
+		long deadline = System.currentTimeMillis() + 10 * HistoryAutoSaver.DEFAULT_DELAY_MILLIS;
+		while (getSaves().isEmpty() && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+		assertEquals(1, getSaves().size());
+		assertEquals(ws1.getId() + ":20", getSaves().get(0));
+
+		// nothing changed since
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), ws1.getId());
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), ws2.getId());
+		assertEquals(1, getSaves().size());
+	}
+
+	@Test
+	public void testFlushSavesOnlyChangedWorksheet() throws Exception {
+		ctrl.invokeCommand(new ModelingCommand("C1", ws1.getId()));
+		ctrl.invokeCommand(new ModelingCommand("C2", ws2.getId()));
+		ctrl.invokeCommand(new ModelingCommand("C3", ws2.getId()));
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), ws2.getId());
+		assertEquals(1, getSaves().size());
+		assertEquals(ws2.getId() + ":2", getSaves().get(0));
+
+		// undoing a command saves its worksheet again
+		workspace.getCommandHistory().undoOrRedoCommandsUntil(workspace, "C3");
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), ws2.getId());
+		assertEquals(ws2.getId() + ":1", getSaves().get(1));
+
+		HistoryAutoSaver.getInstance().flush(workspace.getId(), ws1.getId());
+		assertEquals(ws1.getId() + ":1", getSaves().get(2));
+		assertEquals(3, getSaves().size());
+	}
+}
@@ -0,0 +1,72 @@
+package edu.isi.karma.controller.update;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+import edu.isi.karma.view.VWorkspace;
+
+public class TestUpdateContainer {
+
+	private final StringBuilder applied = new StringBuilder();
+
+	/**
+	 * Replaces the updates of the same worksheet, like the worksheet updates do.
+	 */
+	private class WorksheetUpdate extends AbstractUpdate {
+		private final String worksheetId;
+		private final String name;
+
+		WorksheetUpdate(String worksheetId, String name) {
+			this.worksheetId = worksheetId;
+			this.name = name;
+		}
+
+		@Override
+		public void generateJson(String prefix, PrintWriter pw, VWorkspace vWorkspace) {
+		}
+
+		@Override
+		public void applyUpdate(VWorkspace vWorkspace) {
+			applied.append(name).append(' ');
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof WorksheetUpdate) {
+				WorksheetUpdate t = (WorksheetUpdate)o;
+				return t.worksheetId.equals(worksheetId);
+			}
+			return false;
+		}
+
+		public int hashCode() {
+			return worksheetId.hashCode();
+		}
+	}
+
+	private String applyUpdates(UpdateContainer c) {
+		applied.setLength(0);
+		c.applyUpdates(null);
+		return applied.toString().trim();
+	}
+
+	@Test
+	public void testAppendReplacesEqualUpdates() {
+		UpdateContainer c = new UpdateContainer();
+		c.add(new WorksheetUpdate("WS1", "a"));
+		c.add(new WorksheetUpdate("WS2", "b"));
+		c.add(new WorksheetUpdate("WS3", "c"));
+
+		UpdateContainer other = new UpdateContainer();
+		other.add(new WorksheetUpdate("WS3", "d"));
+		other.add(new WorksheetUpdate("WS1", "e"));
+		other.add(new WorksheetUpdate("WS4", "f"));
+		c.append(other);
+		assertEquals("b d e f", applyUpdates(c));
+
+		c.append(new UpdateContainer(new WorksheetUpdate("WS2", "g")));
+		assertEquals("d e f g", applyUpdates(c));
+	}
+}
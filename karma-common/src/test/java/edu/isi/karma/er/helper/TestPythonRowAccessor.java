@@ -0,0 +1,199 @@
+package edu.isi.karma.er.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.python.core.Py;
+import org.python.core.PyCode;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HNode.HNodeType;
+import edu.isi.karma.rep.HTable;
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+
+public class TestPythonRowAccessor {
+
+	private static Logger logger = LoggerFactory.getLogger(TestPythonRowAccessor.class);
+
+	private Workspace workspace;
+	private RepFactory factory;
+
+	/**
+	 * Collects the input columns of the functions defined before the
+	 * accessor, for the benchmark.
+	 */
+	public static class InputColumns {
+		public final Set<String> hNodeIds = new HashSet<String>();
+
+		public void addInputColumns(String hNodeId) {
+			hNodeIds.add(hNodeId);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private Worksheet createWorksheet(int numColumns, int numRows) {
+		Worksheet worksheet = factory.createWorksheet("sheet", workspace, "UTF-8");
+		List<HNode> hNodes = new ArrayList<HNode>();
+		for (int c = 0; c < numColumns; c++)
+			hNodes.add(worksheet.addHNode("c" + c, HNodeType.Regular, factory));
+		for (int i = 0; i < numRows; i++) {
+			Row row = worksheet.addRow(factory);
+			for (int c = 0; c < numColumns; c++)
+				row.setValue(hNodes.get(c).getId(), "v" + i + "." + c, factory);
+		}
+		return worksheet;
+	}
+
+	private List<Node> getNodes(Worksheet worksheet, String columnName) {
+		HNode hNode = worksheet.getHeaders().getHNodeFromColumnName(columnName);
+		List<Node> nodes = new ArrayList<Node>();
+		worksheet.getDataTable().collectNodes(hNode.getHNodePath(factory), nodes,
+				SuperSelectionManager.DEFAULT_SELECTION);
+		return nodes;
+	}
+
+	/**
+	 * The functions of {@link PythonRepository}, without its imports of the
+	 * commands.
+	 */
+	private PythonInterpreter createInterpreter() {
+		PythonInterpreter interpreter = new PythonInterpreter();
+		interpreter.exec("import edu.isi.karma.rep.WorkspaceManager\n");
+		interpreter.exec(PythonTransformationHelper.getGetValueDefStatement());
+		interpreter.exec(PythonTransformationHelper.getIsEmptyDefStatement());
+		interpreter.exec(PythonTransformationHelper.getRowIndexDefStatement());
+		return interpreter;
+	}
+
+	@Test
+	public void testColumnsOfRowAndContainingRows() {
+		Worksheet worksheet = createWorksheet(2, 3);
+		HNode c0 = worksheet.getHeaders().getHNodeFromColumnName("c0");
+		HNode c1 = worksheet.getHeaders().getHNodeFromColumnName("c1");
+		HTable nestedHTable = c1.addNestedTable("nested", worksheet, factory);
+		HNode zip = nestedHTable.addHNode("zip", HNodeType.Regular, worksheet, factory);
+		HNode empty = nestedHTable.addHNode("empty", HNodeType.Regular, worksheet, factory);
+		Row row = worksheet.getDataTable().getRow(2);
+		// after the row with the value that moved to the nested table
+		Row nestedRow = row.addNestedRow(c1.getId(), factory);
+		nestedRow.setValue(zip.getId(), "90292", factory);
+		nestedRow.setValue(empty.getId(), "", factory);
+
+		PythonRowAccessor accessor = new PythonRowAccessor(factory);
+		accessor.setNode(nestedRow.getNeighbor(zip.getId()));
+		assertEquals("90292", accessor.getValue("zip"));
+		assertEquals("v2.0", accessor.getValue("c0"));
+		assertEquals("", accessor.getValue("unknown"));
+		assertNull(accessor.getNeighbor("unknown"));
+		assertTrue(accessor.isEmpty("empty"));
+		assertFalse(accessor.isEmpty("zip"));
+		assertFalse(accessor.isEmpty("c1"));
+		assertEquals(1, accessor.getRowIndex());
+
+		accessor.setNode(worksheet.getDataTable().getRow(1).getNeighbor(c0.getId()));
+		assertEquals("v1.0", accessor.getValue("c0"));
+		assertEquals(1, accessor.getRowIndex());
+		assertEquals(new HashSet<String>(Arrays.asList(zip.getId(), empty.getId(), c0.getId(), c1.getId())),
+				accessor.getInputColumns());
+	}
+
+	@Test
+	public void testTransformThroughInterpreter() {
+		Worksheet worksheet = createWorksheet(3, 10);
+		PythonInterpreter interpreter = createInterpreter();
+		PythonRowAccessor accessor = new PythonRowAccessor(factory);
+		interpreter.getLocals().__setitem__("rowaccessor", Py.java2py(accessor));
+		interpreter.exec(PythonTransformationHelper.getPythonTransformMethodDefinitionState(worksheet,
+				"if isEmpty('c1'):\n\treturn 'none'\nreturn getValue('c2') + '/' + str(getRowIndex())", ""));
+		PyCode transform = interpreter.compile(PythonTransformationHelper.getTransformStatement());
+
+		List<Node> nodes = getNodes(worksheet, "c0");
+		for (Node node : nodes) {
+			interpreter.getLocals().__setitem__("nodeid", new PyString(node.getId()));
+			accessor.setNode(node);
+			PyObject output = interpreter.eval(transform);
+			assertEquals("v" + node.getRowIndex() + ".2/" + node.getRowIndex(),
+					PythonTransformationHelper.getPyObjectValueAsString(output));
+		}
+		assertEquals(2, accessor.getInputColumns().size());
+	}
+
+	@Test
+	public void testAccessorVersusLookupBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numRows = Integer.getInteger("karma.benchmark.rows", 100000);
+		Worksheet worksheet = createWorksheet(40, numRows);
+		List<Node> nodes = getNodes(worksheet, "c0");
+
+		PythonInterpreter interpreter = createInterpreter();
+		PyObject locals = interpreter.getLocals();
+		// the getValue() function as it was before the accessor
+		interpreter.exec("def getValueByLookup(columnName):\n"
+				+ "	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n"
+				+ "	node = factory.getNode(nodeid)\n"
+				+ "	targetNode = node.getNeighborByColumnName(columnName, factory)\n"
+				+ "	if targetNode is not None:\n"
+				+ "		command.addInputColumns(targetNode.getHNodeId())\n"
+				+ "		value = targetNode.getValue()\n"
+				+ "		if value is not None:\n"
+				+ "			valueAsString = value.asString()\n"
+				+ "			if valueAsString is not None:\n"
+				+ "				return valueAsString\n"
+				+ "	return ''\n");
+		locals.__setitem__("workspaceid", new PyString(workspace.getId()));
+		locals.__setitem__("command", Py.java2py(new InputColumns()));
+		PythonRowAccessor accessor = new PythonRowAccessor(factory);
+		locals.__setitem__("rowaccessor", Py.java2py(accessor));
+
+		String[] functions = { "getValueByLookup", "getValue" };
+		for (String function : functions) {
+			StringBuilder code = new StringBuilder("return ");
+			for (int c = 35; c < 40; c++)
+				code.append(c > 35 ? " + " : "").append(function).append("('c").append(c).append("')");
+			interpreter.exec(PythonTransformationHelper.getPythonTransformMethodDefinitionState(
+					worksheet, code.toString(), ""));
+			PyCode transform = interpreter.compile(PythonTransformationHelper.getTransformStatement());
+			long start = System.currentTimeMillis();
+			for (Node node : nodes) {
+				locals.__setitem__("nodeid", new PyString(node.getId()));
+				accessor.setNode(node);
+				interpreter.eval(transform);
+			}
+			logger.info(function + ": 5 columns of 40 in " + numRows + " rows in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+}
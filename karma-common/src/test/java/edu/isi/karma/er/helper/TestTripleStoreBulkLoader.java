@@ -0,0 +1,196 @@
+package edu.isi.karma.er.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.isi.karma.webserver.KarmaException;
+
+/**
+ * Loads N-Triples files into an in-process stand-in for the statements endpoint of a triple store.
+ */
+public class TestTripleStoreBulkLoader {
+
+	private static final int NUMBER_OF_TRIPLES = 10000;
+
+	private HttpServer server;
+	private String statementsURL;
+	private File file;
+	private List<String> allTriples;
+
+	private Set<String> storedTriples;
+	private List<String> methods;
+	private List<String> queries;
+	private AtomicInteger requests;
+	// every request with this number or a greater one fails
+	private volatile int failFromRequest;
+	// every request with a number that is a multiple of this fails once
+	private volatile int transientFailureEvery;
+
+	@Before
+	public void setUp() throws IOException {
+		storedTriples = Collections.synchronizedSet(new HashSet<String>());
+		methods = new CopyOnWriteArrayList<String>();
+		queries = new CopyOnWriteArrayList<String>();
+		requests = new AtomicInteger();
+		failFromRequest = Integer.MAX_VALUE;
+		transientFailureEvery = Integer.MAX_VALUE;
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/repositories/test/statements", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int request = requests.incrementAndGet();
+				List<String> lines = new CopyOnWriteArrayList<String>();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+				String line;
+				while ((line = reader.readLine()) != null)
+					lines.add(line);
+				int status;
+				if (request >= failFromRequest || request % transientFailureEvery == 0) {
+					status = 503;
+				} else {
+					storedTriples.addAll(lines);
+					methods.add(exchange.getRequestMethod());
+					queries.add(exchange.getRequestURI().getQuery());
+					status = 204;
+				}
+				exchange.sendResponseHeaders(status, -1);
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.start();
+		statementsURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/repositories/test/statements";
+
+		file = File.createTempFile("karma-bulk-load", ".nt");
+		allTriples = new CopyOnWriteArrayList<String>();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (int i = 0; i < NUMBER_OF_TRIPLES; i++) {
+				String triple = "<http://example.org/s" + i + "> <http://example.org/p" + (i % 7) +
+						"> \"value " + i + "\" .";
+				allTriples.add(triple);
+				writer.write(triple);
+				writer.write("\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		file.delete();
+	}
+
+	private TripleStoreBulkLoader createLoader() {
+		TripleStoreBulkLoader loader = new TripleStoreBulkLoader(statementsURL, "text/plain");
+		loader.setContext("http://example.org/graph");
+		loader.setStatementsPerBatch(700);
+		loader.setConcurrentRequests(4);
+		loader.setMaxRetries(2);
+		loader.setRetryDelayMillis(10);
+		return loader;
+	}
+
+	@Test
+	public void testLoadInBatchesWithRetry() throws KarmaException {
+		transientFailureEvery = 5;
+
+		TripleStoreBulkLoader loader = createLoader();
+		long offset = loader.load(file, true, 0);
+
+		assertEquals(file.length(), offset);
+		assertEquals(new HashSet<String>(allTriples), storedTriples);
+		assertEquals((NUMBER_OF_TRIPLES + 699) / 700, methods.size());
+		assertEquals("PUT", methods.get(0));
+		assertEquals(methods.size() - 1, Collections.frequency(methods, "POST"));
+		for (String query : queries)
+			assertEquals("context=<http://example.org/graph>", query);
+	}
+
+	@Test
+	public void testBatchesBySize() throws KarmaException {
+		TripleStoreBulkLoader loader = createLoader();
+		loader.setStatementsPerBatch(Integer.MAX_VALUE);
+		loader.setBytesPerBatch(16 * 1024);
+		long offset = loader.load(file, false, 0);
+
+		assertEquals(file.length(), offset);
+		assertEquals(new HashSet<String>(allTriples), storedTriples);
+		assertTrue(methods.size() > 1);
+		assertEquals(methods.size(), Collections.frequency(methods, "POST"));
+	}
+
+	@Test
+	public void testBlankNodesKeepTheFileInOneRequest() throws KarmaException, IOException {
+		assertFalse(TripleStoreUtil.hasBlankNodes(file));
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		try {
+			writer.write("<http://example.org/s0> <http://example.org/p0> _:b1 .\n");
+			writer.write("_:b1 <http://example.org/p1> \"value\" .\n");
+		} finally {
+			writer.close();
+		}
+		assertTrue(TripleStoreUtil.hasBlankNodes(file));
+	}
+
+	@Test
+	public void testResumeFromCommittedOffset() throws KarmaException, IOException {
+		failFromRequest = 6;
+
+		TripleStoreBulkLoader loader = createLoader();
+		long offset = -1;
+		try {
+			loader.load(file, false, 0);
+			fail("the upload should fail");
+		} catch (KarmaException e) {
+			offset = loader.getCommittedOffset();
+			assertTrue(e.getMessage().contains("resume from offset " + offset));
+		}
+		assertTrue(offset < file.length());
+		if (offset > 0) {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				raf.seek(offset - 1);
+				assertEquals('\n', raf.read());
+			} finally {
+				raf.close();
+			}
+		}
+		assertTrue(storedTriples.size() < NUMBER_OF_TRIPLES);
+
+		failFromRequest = Integer.MAX_VALUE;
+		assertEquals(file.length(), loader.load(file, false, offset));
+		assertEquals(new HashSet<String>(allTriples), storedTriples);
+	}
+}
@@ -0,0 +1,101 @@
+package edu.isi.karma.kr2rml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.kr2rml.writer.N3KR2RMLRDFWriter;
+
+public class TestTermCache {
+
+	private static Logger logger = LoggerFactory.getLogger(TestTermCache.class);
+
+	private URIFormatter newFormatter(TermCache termCache) {
+		URIFormatter formatter = new URIFormatter(Arrays.asList(new Prefix("ex", "http://ex.com/")), new ErrorReport());
+		formatter.setTermCache(termCache);
+		return formatter;
+	}
+
+	@Test
+	public void testFormattedUrisAreShared() {
+		TermCache termCache = new TermCache(2);
+		URIFormatter formatter = newFormatter(termCache);
+		String name = formatter.getExpandedAndNormalizedUri("ex:name");
+		assertEquals("<http://ex.com/name>", name);
+		assertSame(name, formatter.getExpandedAndNormalizedUri(new String("ex:name")));
+		assertEquals("<http://ex.com/ab_b>", formatter.getExpandedAndNormalizedUri("http://ex.com/a,b,b"));
+		assertEquals(2, termCache.getMisses());
+
+		// the table is full, it starts over
+		assertEquals("_:b1", formatter.getExpandedAndNormalizedUri("_:b1"));
+		formatter.getExpandedAndNormalizedUri("ex:name");
+		assertEquals(4, termCache.getMisses());
+	}
+
+	@Test
+	public void testN3Writer() {
+		StringWriter out = new StringWriter();
+		N3KR2RMLRDFWriter writer = new N3KR2RMLRDFWriter(newFormatter(new TermCache()), new PrintWriter(out));
+		writer.outputTripleWithLiteralObject("<http://ex.com/p 1>", "ex:name", "José \"Pepe\"", null);
+		writer.finishRow();
+		writer.outputTripleWithLiteralObject("<http://ex.com/p1>", "ex:age", "42", "http://www.w3.org/2001/XMLSchema#integer");
+		writer.finishRow();
+		writer.outputQuadWithLiteralObject("<http://ex.com/p1>", "ex:name", "Pepe", "", "http://ex.com/g");
+		writer.finishRow();
+		writer.outputTripleWithURIObject("<http://ex.com/p1>", "ex:knows", "<http://ex.com/p2>");
+		writer.flush();
+		assertEquals("<http://ex.com/p1> <http://ex.com/name> \"Jos\\u00E9 \\\"Pepe\\\"\" .\n\n"
+				+ "<http://ex.com/p1> <http://ex.com/age> \"42\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n\n"
+				+ "<http://ex.com/p1> <http://ex.com/name> \"Pepe\" <http://ex.com/g> .\n\n"
+				+ "<http://ex.com/p1> <http://ex.com/knows> <http://ex.com/p2> .\n",
+				out.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	private long writeTriples(TermCache termCache, int numRows) {
+		N3KR2RMLRDFWriter writer = new N3KR2RMLRDFWriter(newFormatter(termCache), new PrintWriter(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for (int row = 0; row < numRows; row++) {
+			String subject = "<http://ex.com/person/" + row + ">";
+			for (int p = 0; p < 20; p++) {
+				writer.outputTripleWithLiteralObject(subject, "ex:property" + (p % 10), "value " + p, null);
+			}
+			writer.outputTripleWithURIObject(subject, "ex:knows", "<http://ex.com/person/" + (row + 1) + ">");
+			writer.finishRow();
+		}
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+	}
+
+	@Test
+	public void testAllocationBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		int numRows = Integer.getInteger("karma.benchmark.rows", 200000);
+		writeTriples(new TermCache(0), numRows / 10);
+		writeTriples(new TermCache(), numRows / 10);
+		String[] labels = {"Without", "With"};
+		TermCache[] termCaches = {new TermCache(0), new TermCache()};
+		for (int i = 0; i < termCaches.length; i++) {
+			TermCache termCache = termCaches[i];
+			long start = System.currentTimeMillis();
+			long allocated = writeTriples(termCache, numRows);
+			logger.info(labels[i] + " term cache: "
+					+ numRows * 21 + " triples in " + (System.currentTimeMillis() - start) + "ms, "
+					+ allocated / numRows + " bytes allocated per row, " + termCache.getMisses() + " terms formatted");
+		}
+	}
+}
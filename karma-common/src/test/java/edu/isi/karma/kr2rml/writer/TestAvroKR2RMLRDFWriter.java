@@ -0,0 +1,179 @@
+package edu.isi.karma.kr2rml.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericArray;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.kr2rml.ObjectMap;
+import edu.isi.karma.kr2rml.Predicate;
+import edu.isi.karma.kr2rml.PredicateObjectMap;
+import edu.isi.karma.kr2rml.RefObjectMap;
+import edu.isi.karma.kr2rml.SubjectMap;
+import edu.isi.karma.kr2rml.planning.TriplesMap;
+import edu.isi.karma.kr2rml.planning.TriplesMapGraph;
+import edu.isi.karma.kr2rml.template.StringTemplateTerm;
+import edu.isi.karma.kr2rml.template.TemplateTermSet;
+
+public class TestAvroKR2RMLRDFWriter {
+
+	private static Logger logger = LoggerFactory.getLogger(TestAvroKR2RMLRDFWriter.class);
+
+	private TriplesMapGraph graph;
+	private PredicateObjectMap city;
+	private PredicateObjectMap name;
+	private PredicateObjectMap phone;
+	private PredicateObjectMap livesAt;
+
+	private static TemplateTermSet newTemplate(String value) {
+		TemplateTermSet template = new TemplateTermSet();
+		template.addTemplateTermToSet(new StringTemplateTerm(value));
+		return template;
+	}
+
+	private static PredicateObjectMap newPredicateObjectMap(TriplesMap triplesMap, String predicateUri, ObjectMap object) {
+		PredicateObjectMap pom = new PredicateObjectMap(predicateUri, triplesMap);
+		Predicate predicate = new Predicate(predicateUri);
+		predicate.setTemplate(newTemplate(predicateUri));
+		pom.setPredicate(predicate);
+		pom.setObject(object);
+		triplesMap.addPredicateObjectMap(pom);
+		return pom;
+	}
+
+	@Before
+	public void setUp() {
+		TriplesMap address = new TriplesMap("address", new SubjectMap("addressSubject"));
+		city = newPredicateObjectMap(address, "http://ex.com/city", new ObjectMap("cityObject", newTemplate("city"), null));
+		TriplesMap person = new TriplesMap("person", new SubjectMap("personSubject"));
+		name = newPredicateObjectMap(person, "http://ex.com/name", new ObjectMap("nameObject", newTemplate("name"), null));
+		phone = newPredicateObjectMap(person, "http://ex.com/phone", new ObjectMap("phoneObject", newTemplate("phone"), null));
+		livesAt = newPredicateObjectMap(person, "http://ex.com/livesAt", new ObjectMap("livesAtObject", new RefObjectMap("livesAtRef", address)));
+		graph = new TriplesMapGraph();
+		graph.addTriplesMap(address);
+		graph.addTriplesMap(person);
+	}
+
+	private AvroKR2RMLRDFWriter newWriter(OutputStream out, Properties p) throws IOException {
+		AvroKR2RMLRDFWriter writer = new AvroKR2RMLRDFWriter(out);
+		writer.initialize(p);
+		writer.addRootTriplesMapId("person");
+		Map<TriplesMapGraph, List<String>> processingOrder = new HashMap<TriplesMapGraph, List<String>>();
+		processingOrder.put(graph, Arrays.asList("address", "person"));
+		writer.setProcessingOrder(processingOrder);
+		return writer;
+	}
+
+	private void writeRows(AvroKR2RMLRDFWriter writer, int numRows) {
+		for (int i = 0; i < numRows; i++) {
+			String personUri = "<http://ex.com/person/" + i + ">";
+			String addressUri = "<http://ex.com/address/" + i + ">";
+			writer.outputTripleWithLiteralObject(city, addressUri, "http://ex.com/city", "city " + (i % 10), null);
+			writer.outputTripleWithLiteralObject(name, personUri, "http://ex.com/name", "person " + i, null);
+			writer.outputTripleWithLiteralObject(phone, personUri, "http://ex.com/phone", "555-0" + i, null);
+			writer.outputTripleWithLiteralObject(phone, personUri, "http://ex.com/phone", "555-1" + i, null);
+			writer.outputTripleWithLiteralObject(phone, personUri, "http://ex.com/phone", "555-1" + i, null);
+			writer.outputTripleWithURIObject(livesAt, personUri, "http://ex.com/livesAt", addressUri);
+			writer.finishRow();
+		}
+	}
+
+	private void checkRecords(byte[] avro, int numRows, String codec) throws IOException {
+		DataFileReader<GenericRecord> reader = new DataFileReader<GenericRecord>(new SeekableByteArrayInput(avro),
+				new GenericDatumReader<GenericRecord>());
+		assertEquals(codec, reader.getMetaString("avro.codec"));
+		int count = 0;
+		Map<String, GenericRecord> records = new HashMap<String, GenericRecord>();
+		for (GenericRecord record : reader) {
+			records.put(record.get("id").toString(), record);
+			count++;
+		}
+		reader.close();
+		assertEquals(numRows, count);
+		for (int i = 0; i < numRows; i++) {
+			GenericRecord record = records.get("<http://ex.com/person/" + i + ">");
+			assertEquals("person " + i, record.get("http___ex_com_name").toString());
+			assertEquals(2, ((GenericArray<?>) record.get("http___ex_com_phone")).size());
+			GenericRecord address = (GenericRecord) record.get("http___ex_com_livesAt");
+			assertEquals("city " + (i % 10), address.get("http___ex_com_city").toString());
+		}
+	}
+
+	@Test
+	public void testWriteOnClose() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AvroKR2RMLRDFWriter writer = newWriter(out, new Properties());
+		writeRows(writer, 100);
+		writer.close();
+		checkRecords(out.toByteArray(), 100, "null");
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Properties p = new Properties();
+		p.setProperty("avro.streaming", "true");
+		p.setProperty("avro.codec", "deflate-6");
+		p.setProperty("avro.sync.interval", "4096");
+		AvroKR2RMLRDFWriter writer = newWriter(out, p);
+		writeRows(writer, 100);
+		writer.close();
+		checkRecords(out.toByteArray(), 100, "deflate");
+	}
+
+	private static long getPeakHeapUsed() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	@Test
+	public void testStreamingBenchmark() throws IOException {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numRows = Integer.getInteger("karma.benchmark.rows", 300000);
+		for (String streaming : new String[] {"false", "true"}) {
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				pool.resetPeakUsage();
+			Properties p = new Properties();
+			p.setProperty("avro.streaming", streaming);
+			AvroKR2RMLRDFWriter writer = newWriter(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			}, p);
+			long start = System.currentTimeMillis();
+			writeRows(writer, numRows);
+			writer.close();
+			long time = Math.max(1, System.currentTimeMillis() - start);
+			logger.info((streaming.equals("true") ? "Streaming: " : "On close: ") + numRows * 1000L / time
+					+ " records/s, peak heap " + getPeakHeapUsed() / (1024 * 1024) + "MB");
+		}
+	}
+}
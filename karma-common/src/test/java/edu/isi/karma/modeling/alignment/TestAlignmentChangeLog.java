@@ -0,0 +1,62 @@
+package edu.isi.karma.modeling.alignment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestAlignmentChangeLog {
+
+	private static Set<String> ids(String... ids) {
+		return new HashSet<String>(Arrays.asList(ids));
+	}
+
+	private static final Set<String> NONE = Collections.emptySet();
+
+	@Test
+	public void testChangesAreMergedSinceVersion() {
+		AlignmentChangeLog log = new AlignmentChangeLog();
+		assertEquals(0, log.getVersion());
+		assertTrue(log.getChangesSince(0).isEmpty());
+
+		log.record(ids("n1", "n2"), NONE, ids("l1"), NONE);
+		log.record(NONE, NONE, NONE, NONE);
+		assertEquals(1, log.getVersion());
+		log.record(ids("n3"), ids("n2"), ids("l2"), ids("l1"));
+		log.linkChanged("l2");
+		log.nodeChanged("n1");
+		assertEquals(4, log.getVersion());
+
+		AlignmentChangeLog.Changes changes = log.getChangesSince(0);
+		assertEquals(ids("n1", "n3"), changes.getAddedNodeIds());
+		assertEquals(ids("n1", "n2"), changes.getRemovedNodeIds());
+		assertEquals(ids("l2"), changes.getAddedLinkIds());
+		assertEquals(ids("l1", "l2"), changes.getRemovedLinkIds());
+
+		changes = log.getChangesSince(2);
+		assertEquals(ids("n1"), changes.getAddedNodeIds());
+		assertEquals(ids("n1"), changes.getRemovedNodeIds());
+		assertEquals(ids("l2"), changes.getAddedLinkIds());
+		assertEquals(ids("l2"), changes.getRemovedLinkIds());
+
+		assertTrue(log.getChangesSince(4).isEmpty());
+		assertNull(log.getChangesSince(5));
+	}
+
+	@Test
+	public void testOldVersionsAreForgotten() {
+		AlignmentChangeLog log = new AlignmentChangeLog();
+		for (int i = 0; i < AlignmentChangeLog.CAPACITY + 10; i++)
+			log.nodeChanged("n" + i);
+		assertNull(log.getChangesSince(9));
+		assertEquals(2 * AlignmentChangeLog.CAPACITY, log.getChangesSince(10).size());
+		assertNotEquals(log.getId(), new AlignmentChangeLog().getId());
+	}
+}
@@ -0,0 +1,156 @@
+package edu.isi.karma.modeling.alignment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.config.ModelingConfiguration;
+import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class TestGraphBuilderTopK {
+
+	private static Logger logger = LoggerFactory.getLogger(TestGraphBuilderTopK.class);
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		File configDir = new File(System.getProperty("java.io.tmpdir"), "karma-topk-test");
+		configDir.mkdirs();
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_CONFIG_DIRECTORY, configDir.getAbsolutePath());
+		ModelingConfiguration.load();
+	}
+
+	/**
+	 * An ontology that knows every uri, so that the graph accepts any node and link.
+	 */
+	private static OntologyManager createOntologyManager() {
+		return new OntologyManager() {
+			@Override
+			public Label getUriLabel(String uri) {
+				return new Label(uri);
+			}
+		};
+	}
+
+	private static Node addNode(GraphBuilderTopK graphBuilder, String id) {
+		Node n = new InternalNode(id, new Label("http://ex.com/Thing"));
+		graphBuilder.addNode(n);
+		return n;
+	}
+
+	private static ObjectPropertyLink addLink(GraphBuilderTopK graphBuilder, Node source, Node target,
+			String uri, double weight) {
+		ObjectPropertyLink link = new ObjectPropertyLink(LinkIdFactory.getLinkId(uri, source.getId(), target.getId()),
+				new Label(uri), ObjectPropertyType.Direct);
+		graphBuilder.addLink(source, target, link, weight);
+		return link;
+	}
+
+	private static Set<String> getBestTree(GraphBuilderTopK graphBuilder, Node... terminals) throws Exception {
+		Set<Node> steinerNodes = new HashSet<Node>();
+		for (Node n : terminals)
+			steinerNodes.add(n);
+		List<DirectedWeightedMultigraph<Node, LabeledLink>> trees =
+				graphBuilder.getTopKSteinerTrees(steinerNodes, 1, false);
+		Set<String> linkIds = new TreeSet<String>();
+		for (LabeledLink l : trees.get(0).edgeSet())
+			linkIds.add(l.getId());
+		return linkIds;
+	}
+
+	private static Set<String> ids(ObjectPropertyLink... links) {
+		Set<String> ids = new TreeSet<String>();
+		for (ObjectPropertyLink l : links)
+			ids.add(l.getId());
+		return ids;
+	}
+
+	@Test
+	public void testTreesFollowGraphChanges() throws Exception {
+		GraphBuilderTopK graphBuilder = new GraphBuilderTopK(createOntologyManager(), false);
+		Node n1 = addNode(graphBuilder, "n1");
+		Node n2 = addNode(graphBuilder, "n2");
+		Node n3 = addNode(graphBuilder, "n3");
+		ObjectPropertyLink direct = addLink(graphBuilder, n1, n3, "http://ex.com/p1", 0.2);
+		ObjectPropertyLink l12 = addLink(graphBuilder, n1, n2, "http://ex.com/p2", 0.6);
+		ObjectPropertyLink l23 = addLink(graphBuilder, n2, n3, "http://ex.com/p3", 0.7);
+
+		assertEquals(ids(direct), getBestTree(graphBuilder, n1, n3));
+		// the input of the search is reused while the graph does not change
+		assertEquals(ids(direct), getBestTree(graphBuilder, n1, n3));
+
+		graphBuilder.changeLinkWeight(direct, 5.0);
+		assertEquals(ids(l12, l23), getBestTree(graphBuilder, n1, n3));
+
+		Node n4 = addNode(graphBuilder, "n4");
+		ObjectPropertyLink l14 = addLink(graphBuilder, n1, n4, "http://ex.com/p4", 0.1);
+		ObjectPropertyLink l43 = addLink(graphBuilder, n4, n3, "http://ex.com/p5", 0.1);
+		assertEquals(ids(l14, l43), getBestTree(graphBuilder, n1, n3));
+
+		graphBuilder.removeNode(n4);
+		assertEquals(ids(l12, l23), getBestTree(graphBuilder, n1, n3));
+
+		graphBuilder.removeLink(l12);
+		assertEquals(ids(direct), getBestTree(graphBuilder, n1, n3));
+	}
+
+	@Test
+	public void testTopKSearchBenchmark() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numNodes = Integer.getInteger("karma.benchmark.nodes", 2000);
+		int numLinks = Integer.getInteger("karma.benchmark.links", 10000);
+		int numSearches = Integer.getInteger("karma.benchmark.searches", 50);
+		Random random = new Random(0);
+		GraphBuilderTopK graphBuilder = new GraphBuilderTopK(createOntologyManager(), false);
+		List<Node> nodes = new ArrayList<Node>();
+		for (int i = 0; i < numNodes; i++)
+			nodes.add(addNode(graphBuilder, "n" + i));
+		ObjectPropertyLink link = null;
+		for (int i = 0; i < numLinks; i++) {
+			Node source = nodes.get(i < numNodes - 1 ? i : random.nextInt(numNodes));
+			Node target = nodes.get(i < numNodes - 1 ? i + 1 : random.nextInt(numNodes));
+			if (!source.equals(target))
+				link = addLink(graphBuilder, source, target, "http://ex.com/p" + i, 0.1 + random.nextInt(10) / 10.0);
+		}
+
+		for (int run = 0; run < 2; run++) {
+			long start = System.currentTimeMillis();
+			Set<String> cachedTree = null;
+			for (int i = 0; i < numSearches; i++)
+				cachedTree = getBestTree(graphBuilder, nodes.get(0), nodes.get(numNodes / 2), nodes.get(numNodes - 1));
+			long cached = System.currentTimeMillis() - start;
+
+			// the cost of a search before the input was cached: it is rebuilt every time
+			start = System.currentTimeMillis();
+			Set<String> rebuiltTree = null;
+			for (int i = 0; i < numSearches; i++) {
+				graphBuilder.changeLinkWeight(link, graphBuilder.getGraph().getEdgeWeight(link));
+				rebuiltTree = getBestTree(graphBuilder, nodes.get(0), nodes.get(numNodes / 2), nodes.get(numNodes - 1));
+			}
+			long rebuilt = System.currentTimeMillis() - start;
+			logger.info(numSearches + " top-k searches on " + numNodes + " nodes and " + numLinks + " links: "
+					+ cached + "ms with the cached input, " + rebuilt + "ms rebuilding it for each search");
+			assertEquals(cachedTree, rebuiltTree);
+		}
+	}
+}
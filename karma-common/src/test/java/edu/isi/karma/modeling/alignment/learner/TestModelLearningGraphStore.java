@@ -0,0 +1,128 @@
+package edu.isi.karma.modeling.alignment.learner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.modeling.alignment.GraphUtil;
+import edu.isi.karma.modeling.alignment.LinkIdFactory;
+import edu.isi.karma.modeling.alignment.SemanticModel;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+
+public class TestModelLearningGraphStore {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String directory;
+
+	@Before
+	public void setUp() {
+		directory = folder.getRoot().getAbsolutePath() + File.separator;
+	}
+
+	private static SemanticModel createModel(String id) {
+		DirectedWeightedMultigraph<Node, LabeledLink> graph =
+				new DirectedWeightedMultigraph<Node, LabeledLink>(LabeledLink.class);
+		InternalNode person = new InternalNode(id + "-person", new Label("http://ex.com/Person"));
+		InternalNode place = new InternalNode(id + "-place", new Label("http://ex.com/Place"));
+		graph.addVertex(person);
+		graph.addVertex(place);
+		String uri = "http://ex.com/livesIn";
+		ObjectPropertyLink link = new ObjectPropertyLink(LinkIdFactory.getLinkId(uri, person.getId(), place.getId()),
+				new Label(uri), ObjectPropertyType.Direct);
+		graph.addEdge(person, place, link);
+		return new SemanticModel(id, graph);
+	}
+
+	private static List<String> getIds(List<SemanticModel> models) {
+		List<String> ids = new ArrayList<String>();
+		for (SemanticModel model : models)
+			ids.add(model.getId());
+		return ids;
+	}
+
+	private static List<String> ids(String... ids) {
+		List<String> list = new ArrayList<String>();
+		for (String id : ids)
+			list.add(id);
+		return list;
+	}
+
+	@Test
+	public void testLoggedModelsAreReplayedAfterReopening() throws Exception {
+		ModelLearningGraphStore store = new ModelLearningGraphStore(directory);
+		store.writeSnapshot(GraphUtil.asDefaultGraph(createModel("m0").getGraph()));
+		store.appendModel(createModel("m1"));
+		store.appendModel(createModel("m2"));
+		assertEquals(2, store.getNumberOfLoggedModels());
+
+		ModelLearningGraphStore reopened = new ModelLearningGraphStore(directory);
+		assertTrue(reopened.hasSnapshot());
+		assertEquals(2, reopened.readSnapshot().vertexSet().size());
+		List<SemanticModel> models = reopened.readLog();
+		assertEquals(ids("m1", "m2"), getIds(models));
+		assertEquals(2, reopened.getNumberOfLoggedModels());
+		assertEquals(1, models.get(1).getGraph().edgeSet().size());
+	}
+
+	@Test
+	public void testTruncatedRecordIsDropped() throws Exception {
+		ModelLearningGraphStore store = new ModelLearningGraphStore(directory);
+		store.appendModel(createModel("m1"));
+		File logFile = new File(directory + "graph.log");
+		long validLength = logFile.length();
+		store.appendModel(createModel("m2"));
+
+		// a crash in the middle of the second record
+		RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+		try {
+			raf.setLength(logFile.length() - 5);
+		} finally {
+			raf.close();
+		}
+
+		ModelLearningGraphStore reopened = new ModelLearningGraphStore(directory);
+		assertEquals(ids("m1"), getIds(reopened.readLog()));
+		assertEquals(1, reopened.getNumberOfLoggedModels());
+		assertEquals(validLength, logFile.length());
+
+		// the next record is appended after the last complete one
+		reopened.appendModel(createModel("m3"));
+		assertEquals(ids("m1", "m3"), getIds(new ModelLearningGraphStore(directory).readLog()));
+	}
+
+	@Test
+	public void testSnapshotReplacesTheLog() throws Exception {
+		ModelLearningGraphStore store = new ModelLearningGraphStore(directory);
+		store.writeSnapshot(new DirectedWeightedMultigraph<Node, DefaultLink>(DefaultLink.class));
+		store.appendModel(createModel("m1"));
+
+		DirectedWeightedMultigraph<Node, DefaultLink> graph = GraphUtil.asDefaultGraph(createModel("m1").getGraph());
+		store.writeSnapshot(graph);
+		assertEquals(0, store.getNumberOfLoggedModels());
+		assertFalse(new File(directory + "graph.log").exists());
+		assertFalse(new File(directory + "graph.snapshot.tmp").exists());
+
+		ModelLearningGraphStore reopened = new ModelLearningGraphStore(directory);
+		assertEquals(2, reopened.readSnapshot().vertexSet().size());
+		assertTrue(reopened.readLog().isEmpty());
+	}
+}
@@ -0,0 +1,173 @@
+package edu.isi.karma.modeling.semantictypes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.controller.command.selection.SuperSelection;
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HNode.HNodeType;
+import edu.isi.karma.rep.HNodePath;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.semantictypes.typinghandler.LuceneBasedSTModelHandler;
+
+public class TestSemanticTypeUtil {
+
+	private static Logger logger = LoggerFactory.getLogger(TestSemanticTypeUtil.class);
+
+	private static final SuperSelection SELECTION = SuperSelectionManager.DEFAULT_SELECTION;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Workspace workspace;
+	private RepFactory factory;
+	private LuceneBasedSTModelHandler modelHandler;
+
+	@Before
+	public void setUp() throws Exception {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		modelHandler = new LuceneBasedSTModelHandler();
+		modelHandler.readModelFromFile(folder.newFolder("semantic-type-index").getAbsolutePath());
+		modelHandler.setModelHandlerEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private String getValue(int label, int row) {
+		return "v" + label + "x" + (row % 20) + " w" + (row % 7);
+	}
+
+	private void train(int numLabels) {
+		for (int label = 0; label < numLabels; label++) {
+			List<String> examples = new ArrayList<String>();
+			for (int row = 0; row < 40; row++)
+				examples.add(getValue(label, row));
+			assertTrue(modelHandler.addType("http://ex.com/Thing" + label + "|http://ex.com/p" + label, examples));
+		}
+	}
+
+	/**
+	 * Column c has the values of label c % numLabels, and is empty in every
+	 * tenth row.
+	 */
+	private Worksheet createWorksheet(int numColumns, int numRows, int numLabels) {
+		Worksheet worksheet = factory.createWorksheet("sheet", workspace, "UTF-8");
+		List<HNode> columns = new ArrayList<HNode>();
+		for (int c = 0; c < numColumns; c++)
+			columns.add(worksheet.addHNode("column" + c, HNodeType.Regular, factory));
+		for (int row = 0; row < numRows; row++) {
+			Row r = worksheet.addRow(factory);
+			for (int c = 0; c < numColumns; c++)
+				r.setValue(columns.get(c).getId(), row % 10 == c % 10 ? "" : getValue(c % numLabels, row), factory);
+		}
+		return worksheet;
+	}
+
+	private List<HNodePath> getPaths(Worksheet worksheet) {
+		List<HNodePath> paths = new ArrayList<HNodePath>();
+		for (HNode hNode : worksheet.getHeaders().getSortedHNodes())
+			paths.add(new HNodePath(hNode));
+		return paths;
+	}
+
+	@Test
+	public void testTrainingExamplesOfManyColumns() {
+		Worksheet worksheet = createWorksheet(12, 200, 5);
+		List<HNodePath> paths = getPaths(worksheet);
+		Map<String, List<String>> examples = SemanticTypeUtil.getTrainingExamples(worksheet, paths, SELECTION);
+		assertEquals(12, examples.size());
+		for (HNodePath path : paths) {
+			List<String> columnExamples = examples.get(path.getLeaf().getId());
+			// the empty values are left out
+			assertEquals(180, columnExamples.size());
+			assertFalse(columnExamples.contains(""));
+			assertEquals(new HashSet<String>(SemanticTypeUtil.getTrainingExamples(worksheet, path, SELECTION)),
+					new HashSet<String>(columnExamples));
+		}
+	}
+
+	@Test
+	public void testBatchPredictionsMatchColumnPredictions() {
+		train(5);
+		Map<String, List<String>> examplesByColumn = new LinkedHashMap<String, List<String>>();
+		for (int c = 0; c < 10; c++) {
+			List<String> examples = new ArrayList<String>();
+			for (int row = 0; row < 30; row++)
+				examples.add(getValue(c % 5, row) + (c % 3 == 0 ? " AND or +v" + ((c + 1) % 5) + "x1 -" : ""));
+			examplesByColumn.put("column" + c, examples);
+		}
+		examplesByColumn.put("empty", new ArrayList<String>());
+
+		Map<String, List<SemanticTypeLabel>> predictions = modelHandler.predictTypes(examplesByColumn, 3);
+		assertNotNull(predictions);
+		assertEquals(Arrays.asList("column0", "column1", "column2", "column3", "column4", "column5", "column6",
+				"column7", "column8", "column9"), new ArrayList<String>(predictions.keySet()));
+		for (Entry<String, List<SemanticTypeLabel>> entry : predictions.entrySet()) {
+			List<SemanticTypeLabel> expected = modelHandler.predictType(examplesByColumn.get(entry.getKey()), 3);
+			List<SemanticTypeLabel> actual = entry.getValue();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getLabel(), actual.get(i).getLabel());
+				assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0);
+			}
+		}
+		assertEquals("http://ex.com/Thing1|http://ex.com/p1", predictions.get("column1").get(0).getLabel());
+	}
+
+	@Test
+	public void testTimeToFirstSuggestionBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numColumns = Integer.getInteger("karma.benchmark.columns", 300);
+		int numRows = Integer.getInteger("karma.benchmark.rows", 2000);
+		train(100);
+		Worksheet worksheet = createWorksheet(numColumns, numRows, 100);
+		List<HNodePath> paths = getPaths(worksheet);
+
+		for (int run = 0; run < 2; run++) {
+			long start = System.currentTimeMillis();
+			int predicted = 0;
+			for (HNodePath path : paths) {
+				List<String> examples = SemanticTypeUtil.getTrainingExamples(worksheet, path, SELECTION);
+				if (modelHandler.predictType(examples, 4) != null)
+					predicted++;
+			}
+			long columnByColumn = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			Map<String, List<SemanticTypeLabel>> predictions = modelHandler.predictTypes(
+					SemanticTypeUtil.getTrainingExamples(worksheet, paths, SELECTION), 4);
+			long batch = System.currentTimeMillis() - start;
+			logger.info(numColumns + " columns of " + numRows + " rows, time to first suggestion: "
+					+ columnByColumn + "ms column by column, " + batch + "ms in one batch");
+			assertEquals(predicted, predictions.size());
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package edu.isi.karma.modeling.steiner.topk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.isi.karma.config.ModelingConfiguration;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+/**
+ * Runs many top-k searches at the same time, over a shared graph and over
+ * different graphs, and checks that they return the same trees as serial runs.
+ */
+public class TestTopKSteinertreesConcurrency {
+
+	private static final int NUMBER_OF_NODES = 60;
+	private static final int NUMBER_OF_EDGES = 150;
+	private static final int NUMBER_OF_SEARCHES = 64;
+	private static final int K = 5;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		File configDir = new File(System.getProperty("java.io.tmpdir"), "karma-topk-test");
+		configDir.mkdirs();
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_CONFIG_DIRECTORY, configDir.getAbsolutePath());
+		ModelingConfiguration.load();
+	}
+
+	private static Map<SteinerNode, TreeSet<SteinerEdge>> createGraph(long seed) {
+		Random random = new Random(seed);
+		Map<SteinerNode, TreeSet<SteinerEdge>> graph = new HashMap<SteinerNode, TreeSet<SteinerEdge>>();
+		List<SteinerNode> nodes = new ArrayList<SteinerNode>();
+		for (int i = 0; i < NUMBER_OF_NODES; i++) {
+			SteinerNode n = new SteinerNode("n" + i);
+			nodes.add(n);
+			graph.put(n, new TreeSet<SteinerEdge>());
+		}
+		// a chain keeps the graph connected, the random edges add alternative trees
+		for (int i = 0; i < NUMBER_OF_EDGES; i++) {
+			SteinerNode source = i < NUMBER_OF_NODES - 1 ? nodes.get(i) : nodes.get(random.nextInt(NUMBER_OF_NODES));
+			SteinerNode target = i < NUMBER_OF_NODES - 1 ? nodes.get(i + 1) : nodes.get(random.nextInt(NUMBER_OF_NODES));
+			if (source.equals(target)) continue;
+			SteinerEdge e = new SteinerEdge(new SteinerNode(source.name()), "e" + i, 
+					new SteinerNode(target.name()), 0.1f + random.nextInt(10) / 10.0f);
+			graph.get(source).add(e);
+			graph.get(target).add(e);
+		}
+		return graph;
+	}
+
+	private static TreeSet<SteinerNode> createTerminals(int search) {
+		Random random = new Random(search);
+		TreeSet<SteinerNode> terminals = new TreeSet<SteinerNode>();
+		while (terminals.size() < 3)
+			terminals.add(new SteinerNode("n" + random.nextInt(NUMBER_OF_NODES)));
+		return terminals;
+	}
+
+	private static TopKSteinertrees createSearch(int algorithm, Map<SteinerNode, TreeSet<SteinerEdge>> graph, 
+			TreeSet<SteinerNode> terminals) throws Exception {
+		switch (algorithm) {
+			case 0: return new BANKSfromMM(graph, terminals);
+			case 1: return new BANKSIIfromMM(graph, terminals);
+			default: return new DPBFfromMM(graph, terminals);
+		}
+	}
+
+	private static String runSearch(int algorithm, Map<SteinerNode, TreeSet<SteinerEdge>> graph, 
+			TreeSet<SteinerNode> terminals) throws Exception {
+		TopKSteinertrees search = createSearch(algorithm, graph, terminals);
+		StringBuilder sb = new StringBuilder();
+		for (ResultGraph tree : search.getTopKTrees(K)) {
+			sb.append(tree.getScore());
+			TreeSet<String> facts = new TreeSet<String>();
+			for (Fact f : tree.getFacts())
+				facts.add(f.toString());
+			sb.append(facts.toString());
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testNodesAreIndexedFromTheGraph() throws Exception {
+		Map<SteinerNode, TreeSet<SteinerEdge>> graph = createGraph(1);
+		TopKSteinertrees search = createSearch(0, graph, createTerminals(0));
+		Map<String, SteinerNode> nodes = search.getNodes();
+		assertEquals(NUMBER_OF_NODES, nodes.size());
+		for (SteinerNode n : graph.keySet())
+			assertSame(n, nodes.get(n.name()));
+	}
+
+	@Test
+	public void testConcurrentBANKSIISearchesOnOneGraph() throws Exception {
+		final Map<SteinerNode, TreeSet<SteinerEdge>> graph = createGraph(3);
+		final int numberOfSearches = 8 * NUMBER_OF_SEARCHES;
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < numberOfSearches; i++)
+			expected.add(runSearch(1, graph, createTerminals(i)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < numberOfSearches; i++) {
+				final int search = i;
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return runSearch(1, graph, createTerminals(search));
+					}
+				}));
+			}
+			for (int i = 0; i < numberOfSearches; i++) {
+				String actual = results.get(i).get();
+				assertFalse(actual.isEmpty());
+				assertEquals(expected.get(i), actual);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// the search state is kept out of the shared nodes
+		for (Map.Entry<SteinerNode, TreeSet<SteinerEdge>> entry : graph.entrySet()) {
+			assertNull(entry.getKey().getPredecessor());
+			assertNull(entry.getKey().getRelationToPredecessor());
+			for (SteinerEdge e : entry.getValue()) {
+				assertNull(e.sourceNode.getRelationToPredecessor());
+				assertNull(e.sinkNode.getRelationToPredecessor());
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentSearchesMatchSerialRuns() throws Exception {
+
+		final List<Map<SteinerNode, TreeSet<SteinerEdge>>> graphs = new ArrayList<Map<SteinerNode, TreeSet<SteinerEdge>>>();
+		graphs.add(createGraph(1));
+		graphs.add(createGraph(2));
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < NUMBER_OF_SEARCHES; i++)
+			expected.add(runSearch(i % 3, graphs.get(i % 2), createTerminals(i)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < NUMBER_OF_SEARCHES; i++) {
+				final int search = i;
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return runSearch(search % 3, graphs.get(search % 2), createTerminals(search));
+					}
+				}));
+			}
+			for (int i = 0; i < NUMBER_OF_SEARCHES; i++) {
+				String actual = results.get(i).get();
+				assertFalse(actual.isEmpty());
+				assertEquals(expected.get(i), actual);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+import edu.isi.karma.rep.HNode.HNodeType;
+
+public class TestColumnProfiler {
+
+	private Workspace workspace;
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HNode number;
+	private HNode city;
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("sheet", workspace, "UTF-8");
+		number = worksheet.addHNode("number", HNodeType.Regular, factory);
+		city = worksheet.addHNode("city", HNodeType.Regular, factory);
+		for (int i = 0; i < 10000; i++) {
+			Row row = worksheet.addRow(factory);
+			// 100 missing and 100 invalid numbers
+			String value = String.valueOf(i);
+			if (i % 100 == 0)
+				value = "";
+			else if (i % 100 == 1)
+				value = "n/a";
+			row.setValue(number.getId(), value, factory);
+			// 4 cities in 60% of the rows, 40 in the others
+			row.setValue(city.getId(), "city" + (i % 10 < 6 ? i % 4 : 4 + i % 40), factory);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private ColumnProfiler.Sample sample(ColumnProfiler profiler, HNode hNode) {
+		return profiler.sample(worksheet.getDataTable(), new HNodePath(hNode),
+				SuperSelectionManager.DEFAULT_SELECTION);
+	}
+
+	private long getFrequency(JSONArray histogram, String value) {
+		for (int i = 0; i < histogram.length(); i++) {
+			if (histogram.getJSONObject(i).getString("Value").equals(value))
+				return histogram.getJSONObject(i).getLong("Frequency");
+		}
+		return 0;
+	}
+
+	private long getTotalFrequency(JSONArray histogram) {
+		long total = 0;
+		for (int i = 0; i < histogram.length(); i++)
+			total += histogram.getJSONObject(i).getLong("Frequency");
+		return total;
+	}
+
+	@Test
+	public void testSampleIsUniform() {
+		ColumnProfiler profiler = new ColumnProfiler(500, new Random(42));
+		ColumnProfiler.Sample sample = sample(profiler, number);
+		assertEquals(10000, sample.getCount());
+		assertEquals(500, sample.getNodes().size());
+		assertEquals(500, new HashSet<Node>(sample.getNodes()).size());
+
+		// the sampled rows are spread over the table
+		int[] quarters = new int[4];
+		for (Node node : sample.getNodes())
+			quarters[node.getRowIndex() * 4 / 10000]++;
+		for (int quarter : quarters)
+			assertTrue("rows in a quarter: " + quarter, quarter > 90 && quarter < 160);
+
+		// small columns are not sampled
+		profiler = new ColumnProfiler(20000, new Random(42));
+		assertEquals(10000, sample(profiler, number).getNodes().size());
+	}
+
+	@Test
+	public void testFingerprint() {
+		ColumnProfiler profiler = new ColumnProfiler(100, new Random());
+		long fingerprint = sample(profiler, city).getFingerprint();
+		assertEquals(fingerprint, sample(profiler, city).getFingerprint());
+		long numberFingerprint = sample(profiler, number).getFingerprint();
+
+		worksheet.getDataTable().getRow(5000).setValue(city.getId(), "elsewhere", factory);
+		assertNotEquals(fingerprint, sample(profiler, city).getFingerprint());
+		assertEquals(numberFingerprint, sample(profiler, number).getFingerprint());
+
+		worksheet.getDataTable().getRow(5000).setValue(city.getId(), "city0", factory);
+		assertEquals(fingerprint, sample(profiler, city).getFingerprint());
+		worksheet.addRow(factory);
+		assertNotEquals(fingerprint, sample(profiler, city).getFingerprint());
+	}
+
+	@Test
+	public void testNumberHistogram() {
+		ColumnProfiler profiler = new ColumnProfiler(20000, new Random());
+		JSONObject profile = profiler.profile(sample(profiler, number));
+		assertEquals("Integer", profile.getString("xLabel"));
+		assertEquals(10000, profile.getLong("Total_ID_Count"));
+		assertEquals(9800, profile.getLong("Valid_ID_Count"));
+		assertEquals(100, profile.getLong("Invalid_ID_Count"));
+		assertEquals(4, profile.getInt("Preferred_Length"));
+
+		JSONArray histogram = new JSONArray(profile.getString("histogram"));
+		assertEquals(ColumnProfiler.MAX_BARS + 2, histogram.length());
+		assertEquals("2-1001", histogram.getJSONObject(0).getString("Value"));
+		assertEquals(ColumnProfiler.MISSING, histogram.getJSONObject(histogram.length() - 2).getString("Value"));
+		assertEquals(ColumnProfiler.INVALID, histogram.getJSONObject(histogram.length() - 1).getString("Value"));
+		assertEquals(100, getFrequency(histogram, ColumnProfiler.MISSING));
+		assertEquals(10000, getTotalFrequency(histogram));
+	}
+
+	@Test
+	public void testValueHistogramIsScaledToColumn() {
+		ColumnProfiler profiler = new ColumnProfiler(1000, new Random(7));
+		JSONObject profile = profiler.profile(sample(profiler, city));
+		assertEquals("String", profile.getString("xLabel"));
+		assertEquals(10000, profile.getLong("Total_ID_Count"));
+
+		JSONArray histogram = new JSONArray(profile.getString("histogram"));
+		assertEquals(ColumnProfiler.MAX_BARS + 1, histogram.length());
+		assertEquals(ColumnProfiler.REMAINING, histogram.getJSONObject(histogram.length() - 1).getString("Value"));
+		Set<String> mostFrequent = new HashSet<String>();
+		for (int i = 0; i < 4; i++)
+			mostFrequent.add(histogram.getJSONObject(i).getString("Value"));
+		assertEquals(new HashSet<String>(Arrays.asList("city0", "city1", "city2", "city3")), mostFrequent);
+		// each of them is in 15% of the rows
+		long frequency = getFrequency(histogram, "city0");
+		assertTrue("frequency: " + frequency, frequency > 1200 && frequency < 1800);
+		assertEquals(10000, getTotalFrequency(histogram), 50);
+		assertFalse(profile.has("histogram_Colwidth"));
+	}
+
+	@Test
+	public void testEmptyColumn() {
+		Worksheet empty = factory.createWorksheet("empty", workspace, "UTF-8");
+		HNode hNode = empty.addHNode("a", HNodeType.Regular, factory);
+		ColumnProfiler.Sample sample = new ColumnProfiler().sample(empty.getDataTable(),
+				new HNodePath(hNode), SuperSelectionManager.DEFAULT_SELECTION);
+		assertEquals(0, sample.getCount());
+		assertEquals(Collections.<Node>emptyList(), sample.getNodes());
+	}
+}
@@ -0,0 +1,95 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.rep.HNode.HNodeType;
+
+public class TestHTable {
+
+	private Workspace workspace;
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HTable headers;
+	private HNode name;
+	private HNode address;
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("sheet", workspace, "UTF-8");
+		headers = worksheet.getHeaders();
+		name = headers.addHNode("name", HNodeType.Regular, worksheet, factory);
+		address = headers.addHNode("address", HNodeType.Regular, worksheet, factory);
+		worksheet.addRow(factory).setValue(name.getId(), "Jane", factory);
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private List<String> getPathStrings() {
+		List<String> paths = new ArrayList<String>();
+		for (HNodePath path : headers.getAllPaths())
+			paths.add(path.toColumnNamePath());
+		return paths;
+	}
+
+	@Test
+	public void testColumnNamesFollowHeaderChanges() throws Exception {
+		assertSame(name, headers.getHNodeFromColumnName("name"));
+		assertEquals(address.getId(), headers.getHNodeIdFromColumnName("address"));
+		assertNull(headers.getHNodeFromColumnName("city"));
+
+		name.setColumnName("first name");
+		assertNull(headers.getHNodeFromColumnName("name"));
+		assertSame(name, headers.getHNodeFromColumnName("first name"));
+
+		HNode city = headers.addHNode("city", HNodeType.Regular, worksheet, factory);
+		assertSame(city, headers.getHNodeFromColumnName("city"));
+		headers.removeHNode(city.getId(), worksheet);
+		assertNull(headers.getHNodeFromColumnName("city"));
+
+		// the first column with the name, in column order
+		HNode second = headers.addNewHNodeAfter(null, HNodeType.Regular, factory, "address", worksheet, false);
+		assertSame(second, headers.getHNodeFromColumnName("address"));
+	}
+
+	@Test
+	public void testPathsFollowNestedTables() throws Exception {
+		assertEquals("[name, address]", getPathStrings().toString());
+		HTable nested = address.addNestedTable("address", worksheet, factory);
+		HNode street = nested.addHNode("street", HNodeType.Regular, worksheet, factory);
+		assertEquals("[name, address/street]", getPathStrings().toString());
+		assertEquals("address/street", headers.getPath(street.getId()).toColumnNamePath());
+		assertEquals("address", headers.getPath(address.getId()).toColumnNamePath());
+		// the commands that work on the values of a column only take the leaves
+		assertSame(headers.getPath(street.getId()), headers.getLeafPath(street.getId()));
+		assertNull(headers.getLeafPath(address.getId()));
+		assertSame(street, headers.getHNode(street.getId(), true));
+		assertNull(headers.getHNode(street.getId(), false));
+		assertEquals("address/street", street.getHNodePath(factory).toColumnNamePath());
+
+		HNode zip = nested.addNewHNodeAfter(street.getId(), HNodeType.Regular, factory, "zip", worksheet, false);
+		street.setColumnName("line1");
+		assertEquals("[name, address/line1, address/zip]", getPathStrings().toString());
+		assertEquals("address/zip", headers.getPath(zip.getId()).toColumnNamePath());
+
+		nested.removeHNode(zip.getId(), worksheet);
+		assertNull(headers.getPath(zip.getId()));
+		address.removeNestedTable();
+		assertEquals("[name, address]", getPathStrings().toString());
+		assertNull(headers.getPath(street.getId()));
+		assertEquals("address", headers.getLeafPath(address.getId()).toColumnNamePath());
+	}
+}
@@ -0,0 +1,113 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+import edu.isi.karma.rep.HNode.HNodeType;
+
+public class TestRowGrouper {
+
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HNode name;
+	private HNode city;
+	private HNode phones;
+	private HNode phone;
+
+	@Before
+	public void setUp() {
+		factory = new RepFactory();
+		HTable headers = factory.createHTable("people");
+		worksheet = new Worksheet("WS1", headers, factory.createTable(headers.getId(), "WS1"), "UTF-8");
+		name = headers.addHNode("name", HNodeType.Regular, worksheet, factory);
+		city = headers.addHNode("city", HNodeType.Regular, worksheet, factory);
+		phones = headers.addHNode("phones", HNodeType.Regular, worksheet, factory);
+		phone = phones.addNestedTable("phones", worksheet, factory).addHNode("phone", HNodeType.Regular, worksheet, factory);
+	}
+
+	private Row addRow(String nameValue, String cityValue, String... phoneValues) {
+		Row row = worksheet.getDataTable().addRow(factory);
+		row.setValue(name.getId(), nameValue, factory);
+		row.setValue(city.getId(), cityValue, factory);
+		for (String phoneValue : phoneValues)
+			row.addNestedRow(phones.getId(), factory).setValue(phone.getId(), phoneValue, factory);
+		return row;
+	}
+
+	private List<Row> rows() {
+		Table table = worksheet.getDataTable();
+		return table.getRows(0, table.getNumRows(), SuperSelectionManager.DEFAULT_SELECTION);
+	}
+
+	@Test
+	public void testGroupsInOrderOfFirstRow() {
+		Row r1 = addRow("bob", "LA");
+		Row r2 = addRow("alice", "NY");
+		Row r3 = addRow("bob", "LA");
+		Row r4 = addRow("bob", "NY");
+		Row r5 = addRow("alice", "NY");
+
+		Map<RowGrouper.Key, List<Row>> groups = new RowGrouper(Arrays.asList(name.getId(), city.getId())).group(rows());
+		Iterator<List<Row>> iterator = groups.values().iterator();
+		assertEquals(Arrays.asList(r1, r3), iterator.next());
+		assertEquals(Arrays.asList(r2, r5), iterator.next());
+		assertEquals(Arrays.asList(r4), iterator.next());
+		assertEquals(3, groups.size());
+	}
+
+	@Test
+	public void testColumnOrderAndCollisions() {
+		Row r1 = addRow("LA", "NY");
+		Row r2 = addRow("NY", "LA");
+		// "Aa" and "BB" have the same String hash code
+		Row r3 = addRow("Aa", "x");
+		Row r4 = addRow("BB", "x");
+
+		RowGrouper grouper = new RowGrouper(Arrays.asList(name.getId(), city.getId()));
+		assertNotEquals(grouper.getKey(r1), grouper.getKey(r2));
+		assertEquals(grouper.getKey(r3).hashCode(), grouper.getKey(r4).hashCode());
+		assertNotEquals(grouper.getKey(r3), grouper.getKey(r4));
+		assertEquals(4, grouper.group(rows()).size());
+	}
+
+	@Test
+	public void testNestedTables() {
+		Row r1 = addRow("bob", "LA", "111", "222");
+		Row r2 = addRow("bob", "NY", "111", "222");
+		Row r3 = addRow("bob", "LA", "111");
+
+		RowGrouper grouper = new RowGrouper(Arrays.asList(name.getId(), phones.getId()));
+		assertEquals(grouper.getKey(r1), grouper.getKey(r2));
+		assertNotEquals(grouper.getKey(r1), grouper.getKey(r3));
+		List<Row> rows = new ArrayList<Row>(rows());
+		assertEquals(2, grouper.group(rows).size());
+	}
+
+	@Test
+	public void testPermutedNestedRows() {
+		Row r1 = addRow("bob", "LA", "111", "222", "333");
+		Row r2 = addRow("bob", "NY", "333", "111", "222");
+		Row r3 = addRow("bob", "LA", "222", "333", "111");
+		Row r4 = addRow("bob", "LA", "111", "111", "222", "333");
+
+		RowGrouper grouper = new RowGrouper(Arrays.asList(name.getId(), phones.getId()));
+		assertEquals(grouper.getKey(r1), grouper.getKey(r2));
+		assertEquals(grouper.getKey(r1).hashCode(), grouper.getKey(r3).hashCode());
+		assertEquals(grouper.getKey(r1), grouper.getKey(r3));
+		// the same values, but one more nested row
+		assertNotEquals(grouper.getKey(r1), grouper.getKey(r4));
+		Iterator<List<Row>> groups = grouper.group(rows()).values().iterator();
+		assertEquals(Arrays.asList(r1, r2, r3), groups.next());
+		assertEquals(Arrays.asList(r4), groups.next());
+	}
+}
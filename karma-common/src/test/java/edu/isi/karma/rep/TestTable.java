@@ -0,0 +1,151 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.controller.command.selection.SuperSelection;
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+
+public class TestTable {
+
+	private static Logger logger = LoggerFactory.getLogger(TestTable.class);
+
+	private RepFactory factory;
+	private Table table;
+
+	/**
+	 * Hides a set of rows, like a selection does.
+	 */
+	private static class HiddenRows extends SuperSelection {
+		private final Set<Row> hidden = new HashSet<Row>();
+		private long version;
+
+		HiddenRows() {
+			super("hidden");
+		}
+
+		void hide(Row r) {
+			hidden.add(r);
+			version++;
+		}
+
+		@Override
+		public boolean isSelected(Row row) {
+			return hidden.contains(row);
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return false;
+		}
+
+		@Override
+		public long getVersion() {
+			return version;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		factory = new RepFactory();
+		HTable headers = factory.createHTable("rows");
+		table = factory.createTable(headers.getId(), "WS1");
+	}
+
+	private List<Row> addRows(int numRows) {
+		List<Row> added = new ArrayList<Row>();
+		for (int i = 0; i < numRows; i++)
+			added.add(table.addRow(factory));
+		return added;
+	}
+
+	@Test
+	public void testRowIndexAfterRemovals() {
+		List<Row> rows = addRows(10);
+		assertTrue(table.removeRow(rows.get(3)));
+		assertTrue(table.removeRow(rows.get(7)));
+		assertFalse(table.removeRow(rows.get(3)));
+		rows.remove(7);
+		rows.remove(3);
+		rows.add(table.addRow(factory));
+		for (int i = 0; i < rows.size(); i++) {
+			assertEquals(i, table.getRowIndex(rows.get(i)));
+			assertEquals(rows.get(i), table.getRow(i));
+		}
+
+		table.removeAllRows();
+		assertEquals(-1, table.getRowIndex(rows.get(0)));
+		Row r = table.addRow(factory);
+		assertEquals(0, table.getRowIndex(r));
+		assertEquals(-1, table.getRowIndex(rows.get(0)));
+	}
+
+	@Test
+	public void testPagesOfLargeTable() {
+		int numRows = Table.MIN_ROWS_TO_INDEX * 3;
+		List<Row> rows = addRows(numRows);
+		HiddenRows sel = new HiddenRows();
+		List<Row> visible = new ArrayList<Row>();
+		for (int i = 0; i < numRows; i++) {
+			if (i % 3 == 0)
+				sel.hide(rows.get(i));
+			else
+				visible.add(rows.get(i));
+		}
+
+		assertEquals(visible.size(), table.getNumRows(sel));
+		assertEquals(numRows, table.getNumRows(SuperSelectionManager.DEFAULT_SELECTION));
+		assertEquals(visible.subList(100, 150), table.getVisibleRows(100, 50, sel));
+		assertEquals(visible.subList(visible.size() - 10, visible.size()),
+				table.getVisibleRows(visible.size() - 10, 50, sel));
+		assertTrue(table.getVisibleRows(visible.size(), 50, sel).isEmpty());
+		// rows 30, 33, ... are hidden
+		assertEquals(visible.subList(20, 30), table.getRows(30, 10, sel));
+		assertEquals(visible, table.getRows(0, numRows, sel));
+
+		// the index follows the changes to the selection and to the rows
+		sel.hide(visible.get(0));
+		assertEquals(visible.subList(1, 11), table.getVisibleRows(0, 10, sel));
+		table.removeRow(visible.get(1));
+		assertEquals(visible.subList(2, 12), table.getVisibleRows(0, 10, sel));
+		assertEquals(visible.size() - 2, table.getNumRows(sel));
+	}
+
+	@Test
+	public void testPagingBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numRows = 1000000;
+		int pageSize = 100;
+		List<Row> rows = addRows(numRows);
+		HiddenRows sel = new HiddenRows();
+		for (int i = 0; i < numRows; i += 2)
+			sel.hide(rows.get(i));
+
+		long start = System.currentTimeMillis();
+		int numPages = table.getNumRows(sel) / pageSize;
+		int paged = 0;
+		for (int page = 0; page < numPages; page++)
+			paged += table.getVisibleRows(page * pageSize, pageSize, sel).size();
+		logger.info("Paged through " + paged + " of " + numRows + " rows in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		assertEquals(numRows / 2, paged);
+
+		start = System.currentTimeMillis();
+		for (int i = 0; i < numRows; i += 1000)
+			assertEquals(i, table.getRowIndex(rows.get(i)));
+		logger.info("Looked up 1000 row indexes in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+}
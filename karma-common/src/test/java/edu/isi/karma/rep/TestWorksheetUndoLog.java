@@ -0,0 +1,166 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rits.cloning.Cloner;
+
+import edu.isi.karma.controller.command.selection.SuperSelectionManager;
+import edu.isi.karma.controller.command.service.ServiceTableUtil;
+import edu.isi.karma.rep.HNode.HNodeType;
+import edu.isi.karma.rep.sources.Attribute;
+
+public class TestWorksheetUndoLog {
+
+	private static Logger logger = LoggerFactory.getLogger(TestWorksheetUndoLog.class);
+
+	private Workspace workspace;
+	private RepFactory factory;
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private Worksheet createWorksheet(int numRows) {
+		Worksheet worksheet = factory.createWorksheet("sheet", workspace, "UTF-8");
+		HNode name = worksheet.addHNode("name", HNodeType.Regular, factory);
+		HNode city = worksheet.addHNode("city", HNodeType.Regular, factory);
+		for (int i = 0; i < numRows; i++) {
+			Row row = worksheet.addRow(factory);
+			row.setValue(name.getId(), "name" + i, factory);
+			row.setValue(city.getId(), "city" + (i % 10), factory);
+		}
+		return worksheet;
+	}
+
+	/**
+	 * @return a service response with two rows for each of the first numRows
+	 *         rows of the worksheet.
+	 */
+	private edu.isi.karma.rep.sources.Table createServiceTable(Worksheet worksheet, int numRows) {
+		edu.isi.karma.rep.sources.Table serviceTable = new edu.isi.karma.rep.sources.Table();
+		List<Attribute> headers = new ArrayList<Attribute>();
+		headers.add(new Attribute("a1", "latitude"));
+		headers.add(new Attribute("a2", "longitude"));
+		serviceTable.setHeaders(headers);
+		List<List<String>> values = new ArrayList<List<String>>();
+		List<String> rowIds = new ArrayList<String>();
+		for (int i = 0; i < numRows; i++) {
+			String rowId = worksheet.getDataTable().getRow(i).getId();
+			for (int j = 0; j < 2; j++) {
+				values.add(Arrays.asList("lat" + i + "." + j, "long" + i + "." + j));
+				rowIds.add(rowId);
+			}
+		}
+		serviceTable.setValues(values);
+		serviceTable.setRowIds(rowIds);
+		return serviceTable;
+	}
+
+	private String print(Worksheet worksheet) {
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		worksheet.prettyPrint("", pw, factory);
+		pw.flush();
+		return out.toString();
+	}
+
+	@Test
+	public void testUndoServiceInvocation() {
+		Worksheet worksheet = createWorksheet(100);
+		String before = print(worksheet);
+
+		WorksheetUndoLog undoLog = new WorksheetUndoLog(worksheet, factory);
+		undoLog.start();
+		ServiceTableUtil.populateWorksheet(createServiceTable(worksheet, 60), worksheet,
+				factory, SuperSelectionManager.DEFAULT_SELECTION);
+		undoLog.stop();
+		assertEquals(4, worksheet.getHeaders().getHNodes().size());
+		assertEquals(120, worksheet.getDataTable().getNumRows());
+		// 2 HNodes, 20 rows and the old nodes of the old rows
+		assertEquals(2 + 20 + 2 * 100, undoLog.size());
+
+		// changes after the log stopped are not recorded
+		worksheet.addRow(factory);
+		worksheet.getDataTable().removeRow(worksheet.getDataTable().getRow(120));
+		assertEquals(2 + 20 + 2 * 100, undoLog.size());
+
+		undoLog.undo();
+		assertEquals(2, worksheet.getHeaders().getHNodes().size());
+		assertEquals(100, worksheet.getDataTable().getNumRows());
+		assertEquals(before, print(worksheet));
+		assertEquals(0, undoLog.size());
+	}
+
+	@Test
+	public void testUndoNestedTables() {
+		Worksheet worksheet = createWorksheet(10);
+		HNode city = worksheet.getHeaders().getHNodeFromColumnName("city");
+		String before = print(worksheet);
+
+		WorksheetUndoLog undoLog = new WorksheetUndoLog(worksheet, factory);
+		undoLog.start();
+		// the values of the column move to the nested tables
+		HTable nestedHTable = city.addNestedTable("cities", worksheet, factory);
+		HNode zip = nestedHTable.addHNode("zip", HNodeType.Regular, worksheet, factory);
+		Row row = worksheet.getDataTable().getRow(3);
+		row.addNestedRow(city.getId(), factory).setValue(zip.getId(), "90292", factory);
+		undoLog.stop();
+		assertTrue(city.hasNestedTable());
+		assertTrue(row.getNode(city.getId()).hasNestedTable());
+
+		undoLog.undo();
+		assertFalse(city.hasNestedTable());
+		assertFalse(row.getNode(city.getId()).hasNestedTable());
+		assertEquals(before, print(worksheet));
+	}
+
+	@Test
+	public void testUndoLogVersusDeepCloneBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		for (int numRows = 1000; numRows <= 100000; numRows *= 10) {
+			Worksheet worksheet = createWorksheet(numRows);
+			edu.isi.karma.rep.sources.Table serviceTable = createServiceTable(worksheet, 100);
+
+			long start = System.currentTimeMillis();
+			new Cloner().deepClone(worksheet);
+			long cloneMillis = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			WorksheetUndoLog undoLog = new WorksheetUndoLog(worksheet, factory);
+			undoLog.start();
+			ServiceTableUtil.populateWorksheet(serviceTable, worksheet,
+					factory, SuperSelectionManager.DEFAULT_SELECTION);
+			undoLog.stop();
+			long populateMillis = System.currentTimeMillis() - start;
+			int numChanges = undoLog.size();
+
+			start = System.currentTimeMillis();
+			undoLog.undo();
+			logger.info(numRows + " rows: deep clone " + cloneMillis + "ms, populate with undo log "
+					+ populateMillis + "ms recording " + numChanges + " changes, undo "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+	}
+}
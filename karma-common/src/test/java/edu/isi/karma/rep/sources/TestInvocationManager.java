@@ -0,0 +1,144 @@
+package edu.isi.karma.rep.sources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestInvocationManager {
+
+	private static final int NUM_ROWS = 200;
+	private static final int NUM_DISTINCT = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	/**
+	 * Echoes the q parameter of the request, slowly.
+	 */
+	private class EchoHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requests.incrementAndGet();
+			int n = inFlight.incrementAndGet();
+			synchronized (maxInFlight) {
+				if (n > maxInFlight.get())
+					maxInFlight.set(n);
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			String q = exchange.getRequestURI().getQuery().substring("q=".length());
+			byte[] body = ("{\"echo\":\"" + q + "\"}").getBytes("UTF-8");
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+			inFlight.decrementAndGet();
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/echo", new EchoHandler());
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private InvocationManager invoke(ServiceResponseCache cache) throws Exception {
+		List<String> ids = new ArrayList<String>();
+		List<String> urls = new ArrayList<String>();
+		for (int i = 0; i < NUM_ROWS; i++) {
+			ids.add("r" + i);
+			urls.add("http://localhost:" + server.getAddress().getPort() + "/echo?q=v" + (i % NUM_DISTINCT));
+		}
+		return new InvocationManager(null, ids, urls, "UTF-8", cache);
+	}
+
+	private void assertEchoed(Table table) {
+		int inputColumn = -1;
+		int outputColumn = -1;
+		for (int i = 0; i < table.getHeaders().size(); i++) {
+			if (table.getHeaders().get(i).getIOType().equals(IOType.INPUT))
+				inputColumn = i;
+			if (table.getHeaders().get(i).getIOType().equals(IOType.OUTPUT))
+				outputColumn = i;
+		}
+		assertEquals(NUM_ROWS, table.getRowsCount());
+		for (int i = 0; i < NUM_ROWS; i++) {
+			assertEquals("r" + i, table.getRowIds().get(i));
+			List<String> row = table.getValues().get(i);
+			assertEquals("v" + (i % NUM_DISTINCT), row.get(inputColumn));
+			assertEquals("v" + (i % NUM_DISTINCT), row.get(outputColumn));
+		}
+	}
+
+	@Test
+	public void testDistinctRequestsAreInvokedOnceInParallel() throws Exception {
+		ServiceResponseCache cache = new ServiceResponseCache(folder.newFolder("cache"), 60000);
+		InvocationManager manager = invoke(cache);
+		assertEquals(NUM_DISTINCT, requests.get());
+		assertTrue("requests in flight: " + maxInFlight.get(), maxInFlight.get() > 1);
+		assertEchoed(manager.getServiceData());
+
+		// the responses are cached
+		manager = invoke(cache);
+		assertEquals(NUM_DISTINCT, requests.get());
+		assertEchoed(manager.getServiceData());
+	}
+
+	@Test
+	public void testInvalidParallelism() throws Exception {
+		String parallelism = System.getProperty(InvocationManager.PARALLELISM_PROPERTY);
+		System.setProperty(InvocationManager.PARALLELISM_PROPERTY, "0");
+		try {
+			assertEquals(1, InvocationManager.getParallelism());
+			assertEchoed(invoke(new ServiceResponseCache(folder.newFolder("cache"), 0)).getServiceData());
+			assertEquals(NUM_DISTINCT, requests.get());
+			assertEquals(1, maxInFlight.get());
+		} finally {
+			if (parallelism == null)
+				System.clearProperty(InvocationManager.PARALLELISM_PROPERTY);
+			else
+				System.setProperty(InvocationManager.PARALLELISM_PROPERTY, parallelism);
+		}
+	}
+
+	@Test
+	public void testWithoutCache() throws Exception {
+		ServiceResponseCache cache = new ServiceResponseCache(folder.newFolder("cache"), 0);
+		invoke(cache);
+		assertEchoed(invoke(cache).getServiceData());
+		assertEquals(2 * NUM_DISTINCT, requests.get());
+	}
+}
@@ -0,0 +1,311 @@
+package edu.isi.karma.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.controller.command.Command;
+import edu.isi.karma.controller.command.CommandException;
+import edu.isi.karma.controller.command.CommandType;
+import edu.isi.karma.controller.update.UpdateContainer;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HNode.HNodeType;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.rep.Worksheet;
+
+public class TestExecutionController {
+
+	private static final int NUM_WORKSHEETS = 4;
+	private static final int COMMANDS_PER_WORKSHEET = 50;
+
+	private Workspace workspace;
+	private ExecutionController ctrl;
+	private List<Worksheet> worksheets;
+
+	/**
+	 * Adds a row holding the number of rows before it. The rows are counted and
+	 * added in two steps, so a command that runs together with another one on
+	 * the same worksheet leaves a gap or a duplicate.
+	 */
+	private static class AddRowCommand extends Command {
+		private final Worksheet worksheet;
+		private final HNode hNode;
+
+		AddRowCommand(String id, Worksheet worksheet, HNode hNode) {
+			super(id);
+			this.worksheet = worksheet;
+			this.hNode = hNode;
+		}
+
+		@Override
+		public String getCommandName() {
+			return AddRowCommand.class.getSimpleName();
+		}
+
+		@Override
+		public String getTitle() {
+			return "Add Row";
+		}
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public CommandType getCommandType() {
+			return CommandType.notUndoable;
+		}
+
+		@Override
+		public String getLockedWorksheetId() {
+			return worksheet.getId();
+		}
+
+		@Override
+		public UpdateContainer doIt(Workspace workspace) throws CommandException {
+			Table table = worksheet.getDataTable();
+			int numRows = table.getNumRows();
+			Thread.yield();
+			Row row = table.addRow(workspace.getFactory());
+			row.setValue(hNode.getId(), String.valueOf(numRows), workspace.getFactory());
+			return new UpdateContainer();
+		}
+
+		@Override
+		public UpdateContainer undoIt(Workspace workspace) {
+			return null;
+		}
+	}
+
+	/**
+	 * Counts the rows of all the worksheets, which only adds up when no other
+	 * command is running.
+	 */
+	private static class CountRowsCommand extends Command {
+		private final AtomicInteger errors;
+
+		CountRowsCommand(String id, AtomicInteger errors) {
+			super(id);
+			this.errors = errors;
+		}
+
+		@Override
+		public String getCommandName() {
+			return CountRowsCommand.class.getSimpleName();
+		}
+
+		@Override
+		public String getTitle() {
+			return "Count Rows";
+		}
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public CommandType getCommandType() {
+			return CommandType.notInHistory;
+		}
+
+		@Override
+		public UpdateContainer doIt(Workspace workspace) throws CommandException {
+			int before = countRows(workspace);
+			Thread.yield();
+			if (countRows(workspace) != before)
+				errors.incrementAndGet();
+			return new UpdateContainer();
+		}
+
+		private int countRows(Workspace workspace) {
+			int numRows = 0;
+			for (Worksheet worksheet : workspace.getWorksheets())
+				numRows += worksheet.getDataTable().getNumRows();
+			return numRows;
+		}
+
+		@Override
+		public UpdateContainer undoIt(Workspace workspace) {
+			return null;
+		}
+	}
+
+	/**
+	 * Waits until the other commands of the latch run at the same time.
+	 */
+	private static class WaitCommand extends Command {
+		private final String worksheetId;
+		private final boolean readOnly;
+		private final CountDownLatch latch;
+		private final AtomicInteger timeouts;
+
+		WaitCommand(String id, String worksheetId, boolean readOnly, CountDownLatch latch, AtomicInteger timeouts) {
+			super(id);
+			this.worksheetId = worksheetId;
+			this.readOnly = readOnly;
+			this.latch = latch;
+			this.timeouts = timeouts;
+		}
+
+		@Override
+		public String getCommandName() {
+			return WaitCommand.class.getSimpleName();
+		}
+
+		@Override
+		public String getTitle() {
+			return "Wait";
+		}
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public CommandType getCommandType() {
+			return CommandType.notInHistory;
+		}
+
+		@Override
+		public String getLockedWorksheetId() {
+			return worksheetId;
+		}
+
+		@Override
+		public boolean isReadOnly() {
+			return readOnly;
+		}
+
+		@Override
+		public UpdateContainer doIt(Workspace workspace) throws CommandException {
+			latch.countDown();
+			try {
+				if (!latch.await(10, TimeUnit.SECONDS))
+					timeouts.incrementAndGet();
+			} catch (InterruptedException e) {
+				throw new CommandException(this, e.getMessage());
+			}
+			return new UpdateContainer();
+		}
+
+		@Override
+		public UpdateContainer undoIt(Workspace workspace) {
+			return null;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		ctrl = new ExecutionController(workspace);
+		worksheets = new ArrayList<Worksheet>();
+		for (int i = 0; i < NUM_WORKSHEETS; i++)
+			worksheets.add(workspace.getFactory().createWorksheet("sheet" + i, workspace, "UTF-8"));
+	}
+
+	@After
+	public void tearDown() {
+		WorkspaceManager.getInstance().removeWorkspace(workspace.getId());
+	}
+
+	private Map<String, HNode> addColumns() {
+		Map<String, HNode> columns = new HashMap<String, HNode>();
+		for (Worksheet worksheet : worksheets) {
+			HNode hNode = worksheet.getHeaders().addHNode("position", HNodeType.Regular, worksheet, workspace.getFactory());
+			columns.put(worksheet.getId(), hNode);
+		}
+		return columns;
+	}
+
+	private List<String> getValues(Worksheet worksheet, HNode hNode) {
+		List<String> values = new ArrayList<String>();
+		Table table = worksheet.getDataTable();
+		for (int i = 0; i < table.getNumRows(); i++)
+			values.add(table.getRow(i).getNode(hNode.getId()).getValue().asString());
+		return values;
+	}
+
+	@Test
+	public void testConcurrentCommandsMatchSerialExecution() throws Exception {
+		Map<String, HNode> columns = addColumns();
+		final AtomicInteger errors = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < COMMANDS_PER_WORKSHEET; i++) {
+			for (Worksheet worksheet : worksheets) {
+				final Command command = new AddRowCommand("C" + worksheet.getId() + "-" + i,
+						worksheet, columns.get(worksheet.getId()));
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						ctrl.invokeCommand(command);
+					}
+				});
+			}
+			if (i % 10 == 0) {
+				final Command command = new CountRowsCommand("count" + i, errors);
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						ctrl.invokeCommand(command);
+					}
+				});
+			}
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		// the same commands one after the other number the rows 0, 1, 2, ...
+		List<String> serial = new ArrayList<String>();
+		for (int i = 0; i < COMMANDS_PER_WORKSHEET; i++)
+			serial.add(String.valueOf(i));
+		for (Worksheet worksheet : worksheets)
+			assertEquals(serial, getValues(worksheet, columns.get(worksheet.getId())));
+		assertEquals(0, errors.get());
+		assertEquals(NUM_WORKSHEETS * COMMANDS_PER_WORKSHEET,
+				workspace.getCommandHistory()._getHistory().size());
+	}
+
+	@Test
+	public void testCommandsOnDifferentWorksheetsOverlap() throws Exception {
+		final AtomicInteger timeouts = new AtomicInteger();
+		// two changes on different worksheets and two reads of the same worksheet
+		CountDownLatch latch = new CountDownLatch(4);
+		List<Command> commands = new ArrayList<Command>();
+		commands.add(new WaitCommand("W0", worksheets.get(0).getId(), false, latch, timeouts));
+		commands.add(new WaitCommand("W1", worksheets.get(1).getId(), false, latch, timeouts));
+		commands.add(new WaitCommand("R2a", worksheets.get(2).getId(), true, latch, timeouts));
+		commands.add(new WaitCommand("R2b", worksheets.get(2).getId(), true, latch, timeouts));
+
+		ExecutorService executor = Executors.newFixedThreadPool(commands.size());
+		for (final Command command : commands) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					ctrl.invokeCommand(command);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(0, timeouts.get());
+	}
+}
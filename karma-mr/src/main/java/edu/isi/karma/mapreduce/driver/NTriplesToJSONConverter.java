@@ -0,0 +1,256 @@
+package edu.isi.karma.mapreduce.driver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts the N-Triples of a subject to a flat JSON-LD object: the subject
+ * is the @id, rdf:type is @type, and every other predicate is a key whose
+ * value is the object, or the sorted array of the objects if there are more
+ * than one. IRIs and blank nodes are written as they are, literals without
+ * their language tag or datatype.
+ * <p>
+ * The triples are tokenized one term at a time, with the escapes of
+ * N-Triples, and grouped by predicate in hash sets, so repeated triples are
+ * dropped. A converter is reused for the subjects of a reducer, it is not
+ * thread safe.
+ */
+public class NTriplesToJSONConverter {
+
+	private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+	private final Map<String, Set<String>> objectsByPredicate = new HashMap<String, Set<String>>();
+	private final StringBuilder term = new StringBuilder();
+	private String line;
+	private int position;
+	private int malformedTriples = 0;
+
+	/**
+	 * Forgets the triples of the previous subject.
+	 */
+	public void clear() {
+		objectsByPredicate.clear();
+		malformedTriples = 0;
+	}
+
+	/**
+	 * @return the number of lines that were not triples since the last
+	 *         {@link #clear()}.
+	 */
+	public int getMalformedTriples() {
+		return malformedTriples;
+	}
+
+	/**
+	 * Adds the triples of a text with one triple per line. Empty lines and
+	 * comments are skipped.
+	 */
+	public void addTriples(String text) {
+		int start = 0;
+		int length = text.length();
+		while (start < length) {
+			int end = text.indexOf('\n', start);
+			if (end < 0)
+				end = length;
+			addTriple(text, start, end);
+			start = end + 1;
+		}
+	}
+
+	private void addTriple(String text, int start, int end) {
+		line = text;
+		position = start;
+		skipWhitespace(end);
+		if (position >= end || text.charAt(position) == '#')
+			return;
+		// the subject is the key of the reducer
+		if (readTerm(end) == null) {
+			malformedTriples++;
+			return;
+		}
+		String predicate = readTerm(end);
+		String object = predicate == null ? null : readTerm(end);
+		skipWhitespace(end);
+		if (object == null || position >= end || text.charAt(position) != '.') {
+			malformedTriples++;
+			return;
+		}
+		if (predicate.equals(RDF_TYPE))
+			predicate = "@type";
+		Set<String> objects = objectsByPredicate.get(predicate);
+		if (objects == null) {
+			objects = new HashSet<String>();
+			objectsByPredicate.put(predicate, objects);
+		}
+		objects.add(object);
+	}
+
+	/**
+	 * Reads an IRI, a blank node or a literal.
+	 *
+	 * @return the IRI without the brackets, the blank node label with its
+	 *         prefix, or the unescaped lexical form of the literal, or null
+	 *         if there is no well formed term.
+	 */
+	private String readTerm(int end) {
+		skipWhitespace(end);
+		if (position >= end)
+			return null;
+		term.setLength(0);
+		char c = line.charAt(position);
+		if (c == '<') {
+			position++;
+			while (position < end && line.charAt(position) != '>') {
+				if (!readChar(end))
+					return null;
+			}
+			if (position >= end)
+				return null;
+			position++;
+			return term.toString();
+		}
+		if (c == '"') {
+			position++;
+			while (position < end && line.charAt(position) != '"') {
+				if (!readChar(end))
+					return null;
+			}
+			if (position >= end)
+				return null;
+			position++;
+			String lexicalForm = term.toString();
+			if (position < end && line.charAt(position) == '@') {
+				position++;
+				while (position < end && (Character.isLetterOrDigit(line.charAt(position)) || line.charAt(position) == '-'))
+					position++;
+			} else if (position + 1 < end && line.charAt(position) == '^' && line.charAt(position + 1) == '^') {
+				position += 2;
+				if (readTerm(end) == null)
+					return null;
+			}
+			return lexicalForm;
+		}
+		if (c == '_' && position + 1 < end && line.charAt(position + 1) == ':') {
+			while (position < end && !Character.isWhitespace(line.charAt(position)))
+				term.append(line.charAt(position++));
+			// a label can not end with the period of the triple
+			if (term.charAt(term.length() - 1) == '.') {
+				term.setLength(term.length() - 1);
+				position--;
+			}
+			return term.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Appends the character at the position to the term, unescaped.
+	 */
+	private boolean readChar(int end) {
+		char c = line.charAt(position++);
+		if (c != '\\') {
+			term.append(c);
+			return true;
+		}
+		if (position >= end)
+			return false;
+		c = line.charAt(position++);
+		switch (c) {
+		case 't': term.append('\t'); return true;
+		case 'b': term.append('\b'); return true;
+		case 'n': term.append('\n'); return true;
+		case 'r': term.append('\r'); return true;
+		case 'f': term.append('\f'); return true;
+		case '"': case '\'': case '\\':
+			term.append(c);
+			return true;
+		case 'u':
+			return readCodePoint(4, end);
+		case 'U':
+			return readCodePoint(8, end);
+		default:
+			return false;
+		}
+	}
+
+	private boolean readCodePoint(int digits, int end) {
+		if (position + digits > end)
+			return false;
+		try {
+			int codePoint = Integer.parseInt(line.substring(position, position + digits), 16);
+			term.appendCodePoint(codePoint);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		position += digits;
+		return true;
+	}
+
+	private void skipWhitespace(int end) {
+		while (position < end && Character.isWhitespace(line.charAt(position)))
+			position++;
+	}
+
+	/**
+	 * Writes the JSON-LD object of the triples added since the last
+	 * {@link #clear()}, with its keys in order.
+	 */
+	public void write(String id, StringBuilder out) {
+		out.append("{\"@id\":");
+		appendString(id, out);
+		List<String> predicates = new ArrayList<String>(objectsByPredicate.keySet());
+		Collections.sort(predicates);
+		for (String predicate : predicates) {
+			out.append(',');
+			appendString(predicate, out);
+			out.append(':');
+			Set<String> objects = objectsByPredicate.get(predicate);
+			if (objects.size() == 1) {
+				appendString(objects.iterator().next(), out);
+				continue;
+			}
+			List<String> sortedObjects = new ArrayList<String>(objects);
+			Collections.sort(sortedObjects);
+			out.append('[');
+			for (int i = 0; i < sortedObjects.size(); i++) {
+				if (i > 0)
+					out.append(',');
+				appendString(sortedObjects.get(i), out);
+			}
+			out.append(']');
+		}
+		out.append('}');
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	static void appendString(String s, StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\t': out.append("\\t"); break;
+			case '\b': out.append("\\b"); break;
+			case '\f': out.append("\\f"); break;
+			default:
+				// the line separators are valid JSON, but not JavaScript
+				if (c < ' ' || c == 0x2028 || c == 0x2029) {
+					out.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf])
+							.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+}
@@ -1,10 +1,12 @@
 package edu.isi.karma.mapreduce.function;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -15,11 +17,14 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
@@ -29,19 +34,36 @@ import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.SequenceFile.Writer;
 import org.apache.hadoop.io.Text;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.rdf.CommandLineArgumentParser;
 
+/**
+ * Converts the JSON files of a directory to sequence files, one per input
+ * file, with the @id of each object as key and the object as value.
+ * <p>
+ * The objects are read as text with a {@link JSONRecordReader}, and written
+ * to block compressed sequence files by default. Input files are processed in
+ * parallel. A file that is one JSON array larger than the split size is cut
+ * between its objects into ranges, processed in parallel and written to a
+ * sequence file each. Writers shared by several tasks are appended to one
+ * record at a time.
+ */
 public class CreateSequenceFile {
 
+	private static Logger LOG = LoggerFactory.getLogger(CreateSequenceFile.class);
+
 	ConcurrentHashMap<String, SequenceFile.Writer> writers = new ConcurrentHashMap<String, SequenceFile.Writer>();
 	boolean useKey = true;
 	boolean outputFileName = false;
 	String filePath = null;
 	String outputPath = null;
+	CompressionType compressionType = CompressionType.BLOCK;
+	int numThreads = Runtime.getRuntime().availableProcessors();
+	long splitSize = 256L * 1024 * 1024;
+	AtomicLong skippedRecords = new AtomicLong();
+
 	public static void main(String[] args) throws IOException {
 		CreateSequenceFile csf = new CreateSequenceFile();
 		csf.setup(args);
@@ -49,7 +71,7 @@ public class CreateSequenceFile {
 	}
 
 	public void execute() throws IOException, FileNotFoundException {
-		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
 		FileSystem hdfs = FileSystem.get(new Configuration());
 		RemoteIterator<LocatedFileStatus> itr = hdfs.listFiles(new Path(filePath), true);
 		List<Future<Boolean>> results = new LinkedList<Future<Boolean>>();
@@ -57,18 +79,32 @@ public class CreateSequenceFile {
 			LocatedFileStatus status = itr.next();
 			String fileName = status.getPath().getName();
 			if (fileName.substring(fileName.lastIndexOf(".") + 1).contains("json")) {
-				results.add(executor.submit(getNewJSONProcessor(hdfs, status, fileName)));
+				String defaultOutputFileName = outputPath + File.separator + fileName.substring(0, fileName.lastIndexOf(".")) + ".seq";
+				List<Long> starts = status.getLen() > splitSize ? getRecordStarts(hdfs, status.getPath()) : null;
+				if (starts == null || starts.size() < 2) {
+					results.add(executor.submit(getNewJSONProcessor(hdfs.open(status.getPath()), fileName, defaultOutputFileName)));
+					continue;
+				}
+				LOG.info("Splitting " + fileName + " in " + starts.size() + " ranges");
+				String rangeOutputFileName = defaultOutputFileName.substring(0, defaultOutputFileName.length() - ".seq".length());
+				for (int i = 0; i < starts.size(); i++) {
+					long start = starts.get(i);
+					long end = i + 1 < starts.size() ? starts.get(i + 1) : status.getLen();
+					FSDataInputStream stream = hdfs.open(status.getPath());
+					stream.seek(start);
+					results.add(executor.submit(getNewJSONProcessor(new BoundedInputStream(stream, end - start),
+							fileName, String.format("%s-%05d.seq", rangeOutputFileName, i))));
+				}
 			}
 		}
-		
+
 		for(Future<Boolean> result : results)
 		{
 			try {
 				result.get(5, TimeUnit.MINUTES);
 			} catch (InterruptedException | ExecutionException
 					| TimeoutException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				LOG.error("Unable to create sequence file", e);
 			}
 		}
 		executor.shutdown();
@@ -76,11 +112,63 @@ public class CreateSequenceFile {
 		{
 			writer.close();
 		}
+		if (skippedRecords.get() > 0)
+			LOG.warn("Skipped " + skippedRecords.get() + " objects without a key");
 	}
 
-	protected JSONFileProcessor getNewJSONProcessor(FileSystem hdfs,
-			LocatedFileStatus status, String fileName) throws IOException {
-		return new JSONFileProcessor(hdfs.open(status.getPath()), fileName);
+	/**
+	 * Finds where to cut a file that is a JSON array: the offsets of the
+	 * first object of the array and of the first object after every split
+	 * size bytes. Multi-byte UTF-8 characters never contain the bytes of the
+	 * JSON punctuation, so the bytes are scanned without being decoded.
+	 *
+	 * @return the offsets, or null if the file is not an array.
+	 */
+	protected List<Long> getRecordStarts(FileSystem hdfs, Path path) throws IOException {
+		List<Long> starts = new ArrayList<Long>();
+		InputStream stream = hdfs.open(path);
+		try {
+			byte[] buffer = new byte[1 << 16];
+			long offset = 0;
+			long nextStart = 0;
+			int depth = 0;
+			boolean inString = false;
+			boolean escaped = false;
+			int length;
+			while ((length = stream.read(buffer)) > 0) {
+				for (int i = 0; i < length; i++, offset++) {
+					byte b = buffer[i];
+					if (inString) {
+						if (escaped)
+							escaped = false;
+						else if (b == '\\')
+							escaped = true;
+						else if (b == '"')
+							inString = false;
+					} else if (b == '"') {
+						inString = true;
+					} else if (b == '{' || b == '[') {
+						if (depth == 0 && b == '{')
+							return null;
+						if (depth == 1 && b == '{' && offset >= nextStart) {
+							starts.add(offset);
+							nextStart = offset + splitSize;
+						}
+						depth++;
+					} else if (b == '}' || b == ']') {
+						depth--;
+					}
+				}
+			}
+		} finally {
+			stream.close();
+		}
+		return starts;
+	}
+
+	protected JSONFileProcessor getNewJSONProcessor(InputStream stream, String fileName,
+			String outputFileName) throws IOException {
+		return new JSONFileProcessor(stream, fileName, outputFileName);
 	}
 
 	public void setup(String[] args) {
@@ -97,6 +185,48 @@ public class CreateSequenceFile {
 		if (cl.hasOption("outputpath")) {
 			outputPath = (String) cl.getOptionValue("outputpath");
 		}
+		if (cl.hasOption("compression")) {
+			compressionType = CompressionType.valueOf(((String) cl.getOptionValue("compression")).toUpperCase());
+		}
+		if (cl.hasOption("threads")) {
+			numThreads = Integer.parseInt((String) cl.getOptionValue("threads"));
+		}
+		if (cl.hasOption("splitsize")) {
+			splitSize = Long.parseLong((String) cl.getOptionValue("splitsize")) * 1024 * 1024;
+		}
+	}
+
+	/**
+	 * @return the writer of the name, created for the file the first time.
+	 */
+	protected SequenceFile.Writer getWriter(String name, String outputFileName) throws IOException {
+		SequenceFile.Writer writer = writers.get(name);
+		if (writer == null) {
+			synchronized (writers) {
+				writer = writers.get(name);
+				if (writer == null) {
+					writer = createSequenceFile(new Path(outputFileName));
+					writers.put(name, writer);
+				}
+			}
+		}
+		return writer;
+	}
+
+	public SequenceFile.Writer createSequenceFile(Path outputPath)
+			throws IOException {
+		SequenceFile.Writer writer = null;
+		if(useKey)
+		{
+			writer = SequenceFile.createWriter(new Configuration(),Writer.keyClass(Text.class),
+			Writer.valueClass(Text.class), Writer.file(outputPath),Writer.compression(compressionType));
+		}
+		else
+		{
+			writer = 	SequenceFile.createWriter(new Configuration(),Writer.keyClass(BytesWritable.class),
+					Writer.valueClass(Text.class), Writer.file(outputPath),Writer.compression(compressionType));
+		}
+		return writer;
 	}
 
 	protected class JSONFileProcessor implements Callable<Boolean>
@@ -104,114 +234,83 @@ public class CreateSequenceFile {
 		protected InputStream stream;
 		protected String fileName;
 		protected String defaultOutputFileName;
-		public JSONFileProcessor(InputStream stream, String fileName)
+		private final Text key = new Text();
+		private final Text value = new Text();
+		private final BytesWritable emptyKey = new BytesWritable();
+
+		public JSONFileProcessor(InputStream stream, String fileName, String defaultOutputFileName)
 		{
 			this.stream = stream;
 			this.fileName = fileName;
-			defaultOutputFileName = outputPath + File.separator +fileName.substring(0, fileName.lastIndexOf(".")) + ".seq";
+			this.defaultOutputFileName = defaultOutputFileName;
 		}
 		@Override
 		public Boolean call() throws Exception {
-			
-			JSONTokener tokener = new JSONTokener(new InputStreamReader(stream, "UTF-8"));
-
-			addValuesToSequenceFile(tokener);
+			try {
+				JSONRecordReader reader = new JSONRecordReader(
+						new BufferedReader(new InputStreamReader(stream, "UTF-8"), 1 << 16));
+				addValuesToSequenceFile(reader);
+			} finally {
+				stream.close();
+			}
 			return true;
 		}
-		
 
-		public SequenceFile.Writer createSequenceFile(Path outputPath)
-				throws IOException {
-			SequenceFile.Writer writer = null;
-			if(useKey)
-			{
-				writer = SequenceFile.createWriter(new Configuration(),Writer.keyClass(Text.class),
-				Writer.valueClass(Text.class), Writer.file(outputPath),Writer.compression(CompressionType.NONE));
-			}
-			else
-			{
-				writer = 	SequenceFile.createWriter(new Configuration(),Writer.keyClass(BytesWritable.class),
-						Writer.valueClass(Text.class), Writer.file(outputPath),Writer.compression(CompressionType.NONE));
-			}
-			return writer;
-		}
-		
-		public void addValuesToSequenceFile(JSONTokener tokener) throws JSONException, IOException {
-			char c = tokener.nextClean();
-			if (c == '[') {
-				while (!tokener.end()) {
-					Object o = tokener.nextValue();
-					if (o instanceof JSONObject) {
-						JSONObject obj = (JSONObject) o;
-						SequenceFile.Writer writer = getWriter(obj);
-						if(useKey)
-						{
-							if(outputFileName)
-							{
-								writer.append(new Text(fileName), new Text(obj.toString()));
-							}
-							else
-							{
-								writer.append(new Text(obj.getString("@id")), new Text(obj.toString()));
-							}
-						}
-						else
-						{
-							writer.append(new BytesWritable(), new Text(obj.toString()));
-						}
-							
-					}
-					char tmp = tokener.nextClean();
-					if (tmp == ']')
-						break;
+		public void addValuesToSequenceFile(JSONRecordReader reader) throws IOException {
+			while (reader.next()) {
+				SequenceFile.Writer writer = getWriter(reader);
+				if (writer == null) {
+					skippedRecords.incrementAndGet();
+					continue;
 				}
-			} else if(c == '{') {
-				tokener.back();
-				Object o = tokener.nextValue();
-				if (o instanceof JSONObject) {
-					JSONObject obj = (JSONObject) o;
-					SequenceFile.Writer writer = getWriter(obj);
-					if(useKey)
+				value.set(reader.getRecord());
+				if(useKey)
+				{
+					if(outputFileName)
 					{
-						if(outputFileName)
-						{
-							writer.append(new Text(fileName), new Text(obj.toString()));
-						}
-						else
-						{
-							writer.append(new Text(obj.getString("@id")), new Text(obj.toString()));
-						}
+						key.set(fileName);
+					}
+					else if(reader.getId() != null)
+					{
+						key.set(reader.getId());
 					}
 					else
 					{
-						writer.append(new BytesWritable(), new Text(obj.toString()));
+						skippedRecords.incrementAndGet();
+						continue;
+					}
+					synchronized (writer) {
+						writer.append(key, value);
 					}
-						
 				}
-			}
-		}
-		
-		public SequenceFile.Writer getWriter(JSONObject obj) throws IOException
-		{
-			if(!writers.containsKey(defaultOutputFileName))
-			{
-				Path outputPath = new Path(defaultOutputFileName);
-				synchronized(writers)
+				else
 				{
-					writers.put(defaultOutputFileName, createSequenceFile(outputPath));
+					synchronized (writer) {
+						writer.append(emptyKey, value);
+					}
 				}
 			}
-			return writers.get(defaultOutputFileName);
 		}
-		
+
+		/**
+		 * @return the writer of the object, or null to skip it.
+		 */
+		public SequenceFile.Writer getWriter(JSONRecordReader reader) throws IOException
+		{
+			return CreateSequenceFile.this.getWriter(defaultOutputFileName, defaultOutputFileName);
+		}
+
 	}
-	
+
 	private static Options createCommandLineOptions() {
 		Options options = new Options();
 		options.addOption(new Option("filepath", "filepath", true, "location of the input file directory"));
 		options.addOption(new Option("usekey", "usekey", true,"whether use key for sequence file"));
 		options.addOption(new Option("outputfilename", "outputfilename",true,  "whether output file name as key"));
 		options.addOption(new Option("outputpath", "outputpath", true, "location of output file directory"));
+		options.addOption(new Option("compression", "compression", true, "NONE, RECORD or BLOCK (default) compression"));
+		options.addOption(new Option("threads", "threads", true, "number of files or ranges converted at once"));
+		options.addOption(new Option("splitsize", "splitsize", true, "size in MB of the ranges JSON arrays are split in (default 256)"));
 		options.addOption(new Option("help", "help", false, "print this message"));
 
 		return options;
@@ -4,12 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.LocatedFileStatus;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 
 public class CreateSequenceFilesByType extends CreateSequenceFile {
@@ -22,39 +17,30 @@ public class CreateSequenceFilesByType extends CreateSequenceFile {
 	
 	protected class JSONFileProcessorByType extends JSONFileProcessor{
 
-		public JSONFileProcessorByType(InputStream stream, String fileName) {
-			super(stream, fileName);
+		public JSONFileProcessorByType(InputStream stream, String fileName, String defaultOutputFileName) {
+			super(stream, fileName, defaultOutputFileName);
 		}
 		
-		public SequenceFile.Writer getWriter(JSONObject obj) throws IOException
+		/**
+		 * @return the writer shared by all the objects of the type, or null
+		 *         for an object without a type.
+		 */
+		@Override
+		public SequenceFile.Writer getWriter(JSONRecordReader reader) throws IOException
 		{
-			String type = "";
-			Object rawtype = obj.get("@type");
-			if(rawtype instanceof String)
+			String type = reader.getType();
+			if(type == null)
 			{
-				type = (String) rawtype;
-				
+				return null;
 			}
-			else if(rawtype instanceof JSONArray)
-			{
-				JSONArray types = (JSONArray)rawtype;
-				type = types.getString(0);
-			}
-			if(!writers.containsKey(type))
-			{
-				String typeSpecificOutputFileName = outputPath + File.separator +type.substring(Math.max(0,type.lastIndexOf('/'))) + ".seq";
-				Path outputPath = new Path(typeSpecificOutputFileName);
-				synchronized(writers)
-				{
-					writers.put(type, createSequenceFile(outputPath));
-				}
-			}
-			return writers.get(type);
+			String typeSpecificOutputFileName = outputPath + File.separator +type.substring(Math.max(0,type.lastIndexOf('/'))) + ".seq";
+			return CreateSequenceFilesByType.this.getWriter(type, typeSpecificOutputFileName);
 		}
 	}
 	
-	protected JSONFileProcessor getNewJSONProcessor(FileSystem hdfs,
-			LocatedFileStatus status, String fileName) throws IOException {
-		return new JSONFileProcessorByType(hdfs.open(status.getPath()), fileName);
+	@Override
+	protected JSONFileProcessor getNewJSONProcessor(InputStream stream, String fileName,
+			String outputFileName) throws IOException {
+		return new JSONFileProcessorByType(stream, fileName, outputFileName);
 	}
 }
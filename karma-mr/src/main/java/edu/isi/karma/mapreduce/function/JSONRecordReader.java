@@ -0,0 +1,190 @@
+package edu.isi.karma.mapreduce.function;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the JSON objects of a stream one at a time, as text, without parsing
+ * them into objects. The stream is a JSON array of objects, an object, or a
+ * part of an array between two of its objects; anything outside the objects
+ * is skipped. The text of each object is kept as it is, without the
+ * whitespace outside its strings, and its @id and @type (the first one if it
+ * has many) are picked up on the way.
+ */
+public class JSONRecordReader {
+
+	private final Reader reader;
+	private final char[] buffer = new char[1 << 16];
+	private int position = 0;
+	private int limit = 0;
+
+	private final StringBuilder record = new StringBuilder();
+	private final StringBuilder string = new StringBuilder();
+	private String id;
+	private String type;
+
+	public JSONRecordReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the text of the current object.
+	 */
+	public String getRecord() {
+		return record.toString();
+	}
+
+	/**
+	 * @return the @id of the current object, or null.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the @type of the current object, or its first @type, or null.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Moves to the next object.
+	 *
+	 * @return false if there are no more objects.
+	 */
+	public boolean next() throws IOException {
+		int c;
+		while ((c = read()) != '{') {
+			if (c == -1)
+				return false;
+			if (c == '"')
+				readString(false, false);
+		}
+		record.setLength(0);
+		record.append('{');
+		id = null;
+		type = null;
+		int depth = 1;
+		// state at depth 1: the last key, and whether its value follows
+		String key = null;
+		boolean inValue = false;
+		boolean inTypeArray = false;
+		while (depth > 0) {
+			c = read();
+			switch (c) {
+			case -1:
+				throw new IOException("Unexpected end of JSON object");
+			case '"':
+				if (depth == 1 && !inValue) {
+					key = readString(true, true);
+				} else if (depth == 1 && "@id".equals(key)) {
+					id = readString(true, true);
+				} else if ((depth == 1 && "@type".equals(key)) || (depth == 2 && inTypeArray && type == null)) {
+					type = readString(true, true);
+				} else {
+					readString(true, false);
+				}
+				break;
+			case '{':
+			case '[':
+				inTypeArray = depth == 1 && c == '[' && "@type".equals(key);
+				depth++;
+				record.append((char) c);
+				break;
+			case '}':
+			case ']':
+				depth--;
+				record.append((char) c);
+				break;
+			case ':':
+				if (depth == 1)
+					inValue = true;
+				record.append(':');
+				break;
+			case ',':
+				if (depth == 1) {
+					inValue = false;
+					inTypeArray = false;
+				}
+				record.append(',');
+				break;
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				break;
+			default:
+				record.append((char) c);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a string after its opening quote.
+	 *
+	 * @return the unescaped string if asked for, or null.
+	 */
+	private String readString(boolean append, boolean unescape) throws IOException {
+		if (append)
+			record.append('"');
+		if (unescape)
+			string.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == -1)
+				throw new IOException("Unexpected end of JSON string");
+			if (append)
+				record.append((char) c);
+			if (c == '"')
+				return unescape ? string.toString() : null;
+			if (c != '\\') {
+				if (unescape)
+					string.append((char) c);
+				continue;
+			}
+			c = read();
+			if (c == -1)
+				throw new IOException("Unexpected end of JSON string");
+			if (append)
+				record.append((char) c);
+			if (!unescape)
+				continue;
+			switch (c) {
+			case 'b': string.append('\b'); break;
+			case 'f': string.append('\f'); break;
+			case 'n': string.append('\n'); break;
+			case 'r': string.append('\r'); break;
+			case 't': string.append('\t'); break;
+			case 'u':
+				int codeUnit = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = read();
+					if (append && digit != -1)
+						record.append((char) digit);
+					digit = Character.digit(digit, 16);
+					if (digit < 0)
+						throw new IOException("Invalid unicode escape in JSON string");
+					codeUnit = codeUnit * 16 + digit;
+				}
+				string.append((char) codeUnit);
+				break;
+			default:
+				string.append((char) c);
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		if (position == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+}
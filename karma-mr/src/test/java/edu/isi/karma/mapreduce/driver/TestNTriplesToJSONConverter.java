@@ -0,0 +1,80 @@
+package edu.isi.karma.mapreduce.driver;
+
+import static org.junit.Assert.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TestNTriplesToJSONConverter {
+
+	private static Logger logger = LoggerFactory.getLogger(TestNTriplesToJSONConverter.class);
+
+	private static final String S = "<http://ex.com/s> ";
+
+	private JSONObject convert(NTriplesToJSONConverter converter, String triples) {
+		converter.clear();
+		converter.addTriples(triples);
+		StringBuilder json = new StringBuilder();
+		converter.write("http://ex.com/s", json);
+		return new JSONObject(json.toString());
+	}
+
+	@Test
+	public void testTerms() {
+		NTriplesToJSONConverter converter = new NTriplesToJSONConverter();
+		JSONObject object = convert(converter,
+				S + "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://ex.com/Person> .\n"
+				+ S + "<http://ex.com/name> \"Jos\\u00E9 \\\"Pepe\\\" Ambite\"@es-ES .\r\n"
+				+ S + "<http://ex.com/age> \"42\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n"
+				+ S + "<http://ex.com/note> \"a.b\\nc\\\\\" .\n"
+				+ S + "<http://ex.com/knows> _:b1.\n"
+				+ "# a comment\n\n"
+				+ S + "<http://ex.com/broken> \"no end .\n");
+		assertEquals("http://ex.com/s", object.getString("@id"));
+		assertEquals("http://ex.com/Person", object.getString("@type"));
+		assertEquals("José \"Pepe\" Ambite", object.getString("http://ex.com/name"));
+		assertEquals("42", object.getString("http://ex.com/age"));
+		assertEquals("a.b\nc\\", object.getString("http://ex.com/note"));
+		assertEquals("_:b1", object.getString("http://ex.com/knows"));
+		assertEquals(1, converter.getMalformedTriples());
+		assertEquals(6, object.length());
+	}
+
+	@Test
+	public void testMultipleValuesAreSortedAndDistinct() {
+		NTriplesToJSONConverter converter = new NTriplesToJSONConverter();
+		JSONObject object = convert(converter,
+				S + "<http://ex.com/p> \"c\" .\n"
+				+ S + "<http://ex.com/p> \"a\" .\n"
+				+ S + "<http://ex.com/p> \"c\" .\n"
+				+ S + "<http://ex.com/p> <http://ex.com/b> .\n");
+		JSONArray values = object.getJSONArray("http://ex.com/p");
+		assertEquals("[\"a\",\"c\",\"http://ex.com/b\"]", values.toString());
+
+		// nothing is left from the previous subject
+		object = convert(converter, S + "<http://ex.com/q> \"d\" .");
+		assertEquals(2, object.length());
+		assertEquals(0, converter.getMalformedTriples());
+	}
+
+	@Test
+	public void testHotSubjectBenchmark() {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numValues = Integer.getInteger("karma.benchmark.values", 50000);
+		StringBuilder triples = new StringBuilder();
+		for (int i = 0; i < numValues; i++) {
+			triples.append(S).append("<http://ex.com/p").append(i % 3).append("> \"value ")
+					.append(numValues - i).append("\"@en .\n");
+		}
+		NTriplesToJSONConverter converter = new NTriplesToJSONConverter();
+		String text = triples.toString();
+		long start = System.currentTimeMillis();
+		JSONObject object = convert(converter, text);
+		logger.info(numValues + " values of one subject in " + (System.currentTimeMillis() - start) + "ms");
+		assertEquals(numValues / 3, object.getJSONArray("http://ex.com/p0").length(), 1);
+	}
+}
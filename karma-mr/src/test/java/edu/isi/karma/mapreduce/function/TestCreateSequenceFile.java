@@ -0,0 +1,189 @@
+package edu.isi.karma.mapreduce.function;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TestCreateSequenceFile {
+
+	private static Logger logger = LoggerFactory.getLogger(TestCreateSequenceFile.class);
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("karma-seq", "");
+		dir.delete();
+		new File(dir, "input").mkdirs();
+		new File(dir, "output").mkdirs();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private void writeInput(int numObjects) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, "input/people.json")), "UTF-8");
+		out.write("[\n");
+		for (int i = 0; i < numObjects; i++) {
+			if (i > 0)
+				out.write(",\n");
+			out.write("  {\"@id\": \"http://ex.com/p" + i + "\", \"@type\": [\"http://ex.com/Person\"], "
+					+ "\"name\": \"José {\\\"" + i + "\\\"} [\", \"knows\": {\"@id\": \"http://ex.com/p" + (i + 1)
+					+ "\"}, \"tags\": [1, 2, true, null]}");
+		}
+		out.write("\n]\n");
+		out.close();
+	}
+
+	/**
+	 * The conversion before JSONRecordReader: every object is parsed with a
+	 * JSONTokener and serialized back with toString(), to one uncompressed
+	 * sequence file per input file.
+	 */
+	private static class TokenerSequenceFile extends CreateSequenceFile {
+
+		@Override
+		protected JSONFileProcessor getNewJSONProcessor(InputStream stream, String fileName,
+				String outputFileName) throws IOException {
+			return new JSONFileProcessor(stream, fileName, outputFileName) {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						JSONTokener tokener = new JSONTokener(new InputStreamReader(stream, "UTF-8"));
+						SequenceFile.Writer writer = TokenerSequenceFile.this.getWriter(defaultOutputFileName,
+								defaultOutputFileName);
+						if (tokener.nextClean() != '[')
+							return false;
+						while (!tokener.end()) {
+							Object o = tokener.nextValue();
+							if (o instanceof JSONObject) {
+								JSONObject obj = (JSONObject) o;
+								synchronized (writer) {
+									writer.append(new Text(obj.getString("@id")), new Text(obj.toString()));
+								}
+							}
+							if (tokener.nextClean() == ']')
+								break;
+						}
+					} finally {
+						stream.close();
+					}
+					return true;
+				}
+			};
+		}
+	}
+
+	private CreateSequenceFile newConverter(CreateSequenceFile csf, CompressionType compressionType, long splitSize) {
+		csf.filePath = new File(dir, "input").getAbsolutePath();
+		csf.outputPath = new File(dir, "output").getAbsolutePath();
+		csf.compressionType = compressionType;
+		csf.splitSize = splitSize;
+		return csf;
+	}
+
+	private Map<String, String> readOutput() throws IOException {
+		Map<String, String> records = new HashMap<String, String>();
+		Configuration conf = new Configuration();
+		for (File file : new File(dir, "output").listFiles()) {
+			if (!file.getName().endsWith(".seq"))
+				continue;
+			SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(new Path(file.getAbsolutePath())));
+			Text key = new Text();
+			Text value = new Text();
+			while (reader.next(key, value)) {
+				records.put(key.toString(), value.toString());
+			}
+			reader.close();
+		}
+		return records;
+	}
+
+	private void checkOutput(int numObjects) throws IOException {
+		Map<String, String> records = readOutput();
+		assertEquals(numObjects, records.size());
+		for (int i = 0; i < numObjects; i++) {
+			JSONObject object = new JSONObject(records.get("http://ex.com/p" + i));
+			assertEquals("José {\"" + i + "\"} [", object.getString("name"));
+			assertEquals("http://ex.com/p" + (i + 1), object.getJSONObject("knows").getString("@id"));
+			assertEquals(4, object.getJSONArray("tags").length());
+		}
+	}
+
+	@Test
+	public void testSplitArray() throws IOException {
+		writeInput(1000);
+		newConverter(new CreateSequenceFile(), CompressionType.BLOCK, 10000).execute();
+		assertEquals(true, new File(dir, "output/people-00000.seq").exists());
+		assertEquals(true, new File(dir, "output/people-00001.seq").exists());
+		checkOutput(1000);
+	}
+
+	@Test
+	public void testByType() throws IOException {
+		writeInput(1000);
+		newConverter(new CreateSequenceFilesByType(), CompressionType.BLOCK, 10000).execute();
+		assertEquals(1, new File(dir, "output").list(new java.io.FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.endsWith(".seq");
+			}
+		}).length);
+		checkOutput(1000);
+	}
+
+	@Test
+	public void testCompressionBenchmark() throws IOException {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		int numObjects = Integer.getInteger("karma.benchmark.objects", 500000);
+		writeInput(numObjects);
+		long inputSize = new File(dir, "input/people.json").length();
+		String[] names = {"JSONTokener", "record reader", "record reader", "record reader"};
+		CreateSequenceFile[] converters = {new TokenerSequenceFile(), new CreateSequenceFile(),
+				new CreateSequenceFile(), new CreateSequenceFile()};
+		CompressionType[] compressionTypes = {CompressionType.NONE, CompressionType.NONE, CompressionType.BLOCK,
+				CompressionType.BLOCK};
+		long[] splitSizes = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE,
+				inputSize / Runtime.getRuntime().availableProcessors() + 1};
+		for (int run = 0; run < 2; run++) {
+			for (int i = 0; i < converters.length; i++) {
+				FileUtils.cleanDirectory(new File(dir, "output"));
+				converters[i].writers.clear();
+				long start = System.currentTimeMillis();
+				newConverter(converters[i], compressionTypes[i], splitSizes[i]).execute();
+				long time = System.currentTimeMillis() - start;
+				long outputSize = FileUtils.sizeOfDirectory(new File(dir, "output"));
+				logger.info(names[i] + ", " + compressionTypes[i] + " compression, "
+						+ (splitSizes[i] == Long.MAX_VALUE ? "unsplit" : "split") + ": " + inputSize + " bytes in "
+						+ time + "ms (" + (inputSize / 1000 / Math.max(1, time)) + " MB/s), " + outputSize
+						+ " bytes out");
+				checkOutput(numObjects);
+			}
+		}
+	}
+}
@@ -29,6 +29,7 @@ public class LoadRDFToTripleStore {
         String context = (String) cl.getOptionValue("context");
         if (filepath == null || tripleStoreUrl == null || context == null)
         	return;
+        boolean nTriples = cl.hasOption("ntriples");
 		File file = new File(filepath);
 		if (file.isDirectory()) {
 			File[] files = file.listFiles();
@@ -36,7 +37,7 @@ public class LoadRDFToTripleStore {
 				System.out.println(f.getName());
 				if (FileUtils.getExtension(f.getName()) != null)
 					try {
-						util.saveToStoreFromFile(f.getAbsolutePath(), tripleStoreUrl, context, false, null);
+						saveToStore(util, f, tripleStoreUrl, context, nTriples);
 					} catch (KarmaException e) {
 						System.err.println(e.getMessage());
 					}
@@ -45,7 +46,7 @@ public class LoadRDFToTripleStore {
 		else {
 			if (FileUtils.getExtension(file.getName()) != null)
 				try {
-					util.saveToStoreFromFile(file.getAbsolutePath(), tripleStoreUrl, context, false, null);
+					saveToStore(util, file, tripleStoreUrl, context, nTriples);
 				} catch (KarmaException e) {
 					System.err.println(e.getMessage());
 				}
@@ -53,6 +54,14 @@ public class LoadRDFToTripleStore {
 		
 	}
 	
+	private static void saveToStore(TripleStoreUtil util, File file, String tripleStoreUrl,
+			String context, boolean nTriples) throws KarmaException {
+		if (nTriples)
+			util.saveToStoreFromNTriplesFile(file.getAbsolutePath(), tripleStoreUrl, context, false, null);
+		else
+			util.saveToStoreFromFile(file.getAbsolutePath(), tripleStoreUrl, context, false, null);
+	}
+	
 	private static Options createCommandLineOptions() {
 
 		Options options = new Options();
@@ -60,6 +69,7 @@ public class LoadRDFToTripleStore {
 		options.addOption(new Option("filepath", "filepath", true, "location of the input file directory"));
 		options.addOption(new Option("triplestoreurl", "triplestoreurl", true, "location of the triplestore"));
 		options.addOption(new Option("context", "context", true, "the context uri"));
+		options.addOption(new Option("ntriples", "ntriples", false, "the files are in N-Triples, such as the RDF generated by Karma, instead of Turtle"));
 		options.addOption(new Option("help", "help", false, "print this message"));
 
 		return options;
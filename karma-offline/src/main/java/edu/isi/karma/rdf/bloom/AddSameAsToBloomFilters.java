@@ -18,7 +18,6 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.hadoop.util.bloom.Key;
-import org.apache.hadoop.util.hash.Hash;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -60,7 +59,7 @@ public class AddSameAsToBloomFilters {
         for (Entry<String, String> entry : serializedmapping.entrySet()) {
         	String key = entry.getKey();
         	String value = entry.getValue();
-        	KR2RMLBloomFilter bf = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+        	KR2RMLBloomFilter bf = new KR2RMLBloomFilter();
         	bf.populateFromCompressedAndBase64EncodedString(value);
         	mapping.put(key, bf);
         }
@@ -1,26 +1,29 @@
 package edu.isi.karma.rdf.bloom;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
-import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
-import org.apache.hadoop.util.bloom.BloomFilter;
-import org.apache.hadoop.util.hash.Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
-import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.n3.turtle.TurtleEventHandler;
+import com.hp.hpl.jena.n3.turtle.parser.ParseException;
+import com.hp.hpl.jena.n3.turtle.parser.TurtleParser;
 import com.uwyn.jhighlight.tools.FileUtils;
 
 import edu.isi.karma.er.helper.BloomFilterTripleStoreUtil;
@@ -30,8 +33,15 @@ import edu.isi.karma.webserver.KarmaException;
 
 
 
+/**
+ * Or-s the bloom filters in a directory of turtle files into one filter per triples map
+ * and publishes them to a triple store. The files are parsed as a stream, and the filters
+ * are decoded and or-ed into the combined filters by a pool of threads while parsing goes on.
+ */
 public class CombineBloomFiltersFromRDF {
 
+	private static Logger logger = LoggerFactory.getLogger(CombineBloomFiltersFromRDF.class);
+
 	static String filepath;
     static String triplestoreURL;
     static String context;
@@ -49,44 +59,10 @@ public class CombineBloomFiltersFromRDF {
         if (filepath == null || triplestoreURL == null || context == null)
         	return;
 		File file = new File(filepath);
-		Map<String, BloomFilterWorker> workers = new HashMap<String, BloomFilterWorker>();
-		Map<String, KR2RMLBloomFilter> bfs = new HashMap<String, KR2RMLBloomFilter>();
 		long start = System.currentTimeMillis();
 		if (file.isDirectory()) {
-			File[] files = file.listFiles();
-			for (File f : files) {
-				if (FileUtils.getExtension(f.getName()) != null) {
-					Model model = ModelFactory.createDefaultModel();
-					InputStream s = new FileInputStream(f);
-					model.read(s, null, "TURTLE");
-					StmtIterator iterator = model.listStatements();
-					while(iterator.hasNext()) {
-						Statement st = iterator.next();
-						String subject = st.getSubject().toString();
-						String object = st.getObject().toString();
-						String predicate = st.getPredicate().toString();
-						if (predicate.contains("hasBloomFilter")) {
-							//predicateURI = predicate;
-							BloomFilterWorker worker = workers.get(subject);
-							if (worker == null) {
-								worker = new BloomFilterWorker();
-								Thread t = new Thread(worker);
-								t.start();
-							}
-							worker.addBloomfilters(object);
-							workers.put(subject, worker);
-						}
-					}
-				}
-
-			}
-			for (Entry<String, BloomFilterWorker> entry : workers.entrySet()) {
-				entry.getValue().setDone();
-			}
-			for (Entry<String, BloomFilterWorker> entry : workers.entrySet()) {
-				while(!entry.getValue().isFinished());
-				bfs.put(entry.getKey(), entry.getValue().getKR2RMLBloomFilter());
-			}
+			Map<String, KR2RMLBloomFilter> bfs = combineBloomFilters(file.listFiles(),
+					Runtime.getRuntime().availableProcessors());
 			BloomFilterTripleStoreUtil utilObj = new BloomFilterTripleStoreUtil();
 			Set<String> triplemaps = bfs.keySet();
 			Map<String, String> bloomfilterMapping = new HashMap<String, String>();
@@ -99,21 +75,19 @@ public class CombineBloomFiltersFromRDF {
 			for (Entry<String, String> entry : verification.entrySet()) {
 				String key = entry.getKey();
 				String value = entry.getValue();
-				KR2RMLBloomFilter bf2 = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+				KR2RMLBloomFilter bf2 = new KR2RMLBloomFilter();
 				KR2RMLBloomFilter bf = bfs.get(key);
 				bf2.populateFromCompressedAndBase64EncodedString(value);
-				bf2.and(bf);
-				bf2.xor(bf);
 				try {
-					Field f = BloomFilter.class.getDeclaredField("bits");
-					f.setAccessible(true);
-					BitSet bits = (BitSet) f.get(bf2);
-					if (bits.cardinality() != 0) {
-						verify = false;
-						break;
-					}
-				} catch (Exception e) {
-
+					bf2.and(bf);
+					bf2.xor(bf);
+				} catch (IllegalArgumentException e) {
+					verify = false;
+					break;
+				}
+				if (bf2.cardinality() != 0) {
+					verify = false;
+					break;
 				}
 			}
 			if (!verify) {
@@ -123,6 +97,97 @@ public class CombineBloomFiltersFromRDF {
 
 	}
 
+	/**
+	 * Or-s the bloom filters in the turtle files by subject
+	 * @param threads the number of threads that decode and or the filters
+	 */
+	public static Map<String, KR2RMLBloomFilter> combineBloomFilters(File[] files, int threads) throws IOException {
+		final Map<String, KR2RMLBloomFilter> bfs = new HashMap<String, KR2RMLBloomFilter>();
+		// the parser runs the tasks itself when the queue is full, so the serialized filters
+		// are not all held in memory
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			for (File f : files) {
+				if (FileUtils.getExtension(f.getName()) == null)
+					continue;
+				InputStream s = new BufferedInputStream(new FileInputStream(f));
+				try {
+					TurtleParser parser = new TurtleParser(s, "UTF-8");
+					parser.setBaseURI(f.toURI().toString());
+					parser.setEventHandler(new TurtleEventHandler() {
+						@Override
+						public void triple(int line, int col, Triple triple) {
+							Node predicate = triple.getPredicate();
+							Node object = triple.getObject();
+							if (!predicate.isURI() || !predicate.getURI().contains("hasBloomFilter") || !object.isLiteral())
+								return;
+							Node subjectNode = triple.getSubject();
+							String subject = subjectNode.isURI() ? subjectNode.getURI() : subjectNode.toString();
+							KR2RMLBloomFilter bf = bfs.get(subject);
+							if (bf == null) {
+								bf = new KR2RMLBloomFilter();
+								bfs.put(subject, bf);
+							}
+							executor.execute(new OrTask(bf, object.getLiteralLexicalForm()));
+						}
+
+						@Override
+						public void prefix(int line, int col, String prefix, String iri) {
+						}
+
+						@Override
+						public void startFormula(int line, int col) {
+						}
+
+						@Override
+						public void endFormula(int line, int col) {
+						}
+					});
+					parser.parse();
+				} catch (ParseException e) {
+					throw new IOException("Unable to parse " + f.getName() + ": " + e.getMessage(), e);
+				} finally {
+					s.close();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				logger.info("waiting for the bloom filters to be combined");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while combining bloom filters", e);
+		}
+		return bfs;
+	}
+
+	/**
+	 * Or-s one serialized filter into a combined filter. Filters with the same geometry
+	 * are or-ed into the combined filter word by word, so the tasks for the same
+	 * triples map run at the same time.
+	 */
+	private static class OrTask implements Runnable {
+		private final KR2RMLBloomFilter bf;
+		private final String serializedBloomFilter;
+
+		OrTask(KR2RMLBloomFilter bf, String serializedBloomFilter) {
+			this.bf = bf;
+			this.serializedBloomFilter = serializedBloomFilter;
+		}
+
+		@Override
+		public void run() {
+			try {
+				bf.orFromCompressedAndBase64EncodedString(serializedBloomFilter);
+			} catch (IOException | IllegalArgumentException e) {
+				logger.error("Unable to read bloom filter: " + e.getMessage());
+			}
+		}
+	}
+
 	private static Options createCommandLineOptions() {
 
 		Options options = new Options();
@@ -136,7 +136,7 @@ public class TestJSONRDFGeneratorWithBloomFilters extends TestRdfGenerator{
 			assertTrue(schedulePersonBF.membershipTest(k));
 			assertEquals(5, schedulePersonBF.estimateNumberOfHashedValues());
 			
-			KR2RMLBloomFilter intersectionBF = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+			KR2RMLBloomFilter intersectionBF = new KR2RMLBloomFilter();
 			intersectionBF.or(peoplePersonWithTwitterIdBF);
 			intersectionBF.and(schedulePersonBF);
 			assertEquals(3, intersectionBF.estimateNumberOfHashedValues());
@@ -145,7 +145,7 @@ public class TestJSONRDFGeneratorWithBloomFilters extends TestRdfGenerator{
 			
 			k = new Key(("<http://lod.isi.edu/cs548/person/Szekely>").getBytes());
 			assertTrue(hasInstructorBF.membershipTest(k));
-			intersectionBF = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize, KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+			intersectionBF = new KR2RMLBloomFilter();
 			intersectionBF.or(hasInstructorBF);
 			intersectionBF.and(peoplePersonWithTwitterIdBF);
 			assertEquals(3, intersectionBF.estimateNumberOfHashedValues());
@@ -0,0 +1,257 @@
+package edu.isi.karma.rdf.bloom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.junit.Test;
+
+import edu.isi.karma.kr2rml.writer.KR2RMLBloomFilter;
+
+public class TestKR2RMLBloomFilter {
+
+	private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+	private static byte[] uri(String prefix, int i) {
+		return ("<http://lod.isi.edu/" + prefix + "/" + i + ">").getBytes(UTF8_CHARSET);
+	}
+
+	@Test
+	public void testMembershipAndFalsePositiveRate() {
+		KR2RMLBloomFilter bf = new KR2RMLBloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++)
+			bf.add(uri("in", i));
+		for (int i = 0; i < 10000; i++)
+			assertTrue(bf.membershipTest(uri("in", i)));
+		int falsePositives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (bf.membershipTest(uri("out", i)))
+				falsePositives++;
+		}
+		assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+		int estimate = bf.estimateNumberOfHashedValues();
+		assertTrue("estimate: " + estimate, Math.abs(estimate - 10000) < 500);
+	}
+
+	@Test
+	public void testConcurrentAdds() throws InterruptedException {
+		final KR2RMLBloomFilter bf = new KR2RMLBloomFilter(40000, 0.01);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int offset = t * 10000;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = offset; i < offset + 10000; i++)
+						bf.add(uri("in", i));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		KR2RMLBloomFilter serial = new KR2RMLBloomFilter(40000, 0.01);
+		for (int i = 0; i < 40000; i++)
+			serial.add(uri("in", i));
+		serial.xor(bf);
+		assertEquals(0, serial.cardinality());
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		KR2RMLBloomFilter bf = new KR2RMLBloomFilter();
+		for (int i = 0; i < 1000; i++)
+			bf.add(new Key(uri("in", i)));
+		String serialized = bf.compressAndBase64Encode();
+
+		KR2RMLBloomFilter read = new KR2RMLBloomFilter();
+		read.populateFromCompressedAndBase64EncodedString(serialized);
+		assertEquals(bf.getVectorSize(), read.getVectorSize());
+		for (int i = 0; i < 1000; i++)
+			assertTrue(read.membershipTest(new Key(uri("in", i))));
+		read.xor(bf);
+		assertEquals(0, read.cardinality());
+
+		KR2RMLBloomFilter combined = new KR2RMLBloomFilter();
+		combined.orFromCompressedAndBase64EncodedString(serialized);
+		combined.orFromCompressedAndBase64EncodedString(serialized);
+		combined.xor(bf);
+		assertEquals(0, combined.cardinality());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testHadoopFormat() throws Exception {
+		KR2RMLBloomFilter legacy = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize,
+				KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+		for (int i = 0; i < 100; i++)
+			legacy.add(new Key(uri("in", i)));
+		String serialized = legacy.compressAndBase64Encode();
+
+		KR2RMLBloomFilter read = new KR2RMLBloomFilter();
+		read.populateFromCompressedAndBase64EncodedString(serialized);
+		assertEquals(KR2RMLBloomFilter.defaultVectorSize, read.getVectorSize());
+		for (int i = 0; i < 100; i++)
+			assertTrue(read.membershipTest(new Key(uri("in", i))));
+		assertFalse(read.membershipTest(new Key(uri("out", 0))));
+		assertEquals(100, read.estimateNumberOfHashedValues());
+	}
+
+	/**
+	 * @return a filter serialized by hadoop's BloomFilter, as the filters stored before the blocked filters
+	 */
+	private static String createHadoopFilter(String prefix, int count) throws Exception {
+		BloomFilter hadoop = new BloomFilter(KR2RMLBloomFilter.defaultVectorSize,
+				KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+		for (int i = 0; i < count; i++)
+			hadoop.add(new Key(uri(prefix, i)));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(baos));
+		hadoop.write(out);
+		out.close();
+		return Base64.encodeBase64String(baos.toByteArray());
+	}
+
+	@Test
+	public void testOrHadoopFilterIntoBlockedFilter() throws Exception {
+		String stored = createHadoopFilter("old", 100);
+		KR2RMLBloomFilter bf = new KR2RMLBloomFilter(1000, 0.01);
+		for (int i = 0; i < 100; i++)
+			bf.add(uri("new", i));
+
+		// as when the filters of a published model are updated
+		KR2RMLBloomFilter old = new KR2RMLBloomFilter();
+		old.populateFromCompressedAndBase64EncodedString(stored);
+		bf.or(old);
+		int cardinality = bf.cardinality();
+		bf.orFromCompressedAndBase64EncodedString(stored);
+		assertEquals(cardinality, bf.cardinality());
+		assertEquals(200, bf.estimateNumberOfHashedValues(), 10);
+
+		KR2RMLBloomFilter read = new KR2RMLBloomFilter();
+		read.populateFromCompressedAndBase64EncodedString(bf.compressAndBase64Encode());
+		KR2RMLBloomFilter combined = new KR2RMLBloomFilter(1000, 0.01);
+		combined.orFromCompressedAndBase64EncodedString(bf.compressAndBase64Encode());
+		List<byte[]> keys = new ArrayList<byte[]>();
+		for (int i = 0; i < 100; i++) {
+			keys.add(uri("old", i));
+			keys.add(uri("new", i));
+			keys.add(uri("out", i));
+		}
+		for (KR2RMLBloomFilter filter : new KR2RMLBloomFilter[] { bf, read, combined }) {
+			for (int i = 0; i < 100; i++) {
+				assertTrue(filter.membershipTest(uri("old", i)));
+				assertTrue(filter.membershipTest(uri("new", i)));
+			}
+			assertEquals(cardinality, filter.cardinality());
+			int expected = 0;
+			for (byte[] key : keys) {
+				if (filter.membershipTest(key))
+					expected++;
+			}
+			assertEquals(expected, filter.countMembers(new KR2RMLBloomFilter.HashedKeys(keys)));
+			assertTrue(expected < 210);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testXorHadoopFilterIntoBlockedFilter() throws Exception {
+		KR2RMLBloomFilter old = new KR2RMLBloomFilter();
+		old.populateFromCompressedAndBase64EncodedString(createHadoopFilter("old", 100));
+		new KR2RMLBloomFilter(1000, 0.01).xor(old);
+	}
+
+	@Test
+	public void testCombineFiltersOfDifferentSizes() {
+		KR2RMLBloomFilter small = new KR2RMLBloomFilter(1000, 0.01);
+		KR2RMLBloomFilter large = new KR2RMLBloomFilter(100000, 0.01);
+		for (int i = 0; i < 500; i++) {
+			small.add(uri("a", i));
+			large.add(uri("b", i));
+		}
+		large.or(small);
+		assertEquals(small.getVectorSize(), large.getVectorSize());
+		for (int i = 0; i < 500; i++) {
+			assertTrue(large.membershipTest(uri("a", i)));
+			assertTrue(large.membershipTest(uri("b", i)));
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testCountMembers() {
+		List<byte[]> keys = new ArrayList<byte[]>();
+		for (int i = 0; i < 1000; i++)
+			keys.add(uri(i % 2 == 0 ? "in" : "out", i));
+		KR2RMLBloomFilter.HashedKeys hashedKeys = new KR2RMLBloomFilter.HashedKeys(keys);
+
+		KR2RMLBloomFilter small = new KR2RMLBloomFilter(1000, 0.01);
+		KR2RMLBloomFilter large = new KR2RMLBloomFilter(100000, 0.01);
+		KR2RMLBloomFilter legacy = new KR2RMLBloomFilter(KR2RMLBloomFilter.defaultVectorSize,
+				KR2RMLBloomFilter.defaultnbHash, Hash.JENKINS_HASH);
+		for (int i = 0; i < 1000; i += 2) {
+			small.add(uri("in", i));
+			large.add(uri("in", i));
+			legacy.add(uri("in", i));
+		}
+		for (KR2RMLBloomFilter bf : new KR2RMLBloomFilter[] { small, large, legacy }) {
+			int expected = 0;
+			for (byte[] key : keys) {
+				if (bf.membershipTest(key))
+					expected++;
+			}
+			assertEquals(expected, bf.countMembers(hashedKeys));
+			assertTrue(bf.countMembers(hashedKeys) >= 500);
+		}
+		assertEquals(0, new KR2RMLBloomFilter().countMembers(hashedKeys));
+	}
+
+	@Test
+	public void testConcurrentOrFromSerializedFilters() throws Exception {
+		final List<String> serialized = new ArrayList<String>();
+		KR2RMLBloomFilter serial = new KR2RMLBloomFilter(20000, 0.01);
+		for (int f = 0; f < 20; f++) {
+			KR2RMLBloomFilter bf = new KR2RMLBloomFilter(20000, 0.01);
+			for (int i = f * 1000; i < (f + 1) * 1000; i++) {
+				bf.add(uri("in", i));
+				serial.add(uri("in", i));
+			}
+			serialized.add(bf.compressAndBase64Encode());
+		}
+
+		final KR2RMLBloomFilter combined = new KR2RMLBloomFilter();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (final String s : serialized) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						combined.orFromCompressedAndBase64EncodedString(s);
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		serial.xor(combined);
+		assertEquals(0, serial.cardinality());
+	}
+}
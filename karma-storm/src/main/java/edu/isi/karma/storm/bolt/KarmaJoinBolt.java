@@ -1,7 +1,12 @@
 package edu.isi.karma.storm.bolt;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -15,6 +20,7 @@ import backtype.storm.topology.base.BaseRichBolt;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
+import edu.isi.karma.storm.strategy.BatchJoinStrategy;
 import edu.isi.karma.storm.strategy.JoinStrategy;
 
 public class KarmaJoinBolt extends BaseRichBolt {
@@ -29,7 +35,7 @@ public class KarmaJoinBolt extends BaseRichBolt {
 	@SuppressWarnings("rawtypes")
 	private Map localConfig;
 	private String atId = "uri";
-	private String mergePath;
+	private String[] mergePath;
 	private String joinObjectField;
 	private JoinStrategy strategy;
 	public KarmaJoinBolt(@SuppressWarnings("rawtypes") Map localConfig, JoinStrategy joinStrategy)
@@ -38,52 +44,59 @@ public class KarmaJoinBolt extends BaseRichBolt {
 		this.strategy = joinStrategy;
 	}
 
+	/**
+	 * An object referenced at the end of the merge path, by its uri or by an
+	 * object with its uri.
+	 */
+	private static class Reference {
+		private final JSONObject parent;
+		private final String key;
+		private final JSONObject target;
+		private final String uri;
+
+		private Reference(JSONObject parent, String key, JSONObject target, String uri) {
+			this.parent = parent;
+			this.key = key;
+			this.target = target;
+			this.uri = uri;
+		}
+	}
+
 	@Override
 	public void execute(Tuple tuple) {
 
 		long start = System.currentTimeMillis();
 		JSONObject objectToJoin = new JSONObject(tuple.getStringByField(joinObjectField));
-		String[] mergePath = this.mergePath.split(",");
-		joinJSONObject(objectToJoin, mergePath, 0);
+		List<Reference> references = new ArrayList<Reference>();
+		collectReferences(objectToJoin, 0, references);
+		joinReferences(references);
 		outputCollector.emit(new Values(objectToJoin.getString(atId), objectToJoin.toString()));
 		outputCollector.ack(tuple);
 		LOG.debug("id: "+ tuple.getStringByField("id") + " " + (System.currentTimeMillis() - start));
 	}
 
-	private void joinJSONObject(JSONObject obj, String[] mergePath, int level) {
+	private void collectReferences(JSONObject obj, int level, List<Reference> references) {
 		if (obj.has(mergePath[level])) {
 			Object val = obj.get(mergePath[level]);
 			if (level == mergePath.length - 1) {
 				if (val instanceof JSONObject) {
 					JSONObject target = (JSONObject)val;
-					JSONObject source = strategy.get(target.get(atId).toString());
-					if (source != null) {
-						@SuppressWarnings("rawtypes")
-						Iterator itr = source.keys();
-						while (itr.hasNext()) {
-							String key = itr.next().toString();
-							Object value = source.get(key);
-							target.put(key, value);
-						}
-					}
+					references.add(new Reference(obj, mergePath[level], target, target.get(atId).toString()));
 				}
 				if (val instanceof String) {
-					JSONObject source = strategy.get(val.toString());
-					if (source != null) {
-						obj.put(mergePath[level], source);
-					}
+					references.add(new Reference(obj, mergePath[level], null, val.toString()));
 				}
 			}
 			else {
 				if (val instanceof JSONObject) {
-					joinJSONObject((JSONObject)val, mergePath, level + 1);
+					collectReferences((JSONObject)val, level + 1, references);
 				}
 				if (val instanceof JSONArray) {
 					JSONArray array = (JSONArray)val;
 					for (int i = 0; i < array.length(); i++) {
 						try {
 							JSONObject object = array.getJSONObject(i);
-							joinJSONObject(object, mergePath, level + 1);
+							collectReferences(object, level + 1, references);
 						} catch(Exception e)
 						{
 							LOG.error("Unable to join JSON object", e.getMessage());
@@ -94,11 +107,50 @@ public class KarmaJoinBolt extends BaseRichBolt {
 		}
 	}
 
+	/**
+	 * Looks up the objects of all the references at once, each uri once.
+	 */
+	private void joinReferences(List<Reference> references) {
+		if (references.isEmpty())
+			return;
+		Map<String, JSONObject> sources;
+		if (strategy instanceof BatchJoinStrategy) {
+			Set<String> uris = new HashSet<String>();
+			for (Reference reference : references)
+				uris.add(reference.uri);
+			sources = ((BatchJoinStrategy)strategy).get(uris);
+		}
+		else {
+			sources = new HashMap<String, JSONObject>();
+			for (Reference reference : references) {
+				if (!sources.containsKey(reference.uri))
+					sources.put(reference.uri, strategy.get(reference.uri));
+			}
+		}
+		for (Reference reference : references) {
+			JSONObject source = sources.get(reference.uri);
+			if (source == null)
+				continue;
+			if (reference.target != null) {
+				@SuppressWarnings("rawtypes")
+				Iterator itr = source.keys();
+				while (itr.hasNext()) {
+					String key = itr.next().toString();
+					Object value = source.get(key);
+					reference.target.put(key, value);
+				}
+			}
+			else {
+				reference.parent.put(reference.key, source);
+			}
+		}
+	}
+
 	@Override
 	public void prepare(@SuppressWarnings("rawtypes") Map globalConfig, TopologyContext arg1, OutputCollector outputCollector) {
 		this.outputCollector = outputCollector;
 		atId = localConfig.get("karma.context.atid").toString();
-		mergePath = localConfig.get("karma.storm.mergepath").toString();
+		mergePath = localConfig.get("karma.storm.mergepath").toString().split(",");
 		joinObjectField = localConfig.get("karma.storm.join.object.field").toString();
 		strategy.prepare(localConfig);
 	}
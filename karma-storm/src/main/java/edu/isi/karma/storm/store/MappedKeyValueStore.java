@@ -0,0 +1,279 @@
+package edu.isi.karma.storm.store;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A read-only map from strings to strings, kept in two memory-mapped files.
+ * It is built once with a {@link Builder} and then opened by any number of
+ * readers, which share the pages of the files through the OS.
+ * <p>
+ * The data file holds the records one after the other: the length of the key,
+ * the key, the length of the value and the value, in UTF-8. The index file is
+ * an open addressing hash table of (hash of the key, offset of the record)
+ * slots, at most half full. Files are mapped in segments of
+ * {@link #SEGMENT_SIZE} bytes, and neither a record nor a slot spans two
+ * segments.
+ * <p>
+ * Lookups are thread safe.
+ */
+public class MappedKeyValueStore implements Closeable {
+
+	public static final String DATA_SUFFIX = ".data";
+	public static final String INDEX_SUFFIX = ".index";
+
+	static final int SEGMENT_SIZE = 1 << 30;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x4b4b5653;
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 16;
+
+	private final MappedByteBuffer[] data;
+	private final MappedByteBuffer[] index;
+	private final long numSlots;
+	private final long size;
+
+	private MappedKeyValueStore(MappedByteBuffer[] data, MappedByteBuffer[] index) throws IOException {
+		this.data = data;
+		this.index = index;
+		if (data.length == 0 || data[0].getInt(0) != MAGIC || index.length == 0 || index[0].getInt(0) != MAGIC)
+			throw new IOException("Not a key value store");
+		this.size = index[0].getLong(8);
+		long indexLength = 0;
+		for (MappedByteBuffer segment : index)
+			indexLength += segment.capacity();
+		this.numSlots = (indexLength - HEADER_SIZE) / SLOT_SIZE;
+	}
+
+	/**
+	 * Maps the files of a store built with {@link Builder}.
+	 *
+	 * @param file
+	 *            the name of the store, without the suffixes of its files.
+	 */
+	public static MappedKeyValueStore open(File file) throws IOException {
+		return new MappedKeyValueStore(map(getDataFile(file), MapMode.READ_ONLY, -1),
+				map(getIndexFile(file), MapMode.READ_ONLY, -1));
+	}
+
+	public static boolean exists(File file) {
+		return getDataFile(file).exists() && getIndexFile(file).exists();
+	}
+
+	public static File getDataFile(File file) {
+		return new File(file.getPath() + DATA_SUFFIX);
+	}
+
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * @return the number of keys.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the value of the key, or null if it is not in the store.
+	 */
+	public String get(String key) {
+		byte[] keyBytes = key.getBytes(UTF8);
+		long hash = hash(keyBytes);
+		long slot = hash & (numSlots - 1);
+		while (true) {
+			long position = HEADER_SIZE + slot * SLOT_SIZE;
+			MappedByteBuffer segment = index[(int) (position / SEGMENT_SIZE)];
+			int p = (int) (position % SEGMENT_SIZE);
+			long offset = segment.getLong(p + 8);
+			if (offset == 0)
+				return null;
+			if (segment.getLong(p) == hash && keyEquals(offset, keyBytes))
+				return getValue(offset);
+			slot = (slot + 1) & (numSlots - 1);
+		}
+	}
+
+	private boolean keyEquals(long offset, byte[] key) {
+		MappedByteBuffer segment = data[(int) (offset / SEGMENT_SIZE)];
+		int p = (int) (offset % SEGMENT_SIZE);
+		if (segment.getInt(p) != key.length)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (segment.get(p + 4 + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	private byte[] getKey(long offset) {
+		ByteBuffer segment = data[(int) (offset / SEGMENT_SIZE)].duplicate();
+		int p = (int) (offset % SEGMENT_SIZE);
+		byte[] key = new byte[segment.getInt(p)];
+		segment.position(p + 4);
+		segment.get(key);
+		return key;
+	}
+
+	private String getValue(long offset) {
+		ByteBuffer segment = data[(int) (offset / SEGMENT_SIZE)].duplicate();
+		int p = (int) (offset % SEGMENT_SIZE);
+		p += 4 + segment.getInt(p);
+		byte[] value = new byte[segment.getInt(p)];
+		segment.position(p + 4);
+		segment.get(value);
+		return new String(value, UTF8);
+	}
+
+	/**
+	 * Unmapping is left to the garbage collector, the buffers stay valid
+	 * until they are not referenced anymore.
+	 */
+	@Override
+	public void close() {
+		Arrays.fill(data, null);
+		Arrays.fill(index, null);
+	}
+
+	// FNV-1a, with the bits mixed so that the low ones pick the slot
+	private static long hash(byte[] key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static MappedByteBuffer[] map(File file, MapMode mode, long length) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(file, mode == MapMode.READ_ONLY ? "r" : "rw");
+		try {
+			if (length >= 0) {
+				// zeroes, even where a previous file was
+				f.setLength(0);
+				f.setLength(length);
+			}
+			FileChannel channel = f.getChannel();
+			long fileLength = channel.size();
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((fileLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i * SEGMENT_SIZE;
+				segments[i] = channel.map(mode, start, Math.min(SEGMENT_SIZE, fileLength - start));
+			}
+			return segments;
+		} finally {
+			// the mappings stay valid after the file is closed
+			f.close();
+		}
+	}
+
+	/**
+	 * Writes the records to the data file as they are added, and the index
+	 * when it is finished. Only the hashes and offsets of the records are
+	 * kept in memory, 16 bytes per record. If a key is added more than once,
+	 * the first value is kept.
+	 */
+	public static class Builder implements Closeable {
+
+		private final File file;
+		private final DataOutputStream out;
+		private long position;
+		private long[] hashes = new long[1024];
+		private long[] offsets = new long[1024];
+		private int count = 0;
+
+		public Builder(File file) throws IOException {
+			this.file = file;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getDataFile(file)), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(0);
+			position = 8;
+		}
+
+		public void add(String key, String value) throws IOException {
+			byte[] keyBytes = key.getBytes(UTF8);
+			byte[] valueBytes = value.getBytes(UTF8);
+			long recordSize = 8L + keyBytes.length + valueBytes.length;
+			if (recordSize > SEGMENT_SIZE)
+				throw new IOException("Value of " + key + " is too large: " + valueBytes.length + " bytes");
+			long remaining = SEGMENT_SIZE - position % SEGMENT_SIZE;
+			if (recordSize > remaining) {
+				for (long i = 0; i < remaining; i++)
+					out.write(0);
+				position += remaining;
+			}
+			if (count == offsets.length) {
+				hashes = Arrays.copyOf(hashes, count * 2);
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			hashes[count] = hash(keyBytes);
+			offsets[count] = position;
+			count++;
+			out.writeInt(keyBytes.length);
+			out.write(keyBytes);
+			out.writeInt(valueBytes.length);
+			out.write(valueBytes);
+			position += recordSize;
+		}
+
+		/**
+		 * Closes the data file and writes the index.
+		 *
+		 * @return the number of distinct keys.
+		 */
+		public long finish() throws IOException {
+			out.close();
+			long numSlots = Long.highestOneBit(Math.max(2, count) * 2L - 1) * 2;
+			MappedByteBuffer[] index = map(getIndexFile(file), MapMode.READ_WRITE, HEADER_SIZE + numSlots * SLOT_SIZE);
+			index[0].putInt(0, MAGIC);
+			// the records, to compare the keys of equal hashes
+			MappedKeyValueStore store = new MappedKeyValueStore(map(getDataFile(file), MapMode.READ_ONLY, -1), index);
+			long size = 0;
+			for (int i = 0; i < count; i++) {
+				long slot = hashes[i] & (numSlots - 1);
+				while (true) {
+					long p = HEADER_SIZE + slot * SLOT_SIZE;
+					MappedByteBuffer segment = index[(int) (p / SEGMENT_SIZE)];
+					int s = (int) (p % SEGMENT_SIZE);
+					long offset = segment.getLong(s + 8);
+					if (offset == 0) {
+						segment.putLong(s, hashes[i]);
+						segment.putLong(s + 8, offsets[i]);
+						size++;
+						break;
+					}
+					if (segment.getLong(s) == hashes[i] && store.keyEquals(offset, store.getKey(offsets[i])))
+						break;
+					slot = (slot + 1) & (numSlots - 1);
+				}
+			}
+			index[0].putLong(8, size);
+			for (MappedByteBuffer segment : index)
+				segment.force();
+			hashes = null;
+			offsets = null;
+			return size;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package edu.isi.karma.storm.strategy;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * A {@link JoinStrategy} that looks up all the objects referenced by a tuple
+ * at once.
+ */
+public interface BatchJoinStrategy extends JoinStrategy {
+	/**
+	 * @return the objects of the uris that were found, by uri.
+	 */
+	public Map<String, JSONObject> get(Collection<String> uris);
+}
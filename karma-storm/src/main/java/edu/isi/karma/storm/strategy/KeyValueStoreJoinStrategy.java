@@ -0,0 +1,214 @@
+package edu.isi.karma.storm.strategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.storm.store.MappedKeyValueStore;
+
+/**
+ * Joins with JSON-LD objects kept in a {@link MappedKeyValueStore} on the
+ * local disk of the worker, by their id. If the store does not exist yet, it
+ * is built from a sequence file of JSON-LD, or a directory of them, like the
+ * ones written by the Karma MapReduce jobs. The store is opened, or built,
+ * once per worker and shared by all the executors of the worker, and built
+ * once per host when several workers share its path.
+ */
+public class KeyValueStoreJoinStrategy implements BatchJoinStrategy {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = LoggerFactory.getLogger(KeyValueStoreJoinStrategy.class);
+
+	// stores of this JVM, by absolute path
+	private static final Map<String, MappedKeyValueStore> stores = new HashMap<String, MappedKeyValueStore>();
+
+	private final String storePath;
+	private final String sourcePath;
+	private transient MappedKeyValueStore store;
+
+	/**
+	 * @param storePath
+	 *            the path of the store on the workers, without the suffixes
+	 *            of its files.
+	 */
+	public KeyValueStoreJoinStrategy(String storePath) {
+		this(storePath, null);
+	}
+
+	/**
+	 * @param storePath
+	 *            the path of the store on the workers, without the suffixes
+	 *            of its files.
+	 * @param sourcePath
+	 *            the sequence file or directory to build the store from if it
+	 *            does not exist, in any file system Hadoop can read.
+	 */
+	public KeyValueStoreJoinStrategy(String storePath, String sourcePath) {
+		this.storePath = storePath;
+		this.sourcePath = sourcePath;
+	}
+
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map globalConfig) {
+		Object atId = globalConfig.get("karma.context.atid");
+		try {
+			store = getStore(storePath, sourcePath, atId == null ? "uri" : atId.toString());
+		} catch (Exception e) {
+			LOG.error("Unable to open join store: " + storePath, e);
+		}
+	}
+
+	@Override
+	public JSONObject get(String uri) {
+		if (store == null)
+			return null;
+		String json = store.get(uri);
+		return json == null ? null : new JSONObject(json);
+	}
+
+	@Override
+	public Map<String, JSONObject> get(Collection<String> uris) {
+		Map<String, JSONObject> objects = new HashMap<String, JSONObject>();
+		for (String uri : uris) {
+			if (objects.containsKey(uri))
+				continue;
+			JSONObject object = get(uri);
+			if (object != null)
+				objects.put(uri, object);
+		}
+		return objects;
+	}
+
+	private static synchronized MappedKeyValueStore getStore(String storePath, String sourcePath, String atId)
+			throws IOException {
+		File file = new File(storePath).getAbsoluteFile();
+		MappedKeyValueStore store = stores.get(file.getPath());
+		if (store == null) {
+			if (!MappedKeyValueStore.exists(file)) {
+				if (sourcePath == null)
+					throw new IOException("No join store at " + file.getPath());
+				buildOnce(file, sourcePath, atId);
+			}
+			store = MappedKeyValueStore.open(file);
+			stores.put(file.getPath(), store);
+		}
+		return store;
+	}
+
+	/**
+	 * Builds the store unless another worker on the same host did it first.
+	 * The workers are separate JVMs, so they take a lock on a file next to
+	 * the store, and the one that builds it writes to temporary files and
+	 * moves them in place while holding it.
+	 */
+	private static void buildOnce(File file, String sourcePath, String atId) throws IOException {
+		RandomAccessFile lockFile = new RandomAccessFile(file.getPath() + ".lock", "rw");
+		try {
+			FileLock lock = lockFile.getChannel().lock();
+			try {
+				if (MappedKeyValueStore.exists(file))
+					return;
+				File tempFile = new File(file.getPath() + "." + System.nanoTime());
+				long start = System.currentTimeMillis();
+				long size = build(new Path(sourcePath), tempFile, atId, new Configuration());
+				// the index goes last, the store only exists once both are in place
+				move(MappedKeyValueStore.getDataFile(tempFile), MappedKeyValueStore.getDataFile(file));
+				move(MappedKeyValueStore.getIndexFile(tempFile), MappedKeyValueStore.getIndexFile(file));
+				LOG.info("Built join store " + file.getPath() + " with " + size + " objects in "
+						+ (System.currentTimeMillis() - start) + "ms");
+			} finally {
+				lock.release();
+			}
+		} finally {
+			lockFile.close();
+		}
+	}
+
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Builds a store of the JSON-LD objects of a sequence file, or of the
+	 * sequence files of a directory. The values of the records are JSON
+	 * objects or arrays of them, and each object is keyed by its id, or by
+	 * the key of the record if it has none.
+	 *
+	 * @return the number of objects in the store.
+	 */
+	public static long build(Path source, File file, String atId, Configuration conf) throws IOException {
+		FileSystem fs = source.getFileSystem(conf);
+		MappedKeyValueStore.Builder builder = new MappedKeyValueStore.Builder(file);
+		try {
+			for (FileStatus status : fs.listStatus(source)) {
+				String name = status.getPath().getName();
+				if (status.isDirectory() || name.startsWith("_") || name.startsWith("."))
+					continue;
+				SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()));
+				try {
+					Text key = new Text();
+					Text value = new Text();
+					while (reader.next(key, value)) {
+						String json = value.toString().trim();
+						if (json.startsWith("[")) {
+							JSONArray array = new JSONArray(json);
+							for (int i = 0; i < array.length(); i++)
+								add(builder, key.toString(), array.getJSONObject(i), atId);
+						} else if (json.startsWith("{")) {
+							add(builder, key.toString(), new JSONObject(json), atId);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+			return builder.finish();
+		} finally {
+			builder.close();
+		}
+	}
+
+	private static void add(MappedKeyValueStore.Builder builder, String key, JSONObject object, String atId)
+			throws IOException {
+		builder.add(object.has(atId) ? object.get(atId).toString() : key, object.toString());
+	}
+
+	/**
+	 * Builds a store ahead of time, to copy it to the workers.
+	 *
+	 * @param args
+	 *            the sequence file or directory, the path of the store, and
+	 *            optionally the name of the id of the objects.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: KeyValueStoreJoinStrategy <sequence file or directory> <store> [atid]");
+			System.exit(1);
+		}
+		long size = build(new Path(args[0]), new File(args[1]), args.length > 2 ? args[2] : "uri",
+				new Configuration());
+		LOG.info("Built join store " + args[1] + " with " + size + " objects");
+	}
+}
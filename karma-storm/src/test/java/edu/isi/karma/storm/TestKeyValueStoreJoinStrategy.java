@@ -0,0 +1,180 @@
+package edu.isi.karma.storm;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.Writer;
+import org.apache.hadoop.io.Text;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backtype.storm.Config;
+import backtype.storm.ILocalCluster;
+import backtype.storm.Testing;
+import backtype.storm.testing.CompleteTopologyParam;
+import backtype.storm.testing.MkClusterParam;
+import backtype.storm.testing.MockedSources;
+import backtype.storm.testing.TestJob;
+import backtype.storm.topology.TopologyBuilder;
+import backtype.storm.tuple.Values;
+import edu.isi.karma.storm.bolt.KarmaJoinBolt;
+import edu.isi.karma.storm.strategy.KeyValueStoreJoinStrategy;
+
+public class TestKeyValueStoreJoinStrategy {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(TestKeyValueStoreJoinStrategy.class);
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("karma_join").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	private String writeSequenceFile(String name, Map<String, String> records) throws IOException {
+		Path path = new Path(new File(tempDir, name).getAbsolutePath());
+		SequenceFile.Writer writer = SequenceFile.createWriter(new Configuration(), Writer.file(path),
+				Writer.keyClass(Text.class), Writer.valueClass(Text.class));
+		for (Map.Entry<String, String> record : records.entrySet())
+			writer.append(new Text(record.getKey()), new Text(record.getValue()));
+		writer.close();
+		return path.toString();
+	}
+
+	private static JSONObject org(int i) {
+		return new JSONObject().put("uri", "http://ex.com/org/" + i).put("name", "Org " + i);
+	}
+
+	private static Map<String, Object> getJoinConfig() {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("karma.context.atid", "uri");
+		config.put("karma.storm.mergepath", "worksFor");
+		config.put("karma.storm.join.object.field", "text");
+		return config;
+	}
+
+	@Test
+	public void testBuildAndGet() throws IOException {
+		Map<String, String> records = new HashMap<String, String>();
+		records.put("a", org(1).toString());
+		records.put("b", new JSONArray().put(org(2)).put(org(3)).toString());
+		records.put("http://ex.com/org/4", new JSONObject().put("name", "Org 4").toString());
+		String source = writeSequenceFile("part-00000", records);
+
+		KeyValueStoreJoinStrategy strategy = new KeyValueStoreJoinStrategy(
+				new File(tempDir, "store").getAbsolutePath(), source);
+		strategy.prepare(getJoinConfig());
+		Assert.assertEquals("Org 1", strategy.get("http://ex.com/org/1").getString("name"));
+		Assert.assertEquals("Org 3", strategy.get("http://ex.com/org/3").getString("name"));
+		Assert.assertEquals("Org 4", strategy.get("http://ex.com/org/4").getString("name"));
+		Assert.assertNull(strategy.get("http://ex.com/org/5"));
+
+		Map<String, JSONObject> objects = strategy.get(Arrays.asList("http://ex.com/org/2",
+				"http://ex.com/org/5", "http://ex.com/org/2"));
+		Assert.assertEquals(1, objects.size());
+		Assert.assertEquals("Org 2", objects.get("http://ex.com/org/2").getString("name"));
+
+		// the store is reopened, not rebuilt, without the source
+		KeyValueStoreJoinStrategy reopened = new KeyValueStoreJoinStrategy(
+				new File(tempDir, "store").getAbsolutePath());
+		reopened.prepare(getJoinConfig());
+		Assert.assertEquals("Org 1", reopened.get("http://ex.com/org/1").getString("name"));
+	}
+
+	@Test
+	public void testIncompleteStoreIsRebuilt() throws IOException {
+		Map<String, String> records = new HashMap<String, String>();
+		records.put("a", org(1).toString());
+		String source = writeSequenceFile("part-00000", records);
+
+		// a data file without its index, left by a worker that died
+		File store = new File(tempDir, "store");
+		FileUtils.writeStringToFile(new File(store.getPath() + ".data"), "incomplete");
+
+		KeyValueStoreJoinStrategy strategy = new KeyValueStoreJoinStrategy(store.getAbsolutePath(), source);
+		strategy.prepare(getJoinConfig());
+		Assert.assertEquals("Org 1", strategy.get("http://ex.com/org/1").getString("name"));
+		// no temporary files are left next to the store
+		Assert.assertEquals(2, tempDir.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("store.") && !name.endsWith(".lock");
+			}
+		}).length);
+	}
+
+	@Test
+	public void testJoinRate() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("karma.benchmark"));
+		final int numOrgs = Integer.getInteger("karma.benchmark.orgs", 100000);
+		final int numPeople = Integer.getInteger("karma.benchmark.people", 20000);
+		Map<String, String> records = new HashMap<String, String>();
+		for (int i = 0; i < numOrgs; i++)
+			records.put(String.valueOf(i), org(i).toString());
+		final String source = writeSequenceFile("orgs", records);
+
+		MkClusterParam mkClusterParam = new MkClusterParam();
+		Config daemonConf = new Config();
+		daemonConf.put(Config.STORM_LOCAL_MODE_ZMQ, false);
+		mkClusterParam.setDaemonConf(daemonConf);
+		Testing.withLocalCluster(mkClusterParam, new TestJob() {
+
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			@Override
+			public void run(ILocalCluster cluster) throws Exception {
+				TopologyBuilder builder = new TopologyBuilder();
+				builder.setSpout("people-spout", new BasicJSONTestSpout());
+				KeyValueStoreJoinStrategy strategy = new KeyValueStoreJoinStrategy(
+						new File(tempDir, "orgs-store").getAbsolutePath(), source);
+				builder.setBolt("karma-join", new KarmaJoinBolt(getJoinConfig(), strategy), 2)
+						.shuffleGrouping("people-spout");
+
+				List<Values> values = new ArrayList<Values>(numPeople);
+				for (int i = 0; i < numPeople; i++) {
+					JSONObject person = new JSONObject().put("uri", "http://ex.com/person/" + i)
+							.put("worksFor", new JSONObject().put("uri", "http://ex.com/org/" + (i * 7 % numOrgs)));
+					values.add(new Values(String.valueOf(i), person.toString()));
+				}
+				MockedSources mockedSources = new MockedSources();
+				mockedSources.addMockData("people-spout", values.toArray(new Values[values.size()]));
+				CompleteTopologyParam completeTopologyParam = new CompleteTopologyParam();
+				completeTopologyParam.setMockedSources(mockedSources);
+				completeTopologyParam.setStormConf(new Config());
+
+				long start = System.currentTimeMillis();
+				Map results = Testing.completeTopology(cluster, builder.createTopology(), completeTopologyParam);
+				long elapsed = System.currentTimeMillis() - start;
+				List<List<Object>> joined = (List<List<Object>>) results.get("karma-join");
+				Assert.assertEquals(numPeople, joined.size());
+				JSONObject person = new JSONObject(joined.get(0).get(1).toString());
+				Assert.assertTrue(person.getJSONObject("worksFor").has("name"));
+				LOG.info("Joined " + numPeople + " objects with " + numOrgs + " in " + elapsed + "ms, "
+						+ (numPeople * 1000L / Math.max(1, elapsed)) + " objects/s");
+			}
+		});
+	}
+}
@@ -3,7 +3,18 @@ package edu.isi.karma.semantictypes.tfIdf;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -11,8 +22,10 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -28,14 +41,23 @@ import edu.isi.karma.modeling.semantictypes.SemanticTypeLabel;
  * This class is responsible for predicting top-k suggestions for textual data
  * using TF-IDF based cosine similarity approach and checking if a document for
  * a semantic label already exists
+ * <p>
+ * A searcher can be shared by many threads: the queries of a batch of columns
+ * are run concurrently against its reader by
+ * {@link #getTopK(int, Map, int)}. The text of a column repeats the same few
+ * terms many times, so the terms are looked up once in the index and their
+ * lookups shared by all the clauses of the queries.
  * 
  * @author ramnandan
  * 
  */
 public class Searcher {
+	private static final Set<String> LABEL_FIELD = Collections.singleton(Indexer.LABEL_FIELD_NAME);
+
 	private IndexSearcher indexSearcher = null;
 	private Analyzer analyzer = null;
 	private QueryParser parser = null;
+	private String fieldName;
 
 	public Searcher(String filepath, String fieldName) throws IOException {
 		IndexReader reader = DirectoryReader.open(FSDirectory.open(new File(
@@ -43,40 +65,171 @@ public class Searcher {
 		indexSearcher = new IndexSearcher(reader);
 		analyzer = new StandardAnalyzer(Version.LUCENE_48);
 		if (fieldName.equalsIgnoreCase(Indexer.LABEL_FIELD_NAME)) {
-			parser = new QueryParser(Version.LUCENE_48,
-					Indexer.LABEL_FIELD_NAME, analyzer);
+			this.fieldName = Indexer.LABEL_FIELD_NAME;
 		} else {
-			parser = new QueryParser(Version.LUCENE_48,
-					Indexer.CONTENT_FIELD_NAME, analyzer);
+			this.fieldName = Indexer.CONTENT_FIELD_NAME;
 		}
+		parser = newParser();
+	}
 
+	private QueryParser newParser() {
+		return new QueryParser(Version.LUCENE_48, fieldName, analyzer);
 	}
 
 	public List<SemanticTypeLabel> getTopK(int k, String content)
 			throws ParseException, IOException {
-		List<SemanticTypeLabel> result = new ArrayList<>();
-		content = content.toLowerCase().replaceAll("and", " ").replaceAll("or", " ").replaceAll("\\+", "").replaceAll("\\-", "");
-		
-		int spaces = content.length() - content.replace(" ", "").length();
-		if (spaces > BooleanQuery.getMaxClauseCount()) {
-			BooleanQuery.setMaxClauseCount(spaces);
+		content = getQueryText(content);
+		ensureMaxClauseCount(countSpaces(content));
+		return getTopK(k, content, parser, new ConcurrentHashMap<Term, TermContext>());
+	}
+
+	/**
+	 * Gets the top-k suggestions of many columns, running their queries on
+	 * numThreads threads. The query parser is not thread safe, every query
+	 * gets its own.
+	 * 
+	 * @param contentByColumn
+	 *            the text of each column, by column id
+	 * @return the suggestions of each column, in the order of the columns
+	 */
+	public Map<String, List<SemanticTypeLabel>> getTopK(final int k,
+			Map<String, String> contentByColumn, int numThreads)
+			throws ParseException, IOException {
+		Map<String, String> queryTexts = new LinkedHashMap<>();
+		int maxSpaces = 0;
+		for (Entry<String, String> entry : contentByColumn.entrySet()) {
+			String content = getQueryText(entry.getValue());
+			queryTexts.put(entry.getKey(), content);
+			maxSpaces = Math.max(maxSpaces, countSpaces(content));
+		}
+		// the max clause count is global, set it once for the whole batch
+		ensureMaxClauseCount(maxSpaces);
+
+		final ConcurrentHashMap<Term, TermContext> termContexts = new ConcurrentHashMap<>();
+		Map<String, Future<List<SemanticTypeLabel>>> futures = new LinkedHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(numThreads, queryTexts.size())));
+		try {
+			for (Entry<String, String> entry : queryTexts.entrySet()) {
+				final String content = entry.getValue();
+				futures.put(entry.getKey(), executor.submit(new Callable<List<SemanticTypeLabel>>() {
+					@Override
+					public List<SemanticTypeLabel> call() throws Exception {
+						return getTopK(k, content, newParser(), termContexts);
+					}
+				}));
+			}
+			Map<String, List<SemanticTypeLabel>> result = new LinkedHashMap<>();
+			for (Entry<String, Future<List<SemanticTypeLabel>>> entry : futures.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().get());
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while predicting the types of the columns", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ParseException)
+				throw (ParseException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
 		}
+	}
+
+	private List<SemanticTypeLabel> getTopK(int k, String content, QueryParser parser,
+			ConcurrentHashMap<Term, TermContext> termContexts)
+			throws ParseException, IOException {
+		List<SemanticTypeLabel> result = new ArrayList<>();
 
 		//System.out.println("Query: " + content);
-		Query query = parser.parse(QueryParser.escape(content));
+		Query query = shareTermContexts(parser.parse(QueryParser.escape(content)), termContexts);
 
 		TopDocs results = indexSearcher.search(query, k);
 		ScoreDoc[] hits = results.scoreDocs;
 		//System.out.println("Num Hits:" + hits.length);
 		
 		for (int i = 0; i < hits.length; i++) {
-			Document doc = indexSearcher.doc(hits[i].doc);
+			// the content of the documents is large, only the label is read
+			Document doc = indexSearcher.doc(hits[i].doc, LABEL_FIELD);
 			String labelString = doc.get(Indexer.LABEL_FIELD_NAME);
 			result.add(new SemanticTypeLabel(labelString, hits[i].score));
 		}
 		return result;
 	}
 
+	/**
+	 * Copies the term queries of the query with the lookups of their terms,
+	 * made once per term. The copy has the same clauses and scores as the
+	 * query.
+	 */
+	private Query shareTermContexts(Query query,
+			ConcurrentHashMap<Term, TermContext> termContexts) throws IOException {
+		if (query instanceof TermQuery) {
+			Term term = ((TermQuery) query).getTerm();
+			TermContext termContext = termContexts.get(term);
+			if (termContext == null) {
+				termContext = TermContext.build(indexSearcher.getTopReaderContext(), term);
+				termContexts.putIfAbsent(term, termContext);
+			}
+			TermQuery termQuery = new TermQuery(term, termContext);
+			termQuery.setBoost(query.getBoost());
+			return termQuery;
+		}
+		if (query instanceof BooleanQuery) {
+			BooleanQuery booleanQuery = (BooleanQuery) query;
+			BooleanQuery copy = new BooleanQuery(booleanQuery.isCoordDisabled());
+			copy.setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+			copy.setBoost(booleanQuery.getBoost());
+			for (BooleanClause clause : booleanQuery.clauses()) {
+				copy.add(shareTermContexts(clause.getQuery(), termContexts), clause.getOccur());
+			}
+			return copy;
+		}
+		return query;
+	}
+
+	/**
+	 * Lower cases the content and, in one pass, replaces "and" and "or" by a
+	 * space and removes "+" and "-", as the query parser would take them for
+	 * operators.
+	 */
+	static String getQueryText(String content) {
+		content = content.toLowerCase();
+		int length = content.length();
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			char c = content.charAt(i);
+			if (c == '+' || c == '-') {
+				continue;
+			}
+			if (c == 'a' && content.startsWith("and", i)) {
+				text.append(' ');
+				i += 2;
+			} else if (c == 'o' && content.startsWith("or", i)) {
+				text.append(' ');
+				i += 1;
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+
+	private static int countSpaces(String content) {
+		int spaces = 0;
+		for (int i = 0; i < content.length(); i++) {
+			if (content.charAt(i) == ' ')
+				spaces++;
+		}
+		return spaces;
+	}
+
+	private static void ensureMaxClauseCount(int spaces) {
+		if (spaces > BooleanQuery.getMaxClauseCount()) {
+			BooleanQuery.setMaxClauseCount(spaces);
+		}
+	}
+
 	public Document getDocumentForLabel(String label) throws IOException {
 		Query query = new TermQuery(
 				new Term(Indexer.LABEL_FIELD_NAME, label));
@@ -3,7 +3,10 @@ package edu.isi.karma.semantictypes.typinghandler;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
@@ -204,18 +207,11 @@ public class LuceneBasedSTModelHandler implements ISemanticTypeModelHandler {
 		logger.debug("Predic Type for " + examples.toArray().toString());
 		// get top-k suggestions
 		if (indexDirectoryExists()) {
-			// construct single text for test column
-			StringBuilder sb = new StringBuilder();
-			for (String ex : examples) {
-				sb.append(ex);
-				sb.append(" ");
-			}
-			
 			try {
 				Searcher predictor = new Searcher(indexDirectory,
 						Indexer.CONTENT_FIELD_NAME);
 				try {
-					List<SemanticTypeLabel> result = predictor.getTopK(numPredictions, sb.toString());
+					List<SemanticTypeLabel> result = predictor.getTopK(numPredictions, getColumnText(examples));
 					logger.debug("Got " + result.size() + " predictions");
 					return result;
 				} finally {
@@ -229,6 +225,74 @@ public class LuceneBasedSTModelHandler implements ISemanticTypeModelHandler {
 		return null;
 	}
 
+	/**
+	 * Predicts the types of the columns with one searcher, which runs the
+	 * queries of the columns concurrently on its index reader, instead of
+	 * opening the index once per column.
+	 * 
+	 * @param examplesByColumn
+	 *            - the examples of each column, by column id. Columns without
+	 *            examples are left out of the result.
+	 * @param numPredictions
+	 *            - required number of predictions per column in descending
+	 *            order
+	 * @return the predictions of each column, in the order of the columns
+	 */
+	@Override
+	public Map<String, List<SemanticTypeLabel>> predictTypes(
+			Map<String, List<String>> examplesByColumn, int numPredictions) {
+
+		if (!this.modelEnabled) {
+			logger.warn("Semantic Type Modeling is not enabled");
+			return null;
+		}
+
+		if (examplesByColumn == null || numPredictions <= 0) {
+			logger.warn("Invalid arguments. Possible problems: no columns, numPredictions is non-positive");
+			return null;
+		}
+
+		if (indexDirectoryExists()) {
+			Map<String, String> contentByColumn = new LinkedHashMap<String, String>();
+			for (Entry<String, List<String>> entry : examplesByColumn.entrySet()) {
+				List<String> examples = entry.getValue();
+				if (examples != null && examples.size() > 0)
+					contentByColumn.put(entry.getKey(), getColumnText(examples));
+			}
+			if (contentByColumn.isEmpty())
+				return new LinkedHashMap<String, List<SemanticTypeLabel>>();
+
+			try {
+				Searcher predictor = new Searcher(indexDirectory,
+						Indexer.CONTENT_FIELD_NAME);
+				try {
+					Map<String, List<SemanticTypeLabel>> result = predictor.getTopK(numPredictions,
+							contentByColumn, Runtime.getRuntime().availableProcessors());
+					logger.debug("Got predictions for " + result.size() + " columns");
+					return result;
+				} finally {
+					predictor.close();
+				}
+			} catch (ParseException | IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the examples of a column as a single text
+	 */
+	private String getColumnText(List<String> examples) {
+		StringBuilder sb = new StringBuilder();
+		for (String ex : examples) {
+			sb.append(ex);
+			sb.append(" ");
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * @return True if successfully cleared the model. False, otherwise. This
 	 *         method removes all labels from the model.
@@ -1,11 +1,21 @@
 package edu.isi.karma.modeling.semantictypes;
 
 import java.util.List;
+import java.util.Map;
 
 
 public interface ISemanticTypeModelHandler {
 	public boolean addType(String label, List<String> examples);
 	public List<SemanticTypeLabel> predictType(List<String> examples, int numPredictions);
+	/**
+	 * Predicts the types of many columns at once.
+	 * 
+	 * @param examplesByColumn
+	 *            the examples of each column, by column id
+	 * @return the predictions of each column that could be predicted, by
+	 *         column id, or null if no prediction could be made
+	 */
+	public Map<String, List<SemanticTypeLabel>> predictTypes(Map<String, List<String>> examplesByColumn, int numPredictions);
 	public boolean removeAllLabels();
 	public boolean readModelFromFile(String filepath);
 	public void setModelHandlerEnabled(boolean enabled);
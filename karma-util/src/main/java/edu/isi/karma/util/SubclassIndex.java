@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instantiates the subclasses of a type annotated with {@link IndexSubclasses}
+ * from the index that {@link SubclassIndexProcessor} writes to
+ * META-INF/services in every jar.
+ */
+public class SubclassIndex {
+
+	private static Logger logger = LoggerFactory.getLogger(SubclassIndex.class);
+
+	/**
+	 * Set this system property to true to scan the classpath instead of
+	 * reading the index, e.g. when the classes were compiled without
+	 * annotation processing.
+	 */
+	public static final String SCAN_CLASSPATH_PROPERTY = "karma.scanClasspath";
+
+	private SubclassIndex() {
+	}
+
+	public static boolean isClasspathScanRequested() {
+		return Boolean.getBoolean(SCAN_CLASSPATH_PROPERTY);
+	}
+
+	/**
+	 * @return an instance of every indexed subclass of the type. The classes
+	 *         that cannot be loaded or instantiated are logged and skipped.
+	 */
+	public static <T> List<T> load(Class<T> type) {
+		List<T> instances = new ArrayList<T>();
+		Iterator<T> iterator = ServiceLoader.load(type, type.getClassLoader()).iterator();
+		while (true) {
+			try {
+				if (!iterator.hasNext())
+					break;
+				instances.add(iterator.next());
+			} catch (ServiceConfigurationError e) {
+				logger.error("Error instantiating a subclass of " + type.getName(), e);
+			}
+		}
+		return instances;
+	}
+}
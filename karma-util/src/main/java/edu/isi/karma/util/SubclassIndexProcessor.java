@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Lists the concrete subclasses of the types annotated with
+ * {@link IndexSubclasses} in META-INF/services/&lt;type&gt;, the format read by
+ * {@link java.util.ServiceLoader}. Each module gets the index of the classes it
+ * compiles, and {@link SubclassIndex} reads the indexes of all the jars.
+ * <p>
+ * The processor is registered in this jar, so javac runs it on every module
+ * that has karma-util on its classpath.
+ */
+@SupportedAnnotationTypes("*")
+public class SubclassIndexProcessor extends AbstractProcessor {
+
+	private static final String SERVICES = "META-INF/services/";
+
+	// indexed type -> binary names of its subclasses
+	private final Map<String, Set<String>> index = new TreeMap<String, Set<String>>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		} else {
+			for (Element e : roundEnv.getRootElements())
+				indexType(e);
+		}
+		// do not claim any annotation, other processors may need them
+		return false;
+	}
+
+	private void indexType(Element e) {
+		if (!e.getKind().isClass() && !e.getKind().isInterface())
+			return;
+		TypeElement type = (TypeElement) e;
+		if (type.getKind() == ElementKind.CLASS && isInstantiable(type)) {
+			Set<String> indexedTypes = new TreeSet<String>();
+			collectIndexedSupertypes(type.asType(), indexedTypes);
+			for (String indexedType : indexedTypes) {
+				if (!hasPublicNoArgConstructor(type)) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+							type.getQualifiedName() + " is not listed as a subclass of " + indexedType
+							+ ", it does not have a public no-arg constructor", type);
+					continue;
+				}
+				getSubclasses(indexedType).add(processingEnv.getElementUtils().getBinaryName(type).toString());
+			}
+		}
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+			indexType(nested);
+	}
+
+	private boolean isInstantiable(TypeElement type) {
+		Set<Modifier> modifiers = type.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT))
+			return false;
+		Element enclosing = type.getEnclosingElement();
+		if (enclosing.getKind() == ElementKind.PACKAGE)
+			return true;
+		return modifiers.contains(Modifier.STATIC) && isInstantiableEnclosing(enclosing);
+	}
+
+	private boolean isInstantiableEnclosing(Element e) {
+		if (e.getKind() == ElementKind.PACKAGE)
+			return true;
+		return e.getModifiers().contains(Modifier.PUBLIC) && isInstantiableEnclosing(e.getEnclosingElement());
+	}
+
+	private static boolean hasPublicNoArgConstructor(TypeElement type) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+				return true;
+		}
+		return false;
+	}
+
+	private void collectIndexedSupertypes(TypeMirror type, Set<String> indexedTypes) {
+		for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+			if (supertype.getKind() != TypeKind.DECLARED)
+				continue;
+			TypeElement element = (TypeElement) ((DeclaredType) supertype).asElement();
+			if (element.getAnnotation(IndexSubclasses.class) != null)
+				indexedTypes.add(processingEnv.getElementUtils().getBinaryName(element).toString());
+			collectIndexedSupertypes(supertype, indexedTypes);
+		}
+	}
+
+	private Set<String> getSubclasses(String indexedType) {
+		Set<String> subclasses = index.get(indexedType);
+		if (subclasses == null) {
+			subclasses = new TreeSet<String>();
+			index.put(indexedType, subclasses);
+		}
+		return subclasses;
+	}
+
+	private void writeIndex() {
+		for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+			String path = SERVICES + entry.getKey();
+			Set<String> subclasses = entry.getValue();
+			// keep the classes of an earlier compilation that were not
+			// recompiled this time, as long as they still exist
+			for (String subclass : readIndex(path)) {
+				if (processingEnv.getElementUtils().getTypeElement(subclass.replace('$', '.')) != null)
+					subclasses.add(subclass);
+			}
+			try {
+				FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+				PrintWriter pw = new PrintWriter(file.openWriter());
+				try {
+					for (String subclass : subclasses)
+						pw.println(subclass);
+				} finally {
+					pw.close();
+				}
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Unable to write " + path + ": " + e.getMessage());
+			}
+		}
+		index.clear();
+	}
+
+	private Set<String> readIndex(String path) {
+		Set<String> subclasses = new TreeSet<String>();
+		try {
+			FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", path);
+			BufferedReader reader = new BufferedReader(file.openReader(true));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#"))
+						subclasses.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			// there is no index from an earlier compilation
+		}
+		return subclasses;
+	}
+}
@@ -0,0 +1,298 @@
+package edu.isi.karma.web.services.publish.es;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes json documents to the bulk api of Elastic Search.
+ * The documents are serialized into a pool of reusable buffers. A buffer is sent when it
+ * holds maxBulkBytes bytes or maxBulkDocuments documents, and up to concurrentRequests
+ * buffers are in flight at the same time. When all the buffers are in flight,
+ * {@link #add(JSONObject)} blocks until one of them is sent.
+ * If the bulk response reports per-item failures, only the items that were rejected
+ * (429) or failed on the server (5xx) are sent again.
+ */
+public class ElasticSearchBulkPublisher {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(ElasticSearchBulkPublisher.class);
+
+	public static final int DEFAULT_MAX_BULK_BYTES = 5 * 1024 * 1024;
+	public static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+	public static final int DEFAULT_MAX_RETRIES = 10;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 100;
+
+	private static final ContentType BULK_CONTENT_TYPE = ContentType.create("application/json", "UTF-8");
+
+	private final HttpClient httpClient;
+	private final String bulkUrl;
+	private final String index;
+	private final String type;
+	private final int maxBulkBytes;
+	private final int maxBulkDocuments;
+	private final int maxRetries;
+	private final long retryDelayMillis;
+
+	private final ExecutorService executor;
+	private final BlockingQueue<BulkBuffer> freeBuffers;
+	private BulkBuffer current;
+
+	private final AtomicLong indexedDocuments = new AtomicLong();
+	private final AtomicLong failedDocuments = new AtomicLong();
+	private final AtomicLong sentBytes = new AtomicLong();
+	private final long startTime;
+	private long elapsedTime = -1;
+	private volatile Exception failure;
+
+	public ElasticSearchBulkPublisher(HttpClient httpClient, ElasticSearchConfig esConfig) {
+		this(httpClient, esConfig, DEFAULT_MAX_BULK_BYTES, Integer.MAX_VALUE,
+				DEFAULT_CONCURRENT_REQUESTS, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_DELAY_MILLIS);
+	}
+
+	public ElasticSearchBulkPublisher(HttpClient httpClient, ElasticSearchConfig esConfig,
+			int maxBulkBytes, int maxBulkDocuments, int concurrentRequests,
+			int maxRetries, long retryDelayMillis) {
+		this.httpClient = httpClient;
+		this.bulkUrl = esConfig.getProtocol() + "://" + esConfig.getHostname() +
+				":" + esConfig.getPort() + "/" + esConfig.getIndex() + "/_bulk";
+		this.index = esConfig.getIndex();
+		this.type = esConfig.getType();
+		this.maxBulkBytes = maxBulkBytes;
+		this.maxBulkDocuments = maxBulkDocuments;
+		this.maxRetries = maxRetries;
+		this.retryDelayMillis = retryDelayMillis;
+
+		this.executor = Executors.newFixedThreadPool(concurrentRequests);
+		int initialBufferSize = Math.min(maxBulkBytes, DEFAULT_MAX_BULK_BYTES);
+		// one buffer is filled while the others are in flight
+		this.freeBuffers = new ArrayBlockingQueue<BulkBuffer>(concurrentRequests + 1);
+		for (int i = 0; i < concurrentRequests; i++)
+			this.freeBuffers.add(new BulkBuffer(initialBufferSize));
+		this.current = new BulkBuffer(initialBufferSize);
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Adds the document to the current bulk. The uri of the document is used as its id.
+	 */
+	public void add(JSONObject document) throws IOException, InterruptedException {
+		if (failure != null)
+			throw new IOException("Error in publishing to " + bulkUrl, failure);
+
+		String id = document.has("uri") ? document.getString("uri") : null;
+		current.startItem();
+		Writer writer = current.getWriter();
+		writer.write("{\"index\":{\"_index\":");
+		writer.write(JSONObject.quote(index));
+		writer.write(",\"_type\":");
+		writer.write(JSONObject.quote(type));
+		if (id != null) {
+			writer.write(",\"_id\":");
+			writer.write(JSONObject.quote(id));
+		}
+		writer.write("}}\n");
+		document.write(writer);
+		writer.write('\n');
+		writer.flush();
+
+		if (current.size() >= maxBulkBytes || current.getItemCount() >= maxBulkDocuments) {
+			submit(current);
+			current = freeBuffers.take();
+		}
+	}
+
+	/**
+	 * Sends the last bulk and waits for all the requests to finish.
+	 * @throws IOException if a bulk could not be sent
+	 */
+	public void close() throws IOException, InterruptedException {
+		try {
+			if (current.getItemCount() > 0 && failure == null)
+				submit(current);
+		} finally {
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				logger.info("waiting for the bulk requests to " + bulkUrl);
+			elapsedTime = System.currentTimeMillis() - startTime;
+		}
+		logger.info("Published " + indexedDocuments.get() + " documents (" + failedDocuments.get() +
+				" failed, " + sentBytes.get() + " bytes) in " + elapsedTime + "ms, " +
+				Math.round(getDocumentsPerSecond()) + " documents/s");
+		if (failure != null)
+			throw new IOException("Error in publishing to " + bulkUrl, failure);
+	}
+
+	public long getIndexedDocuments() {
+		return indexedDocuments.get();
+	}
+
+	public long getFailedDocuments() {
+		return failedDocuments.get();
+	}
+
+	public long getSentBytes() {
+		return sentBytes.get();
+	}
+
+	public double getDocumentsPerSecond() {
+		long elapsed = elapsedTime >= 0 ? elapsedTime : System.currentTimeMillis() - startTime;
+		return indexedDocuments.get() * 1000.0 / Math.max(1, elapsed);
+	}
+
+	private void submit(final BulkBuffer buffer) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (failure == null)
+						send(buffer);
+				} catch (Exception e) {
+					logger.error("Error in publishing a bulk to " + bulkUrl, e);
+					if (failure == null) failure = e;
+				} finally {
+					buffer.reset();
+					freeBuffers.offer(buffer);
+				}
+			}
+		});
+	}
+
+	private void send(BulkBuffer buffer) throws Exception {
+		BulkBuffer pending = buffer;
+		long delay = retryDelayMillis;
+		for (int attempt = 0; ; attempt++) {
+			BulkBuffer retry = null;
+			try {
+				retry = post(pending);
+			} catch (IOException e) {
+				if (attempt >= maxRetries)
+					throw e;
+				logger.warn("Error in sending a bulk to " + bulkUrl + " : " + e.getMessage() + ", retrying");
+				retry = pending;
+			}
+			if (retry == null)
+				return;
+			if (attempt >= maxRetries) {
+				failedDocuments.addAndGet(retry.getItemCount());
+				logger.error(retry.getItemCount() + " documents could not be published after " +
+						(attempt + 1) + " attempts");
+				return;
+			}
+			pending = retry;
+			Thread.sleep(delay);
+			delay = Math.min(delay * 2, 10000);
+		}
+	}
+
+	/**
+	 * Posts the bulk.
+	 * @return a bulk with the items to retry, or null if there is nothing to retry
+	 */
+	private BulkBuffer post(BulkBuffer bulk) throws IOException {
+		HttpPost httpPost = new HttpPost(bulkUrl);
+		httpPost.setEntity(new ByteArrayEntity(bulk.getBytes(), 0, bulk.size(), BULK_CONTENT_TYPE));
+		HttpResponse response = httpClient.execute(httpPost);
+		int code = response.getStatusLine().getStatusCode();
+		String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity(), "UTF-8");
+		sentBytes.addAndGet(bulk.size());
+
+		if (code == 429 || code >= 500)
+			throw new IOException("StatusCode " + code + " from " + bulkUrl);
+		if (code < 200 || code >= 300) {
+			failedDocuments.addAndGet(bulk.getItemCount());
+			logger.error("StatusCode " + code + " from " + bulkUrl + " : " + body);
+			return null;
+		}
+
+		JSONObject result = (body == null || body.isEmpty()) ? null : new JSONObject(body);
+		if (result == null || !result.optBoolean("errors", false)) {
+			indexedDocuments.addAndGet(bulk.getItemCount());
+			return null;
+		}
+
+		JSONArray items = result.getJSONArray("items");
+		BulkBuffer retry = null;
+		for (int i = 0; i < items.length() && i < bulk.getItemCount(); i++) {
+			JSONObject item = items.getJSONObject(i);
+			JSONObject itemResult = item.getJSONObject((String) item.keys().next());
+			int status = itemResult.optInt("status", 200);
+			if (status >= 200 && status < 300) {
+				indexedDocuments.incrementAndGet();
+			} else if (status == 429 || status >= 500) {
+				if (retry == null)
+					retry = new BulkBuffer(bulk.size());
+				retry.copyItem(bulk, i);
+			} else {
+				failedDocuments.incrementAndGet();
+				logger.error("Error in publishing a document: " + itemResult.opt("error"));
+			}
+		}
+		return retry;
+	}
+
+	/**
+	 * A reusable buffer holding the body of one bulk request and the offsets of its items.
+	 */
+	private static class BulkBuffer extends ByteArrayOutputStream {
+
+		private final Writer writer;
+		private int[] itemOffsets = new int[256];
+		private int itemCount;
+
+		BulkBuffer(int size) {
+			super(size);
+			this.writer = new OutputStreamWriter(this, BULK_CONTENT_TYPE.getCharset());
+		}
+
+		Writer getWriter() {
+			return writer;
+		}
+
+		void startItem() {
+			if (itemCount == itemOffsets.length)
+				itemOffsets = Arrays.copyOf(itemOffsets, itemCount * 2);
+			itemOffsets[itemCount++] = count;
+		}
+
+		int getItemCount() {
+			return itemCount;
+		}
+
+		byte[] getBytes() {
+			return buf;
+		}
+
+		void copyItem(BulkBuffer from, int item) {
+			int start = from.itemOffsets[item];
+			int end = (item + 1 < from.itemCount) ? from.itemOffsets[item + 1] : from.count;
+			startItem();
+			write(from.buf, start, end - start);
+		}
+
+		@Override
+		public synchronized void reset() {
+			super.reset();
+			itemCount = 0;
+		}
+	}
+}
@@ -21,11 +21,9 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContextBuilder;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.json.JSONArray;
@@ -63,8 +61,13 @@ public class ElasticSearchPublishServlet extends Application {
 			.getLogger(ElasticSearchPublishServlet.class);
 
 	private static final int retry = 10;
-	private int bulksize = 100;
-	private int sleepTime = 100;
+	private static final int MAX_CONNECTIONS = 32;
+	private static CloseableHttpClient sharedHttpClient;
+	private static CloseableHttpClient sharedHttpsClient;
+	
+	private int bulksize = Integer.MAX_VALUE;
+	private int bulkBytes = ElasticSearchBulkPublisher.DEFAULT_MAX_BULK_BYTES;
+	private int concurrentRequests = ElasticSearchBulkPublisher.DEFAULT_CONCURRENT_REQUESTS;
 	private ServletContext context;
 	
 	public ElasticSearchPublishServlet(@Context ServletContext context) {
@@ -72,9 +75,12 @@ public class ElasticSearchPublishServlet extends Application {
 		String bulksize = context.getInitParameter("ESBulkSize");
 		if(bulksize != null)
 			this.bulksize = Integer.parseInt(bulksize);
-		String sleep = context.getInitParameter("ESUploadInterval");
-		if(sleep != null)
-			this.sleepTime = Integer.parseInt(sleep);
+		String bulkBytes = context.getInitParameter("ESBulkBytes");
+		if(bulkBytes != null)
+			this.bulkBytes = Integer.parseInt(bulkBytes);
+		String concurrentRequests = context.getInitParameter("ESConcurrentRequests");
+		if(concurrentRequests != null)
+			this.concurrentRequests = Math.min(MAX_CONNECTIONS, Integer.parseInt(concurrentRequests));
 	}
 
 	@POST
@@ -138,13 +144,6 @@ public class ElasticSearchPublishServlet extends Application {
 	private String publishES(String jsonld, ElasticSearchConfig esConfig) throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException {
 		
 		CloseableHttpClient httpClient = getHttpClient(esConfig);
-		HttpPost httpPost = getHttpPost(esConfig);
-		
-		String bulkFormat = null;
-		StringBuilder sb = new StringBuilder();
-		
-//		System.out.println("GOt JSONLD:");
-//		System.out.println(jsonld);
 		
 		logger.info("Got JSONLD, now pushing to ES");
 		JSONArray jsonArray = null;
@@ -157,73 +156,17 @@ public class ElasticSearchPublishServlet extends Application {
 		}
 		logger.info("FInished de-serializing JSON-LD");
 		
-		long counter = 0;
+		ElasticSearchBulkPublisher publisher = new ElasticSearchBulkPublisher(httpClient, esConfig,
+				bulkBytes, bulksize, concurrentRequests, retry, ElasticSearchBulkPublisher.DEFAULT_RETRY_DELAY_MILLIS);
 		Exception postException = null;
-		String index = esConfig.getIndex();
-		String type = esConfig.getType();
-		
-		for(int k=0; k<jsonArray.length(); k++) {
-			JSONObject jObj = jsonArray.getJSONObject(k);
-		
-			
-			String id = null;
-			
-			if(jObj.has("uri"))
-			{
-				id = jObj.getString("uri");
-			}
-			
-			if(id != null)
-			{
-				bulkFormat = "{\"index\":{\"_index\":\"" + index+ "\",\"_type\":\""+ type +"\",\"_id\":\""+id+"\"}}";
-			}
-			else
-			{
-				bulkFormat = "{\"index\":{\"_index\":\"" + index+ "\",\"_type\":\""+ type +"\"}}";
-			}
-			sb.append(bulkFormat);
-			sb.append(System.getProperty("line.separator"));
-			sb.append(jObj.toString());
-			sb.append(System.getProperty("line.separator"));
-			counter++;
-			if (counter % bulksize == 0) {
-				int i = 0;
-				Exception ex = null;
-				while (i < retry) {
-					try {
-						StringEntity entity = new StringEntity(sb.toString(),"UTF-8");
-						entity.setContentType("application/json");
-						httpPost.setEntity(entity);
-						httpClient.execute(httpPost);
-						httpClient.close();
-						System.out.println(counter + " processed");
-						break;
-					}catch(Exception e) {
-						ex = e;
-						logger.error("Error", e);
-						i++;
-					}
-				}
-				if (i > 0) {
-					logger.error("Exception occurred!", ex);
-					postException = ex;
-					break;
-				}
-				httpClient = getHttpClient(esConfig);
-				httpPost = getHttpPost(esConfig);
-				sb = new StringBuilder();
-				try {
-					Thread.sleep(sleepTime);
-				} catch (InterruptedException e) {
+		try {
+			try {
+				for(int k=0; k<jsonArray.length(); k++) {
+					publisher.add(jsonArray.getJSONObject(k));
 				}
+			} finally {
+				publisher.close();
 			}
-		}
-		try {
-			StringEntity entity = new StringEntity(sb.toString(),"UTF-8");
-			entity.setContentType("application/json");
-			httpPost.setEntity(entity);
-			httpClient.execute(httpPost);
-			httpClient.close();
 		} catch(Exception e) {
 			postException = e;
 		}
@@ -232,22 +175,33 @@ public class ElasticSearchPublishServlet extends Application {
 			logger.error("Exception occurred!", postException);
 			return "{\"result\": {\"code\": \"0\", \"message\": \"" + postException.getMessage() + "\"}}";
 		}
+		if (publisher.getFailedDocuments() > 0) {
+			return "{\"result\": {\"code\": \"0\", \"message\": \"" + publisher.getFailedDocuments() + 
+					" documents could not be published\"}}";
+		}
 		return "{\"result\": {\"code\": \"1\", \"message\": \"success\"}}";
 	}
 	
-	private HttpPost getHttpPost(ElasticSearchConfig esConfig) {
-		return new HttpPost(esConfig.getProtocol()+"://" + esConfig.getHostname() + 
-				":" + esConfig.getPort() + "/" + esConfig.getIndex() + "/_bulk");
-	}
-	
-	private CloseableHttpClient getHttpClient(ElasticSearchConfig esConfig) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+	/**
+	 * The clients are shared by all the requests, so the connections to ES are pooled and kept alive.
+	 */
+	private synchronized static CloseableHttpClient getHttpClient(ElasticSearchConfig esConfig) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
 		if(esConfig.getProtocol().equalsIgnoreCase("https")) {
-			SSLContextBuilder builder = new SSLContextBuilder();
-			builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
-			SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(builder.build());
-			return HttpClients.custom().setSSLSocketFactory(sslsf).build();
-		} else if(esConfig.getProtocol().equalsIgnoreCase("http"))
-			return HttpClients.createDefault();
+			if(sharedHttpsClient == null) {
+				SSLContextBuilder builder = new SSLContextBuilder();
+				builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
+				SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(builder.build());
+				sharedHttpsClient = HttpClients.custom().setSSLSocketFactory(sslsf)
+						.setMaxConnTotal(MAX_CONNECTIONS).setMaxConnPerRoute(MAX_CONNECTIONS).build();
+			}
+			return sharedHttpsClient;
+		} else if(esConfig.getProtocol().equalsIgnoreCase("http")) {
+			if(sharedHttpClient == null) {
+				sharedHttpClient = HttpClients.custom()
+						.setMaxConnTotal(MAX_CONNECTIONS).setMaxConnPerRoute(MAX_CONNECTIONS).build();
+			}
+			return sharedHttpClient;
+		}
 		return null;
 		
 	}
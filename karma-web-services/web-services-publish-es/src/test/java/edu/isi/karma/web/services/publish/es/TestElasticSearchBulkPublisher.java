@@ -0,0 +1,145 @@
+package edu.isi.karma.web.services.publish.es;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes documents to an in-process stand-in for the bulk api of Elastic Search.
+ */
+public class TestElasticSearchBulkPublisher {
+
+	private static Logger logger = LoggerFactory.getLogger(TestElasticSearchBulkPublisher.class);
+
+	private static final int NUMBER_OF_DOCUMENTS = 20000;
+
+	private HttpServer server;
+	private ElasticSearchConfig esConfig;
+	private DefaultHttpClient httpClient;
+
+	private Set<String> indexedIds;
+	private Set<String> rejectedOnce;
+	private AtomicInteger receivedItems;
+	private AtomicInteger bulkRequests;
+
+	@Before
+	public void setUp() throws IOException {
+		indexedIds = Collections.synchronizedSet(new HashSet<String>());
+		rejectedOnce = Collections.synchronizedSet(new HashSet<String>());
+		receivedItems = new AtomicInteger();
+		bulkRequests = new AtomicInteger();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/test-index/_bulk", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				bulkRequests.incrementAndGet();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+				JSONArray items = new JSONArray();
+				boolean errors = false;
+				String action;
+				while ((action = reader.readLine()) != null) {
+					JSONObject document = new JSONObject(reader.readLine());
+					String id = new JSONObject(action).getJSONObject("index").getString("_id");
+					receivedItems.incrementAndGet();
+					int status;
+					int number = document.getInt("number");
+					if (number % 997 == 0) {
+						status = 400;
+					} else if (number % 10 == 0 && rejectedOnce.add(id)) {
+						status = 429;
+					} else {
+						indexedIds.add(id);
+						status = 201;
+					}
+					errors |= status >= 300;
+					items.put(new JSONObject().put("index", new JSONObject().put("_id", id).put("status", status)));
+				}
+				byte[] response = new JSONObject().put("took", 1).put("errors", errors).put("items", items)
+						.toString().getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, response.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.start();
+
+		esConfig = new ElasticSearchConfig();
+		esConfig.setProtocol("http");
+		esConfig.setHostname("127.0.0.1");
+		esConfig.setPort(String.valueOf(server.getAddress().getPort()));
+		esConfig.setIndex("test-index");
+		esConfig.setType("WebPage");
+
+		PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+		connectionManager.setDefaultMaxPerRoute(8);
+		httpClient = new DefaultHttpClient(connectionManager);
+	}
+
+	@After
+	public void tearDown() {
+		httpClient.getConnectionManager().shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	public void testPublishWithSelectiveRetry() throws Exception {
+		ElasticSearchBulkPublisher publisher = new ElasticSearchBulkPublisher(httpClient, esConfig,
+				256 * 1024, Integer.MAX_VALUE, 4, 3, 1);
+		for (int i = 0; i < NUMBER_OF_DOCUMENTS; i++) {
+			publisher.add(new JSONObject().put("uri", "http://example.org/page/" + i)
+					.put("number", i).put("name", "page \"" + i + "\""));
+		}
+		publisher.close();
+
+		int mappingErrors = (NUMBER_OF_DOCUMENTS - 1) / 997 + 1;
+		int throttled = NUMBER_OF_DOCUMENTS / 10 - (NUMBER_OF_DOCUMENTS - 1) / 9970 - 1;
+		assertEquals(NUMBER_OF_DOCUMENTS - mappingErrors, indexedIds.size());
+		assertEquals(NUMBER_OF_DOCUMENTS - mappingErrors, publisher.getIndexedDocuments());
+		assertEquals(mappingErrors, publisher.getFailedDocuments());
+		// only the throttled documents are sent again
+		assertEquals(NUMBER_OF_DOCUMENTS + throttled, receivedItems.get());
+		assertTrue(bulkRequests.get() > 1);
+		logger.info("Published " + NUMBER_OF_DOCUMENTS + " documents in " + bulkRequests.get() +
+				" bulk requests, " + Math.round(publisher.getDocumentsPerSecond()) + " documents/s");
+	}
+
+	@Test
+	public void testBulkSizeByDocuments() throws Exception {
+		ElasticSearchBulkPublisher publisher = new ElasticSearchBulkPublisher(httpClient, esConfig,
+				Integer.MAX_VALUE, 101, 2, 3, 1);
+		for (int i = 1; i <= 1000; i++) {
+			publisher.add(new JSONObject().put("uri", "http://example.org/page/" + i).put("number", 1));
+		}
+		publisher.close();
+
+		assertEquals(1000, publisher.getIndexedDocuments());
+		assertEquals(10, bulkRequests.get());
+	}
+}
@@ -84,7 +84,7 @@ public class RequestController extends HttpServlet {
 		}
 
 		VWorkspace vWorkspace = VWorkspaceRegistry.getInstance().getVWorkspace(workspaceId);
-		String responseString = "";
+		UpdateContainer updateContainer;
 		boolean isPreview = Boolean.parseBoolean(request.getParameter("isPreview"));
 		boolean isUserInteraction = Boolean.parseBoolean(request.getParameter("isUserInteraction"));
 		boolean isExecute = Boolean.parseBoolean(request.getParameter("execute"));
@@ -92,7 +92,6 @@ public class RequestController extends HttpServlet {
 			String commandId = request.getParameter("commandId");
 			Command currentCommand = (Command) ctrl.getWorkspace().getCommandHistory().getPreviewCommand(commandId);
 			try {
-				UpdateContainer updateContainer;
 				if (!isExecute)
 					updateContainer = ((IPreviewable) currentCommand).handleUserActions(request);
 				else {
@@ -100,43 +99,51 @@ public class RequestController extends HttpServlet {
 					updateContainer = ctrl.invokeCommand(currentCommand);
 				}
 				updateContainer.applyUpdates(vWorkspace);
-				responseString = updateContainer.generateJson(vWorkspace);
 			} catch (Exception e) {
-				responseString = getErrorMessage(vWorkspace, e);
+				updateContainer = getErrorUpdate(e);
 			}
 		}
 		else if (isPreview) {
 			Command command = ctrl.getCommand(request);
 			try {
-				UpdateContainer updateContainer = ((IPreviewable) command).showPreview(request);
+				updateContainer = ((IPreviewable) command).showPreview(request);
 				ctrl.getWorkspace().getCommandHistory().addPreviewCommand(command);
 				updateContainer.applyUpdates(vWorkspace);
-				responseString = updateContainer.generateJson(vWorkspace);
 			} catch (CommandException e) {
-				responseString = getErrorMessage(vWorkspace, e);
+				updateContainer = getErrorUpdate(e);
 			}
 
 		}
 		else {
 			Command command = ctrl.getCommand(request);
 			try {
-				UpdateContainer updateContainer =ctrl.invokeCommand(command);
+				updateContainer =ctrl.invokeCommand(command);
 				updateContainer.applyUpdates(vWorkspace);
-				responseString = updateContainer.generateJson(vWorkspace);
 			} catch(Exception e) {
-				responseString = getErrorMessage(vWorkspace, e);
+				updateContainer = getErrorUpdate(e);
 			}
 		}
 
+		// The updates are written straight to the response, large worksheets
+		// are not rendered into a String first.
 		response.setCharacterEncoding("UTF-8");
-		response.getWriter().write(responseString);
+		try {
+			updateContainer.generateJson(response.getWriter(), vWorkspace);
+		} catch (Exception e) {
+			if (response.isCommitted()) {
+				logger.error("Error while writing the response, it is incomplete", e);
+			} else {
+				response.resetBuffer();
+				getErrorUpdate(e).generateJson(response.getWriter(), vWorkspace);
+			}
+		}
 		response.flushBuffer();
 	}
 
-	private String getErrorMessage(VWorkspace vWorkspace, Throwable e) {
+	private UpdateContainer getErrorUpdate(Throwable e) {
 		e.printStackTrace();
 		UpdateContainer updateContainer = new UpdateContainer();
 		updateContainer.add(new ErrorUpdate("Error:" + e.getMessage()));
-		return updateContainer.generateJson(vWorkspace);
+		return updateContainer;
 	}
 }
\ No newline at end of file
@@ -30,11 +30,13 @@ import javax.servlet.http.HttpServlet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.isi.karma.controller.history.HistoryAutoSaver;
 import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 
 public class ServerStart extends HttpServlet {
 	private static Logger logger = LoggerFactory.getLogger(ServerStart.class);
 	private static final long serialVersionUID = 1L;
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
 
 	// private static Logger logger = LoggerFactory.getLogger(ServerStart.class);
 
@@ -69,4 +71,10 @@ public class ServerStart extends HttpServlet {
 
 	}
 
+	@Override
+	public void destroy() {
+		// Save the histories that changed since the last autosave
+		HistoryAutoSaver.getInstance().shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+	}
+
 }
@@ -24,9 +24,13 @@ var D3ModelManager = (function() {
 
 	function PrivateConstructor() {
 		var models;
+		// The last alignment received for each worksheet, with its nodes and
+		// links by id, so that the server can send only what changed
+		var alignments;
 		
 		function init() {
 			models = [];
+			alignments = [];
 			
 			window.onscroll = function(event){
 				for (var worksheetId in models) {
@@ -51,10 +55,105 @@ var D3ModelManager = (function() {
 			return models[worksheetId];	
 		};
 
+		function copy(obj) {
+			return JSON.parse(JSON.stringify(obj));
+		}
+		
+		function cacheAlignment(json) {
+			var alignObject = json.alignObject;
+			var cached = {logId: json.alignmentLogId, version: json.alignmentVersion,
+					nodes: {}, links: {}, edgeLinks: {}};
+			$.each(alignObject.nodes, function(index, node) {
+				cached.nodes[node["nodeId"]] = copy(node);
+			});
+			$.each(alignObject.links, function(index, link) {
+				cached.links[link["id"]] = copy(link);
+			});
+			$.each(alignObject.edgeLinks, function(index, link) {
+				cached.edgeLinks[link["id"]] = copy(link);
+			});
+			alignments[json["worksheetId"]] = cached;
+		}
+		
+		/*
+		 * Applies the nodes and links added and removed since the version we have,
+		 * and returns the whole alignment, or null if we do not have that version.
+		 */
+		function applyAlignmentDiff(json) {
+			var cached = alignments[json["worksheetId"]];
+			if (!cached || cached.logId != json.alignmentLogId || cached.version != json.baseVersion)
+				return null;
+			var diff = json.alignDiff;
+			$.each(diff.removedNodes, function(index, nodeId) {
+				delete cached.nodes[nodeId];
+			});
+			$.each(diff.removedLinks, function(index, linkId) {
+				delete cached.links[linkId];
+				delete cached.edgeLinks[linkId];
+			});
+			$.each(diff.nodes, function(index, node) {
+				cached.nodes[node["nodeId"]] = copy(node);
+			});
+			$.each(diff.links, function(index, link) {
+				cached.links[link["id"]] = copy(link);
+			});
+			$.each(diff.edgeLinks, function(index, link) {
+				cached.edgeLinks[link["id"]] = copy(link);
+			});
+			cached.version = json.alignmentVersion;
+			
+			// Number the nodes after the anchors, as the server does for a whole alignment
+			var indices = {};
+			$.each(diff.anchors, function(index, anchor) {
+				indices[anchor["nodeId"]] = anchor["id"];
+			});
+			var nodes = [], links = [], edgeLinks = [];
+			var nodeIndex = diff.anchors.length;
+			$.each(cached.nodes, function(nodeId, node) {
+				node = copy(node);
+				node["id"] = nodeIndex;
+				indices[nodeId] = nodeIndex++;
+				nodes.push(node);
+			});
+			$.each(cached.links, function(linkId, link) {
+				var source = indices[link["sourceNodeId"]];
+				var target = indices[link["targetNodeId"]];
+				if (source === undefined || target === undefined)
+					return;
+				link = copy(link);
+				link["source"] = source;
+				link["target"] = target;
+				links.push(link);
+			});
+			$.each(cached.edgeLinks, function(linkId, link) {
+				var target = indices[link["targetNodeId"]];
+				if (target === undefined)
+					return;
+				link = copy(link);
+				link["target"] = target;
+				edgeLinks.push(link);
+			});
+			return {anchors: diff.anchors, tableLayout: diff.tableLayout,
+				nodes: nodes, links: links, edgeLinks: edgeLinks};
+		}
+		
 		function displayModel(json) {
 			var worksheetId = json["worksheetId"];
 			var mainWorksheetDiv = $("div#" + worksheetId);
 			var wsVisible = mainWorksheetDiv.data("worksheetVisible");
+			if (json.alignDiff) {
+				var alignObject = applyAlignmentDiff(json);
+				if (alignObject == null) {
+					// We missed a version, get the whole alignment
+					delete alignments[worksheetId];
+					if (wsVisible)
+						requestFullModel(worksheetId, json["alignmentId"]);
+					return;
+				}
+				json.alignObject = alignObject;
+			} else if (json.alignObject) {
+				cacheAlignment(json);
+			}
 			if (!wsVisible) {
 				return;
 			}
@@ -165,14 +264,18 @@ var D3ModelManager = (function() {
 			var svg = $(mainWorksheetDiv).data("svgVis");
 			if (svg) {
 				var alignmentId = $(mainWorksheetDiv).data("alignmentId");
-				console.log("RefreshSVGAlignmentCommand: " + worksheetId, alignmentId);
-				var info = generateInfoObject(worksheetId, "", "RefreshSVGAlignmentCommand");
-				info["alignmentId"] = alignmentId;
 				showLoading(worksheetId);
-				sendRequest(info, worksheetId);
+				requestFullModel(worksheetId, alignmentId);
 			}
 		};
 		
+		function requestFullModel(worksheetId, alignmentId) {
+			console.log("RefreshSVGAlignmentCommand: " + worksheetId, alignmentId);
+			var info = generateInfoObject(worksheetId, "", "RefreshSVGAlignmentCommand");
+			info["alignmentId"] = alignmentId;
+			sendRequest(info, worksheetId);
+		}
+		
 		function printModel(worksheetId) {
 			var layout = getModelManager(worksheetId);
 			if(layout.printExtented) {